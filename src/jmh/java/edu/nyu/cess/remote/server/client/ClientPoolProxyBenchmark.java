@@ -0,0 +1,149 @@
+package edu.nyu.cess.remote.server.client;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import org.apache.log4j.LogManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the throughput of the client pool handling app execution updates, each thread playing the reader of a
+ * client of its own. With the clients kept apart, the throughput should grow with the threads rather than level off
+ * at that of a single thread.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientPoolProxyBenchmark
+{
+	private static final int CLIENT_COUNT = 256;
+
+	@State(Scope.Benchmark)
+	public static class ClientPool
+	{
+		final ClientPoolProxy clientPoolProxy = new ClientPoolProxy();
+		final AtomicInteger nextClient = new AtomicInteger();
+
+		@Setup(Level.Trial)
+		public void setUp()
+		{
+			LogManager.getRootLogger().setLevel(org.apache.log4j.Level.WARN);
+			clientPoolProxy.addObserver(new ClientPoolObserver() {
+				@Override public void notifyNewClientConnected(String hostName, String ipAddress) {}
+
+				@Override public void notifyClientDisconnected(String ipAddress) {}
+
+				@Override public void notifyClientAppUpdate(AppExe appExe, String ipAddress) {}
+
+				@Override public void notifyClientDegraded(String ipAddress, boolean degraded) {}
+			});
+			for (int i = 0; i < CLIENT_COUNT; i++) {
+				clientPoolProxy.addClient(new NullMessageSocket(new NetworkInfo("pc-" + i, "10.0." + (i / 250) + "." + (i % 250 + 1), "10.0.0.254")));
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ClientReader
+	{
+		NetworkInfo networkInfo;
+		Message started;
+		Message stopped;
+		boolean running;
+
+		@Setup(Level.Trial)
+		public void setUp(ClientPool clientPool)
+		{
+			int i = clientPool.nextClient.getAndIncrement() % CLIENT_COUNT;
+			networkInfo = new NetworkInfo("pc-" + i, "10.0." + (i / 250) + "." + (i % 250 + 1), "10.0.0.254");
+			AppInfo appInfo = new AppInfo("trust", "trust.exe", "");
+			started = new Message(MessageType.APP_EXE_UPDATE, new AppExe(appInfo, AppState.STARTED), networkInfo);
+			stopped = new Message(MessageType.APP_EXE_UPDATE, new AppExe(appInfo, AppState.STOPPED), networkInfo);
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void appExeUpdateSingleThread(ClientPool clientPool, ClientReader reader)
+	{
+		update(clientPool, reader);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public void appExeUpdateAllCores(ClientPool clientPool, ClientReader reader)
+	{
+		update(clientPool, reader);
+	}
+
+	private static void update(ClientPool clientPool, ClientReader reader)
+	{
+		// Every update changes the state, none is ignored as a duplicate
+		reader.running = ! reader.running;
+		clientPool.clientPoolProxy.notifyMessageReceived(reader.networkInfo, reader.running ? reader.started : reader.stopped);
+	}
+
+	private static class NullMessageSocket implements MessageSocket
+	{
+		private final NetworkInfo networkInfo;
+
+		NullMessageSocket(NetworkInfo networkInfo)
+		{
+			this.networkInfo = networkInfo;
+		}
+
+		@Override public boolean isConnected()
+		{
+			return true;
+		}
+
+		@Override public void sendMessage(Message message) {}
+
+		@Override public Message readMessage()
+		{
+			return null;
+		}
+
+		@Override public String getClientIp()
+		{
+			return networkInfo.getClientIp();
+		}
+
+		@Override public String getServerIp()
+		{
+			return networkInfo.getServerIp();
+		}
+
+		@Override public String getClientName()
+		{
+			return networkInfo.getClientName();
+		}
+
+		@Override public NetworkInfo getNetworkInfo()
+		{
+			return networkInfo;
+		}
+	}
+}
@@ -4,16 +4,20 @@ import edu.nyu.cess.remote.client.app.AppMessageDispatcher;
 import edu.nyu.cess.remote.client.app.process.AppExeManager;
 import edu.nyu.cess.remote.client.config.NetInfoFile;
 import edu.nyu.cess.remote.client.config.NetInfoFileValidator;
+import edu.nyu.cess.remote.client.message.ClockSync;
+import edu.nyu.cess.remote.client.message.CommandListener;
 import edu.nyu.cess.remote.client.message.MessageDispatchControl;
 import edu.nyu.cess.remote.client.message.MessageSocketManager;
+import edu.nyu.cess.remote.client.message.ServerDiscovery;
 import edu.nyu.cess.remote.common.message.MessageType;
-import edu.nyu.cess.remote.common.message.dispatch.DispatchControl;
 import edu.nyu.cess.remote.common.message.dispatch.MessageDispatcher;
 import edu.nyu.cess.remote.common.net.NetworkInfo;
 import edu.nyu.cess.remote.common.net.PortInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+
 /**
  * The client main class is used to load in the required network configuration information, and attempts to
  * contact the server, and maintain a connection to it until stopped.
@@ -49,16 +53,44 @@ public class Main
         PortInfo portInfo = netInfoFile.getPortInfo();
         NetworkInfo networkInfo = netInfoFile.getNetworkInfo();
 
-		MessageSocketManager messageSocketManager = new MessageSocketManager(networkInfo, portInfo);
+		ServerDiscovery serverDiscovery = null;
+		if (netInfoFile.getDiscoverySettings() != null) {
+			serverDiscovery = new ServerDiscovery(netInfoFile.getDiscoverySettings());
+			try {
+				serverDiscovery.start();
+			}
+			catch (IOException e) {
+				log.error("Failed to listen for server announcements.", e);
+				System.exit(1);
+				return;
+			}
+		}
+
+		MessageSocketManager messageSocketManager = new MessageSocketManager(networkInfo, portInfo, netInfoFile.getCodecIds(),
+				netInfoFile.getConnectionSettings(), serverDiscovery);
 
         AppExeManager appExeManager = new AppExeManager();
 
-        DispatchControl dispatchControl = new MessageDispatchControl(messageSocketManager, messageSocketManager);
+        MessageDispatchControl dispatchControl = new MessageDispatchControl(messageSocketManager, messageSocketManager);
 
-        MessageDispatcher appMessageDispatcher = new AppMessageDispatcher(appExeManager, appExeManager, networkInfo);
+        ClockSync clockSync = new ClockSync(messageSocketManager, networkInfo);
+        dispatchControl.setMessageDispatcher(MessageType.CLOCK_PROBE, clockSync);
+
+        MessageDispatcher appMessageDispatcher = new AppMessageDispatcher(appExeManager, appExeManager, networkInfo, clockSync);
 
         dispatchControl.setMessageDispatcher(MessageType.APP_EXE_REQUEST, appMessageDispatcher);
         dispatchControl.setMessageDispatcher(MessageType.APP_EXE_UPDATE, appMessageDispatcher);
+        dispatchControl.setMessageDispatcher(MessageType.APP_EXE_PREPARE, appMessageDispatcher);
+        dispatchControl.setMessageDispatcher(MessageType.APP_EXE_GO, appMessageDispatcher);
+
+		if (netInfoFile.getCommandChannelSettings() != null) {
+			try {
+				new CommandListener(netInfoFile.getCommandChannelSettings(), networkInfo, dispatchControl).start();
+			}
+			catch (IOException e) {
+				log.error("Failed to listen on the command channel, requests are only received over the connection.", e);
+			}
+		}
 
         messageSocketManager.startSocketListener();
 	}
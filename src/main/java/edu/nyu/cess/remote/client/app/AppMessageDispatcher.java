@@ -1,12 +1,15 @@
 package edu.nyu.cess.remote.client.app;
 
 import edu.nyu.cess.remote.client.app.process.AppExeObservable;
+import edu.nyu.cess.remote.client.message.ClockSync;
 import edu.nyu.cess.remote.client.app.process.AppExecutor;
 import edu.nyu.cess.remote.client.app.process.ProcessStateObserver;
 import edu.nyu.cess.remote.common.app.AppExe;
 import edu.nyu.cess.remote.common.app.AppExecutionValidator;
+import edu.nyu.cess.remote.common.app.AppState;
 import edu.nyu.cess.remote.common.message.Message;
 import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.message.StartTiming;
 import edu.nyu.cess.remote.common.message.dispatch.DispatchControl;
 import edu.nyu.cess.remote.common.message.dispatch.MessageDispatcher;
 import edu.nyu.cess.remote.common.net.ConnectionState;
@@ -14,19 +17,45 @@ import edu.nyu.cess.remote.common.net.NetworkInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * This class handles the unpacking, routing, and sending of application messages.
+ *
+ * State changes that happen while the client is disconnected are kept in an {@link OfflineStateQueue}, and sent to
+ * the server as one batch as soon as the connection is back, ending with the current state.
+ *
+ * Every state update is numbered, from 1 in each new session and on from the last number in a resumed one, so that
+ * the server can tell when an update went missing and only then poll for the state.
+ *
+ * A start request may carry the time, on the server's clock, at which the whole group is to start. The app is then
+ * launched at that time on the client's clock, as estimated by the {@link ClockSync}, and the time it was actually
+ * launched is reported back to the server. Without an estimate of the server's clock the app is launched at once.
+ *
+ * A start may also be prepared ahead: the readiness is reported to the server, and the go then launches the prepared
+ * app like a start request.
  */
 public class AppMessageDispatcher implements ProcessStateObserver, MessageDispatcher
 {
 	private final static Logger log = LoggerFactory.getLogger(AppMessageDispatcher.class);
 
+	private static final int OFFLINE_QUEUE_CAPACITY = 32;
+	private static final long MAX_START_DELAY_NANOS = TimeUnit.SECONDS.toNanos(60);
+
 	private DispatchControl dispatchControl;
 	private NetworkInfo networkInfo;
 	private AppExecutor appHandler;
+	private final ClockSync clockSync;
 
 	private Object dispatcherControlStateLock = new Object();
 	private ConnectionState dispatcherControlState = ConnectionState.DISCONNECTED;
+	private AppExe lastSentAppExe;
+	// Guarded by dispatcherControlStateLock
+	private final OfflineStateQueue offlineStateQueue = new OfflineStateQueue(OFFLINE_QUEUE_CAPACITY);
+	// Guarded by dispatcherControlStateLock
+	private long nextStateSequenceNumber = 1;
 
 	/**
 	 * Initializes the AppMessenger class with the required handler, sender, and network information.
@@ -34,10 +63,23 @@ public class AppMessageDispatcher implements ProcessStateObserver, MessageDispat
 	 * @param networkInfo network information required for sending messages
      */
 	public AppMessageDispatcher(AppExecutor appHandler, AppExeObservable appExeObservable, NetworkInfo networkInfo)
+	{
+		this(appHandler, appExeObservable, networkInfo, null);
+	}
+
+	/**
+	 * @param appHandler the application execution handler
+	 * @param appExeObservable the source of the application state changes
+	 * @param networkInfo network information required for sending messages
+	 * @param clockSync the estimate of the server's clock scheduled starts are timed by, or null to start at once
+	 */
+	public AppMessageDispatcher(AppExecutor appHandler, AppExeObservable appExeObservable, NetworkInfo networkInfo,
+								ClockSync clockSync)
 	{
 		this.appHandler = appHandler;
 		this.networkInfo = networkInfo;
-        appExeObservable.setStateObserver(this);
+		this.clockSync = clockSync;
+		appExeObservable.setStateObserver(this);
 	}
 
 	/**
@@ -50,13 +92,29 @@ public class AppMessageDispatcher implements ProcessStateObserver, MessageDispat
 
 	@Override public void notifyDispatcherControlState(ConnectionState connectionState)
 	{
+		AppExe appExe = appHandler.getExecution();
 		synchronized (dispatcherControlStateLock) {
-			this.dispatcherControlState = connectionState;
-		}
+			ConnectionState previousState = dispatcherControlState;
+			// A resumed session is a connected one, on which the server already knows the last state sent
+			this.dispatcherControlState = (connectionState == ConnectionState.RESUMED) ? ConnectionState.CONNECTED : connectionState;
+
+			// The dispatcher is registered for several message types, and notified once per type
+			if (previousState == ConnectionState.CONNECTED || dispatcherControlState != ConnectionState.CONNECTED) {
+				return;
+			}
+			if (connectionState == ConnectionState.CONNECTED) {
+				nextStateSequenceNumber = 1;
+			}
 
-		if (connectionState == ConnectionState.CONNECTED) {
-			// Send an update when a new connection is established
-			notifyStateChange(appHandler.getExecution());
+			// A new session knows nothing of the client, a resumed one knows the last state sent on it
+			if (connectionState != ConnectionState.RESUMED || lastSentAppExe == null || ! lastSentAppExe.isSame(appExe)) {
+				offlineStateQueue.add(appExe);
+			}
+			if (offlineStateQueue.isEmpty()) {
+				log.debug("Session resumed, the server already knows the state ({}).", appExe);
+				return;
+			}
+			sendQueuedStates();
 		}
 	}
 
@@ -73,7 +131,32 @@ public class AppMessageDispatcher implements ProcessStateObserver, MessageDispat
 					return;
 				}
 
-				appHandler.executeRequest(message.getAppExe());
+				if (message.getStartTiming() != null && message.getAppExe().getState() == AppState.STARTED) {
+					executeScheduledStart(message.getAppExe(), message.getStartTiming());
+				}
+				else {
+					appHandler.executeRequest(message.getAppExe());
+				}
+				break;
+			case APP_EXE_PREPARE:
+				if ( ! AppExecutionValidator.validate(message.getAppExe())) {
+					log.error("Ignored invalid app exe. Error: {}.", AppExecutionValidator.getValidationError(message.getAppExe()));
+					return;
+				}
+
+				AppExe readiness = appHandler.prepareRequest(message.getAppExe());
+				dispatchControl.dispatchOutboundMessage(new Message(MessageType.APP_EXE_READY, readiness, networkInfo));
+				break;
+			case APP_EXE_GO:
+				long goNanoTime = System.nanoTime();
+				AppExe startRequest = new AppExe(message.getAppExe().getAppInfo(), AppState.STARTED);
+				if (message.getStartTiming() != null) {
+					executeScheduledStart(startRequest, message.getStartTiming());
+				}
+				else if (appHandler.executeRequestAt(startRequest, goNanoTime) >= 0) {
+					log.debug("{} launched {} us after the go.", startRequest.getAppInfo().getName(),
+							TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - goNanoTime));
+				}
 				break;
 			case APP_EXE_UPDATE:
 				notifyStateChange(appHandler.getExecution());
@@ -92,12 +175,61 @@ public class AppMessageDispatcher implements ProcessStateObserver, MessageDispat
 		synchronized (dispatcherControlStateLock) {
 			if (dispatcherControlState == ConnectionState.CONNECTED) {
 				log.debug("Sending state change ({}) to the server.", appExe);
-				Message message = new Message(MessageType.APP_EXE_UPDATE, appExe, networkInfo);
+				Message message = new Message(MessageType.APP_EXE_UPDATE, appExe, networkInfo, nextStateSequenceNumber++);
 				dispatchControl.dispatchOutboundMessage(message);
+				lastSentAppExe = appExe;
+			}
+			else {
+				log.debug("Dispatch Controller Down: state change ({}) queued until the connection is back.", appExe);
+				offlineStateQueue.add(appExe);
+			}
+		}
+	}
+
+	/**
+	 * Launches the app at the scheduled time, and reports the time it was launched to the server.
+	 */
+	private void executeScheduledStart(AppExe appExe, StartTiming startTiming)
+	{
+		long launchNanoTime = System.nanoTime();
+		if (clockSync != null && clockSync.isSynchronized()) {
+			long scheduledNanoTime = clockSync.toNanoTime(startTiming.getScheduledMicros());
+			if (scheduledNanoTime - launchNanoTime <= MAX_START_DELAY_NANOS) {
+				launchNanoTime = scheduledNanoTime;
 			}
 			else {
-				log.error("Dispatch Controller Down: Failed to send state change ({}) to the server.", appExe);
+				log.error("Scheduled start of {} too far ahead, started at once.", appExe.getAppInfo().getName());
 			}
 		}
+		else {
+			log.debug("Not synchronized with the server's clock, {} started at once.", appExe.getAppInfo().getName());
+		}
+
+		long launchedNanoTime = appHandler.executeRequestAt(appExe, launchNanoTime);
+		if (launchedNanoTime < 0 || clockSync == null || ! clockSync.isSynchronized()) {
+			return;
+		}
+
+		long roundTripMicros = clockSync.getRoundTripMicros();
+		StartTiming launchTiming = new StartTiming(startTiming.getScheduledMicros(), clockSync.toServerMicros(launchedNanoTime),
+				roundTripMicros / 2);
+		log.debug("{} launched {} us from its scheduled start.", appExe.getAppInfo().getName(), launchTiming.getSkewMicros());
+		dispatchControl.dispatchOutboundMessage(new Message(MessageType.START_REPORT, appExe, networkInfo, 0, launchTiming));
+	}
+
+	/**
+	 * Sends the queued states in a single batch. Must be called holding the dispatcherControlStateLock.
+	 */
+	private void sendQueuedStates()
+	{
+		List<AppExe> states = offlineStateQueue.drain();
+		List<Message> messages = new ArrayList<>(states.size());
+		for (AppExe state : states) {
+			messages.add(new Message(MessageType.APP_EXE_UPDATE, state, networkInfo, nextStateSequenceNumber++));
+		}
+
+		log.debug("Sending {} state changes to the server.", states.size());
+		dispatchControl.dispatchOutboundMessages(messages);
+		lastSentAppExe = states.get(states.size() - 1);
 	}
 }
@@ -0,0 +1,67 @@
+package edu.nyu.cess.remote.client.app;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The app execution states that changed while the client was disconnected from the server. Only the newest state of
+ * each app is kept, and the apps are kept in the order of their last change, so that replaying the queue ends in the
+ * client's current state. Once the queue is full, the app that changed longest ago is dropped.
+ *
+ * Not thread safe.
+ */
+class OfflineStateQueue
+{
+	private final static Logger log = LoggerFactory.getLogger(OfflineStateQueue.class);
+
+	private final int capacity;
+	private final LinkedHashMap<String, AppExe> statesByApp = new LinkedHashMap<>();
+
+	/**
+	 * @param capacity the number of apps whose state is kept
+	 */
+	OfflineStateQueue(int capacity)
+	{
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Queues the state, replacing any queued state of the same app.
+	 * @param appExe the app execution state
+	 */
+	void add(AppExe appExe)
+	{
+		String appName = appExe.getAppInfo().getName();
+		// Removed first, so that the app moves to the end of the queue
+		statesByApp.remove(appName);
+		statesByApp.put(appName, appExe);
+
+		if (statesByApp.size() > capacity) {
+			Iterator<AppExe> states = statesByApp.values().iterator();
+			log.warn("Offline state queue full, dropped the state ({}).", states.next());
+			states.remove();
+		}
+	}
+
+	/**
+	 * Removes and returns the queued states, in the order of their change.
+	 * @return the queued states
+	 */
+	List<AppExe> drain()
+	{
+		List<AppExe> states = new ArrayList<>(statesByApp.values());
+		statesByApp.clear();
+		return states;
+	}
+
+	boolean isEmpty()
+	{
+		return statesByApp.isEmpty();
+	}
+}
@@ -7,15 +7,38 @@ import edu.nyu.cess.remote.common.app.ErrorType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The ProcessExecutionManager handles the execution and monitoring of processes.
+ *
+ * A process is launched without holding the execution lock, so that requests are still taken while a slow launch is
+ * in progress. A stop request for the app being launched is applied as soon as the launch returns, the process is
+ * then destroyed before it is reported as started.
+ *
+ * A launch scheduled at a later time waits out the delay as a launch in progress, parking in slices and spinning for
+ * the last moment so that it is not late by a scheduler quantum. A stop requested during the wait cancels the launch.
+ *
+ * A start may be prepared ahead of its request: the executable is resolved and read once, so that its launch is
+ * served from the file cache, and the command is staged. The next start request for the same app launches the staged
+ * command, any other request discards it.
  */
 public class AppExeManager implements AppExecutor, ProcessObserver, AppExeObservable
 {
 	final static Logger log = LoggerFactory.getLogger(AppExeManager.class);
 
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final long SPIN_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
 	private ProcessStateObserver stateObserver;
 
 	private Object appExeLock = new Object();
@@ -29,6 +52,15 @@ public class AppExeManager implements AppExecutor, ProcessObserver, AppExeObserv
 
 	private Thread processMonitor;
 
+	// Guarded by appExeLock, the app being launched, or null
+	private AppInfo launchingAppInfo;
+	// Guarded by appExeLock
+	private boolean stopRequestedDuringLaunch;
+	// Guarded by appExeLock, the app prepared to be launched, or null
+	private AppInfo preparedAppInfo;
+	// Guarded by appExeLock
+	private String[] preparedCommand;
+
 	/**
 	 * Initializes the process execution manager, with a default stopped state.
 	 */
@@ -48,7 +80,7 @@ public class AppExeManager implements AppExecutor, ProcessObserver, AppExeObserv
 	/**
 	 * {@link ProcessObserver}
 	 */
-	@Override public synchronized void notifyProcessStopped()
+	@Override public void notifyProcessStopped()
 	{
 		stopCurrentProcess();
 	}
@@ -56,9 +88,31 @@ public class AppExeManager implements AppExecutor, ProcessObserver, AppExeObserv
     /**
      * {@link AppExecutor}
      */
-	@Override public synchronized void executeRequest(AppExe requestedAppExe)
+	@Override public void executeRequest(AppExe requestedAppExe)
 	{
+		executeRequestAt(requestedAppExe, System.nanoTime());
+	}
+
+	/**
+	 * {@link AppExecutor}
+	 */
+	@Override public long executeRequestAt(AppExe requestedAppExe, long launchNanoTime)
+	{
+		boolean launch = false;
+		String[] command = null;
 		synchronized (appExeLock) {
+			if (preparedAppInfo != null && preparedAppInfo.equals(requestedAppExe.getAppInfo())
+					&& requestedAppExe.getState() == AppState.STARTED) {
+				command = preparedCommand;
+			}
+			preparedAppInfo = null;
+			preparedCommand = null;
+
+			if (launchingAppInfo != null) {
+				executeRequestDuringLaunch(requestedAppExe);
+				return -1;
+			}
+
 			AppState requestedState = requestedAppExe.getState();
 			AppState currentState = currentAppExe.getState();
 			AppInfo currentAppInfo = currentAppExe.getAppInfo();
@@ -94,7 +148,9 @@ public class AppExeManager implements AppExecutor, ProcessObserver, AppExeObserv
 				case STOPPED:
 					switch (requestedState) {
 						case STARTED:
-								performAppExe(requestedAppExe);
+							launchingAppInfo = requestedAppExe.getAppInfo();
+							stopRequestedDuringLaunch = false;
+							launch = true;
 							break;
 						case STOPPED:
 							String errorMessage = String.format("Stop Request Ignored: The app (%s) is not currently running.", requestedAppInfo.getName());
@@ -105,6 +161,65 @@ public class AppExeManager implements AppExecutor, ProcessObserver, AppExeObserv
 					break;
 			}
 		}
+
+		if ( ! launch) {
+			return -1;
+		}
+		if (command == null) {
+			AppInfo appInfo = requestedAppExe.getAppInfo();
+			command = toCommand(appInfo.getPath() + " " + appInfo.getArgs());
+		}
+		else {
+			log.debug("Launching the prepared {}.", requestedAppExe.getAppInfo().getName());
+		}
+		waitUntil(launchNanoTime);
+		return performAppExe(requestedAppExe, command);
+	}
+
+	/**
+	 * {@link AppExecutor}
+	 */
+	@Override public AppExe prepareRequest(AppExe requestedAppExe)
+	{
+		AppInfo appInfo = requestedAppExe.getAppInfo();
+		synchronized (appExeLock) {
+			if (launchingAppInfo != null || currentAppExe.getState() == AppState.STARTED) {
+				AppInfo runningAppInfo = (launchingAppInfo != null) ? launchingAppInfo : currentAppExe.getAppInfo();
+				boolean sameApp = runningAppInfo.equals(appInfo);
+				String errorMessage = String.format("Prepare Request Ignored: %s (%s) is already running.",
+						sameApp ? "Application" : "Another app", runningAppInfo.getName());
+				log.debug(errorMessage);
+				return new AppExe(appInfo, AppState.STOPPED,
+						sameApp ? ErrorType.SAME_APP_ALREADY_RUNNING : ErrorType.OTHER_APP_ALREADY_RUNNING, errorMessage);
+			}
+		}
+
+		// Resolved and read without the lock, the executable may be large
+		File executable = resolveExecutable(appInfo.getPath());
+		if (executable == null) {
+			String errorMessage = String.format("Prepare failed: the executable %s was not found.", appInfo.getPath());
+			log.error(errorMessage);
+			return new AppExe(appInfo, AppState.STOPPED, ErrorType.FAILED_TO_START, errorMessage);
+		}
+		try {
+			readFully(executable);
+		} catch (SecurityException e) {
+			return new AppExe(appInfo, AppState.STOPPED, ErrorType.SECURITY_ERROR, String.format("Security error: %s", e.getMessage()));
+		} catch (IOException e) {
+			return new AppExe(appInfo, AppState.STOPPED, ErrorType.IO_ERROR, String.format("Input/Output error: %s", e.getMessage()));
+		}
+
+		String[] args = toCommand(appInfo.getArgs());
+		String[] command = new String[args.length + 1];
+		command[0] = executable.getPath();
+		System.arraycopy(args, 0, command, 1, args.length);
+
+		synchronized (appExeLock) {
+			preparedAppInfo = appInfo.clone();
+			preparedCommand = command;
+		}
+		log.debug("{} prepared, launching {}.", appInfo.getName(), executable);
+		return new AppExe(appInfo, AppState.STOPPED);
 	}
 
     /**
@@ -121,66 +236,186 @@ public class AppExeManager implements AppExecutor, ProcessObserver, AppExeObserv
 	 *                          PRIVATE
 	 * ---------------------------------------------------------------------*/
 
-	private void performAppExe(AppExe appExeRequest)
+	/**
+	 * Handles a request received while an app is being launched. Must be called holding the appExeLock.
+	 */
+	private void executeRequestDuringLaunch(AppExe requestedAppExe)
+	{
+		AppInfo requestedAppInfo = requestedAppExe.getAppInfo();
+		String errorMessage;
+		ErrorType errorType;
+		if (requestedAppExe.getState() == AppState.STOPPED) {
+			if (launchingAppInfo.equals(requestedAppInfo)) {
+				log.debug("Stop requested while {} is being launched, it is stopped once launched.", requestedAppInfo.getName());
+				stopRequestedDuringLaunch = true;
+				return;
+			}
+			errorMessage = String.format("Stop Request Ignored: The app to stop (%s) is different the the one being launched (%s).", requestedAppInfo.getName(), launchingAppInfo.getName());
+			errorType = ErrorType.OTHER_APP_ALREADY_RUNNING;
+		}
+		else if (launchingAppInfo.equals(requestedAppInfo)) {
+			errorMessage = String.format("Start Request Ignored: Application (%s) is already being launched.", requestedAppInfo.getName());
+			errorType = ErrorType.SAME_APP_ALREADY_RUNNING;
+		}
+		else {
+			errorMessage = String.format("Start Request Ignored: Another app (%s) is being launched.", launchingAppInfo.getName());
+			errorType = ErrorType.OTHER_APP_ALREADY_RUNNING;
+		}
+
+		log.debug(errorMessage);
+		stateObserver.notifyStateChange(new AppExe(requestedAppInfo, AppState.STOPPED, errorType, errorMessage));
+	}
+
+	/**
+	 * Splits the command as {@link Runtime#exec(String)} does.
+	 */
+	private static String[] toCommand(String command)
+	{
+		if (command == null) {
+			return new String[0];
+		}
+		StringTokenizer tokenizer = new StringTokenizer(command);
+		List<String> tokens = new ArrayList<>();
+		while (tokenizer.hasMoreTokens()) {
+			tokens.add(tokenizer.nextToken());
+		}
+		return tokens.toArray(new String[tokens.size()]);
+	}
+
+	/**
+	 * Returns the executable file, looked up on the path if only its name is given.
+	 * @return the executable, or null if it does not exist
+	 */
+	private static File resolveExecutable(String path)
+	{
+		File file = new File(path);
+		if (file.isAbsolute() || path.indexOf('/') >= 0 || path.indexOf(File.separatorChar) >= 0) {
+			return file.isFile() ? file.getAbsoluteFile() : null;
+		}
+
+		String searchPath = System.getenv("PATH");
+		if (searchPath == null) {
+			return null;
+		}
+		for (String directory : searchPath.split(File.pathSeparator)) {
+			for (String name : new String[] {path, path + ".exe"}) {
+				File candidate = new File(directory, name);
+				if (candidate.isFile()) {
+					return candidate;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the file once, so that it is in the file cache when it is launched.
+	 */
+	private static void readFully(File file) throws IOException
+	{
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		try (InputStream input = new FileInputStream(file)) {
+			while (input.read(buffer) >= 0) {
+				// Only read for the file cache
+			}
+		}
+	}
+
+	private static void waitUntil(long nanoTime)
+	{
+		long remainingNanos;
+		while ((remainingNanos = nanoTime - System.nanoTime()) > SPIN_NANOS) {
+			LockSupport.parkNanos(Math.min(remainingNanos - SPIN_NANOS, MAX_PARK_NANOS));
+		}
+		while (nanoTime - System.nanoTime() > 0) {
+			// Spins for the last moment, waking up from a park may take longer than what is left
+		}
+	}
+
+	/**
+	 * Launches the app being launched, unless a stop has been requested meanwhile.
+	 * @return the nano time at which the app was launched, or -1 if it was not launched
+	 */
+	private long performAppExe(AppExe appExeRequest, String[] command)
 	{
-		AppState exeState = AppState.STOPPED;
 		ErrorType errorType = ErrorType.NO_ERROR;
 		String errorMessage = "";
+		AppInfo appInfo = appExeRequest.getAppInfo();
+		Process process = null;
+		long launchedNanoTime = -1;
+
+		synchronized (appExeLock) {
+			if (stopRequestedDuringLaunch) {
+				launchingAppInfo = null;
+				log.debug("{} not launched, a stop was requested before its launch.", appInfo.getName());
+				stateObserver.notifyStateChange(new AppExe(appInfo.clone(), AppState.STOPPED));
+				return -1;
+			}
+		}
+
+		// Launched without the lock, a stop request for the app can be taken meanwhile
+		log.debug("Attempting to start {}", appExeRequest);
+		try {
+			process = Runtime.getRuntime().exec(command);
+			launchedNanoTime = System.nanoTime();
+			if (process == null) {
+				errorType = ErrorType.FAILED_TO_START;
+				errorMessage = String.format("Failed to execute %s", appExeRequest);
+			}
+		} catch (SecurityException e) {
+			errorType = ErrorType.SECURITY_ERROR;
+			errorMessage = String.format("Security error: %s", e.getMessage());
+		} catch (IOException e) {
+			errorType = ErrorType.IO_ERROR;
+			errorMessage = String.format("Input/Output error: %s", e.getMessage());
+		}
 
 		synchronized (appExeLock) {
-            log.debug("Attempting to start {}", appExeRequest);
-            try {
-                AppInfo appInfo = appExeRequest.getAppInfo();
-                appExeProcess = Runtime.getRuntime().exec(appInfo.getPath() + " " + appInfo.getArgs());
-
-                if (appExeProcess != null) {
-					currentAppExe = new AppExe(appExeRequest.getAppInfo().clone(), AppState.STARTED);
-
-                    errorGobbler = new ProcessIOStreamGobbler(appExeProcess.getErrorStream(), "ERROR");
-                    outputGobbler = new ProcessIOStreamGobbler(appExeProcess.getInputStream(), "OUTPUT");
-
-                    errorGobbler.start();
-                    outputGobbler.start();
-
-                    processMonitor = new Thread(new ProcessCloseMonitor(this, appExeProcess));
-                    processMonitor.start();
-
-                    log.debug("{} has been executed.", appInfo.getName());
-
-					exeState = AppState.STARTED;
-                }
-				else {
-					errorType = ErrorType.FAILED_TO_START;
-					errorMessage = String.format("Failed to execute %s", appExeRequest);
-					log.error(errorMessage);
-                }
-            } catch (SecurityException e) {
-				errorType = ErrorType.SECURITY_ERROR;
-				errorMessage = String.format("Security error: %s", e.getMessage());
-            } catch (IOException e) {
-				errorType = ErrorType.IO_ERROR;
-				errorMessage = String.format("Input/Output error: %s", e.getMessage());
-            }
-			finally {
+			launchingAppInfo = null;
+			if (process == null) {
 				log.error(errorMessage);
+				stateObserver.notifyStateChange(new AppExe(appInfo, AppState.STOPPED, errorType, errorMessage));
+				return -1;
+			}
+
+			if (stopRequestedDuringLaunch) {
+				process.destroy();
+				log.debug("{} stopped once launched, a stop was requested during its launch.", appInfo.getName());
+				currentAppExe = new AppExe(appInfo.clone(), AppState.STOPPED);
+				stateObserver.notifyStateChange(currentAppExe);
+				return -1;
 			}
 
-			stateObserver.notifyStateChange(new AppExe(appExeRequest.getAppInfo(), exeState, errorType, errorMessage));
+			appExeProcess = process;
+			currentAppExe = new AppExe(appInfo.clone(), AppState.STARTED);
+
+			errorGobbler = new ProcessIOStreamGobbler(appExeProcess.getErrorStream(), "ERROR");
+			outputGobbler = new ProcessIOStreamGobbler(appExeProcess.getInputStream(), "OUTPUT");
+
+			errorGobbler.start();
+			outputGobbler.start();
+
+			processMonitor = new Thread(new ProcessCloseMonitor(this, appExeProcess));
+			processMonitor.start();
+
+			log.debug("{} has been executed.", appInfo.getName());
+			stateObserver.notifyStateChange(new AppExe(appInfo, AppState.STARTED, errorType, errorMessage));
 		}
+		return launchedNanoTime;
 	}
 
 	private void stopCurrentProcess()
 	{
-		if (appExeProcess != null) {
-			processMonitor.interrupt();
-			appExeProcess.destroy();
-		}
-		outputGobbler = null;
-		errorGobbler = null;
-		appExeProcess = null;
-
-		log.debug("Application stopped {}", currentAppExe);
 		synchronized (appExeLock) {
+			if (appExeProcess != null) {
+				processMonitor.interrupt();
+				appExeProcess.destroy();
+			}
+			outputGobbler = null;
+			errorGobbler = null;
+			appExeProcess = null;
+
+			log.debug("Application stopped {}", currentAppExe);
 			currentAppExe = new AppExe(currentAppExe.getAppInfo().clone(), AppState.STOPPED);
 			stateObserver.notifyStateChange(currentAppExe);
 		}
@@ -14,6 +14,22 @@ public interface AppExecutor
      */
 	void executeRequest(AppExe appExe);
 
+	/**
+	 * Executes the request, a start request launching its app at the specified time rather than at once.
+	 * @param appExe The application execution request
+	 * @param launchNanoTime the {@link System#nanoTime()} at which to launch the app
+	 * @return the {@link System#nanoTime()} at which the app was launched, or -1 if it was not launched
+	 */
+	long executeRequestAt(AppExe appExe, long launchNanoTime);
+
+	/**
+	 * Prepares the launch of the app of a start request, without launching it. A later start request for the same app
+	 * launches the prepared app.
+	 * @param appExe The application start request
+	 * @return the readiness, the requested app in the stopped state without an error if it is ready to be launched
+	 */
+	AppExe prepareRequest(AppExe appExe);
+
 	/**
 	 * Return the current execution state.
 	 * @return the current execution state
@@ -1,12 +1,16 @@
 package edu.nyu.cess.remote.client.config;
 
 
+import edu.nyu.cess.remote.client.message.ConnectionSettings;
+import edu.nyu.cess.remote.common.message.codec.MessageCodecs;
+import edu.nyu.cess.remote.common.net.DatagramSettings;
 import edu.nyu.cess.remote.common.net.PortInfo;
 import edu.nyu.cess.remote.common.net.NetworkInfo;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -16,6 +20,10 @@ public class NetInfoFile
 {
     private NetworkInfo networkInfo;
     private PortInfo portInfo;
+    private List<Byte> codecIds;
+    private ConnectionSettings connectionSettings;
+    private DatagramSettings discoverySettings;
+    private DatagramSettings commandChannelSettings;
 
     /**
      * Loads the client property file's fields
@@ -33,8 +41,29 @@ public class NetInfoFile
         String clientName = properties.getProperty("name");
         String clientIp = InetAddress.getLocalHost().getHostAddress();
 
-        portInfo = new PortInfo(Integer.parseInt(properties.getProperty("port")));
+        String port = properties.getProperty("port");
+        portInfo = new PortInfo(port == null || port.trim().isEmpty() ? 0 : Integer.parseInt(port.trim()));
         networkInfo = new NetworkInfo(clientName, clientIp, serverIp);
+        codecIds = MessageCodecs.parseCodecIds(properties.getProperty("codecs", MessageCodecs.DEFAULT_CODECS));
+        connectionSettings = new ConnectionSettings(
+                Integer.parseInt(properties.getProperty("connect.timeout.ms", String.valueOf(ConnectionSettings.DEFAULT_CONNECT_TIMEOUT_MILLIS))),
+                Integer.parseInt(properties.getProperty("read.timeout.ms", String.valueOf(ConnectionSettings.DEFAULT_READ_TIMEOUT_MILLIS))),
+                Long.parseLong(properties.getProperty("reconnect.initial.delay.ms", String.valueOf(ConnectionSettings.DEFAULT_RECONNECT_INITIAL_DELAY_MILLIS))),
+                Long.parseLong(properties.getProperty("reconnect.max.delay.ms", String.valueOf(ConnectionSettings.DEFAULT_RECONNECT_MAX_DELAY_MILLIS))));
+
+        if (Boolean.parseBoolean(properties.getProperty("discovery", "false").trim())) {
+            discoverySettings = new DatagramSettings(
+                    properties.getProperty("discovery.address", DatagramSettings.DEFAULT_DISCOVERY_ADDRESS).trim(),
+                    Integer.parseInt(properties.getProperty("discovery.port", String.valueOf(DatagramSettings.DEFAULT_DISCOVERY_PORT)).trim()),
+                    properties.getProperty("discovery.interface"));
+        }
+
+        if (Boolean.parseBoolean(properties.getProperty("command.multicast", "false").trim())) {
+            commandChannelSettings = new DatagramSettings(
+                    properties.getProperty("command.multicast.address", DatagramSettings.DEFAULT_COMMAND_ADDRESS).trim(),
+                    Integer.parseInt(properties.getProperty("command.multicast.port", String.valueOf(DatagramSettings.DEFAULT_COMMAND_PORT)).trim()),
+                    properties.getProperty("command.multicast.interface"));
+        }
     }
 
     public NetworkInfo getNetworkInfo()
@@ -46,4 +75,41 @@ public class NetInfoFile
     {
         return portInfo;
     }
+
+    /**
+     * Returns the message codecs offered to the server, in order of preference.
+     * @return the codec identifiers
+     */
+    public List<Byte> getCodecIds()
+    {
+        return codecIds;
+    }
+
+    /**
+     * Returns the connection timeouts and reconnection delays, each optional in the file.
+     * @return the connection settings
+     */
+    public ConnectionSettings getConnectionSettings()
+    {
+        return connectionSettings;
+    }
+
+    /**
+     * Returns where server announcements are received in discovery mode. The ip and port are optional in this mode,
+     * and are only used until a server has been announced.
+     * @return the discovery settings, or null if discovery is disabled
+     */
+    public DatagramSettings getDiscoverySettings()
+    {
+        return discoverySettings;
+    }
+
+    /**
+     * Returns the command channel the server sends group app executions on.
+     * @return the command channel settings, or null if the client only receives requests over its connection
+     */
+    public DatagramSettings getCommandChannelSettings()
+    {
+        return commandChannelSettings;
+    }
 }
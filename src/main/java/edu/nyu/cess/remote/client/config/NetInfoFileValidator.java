@@ -29,6 +29,12 @@ public class NetInfoFileValidator implements Validator
 		clearErrors();
 		NetworkInfo netInfo = netInfoFile.getNetworkInfo();
 		PortInfo portInfo = netInfoFile.getPortInfo();
+		boolean discovery = netInfoFile.getDiscoverySettings() != null;
+
+		// In discovery mode the server endpoint is announced, a configured one is only a fallback
+		if (discovery && (netInfo.getServerIp() == null || portInfo.getNumber() == 0)) {
+			return validateHostName(netInfo);
+		}
 
 		IpValidator ipValidator = new IpValidator(netInfo.getServerIp());
 		if ( ! ipValidator.validate()) {
@@ -42,7 +48,11 @@ public class NetInfoFileValidator implements Validator
 			return false;
 		}
 
+		return validateHostName(netInfo);
+	}
 
+	private boolean validateHostName(NetworkInfo netInfo)
+	{
 		HostNameValidator hostNameValidator = new HostNameValidator(netInfo.getClientName());
 		if ( ! hostNameValidator.validate()) {
 			errors.addAll(hostNameValidator.getErrors());
@@ -2,17 +2,29 @@ package edu.nyu.cess.remote.client.message;
 
 import edu.nyu.cess.remote.common.message.Message;
 import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.codec.MessageBuffer;
+import edu.nyu.cess.remote.common.message.codec.MessageCodec;
+import edu.nyu.cess.remote.common.message.codec.MessageCodecs;
+import edu.nyu.cess.remote.common.message.codec.Welcome;
 import edu.nyu.cess.remote.common.net.NetworkInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * This class handles the initialization, sending, and receiving of messages via the client socket.
+ *
+ * Messages are written by the sending thread. Control messages have priority over the chunks of the bulk lanes:
+ * a chunk is only written while no control message is waiting to be, so a control message waits for at most the
+ * chunk being written.
  */
 public class ClientMessageSocket implements MessageSocket
 {
@@ -20,17 +32,119 @@ public class ClientMessageSocket implements MessageSocket
 	private final NetworkInfo networkInfo;
 	private final Socket socket;
 
+	private final Object outboundLock = new Object();
+	private final Object inboundLock = new Object();
+
+	private final MessageCodec outboundCodec;
+	private final MessageCodec inboundCodec;
+	private final MessageBuffer inboundBuffer = new MessageBuffer();
+	private final Welcome welcome;
+	// Guarded by outboundLock
+	private int waitingControlMessages;
+
 	/**
-	 * Initialize the client message socket with the required ip address and port.
+	 * Initialize the client message socket with the required ip address and port, offering the default codecs.
 	 * @param networkInfo client network info
 	 * @param port Server port
 	 * @throws IOException Thrown if an IO error occurs while initializing a socket.
      */
 	public ClientMessageSocket(NetworkInfo networkInfo, int port) throws IOException
+	{
+		this(networkInfo, port, MessageCodecs.parseCodecIds(MessageCodecs.DEFAULT_CODECS));
+	}
+
+	/**
+	 * Initialize the client message socket with the required ip address and port, and negotiates the codec
+	 * used by the connection with the server.
+	 * @param networkInfo client network info
+	 * @param port Server port
+	 * @param codecIds the codecs offered to the server, in order of preference
+	 * @throws IOException Thrown if an IO error occurs while initializing a socket, or no codec is agreed on.
+	 */
+	public ClientMessageSocket(NetworkInfo networkInfo, int port, List<Byte> codecIds) throws IOException
+	{
+		this(networkInfo, port, codecIds, new ConnectionSettings());
+	}
+
+	/**
+	 * Initialize the client message socket with the required ip address and port, and negotiates the codec
+	 * used by the connection with the server, within the connection timeouts.
+	 * @param networkInfo client network info
+	 * @param port Server port
+	 * @param codecIds the codecs offered to the server, in order of preference
+	 * @param connectionSettings the connect and read timeouts
+	 * @throws IOException Thrown if an IO error occurs while initializing a socket, a timeout expires, or no codec
+	 * is agreed on.
+	 */
+	public ClientMessageSocket(NetworkInfo networkInfo, int port, List<Byte> codecIds, ConnectionSettings connectionSettings)
+			throws IOException
+	{
+		this(networkInfo, port, codecIds, connectionSettings, 0);
+	}
+
+	/**
+	 * Initialize the client message socket with the required ip address and port, and performs the handshake with
+	 * the server within the connection timeouts, asking to resume the session of a previous connection.
+	 * @param networkInfo client network info
+	 * @param port Server port
+	 * @param codecIds the codecs offered to the server, in order of preference
+	 * @param connectionSettings the connect and read timeouts
+	 * @param resumeToken the session token of the previous connection, or 0 to start a new session
+	 * @throws IOException Thrown if an IO error occurs while initializing a socket, a timeout expires, or no codec
+	 * is agreed on.
+	 */
+	public ClientMessageSocket(NetworkInfo networkInfo, int port, List<Byte> codecIds, ConnectionSettings connectionSettings,
+							   long resumeToken) throws IOException
 	{
 		this.networkInfo = networkInfo;
 		log.debug("Attempting to create a socket connection to the server({}) from this client({})", networkInfo.getServerIp(), networkInfo.getClientIp());
-		socket = new Socket(networkInfo.getServerIp(), port);
+		socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(networkInfo.getServerIp(), port), connectionSettings.getConnectTimeoutMillis());
+			socket.setTcpNoDelay(true);
+
+			// The handshake must also complete within the connect timeout
+			socket.setSoTimeout(connectionSettings.getConnectTimeoutMillis());
+			ConnectionHandshake.writeHello(socket.getOutputStream(), codecIds, resumeToken);
+			welcome = ConnectionHandshake.readWelcome(socket.getInputStream());
+			socket.setSoTimeout(connectionSettings.getReadTimeoutMillis());
+		}
+		catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		inboundCodec = welcome.getCodec();
+		outboundCodec = MessageCodecs.create(inboundCodec.getId());
+		log.debug("Codec {} selected by the server.", inboundCodec.getId());
+	}
+
+	/**
+	 * Returns the token resuming this connection's session on the next connection.
+	 * @return the session token, 0 if the server does not keep the session
+	 */
+	public long getSessionToken()
+	{
+		return welcome.getSessionToken();
+	}
+
+	/**
+	 * Returns true if the server resumed the session of the previous connection, in which case the server still
+	 * knows the state reported over it.
+	 * @return true if the session was resumed
+	 */
+	public boolean isResumed()
+	{
+		return welcome.isResumed();
+	}
+
+	/**
+	 * Returns true if both the client and the server support the capability.
+	 * @param capability the capability, one of the {@link ConnectionHandshake} capabilities
+	 * @return true if the capability can be used on this connection
+	 */
+	public boolean supports(int capability)
+	{
+		return welcome.supports(capability);
 	}
 
 	@Override public boolean isConnected()
@@ -38,24 +152,116 @@ public class ClientMessageSocket implements MessageSocket
 		return socket.isConnected() && ! socket.isClosed();
 	}
 
+	/**
+	 * {@link MessageSocket}
+	 *
+	 * A chunk of a bulk lane waits until no control message is waiting.
+	 *
+	 * @throws IOException thrown if the write fails, or the server does not accept bulk lanes
+	 */
 	@Override public void sendMessage(Message message) throws IOException
 	{
-        ObjectOutputStream objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
-		objectOutputStream.writeObject(message);
-		objectOutputStream.flush();
+		if (message.getDataChunk() != null) {
+			sendChunk(message);
+			return;
+		}
+
+		synchronized (outboundLock) {
+			++waitingControlMessages;
+		}
+		try {
+			write(message);
+		}
+		finally {
+			synchronized (outboundLock) {
+				if (--waitingControlMessages == 0) {
+					outboundLock.notifyAll();
+				}
+			}
+		}
 	}
 
-	@Override public Message readMessage() throws IOException
+	/**
+	 * Sends the control messages in a single write, so that they reach the server together and in order.
+	 * @param messages the messages, none of which may be a chunk
+	 * @throws IOException thrown if the write fails
+	 */
+	public void sendMessages(List<Message> messages) throws IOException
 	{
-		ObjectInputStream objectInputStream = new ObjectInputStream(socket.getInputStream());
-		Object object;
+		synchronized (outboundLock) {
+			++waitingControlMessages;
+		}
 		try {
-			object = objectInputStream.readObject();
-		} catch (ClassNotFoundException e) {
-			throw new IOException("Error reading object from socket input stream", e);
+			synchronized (outboundLock) {
+				ByteArrayOutputStream batch = new ByteArrayOutputStream();
+				for (Message message : messages) {
+					ByteBuffer frame = outboundCodec.encode(message);
+					batch.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+				}
+				OutputStream outputStream = socket.getOutputStream();
+				batch.writeTo(outputStream);
+				outputStream.flush();
+			}
+		}
+		finally {
+			synchronized (outboundLock) {
+				if (--waitingControlMessages == 0) {
+					outboundLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	private void sendChunk(Message chunk) throws IOException
+	{
+		if ( ! welcome.supports(ConnectionHandshake.BULK_LANES)) {
+			throw new IOException("The server does not accept bulk lanes.");
+		}
+
+		synchronized (outboundLock) {
+			try {
+				while (waitingControlMessages > 0) {
+					outboundLock.wait();
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting to send a chunk.");
+			}
+			write(chunk);
+		}
+	}
+
+	private void write(Message message) throws IOException
+	{
+		synchronized (outboundLock) {
+			ByteBuffer frame = outboundCodec.encode(message);
+			OutputStream outputStream = socket.getOutputStream();
+			outputStream.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+			outputStream.flush();
 		}
+	}
+
+	@Override public Message readMessage() throws IOException
+	{
+		synchronized (inboundLock) {
+			Message message;
+			while ((message = inboundBuffer.nextMessage(inboundCodec)) == null) {
+				if (inboundBuffer.readFrom(socket.getInputStream()) < 0) {
+					throw new IOException("Connection closed by the server.");
+				}
+			}
+			return message;
+		}
+	}
 
-		return (Message) object;
+	/**
+	 * Closes the socket connection to the server.
+	 * @throws IOException Thrown if an IO error occurs while closing the socket.
+	 */
+	public void close() throws IOException
+	{
+		socket.close();
 	}
 
 	@Override public String getClientIp()
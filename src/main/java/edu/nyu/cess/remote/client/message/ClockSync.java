@@ -0,0 +1,205 @@
+package edu.nyu.cess.remote.client.message;
+
+import edu.nyu.cess.remote.common.message.ClockProbe;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.dispatch.DispatchControl;
+import edu.nyu.cess.remote.common.message.dispatch.MessageDispatcher;
+import edu.nyu.cess.remote.common.net.ConnectionState;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.common.net.PreciseClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the offset of the server's clock from the client's with NTP style {@link ClockProbe}s sent over the
+ * connection. A burst of probes is sent once connected, then one probe every probe interval. Of the most recent
+ * samples, the one with the shortest round trip is the least delayed by queueing, its offset is used, and half its
+ * round trip bounds the error of the offset.
+ *
+ * The probes are only sent to servers that support {@link ConnectionHandshake#CLOCK_SYNC}. The answers are to be
+ * dispatched on the thread reading them, so that the time they were received is accurate.
+ */
+public class ClockSync implements MessageDispatcher
+{
+	private final static Logger log = LoggerFactory.getLogger(ClockSync.class);
+
+	private static final int BURST_PROBES = 8;
+	private static final long BURST_INTERVAL_MILLIS = 100;
+	private static final long PROBE_INTERVAL_MILLIS = 15000;
+	private static final int SAMPLE_SIZE = 16;
+
+	private final MessageSocketManager messageSocketManager;
+	private final NetworkInfo networkInfo;
+	private final ScheduledExecutorService probeTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "clock-sync");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private DispatchControl dispatchControl;
+
+	// Guarded by this
+	private final ArrayDeque<Sample> samples = new ArrayDeque<>();
+	private ScheduledFuture<?> probes;
+	private long offsetMicros;
+	private long roundTripMicros = -1;
+
+	/**
+	 * @param messageSocketManager the connection the probes are sent over
+	 * @param networkInfo the client network information
+	 */
+	public ClockSync(MessageSocketManager messageSocketManager, NetworkInfo networkInfo)
+	{
+		this.messageSocketManager = messageSocketManager;
+		this.networkInfo = networkInfo;
+	}
+
+	/**
+	 * {@link MessageDispatcher}
+	 */
+	@Override public void setDispatchControl(DispatchControl dispatchControl)
+	{
+		this.dispatchControl = dispatchControl;
+	}
+
+	/**
+	 * {@link MessageDispatcher}
+	 *
+	 * A new session may be with a restarted server, whose clock has a new anchor, the samples are started over.
+	 */
+	@Override public synchronized void notifyDispatcherControlState(ConnectionState state)
+	{
+		if (probes != null) {
+			probes.cancel(false);
+			probes = null;
+		}
+		if (state == ConnectionState.DISCONNECTED) {
+			return;
+		}
+		if (state == ConnectionState.CONNECTED) {
+			samples.clear();
+			roundTripMicros = -1;
+		}
+		if ( ! messageSocketManager.isSupported(ConnectionHandshake.CLOCK_SYNC)) {
+			log.debug("The server does not answer clock probes, starts are not synchronized.");
+			return;
+		}
+
+		probes = probeTimer.scheduleAtFixedRate(new Runnable() {
+			private int sentProbes;
+
+			@Override public void run()
+			{
+				if (++sentProbes > BURST_PROBES && (sentProbes - BURST_PROBES) % (PROBE_INTERVAL_MILLIS / BURST_INTERVAL_MILLIS) != 0) {
+					return;
+				}
+				dispatchControl.dispatchOutboundMessage(new Message(new ClockProbe(PreciseClock.currentTimeMicros(), 0, 0),
+						networkInfo));
+			}
+		}, 0, BURST_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * {@link MessageDispatcher}
+	 */
+	@Override public void dispatchMessage(Message message)
+	{
+		long arrivalMicros = PreciseClock.currentTimeMicros();
+		ClockProbe probe = message.getClockProbe();
+		long sampleRoundTripMicros = (arrivalMicros - probe.getOriginateMicros())
+				- (probe.getTransmitMicros() - probe.getReceiveMicros());
+		long sampleOffsetMicros = ((probe.getReceiveMicros() - probe.getOriginateMicros())
+				+ (probe.getTransmitMicros() - arrivalMicros)) / 2;
+		if (sampleRoundTripMicros < 0) {
+			log.debug("Clock probe with a negative round trip ignored.");
+			return;
+		}
+
+		synchronized (this) {
+			samples.add(new Sample(sampleOffsetMicros, sampleRoundTripMicros));
+			if (samples.size() > SAMPLE_SIZE) {
+				samples.poll();
+			}
+
+			Sample best = null;
+			for (Sample sample : samples) {
+				if (best == null || sample.roundTripMicros < best.roundTripMicros) {
+					best = sample;
+				}
+			}
+			offsetMicros = best.offsetMicros;
+			roundTripMicros = best.roundTripMicros;
+		}
+		log.debug("Clock probe: offset {} us, round trip {} us.", sampleOffsetMicros, sampleRoundTripMicros);
+	}
+
+	/**
+	 * Returns true once the offset of the server's clock has been estimated.
+	 * @return true if synchronized with the server's clock
+	 */
+	public synchronized boolean isSynchronized()
+	{
+		return roundTripMicros >= 0;
+	}
+
+	/**
+	 * Returns the offset of the server's clock from the client's.
+	 * @return the offset in microseconds, to be added to a time of the client's clock
+	 */
+	public synchronized long getOffsetMicros()
+	{
+		return offsetMicros;
+	}
+
+	/**
+	 * Returns the round trip time of the probe the offset was estimated from, twice the bound of its error.
+	 * @return the round trip time in microseconds, or -1 if not synchronized
+	 */
+	public synchronized long getRoundTripMicros()
+	{
+		return roundTripMicros;
+	}
+
+	/**
+	 * Converts a time of the server's clock to a {@link System#nanoTime()} value of the client.
+	 * @param serverMicros the time of the server's clock, in microseconds
+	 * @return the nano time
+	 */
+	public long toNanoTime(long serverMicros)
+	{
+		return PreciseClock.toNanoTime(serverMicros - getOffsetMicros());
+	}
+
+	/**
+	 * Converts a {@link System#nanoTime()} value of the client to a time of the server's clock.
+	 * @param nanoTime the nano time
+	 * @return the time of the server's clock, in microseconds
+	 */
+	public long toServerMicros(long nanoTime)
+	{
+		return PreciseClock.toMicros(nanoTime) + getOffsetMicros();
+	}
+
+	private static class Sample
+	{
+		private final long offsetMicros;
+		private final long roundTripMicros;
+
+		Sample(long offsetMicros, long roundTripMicros)
+		{
+			this.offsetMicros = offsetMicros;
+			this.roundTripMicros = roundTripMicros;
+		}
+	}
+}
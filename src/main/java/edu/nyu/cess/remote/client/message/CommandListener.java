@@ -0,0 +1,104 @@
+package edu.nyu.cess.remote.client.message;
+
+import edu.nyu.cess.remote.common.message.CommandDatagram;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.net.DatagramSettings;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+
+/**
+ * Receives the commands the server sends to a group of clients on the command channel, and passes the ones meant
+ * for this client to the message observer, exactly as if they had arrived over the server connection.
+ */
+public class CommandListener
+{
+	private final static Logger log = LoggerFactory.getLogger(CommandListener.class);
+
+	// Large enough for any UDP payload
+	private static final int MAX_DATAGRAM_SIZE = 65536;
+
+	private final DatagramSettings datagramSettings;
+	private final NetworkInfo networkInfo;
+	private final MessageSocketObserver messageSocketObserver;
+	private DatagramSocket socket;
+
+	/**
+	 * @param datagramSettings the command channel address
+	 * @param networkInfo the client network information, commands are filtered on the client ip
+	 * @param messageSocketObserver the observer the received commands are passed to
+	 */
+	public CommandListener(DatagramSettings datagramSettings, NetworkInfo networkInfo, MessageSocketObserver messageSocketObserver)
+	{
+		this.datagramSettings = datagramSettings;
+		this.networkInfo = networkInfo;
+		this.messageSocketObserver = messageSocketObserver;
+	}
+
+	/**
+	 * Joins the command channel and starts listening for commands on a daemon thread.
+	 * @throws IOException thrown if the socket cannot be opened
+	 */
+	public void start() throws IOException
+	{
+		socket = datagramSettings.openReceivingSocket();
+		Thread listenerThread = new Thread(new Runnable() {
+			@Override public void run()
+			{
+				listen();
+			}
+		}, "command-listener");
+		listenerThread.setDaemon(true);
+		listenerThread.start();
+		log.info("Listening for group commands on {}.", datagramSettings);
+	}
+
+	/**
+	 * Stops listening for commands.
+	 */
+	public void stop()
+	{
+		if (socket != null) {
+			socket.close();
+		}
+	}
+
+	private void listen()
+	{
+		byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+		while ( ! socket.isClosed()) {
+			DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+			try {
+				socket.receive(packet);
+			}
+			catch (IOException e) {
+				if ( ! socket.isClosed()) {
+					log.error("Failed to receive a group command. Error = {}", e.getMessage());
+				}
+				continue;
+			}
+
+			CommandDatagram command = CommandDatagram.decode(packet);
+			if (command == null) {
+				log.debug("Ignored an invalid group command from {}.", packet.getAddress());
+				continue;
+			}
+			if ( ! command.isTarget(networkInfo.getClientIp())) {
+				continue;
+			}
+
+			Message message = command.getMessage();
+			if (message.getSequenceNumber() == 0 || message.getAppExe() == null) {
+				log.error("Ignored a group command without a sequence number or app execution.");
+				continue;
+			}
+
+			messageSocketObserver.notifyMessageReceived(networkInfo, message);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package edu.nyu.cess.remote.client.message;
+
+/**
+ * The timeouts of the connection to the server, and the reconnection delays, in milliseconds.
+ */
+public class ConnectionSettings
+{
+	public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+	public static final int DEFAULT_READ_TIMEOUT_MILLIS = 15000;
+	public static final long DEFAULT_RECONNECT_INITIAL_DELAY_MILLIS = 500;
+	public static final long DEFAULT_RECONNECT_MAX_DELAY_MILLIS = 30000;
+
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+	private final long reconnectInitialDelayMillis;
+	private final long reconnectMaxDelayMillis;
+
+	/**
+	 * Creates the default settings.
+	 */
+	public ConnectionSettings()
+	{
+		this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_RECONNECT_INITIAL_DELAY_MILLIS,
+				DEFAULT_RECONNECT_MAX_DELAY_MILLIS);
+	}
+
+	/**
+	 * @param connectTimeoutMillis the time allowed to establish the connection and complete its handshake
+	 * @param readTimeoutMillis the longest silence from the server before the connection is considered lost, the
+	 *                          server pings every connected client well within it
+	 * @param reconnectInitialDelayMillis the delay ceiling of the first reconnection attempt
+	 * @param reconnectMaxDelayMillis the largest reconnection delay
+	 */
+	public ConnectionSettings(int connectTimeoutMillis, int readTimeoutMillis, long reconnectInitialDelayMillis,
+							  long reconnectMaxDelayMillis)
+	{
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.reconnectInitialDelayMillis = reconnectInitialDelayMillis;
+		this.reconnectMaxDelayMillis = reconnectMaxDelayMillis;
+	}
+
+	public int getConnectTimeoutMillis()
+	{
+		return connectTimeoutMillis;
+	}
+
+	public int getReadTimeoutMillis()
+	{
+		return readTimeoutMillis;
+	}
+
+	public long getReconnectInitialDelayMillis()
+	{
+		return reconnectInitialDelayMillis;
+	}
+
+	public long getReconnectMaxDelayMillis()
+	{
+		return reconnectMaxDelayMillis;
+	}
+}
@@ -1,5 +1,7 @@
 package edu.nyu.cess.remote.client.message;
 
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppState;
 import edu.nyu.cess.remote.common.message.*;
 import edu.nyu.cess.remote.common.message.dispatch.DispatchControl;
 import edu.nyu.cess.remote.common.message.dispatch.MessageDispatcher;
@@ -8,25 +10,75 @@ import edu.nyu.cess.remote.common.net.NetworkInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class implements the routing of inbound messages to their respective handlers.
+ *
+ * The handlers do not run on the thread reading the messages, so a slow process launch does not hold up the pings
+ * and requests that follow it. Each message type is handled by a {@link SerialExecutor} of its own, in the order the
+ * messages were received, on a small pool of handler threads. Stop requests have a serial executor of their own, so
+ * a stop is never queued behind a launch that is still in progress. Pings are echoed, sequence numbered requests
+ * confirmed, and clock probe answers handled by the reading thread, the latter so that their arrival time is not
+ * delayed by the handlers.
+ *
+ * Prepares are handled on a serial executor of their own, so that reading a large executable does not hold up the
+ * requests. A go is handled in order with the app execution requests, and confirmed like them when it carries a
+ * sequence number.
+ *
+ * App execution requests that carry a sequence number may arrive twice, once on the command channel and once more
+ * when the server retransmits them over the connection. Every copy is confirmed to the server, but only the first
+ * is executed.
  */
 public class MessageDispatchControl implements DispatchControl, MessageSocketObserver
 {
 	final static Logger log = LoggerFactory.getLogger(MessageDispatchControl.class);
 
+	private static final int HANDLED_SEQUENCE_NUMBERS = 256;
+	private static final int HANDLER_THREADS = 3;
+
     private MessageSender messageSender;
 
     public MessageDispatchControl(MessageObservable messageObservable, MessageSender messageSender)
     {
-        messageObservable.addMessageSourceObserver(this);
-        this.messageSender = messageSender;
+        this(messageObservable, messageSender, Executors.newFixedThreadPool(HANDLER_THREADS, new HandlerThreadFactory()));
     }
 
+	/**
+	 * @param messageObservable the source of the inbound messages
+	 * @param messageSender the sender of the outbound messages
+	 * @param handlerExecutor the executor running the message handlers
+	 */
+	public MessageDispatchControl(MessageObservable messageObservable, MessageSender messageSender, Executor handlerExecutor)
+	{
+		messageObservable.addMessageSourceObserver(this);
+		this.messageSender = messageSender;
+		this.handlerExecutor = handlerExecutor;
+		this.stopRequestExecutor = new SerialExecutor(handlerExecutor);
+	}
+
 	private HashMap<MessageType, MessageDispatcher> messageHandlers = new HashMap<>();
 
+	private final Executor handlerExecutor;
+	private final Executor stopRequestExecutor;
+	// Guarded by itself
+	private final Map<MessageType, SerialExecutor> serialExecutors = new EnumMap<>(MessageType.class);
+
+	private final Map<Long, Boolean> handledSequenceNumbers = new LinkedHashMap<Long, Boolean>() {
+		@Override protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest)
+		{
+			return size() > HANDLED_SEQUENCE_NUMBERS;
+		}
+	};
+
 	/**
 	 * {@link DispatchControl}
 	 */
@@ -44,6 +96,14 @@ public class MessageDispatchControl implements DispatchControl, MessageSocketObs
         messageSender.sendMessage(message);
     }
 
+	/**
+	 * {@link DispatchControl}
+	 */
+	@Override public void dispatchOutboundMessages(List<Message> messages)
+	{
+		messageSender.sendMessages(messages);
+	}
+
 	/**
 	 * {@link MessageSocketObserver}
      */
@@ -59,6 +119,10 @@ public class MessageDispatchControl implements DispatchControl, MessageSocketObs
 	{
 		messageHandlers.get(MessageType.APP_EXE_REQUEST).notifyDispatcherControlState(connectionState);
 		messageHandlers.get(MessageType.APP_EXE_UPDATE).notifyDispatcherControlState(connectionState);
+		MessageDispatcher clockProbeHandler = messageHandlers.get(MessageType.CLOCK_PROBE);
+		if (clockProbeHandler != null) {
+			clockProbeHandler.notifyDispatcherControlState(connectionState);
+		}
 	}
 
 	public void dispatchInboundMessage(NetworkInfo networkInfo, Message message)
@@ -66,15 +130,99 @@ public class MessageDispatchControl implements DispatchControl, MessageSocketObs
 		switch(message.getMessageType()) {
 			case APP_EXE_REQUEST:
 				log.debug("App exe request received from {}.", networkInfo.getServerIp());
-				messageHandlers.get(MessageType.APP_EXE_REQUEST).dispatchMessage(message);
+				if (message.getSequenceNumber() != 0 && ! confirmRequest(networkInfo, message.getSequenceNumber())) {
+					log.debug("Duplicate app exe request {} ignored.", message.getSequenceNumber());
+					break;
+				}
+				AppExe requestedAppExe = message.getAppExe();
+				Executor requestExecutor = (requestedAppExe != null && requestedAppExe.getState() == AppState.STOPPED) ?
+						stopRequestExecutor : getSerialExecutor(MessageType.APP_EXE_REQUEST);
+				dispatchAsync(requestExecutor, messageHandlers.get(MessageType.APP_EXE_REQUEST), message);
+				break;
+			case APP_EXE_PREPARE:
+				log.debug("App exe prepare received from {}.", networkInfo.getServerIp());
+				dispatchAsync(getSerialExecutor(MessageType.APP_EXE_PREPARE), messageHandlers.get(MessageType.APP_EXE_PREPARE), message);
+				break;
+			case APP_EXE_GO:
+				if (message.getSequenceNumber() != 0 && ! confirmRequest(networkInfo, message.getSequenceNumber())) {
+					log.debug("Duplicate go {} ignored.", message.getSequenceNumber());
+					break;
+				}
+				dispatchAsync(getSerialExecutor(MessageType.APP_EXE_REQUEST), messageHandlers.get(MessageType.APP_EXE_GO), message);
 				break;
 			case APP_EXE_UPDATE:
 				log.debug("App exe update received from {}.", networkInfo.getServerIp());
-				messageHandlers.get(MessageType.APP_EXE_UPDATE).dispatchMessage(message);
+				dispatchAsync(getSerialExecutor(MessageType.APP_EXE_UPDATE), messageHandlers.get(MessageType.APP_EXE_UPDATE), message);
 				break;
 			case KEEP_ALIVE_PING:
+				// Echo the ping, the server measures the round trip and detects failures from the echoes
+				dispatchOutboundMessage(message);
+				break;
+			case DATA_CHUNK:
+				MessageDispatcher chunkHandler = messageHandlers.get(MessageType.DATA_CHUNK);
+				if (chunkHandler != null) {
+					dispatchAsync(getSerialExecutor(MessageType.DATA_CHUNK), chunkHandler, message);
+				}
+				else {
+					log.debug("Chunk on lane {} ignored, no handler is set for bulk payloads.", message.getDataChunk().getLane());
+				}
+				break;
+			case CLOCK_PROBE:
+				MessageDispatcher clockProbeHandler = messageHandlers.get(MessageType.CLOCK_PROBE);
+				if (clockProbeHandler != null) {
+					clockProbeHandler.dispatchMessage(message);
+				}
+				break;
 			default:
 				break;
 		}
 	}
+
+	private void dispatchAsync(Executor executor, final MessageDispatcher messageDispatcher, final Message message)
+	{
+		executor.execute(new Runnable() {
+			@Override public void run()
+			{
+				messageDispatcher.dispatchMessage(message);
+			}
+		});
+	}
+
+	private SerialExecutor getSerialExecutor(MessageType messageType)
+	{
+		synchronized (serialExecutors) {
+			SerialExecutor serialExecutor = serialExecutors.get(messageType);
+			if (serialExecutor == null) {
+				serialExecutor = new SerialExecutor(handlerExecutor);
+				serialExecutors.put(messageType, serialExecutor);
+			}
+			return serialExecutor;
+		}
+	}
+
+	/**
+	 * Confirms the request to the server, and records it as handled.
+	 * @param networkInfo the client network information
+	 * @param sequenceNumber the request sequence number
+	 * @return true if the request had not already been handled
+	 */
+	private boolean confirmRequest(NetworkInfo networkInfo, long sequenceNumber)
+	{
+		dispatchOutboundMessage(new Message(MessageType.APP_EXE_ACK, null, networkInfo, sequenceNumber));
+		synchronized (handledSequenceNumbers) {
+			return handledSequenceNumbers.put(sequenceNumber, Boolean.TRUE) == null;
+		}
+	}
+
+	private static class HandlerThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		@Override public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "message-handler-" + threadCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 }
@@ -4,35 +4,78 @@ import edu.nyu.cess.remote.common.message.*;
 import edu.nyu.cess.remote.common.net.ConnectionState;
 import edu.nyu.cess.remote.common.net.NetworkInfo;
 import edu.nyu.cess.remote.common.net.PortInfo;
+import edu.nyu.cess.remote.common.net.ServerAnnouncement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Random;
 
 /**
  * The SocketManager class handles the initialization of a persistent connection to the server, and passed inbound
  * messages to the MessageRouter to be handled.
+ *
+ * A lost connection is re-established after a {@link ReconnectBackoff} delay. The connection attempts run on the
+ * listener thread and never hold a lock, so senders are not kept waiting while the server is unreachable: their
+ * messages are dropped until the connection is back. App state changes are the exception, the
+ * {@link edu.nyu.cess.remote.client.app.AppMessageDispatcher} queues them and sends them once reconnected.
+ *
+ * In discovery mode the server endpoint is taken from the latest {@link ServerDiscovery} announcement rather than
+ * from the configured ip and port, which are only used until a server has been announced. An announcement from a
+ * restarted or relocated server cuts the reconnection delay short.
+ *
+ * Every connection asks to resume the session of the previous one. When the server resumes it, observers are
+ * notified of a {@link ConnectionState#RESUMED} connection rather than a new one.
  */
 public class MessageSocketManager implements MessageSender, MessageObservable
 {
 	final static Logger log = LoggerFactory.getLogger(MessageSocketManager.class);
 
-	private final Object messageSocketLock = new Object();
-	private volatile MessageSocket messageSocket;
+	// A connection that lasted this long resets the reconnection backoff
+	private static final long STABLE_CONNECTION_MILLIS = 10000;
+
+	private volatile ClientMessageSocket messageSocket;
 	private NetworkInfo networkInfo;
 	private PortInfo portInfo;
+	private List<Byte> codecIds;
+	private ConnectionSettings connectionSettings;
+	private ServerDiscovery serverDiscovery;
     private MessageSocketObserver messageSocketObserver;
+	// Only accessed by the listener thread
+	private long sessionToken;
 
 	/**
 	 * Provides this class with the NetworkInformation required to establish a persistent connection to the server, and
 	 * the MessageRouter used to route messages from the server to the corresponding handlers.
 	 * @param networkInfo the network information
 	 * @param portInfo the port info
+	 * @param codecIds the message codecs offered to the server, in order of preference
+	 * @param connectionSettings the connection timeouts and reconnection delays
      */
-	public MessageSocketManager(NetworkInfo networkInfo, PortInfo portInfo)
+	public MessageSocketManager(NetworkInfo networkInfo, PortInfo portInfo, List<Byte> codecIds,
+								ConnectionSettings connectionSettings)
+	{
+		this(networkInfo, portInfo, codecIds, connectionSettings, null);
+	}
+
+	/**
+	 * Provides this class with the NetworkInformation required to establish a persistent connection to the server, and
+	 * the discovery used to find the server endpoint.
+	 * @param networkInfo the network information, the server ip may be null in discovery mode
+	 * @param portInfo the port info, the port may be 0 in discovery mode
+	 * @param codecIds the message codecs offered to the server, in order of preference
+	 * @param connectionSettings the connection timeouts and reconnection delays
+	 * @param serverDiscovery the started server discovery, or null to always use the configured endpoint
+	 */
+	public MessageSocketManager(NetworkInfo networkInfo, PortInfo portInfo, List<Byte> codecIds,
+								ConnectionSettings connectionSettings, ServerDiscovery serverDiscovery)
 	{
 		this.networkInfo = networkInfo;
 		this.portInfo = portInfo;
+		this.codecIds = codecIds;
+		this.connectionSettings = connectionSettings;
+		this.serverDiscovery = serverDiscovery;
 	}
 
 	/**
@@ -41,15 +84,23 @@ public class MessageSocketManager implements MessageSender, MessageObservable
 	public void startSocketListener()
 	{
 		MessageValidator messageValidator = new MessageValidator();
+		ReconnectBackoff reconnectBackoff = new ReconnectBackoff(connectionSettings.getReconnectInitialDelayMillis(),
+				connectionSettings.getReconnectMaxDelayMillis(), new Random());
 		while (true) {
+			ClientMessageSocket socket = null;
+			long connectedMillis = 0;
+			ServerAnnouncement announcement = null;
 			try {
-				synchronized (messageSocketLock) {
-					log.debug("Attempting to establishing a new socket connection.");
-					messageSocket = getNewMessageSocket();
-				}
-				messageSocketObserver.notifyMessageSenderState(ConnectionState.CONNECTED);
-				while (messageSocket.isConnected()) {
-					Message newClientMessage = messageSocket.readMessage();
+				announcement = getServerAnnouncement();
+				log.debug("Attempting to establishing a new socket connection.");
+				socket = getNewMessageSocket(announcement);
+				connectedMillis = System.currentTimeMillis();
+				messageSocket = socket;
+				sessionToken = socket.getSessionToken();
+				messageSocketObserver.notifyMessageSenderState(socket.isResumed() ? ConnectionState.RESUMED : ConnectionState.CONNECTED);
+
+				while (socket.isConnected()) {
+					Message newClientMessage = socket.readMessage();
 					if ( ! messageValidator.validate(newClientMessage)) {
 						log.error("Invalid message. Error: {}", messageValidator.getErrorMessage());
 						continue;
@@ -59,18 +110,33 @@ public class MessageSocketManager implements MessageSender, MessageObservable
 				}
 			} catch (IOException e) {
 				log.error("IO Exception: {}", e.getMessage());
+			} catch (InterruptedException e) {
+				log.error("Interruption Exception: {}.", e.getMessage());
 			}
 
-			messageSocketObserver.notifyMessageSenderState(ConnectionState.DISCONNECTED);
+			if (socket != null) {
+				messageSocket = null;
+				closeQuietly(socket);
+				messageSocketObserver.notifyMessageSenderState(ConnectionState.DISCONNECTED);
+				log.debug("Socket disconnected.");
+
+				if (System.currentTimeMillis() - connectedMillis >= STABLE_CONNECTION_MILLIS) {
+					reconnectBackoff.reset();
+				}
+			}
 
-			// Wait 1 minutes before trying to create another socket
+			long delayMillis = reconnectBackoff.nextDelayMillis();
+			log.debug("Reconnecting in {} ms.", delayMillis);
 			try {
-				int oneMinuteMilliseconds = 60000;
-				Thread.sleep(oneMinuteMilliseconds);
+				if (serverDiscovery != null) {
+					serverDiscovery.awaitAnnouncement(announcement, delayMillis);
+				}
+				else {
+					Thread.sleep(delayMillis);
+				}
 			} catch (InterruptedException e) {
 				log.error("Interruption Exception: {}.", e.getMessage());
 			}
-			log.debug("Socket disconnected.");
 		}
 	}
 
@@ -82,27 +148,99 @@ public class MessageSocketManager implements MessageSender, MessageObservable
 		this.messageSocketObserver = messageSocketObserver;
 	}
 
+	/**
+	 * Returns true if the capability can be used on the current connection.
+	 * @param capability the capability, one of the {@link edu.nyu.cess.remote.common.message.codec.ConnectionHandshake}
+	 *                   capabilities
+	 * @return true if connected to a server supporting the capability
+	 */
+	public boolean isSupported(int capability)
+	{
+		ClientMessageSocket socket = messageSocket;
+		return socket != null && socket.supports(capability);
+	}
+
 	/**
 	 * {@link MessageSender}
      */
 	@Override public void sendMessage(Message message)
 	{
+		MessageSocket socket = messageSocket;
+		if (socket == null) {
+			log.error("Not connected to the server, message ({}) dropped.", message.getMessageType());
+			return;
+		}
+
 		try {
-			synchronized (messageSocketLock) {
-				messageSocket.sendMessage(message);
-			}
+			socket.sendMessage(message);
 		} catch (IOException e) {
 			log.error("IO Exception: Failed to send message. Error = {}", e.getMessage());
 		}
 	}
 
 	/**
-	 * Creates and returns a new client socket.
+	 * {@link MessageSender}
+	 */
+	@Override public void sendMessages(List<Message> messages)
+	{
+		ClientMessageSocket socket = messageSocket;
+		if (socket == null) {
+			log.error("Not connected to the server, {} messages dropped.", messages.size());
+			return;
+		}
+
+		try {
+			socket.sendMessages(messages);
+		} catch (IOException e) {
+			log.error("IO Exception: Failed to send messages. Error = {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the announcement of the server to connect to, waiting up to the connect timeout for the first one.
+	 * @return the announcement, or null if the configured endpoint is to be used
+	 * @throws IOException thrown if no server has been announced and there is no configured endpoint
+	 * @throws InterruptedException thrown if the thread is interrupted while waiting
+	 */
+	private ServerAnnouncement getServerAnnouncement() throws IOException, InterruptedException
+	{
+		if (serverDiscovery == null) {
+			return null;
+		}
+
+		ServerAnnouncement announcement = serverDiscovery.getLatestAnnouncement();
+		if (announcement == null) {
+			announcement = serverDiscovery.awaitAnnouncement(null, connectionSettings.getConnectTimeoutMillis());
+		}
+		if (announcement == null && (networkInfo.getServerIp() == null || portInfo.getNumber() <= 0)) {
+			throw new IOException("No server has been announced yet.");
+		}
+		return announcement;
+	}
+
+	/**
+	 * Creates and returns a new client socket, asking to resume the session of the previous one.
+	 * @param announcement the announced server endpoint, or null to use the configured endpoint
 	 * @return a new socket
 	 * @throws IOException
      */
-	private ClientMessageSocket getNewMessageSocket() throws IOException
+	private ClientMessageSocket getNewMessageSocket(ServerAnnouncement announcement) throws IOException
 	{
-		return new ClientMessageSocket(networkInfo, portInfo.getNumber());
+		if (announcement == null) {
+			return new ClientMessageSocket(networkInfo, portInfo.getNumber(), codecIds, connectionSettings, sessionToken);
+		}
+
+		NetworkInfo announcedNetworkInfo = new NetworkInfo(networkInfo.getClientName(), networkInfo.getClientIp(),
+				announcement.getServerIp());
+		return new ClientMessageSocket(announcedNetworkInfo, announcement.getPort(), codecIds, connectionSettings, sessionToken);
+	}
+
+	private void closeQuietly(ClientMessageSocket socket)
+	{
+		try {
+			socket.close();
+		} catch (IOException e) {
+			log.debug("Failed to close the socket. Error = {}", e.getMessage());
+		}
 	}
 }
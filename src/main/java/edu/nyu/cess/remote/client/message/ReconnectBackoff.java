@@ -0,0 +1,52 @@
+package edu.nyu.cess.remote.client.message;
+
+import java.util.Random;
+
+/**
+ * Computes the delay before each reconnection attempt: exponential backoff with full jitter.
+ *
+ * The delay ceiling starts at the initial delay and doubles after every attempt, up to the maximum delay, and each
+ * delay is drawn uniformly between zero and the ceiling. The first attempt after an outage is therefore nearly
+ * immediate, while the random spread keeps a lab full of clients that lost the server at the same moment from
+ * reconnecting in lockstep. Not thread-safe.
+ */
+public class ReconnectBackoff
+{
+	private final long initialDelayMillis;
+	private final long maxDelayMillis;
+	private final Random random;
+
+	private long ceilingMillis;
+
+	/**
+	 * @param initialDelayMillis the delay ceiling of the first attempt
+	 * @param maxDelayMillis the largest delay ceiling
+	 * @param random the source of the jitter
+	 */
+	public ReconnectBackoff(long initialDelayMillis, long maxDelayMillis, Random random)
+	{
+		this.initialDelayMillis = Math.max(1, initialDelayMillis);
+		this.maxDelayMillis = Math.max(this.initialDelayMillis, maxDelayMillis);
+		this.random = random;
+		this.ceilingMillis = this.initialDelayMillis;
+	}
+
+	/**
+	 * Returns the delay before the next attempt, and raises the ceiling of the following one.
+	 * @return the delay in milliseconds
+	 */
+	public long nextDelayMillis()
+	{
+		long delayMillis = (long) (random.nextDouble() * ceilingMillis);
+		ceilingMillis = Math.min(maxDelayMillis, ceilingMillis * 2);
+		return delayMillis;
+	}
+
+	/**
+	 * Starts over from the initial delay, once a connection has proven stable.
+	 */
+	public void reset()
+	{
+		ceilingMillis = initialDelayMillis;
+	}
+}
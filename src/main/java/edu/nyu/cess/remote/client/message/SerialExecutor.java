@@ -0,0 +1,76 @@
+package edu.nyu.cess.remote.client.message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs its tasks one at a time, in the order they were submitted, on the threads of a shared executor. Several serial
+ * executors sharing the executor run their tasks concurrently with each other.
+ */
+class SerialExecutor implements Executor
+{
+	private final static Logger log = LoggerFactory.getLogger(SerialExecutor.class);
+
+	private final Executor executor;
+	// Guarded by this
+	private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+	// Guarded by this
+	private boolean running;
+
+	/**
+	 * @param executor the executor running the tasks
+	 */
+	SerialExecutor(Executor executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * {@link Executor}
+	 */
+	@Override public void execute(Runnable task)
+	{
+		synchronized (this) {
+			tasks.add(task);
+			if (running) {
+				return;
+			}
+			running = true;
+		}
+		executor.execute(new Runnable() {
+			@Override public void run()
+			{
+				runTasks();
+			}
+		});
+	}
+
+	private void runTasks()
+	{
+		while (true) {
+			Runnable task;
+			synchronized (this) {
+				task = tasks.peek();
+				if (task == null) {
+					running = false;
+					return;
+				}
+			}
+
+			try {
+				task.run();
+			}
+			catch (RuntimeException e) {
+				log.error("Message handler failed.", e);
+			}
+			finally {
+				synchronized (this) {
+					tasks.poll();
+				}
+			}
+		}
+	}
+}
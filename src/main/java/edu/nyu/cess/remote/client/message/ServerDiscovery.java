@@ -0,0 +1,125 @@
+package edu.nyu.cess.remote.client.message;
+
+import edu.nyu.cess.remote.common.net.DatagramSettings;
+import edu.nyu.cess.remote.common.net.ServerAnnouncement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+
+/**
+ * Listens for server announcements and keeps the latest one, waking up anyone waiting for the server to appear,
+ * restart or move.
+ */
+public class ServerDiscovery
+{
+	private final static Logger log = LoggerFactory.getLogger(ServerDiscovery.class);
+
+	private static final int MAX_DATAGRAM_SIZE = 512;
+
+	private final DatagramSettings discoverySettings;
+	private final Object lock = new Object();
+	private ServerAnnouncement latestAnnouncement;
+	private DatagramSocket socket;
+
+	public ServerDiscovery(DatagramSettings discoverySettings)
+	{
+		this.discoverySettings = discoverySettings;
+	}
+
+	/**
+	 * Joins the discovery address and starts listening for announcements on a daemon thread.
+	 * @throws IOException thrown if the socket cannot be opened
+	 */
+	public void start() throws IOException
+	{
+		socket = discoverySettings.openReceivingSocket();
+		Thread listenerThread = new Thread(new Runnable() {
+			@Override public void run()
+			{
+				listen();
+			}
+		}, "server-discovery");
+		listenerThread.setDaemon(true);
+		listenerThread.start();
+		log.info("Listening for server announcements on {}.", discoverySettings);
+	}
+
+	/**
+	 * Stops listening for announcements.
+	 */
+	public void stop()
+	{
+		if (socket != null) {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Returns the most recent announcement.
+	 * @return the announcement, or null if no server has been announced yet
+	 */
+	public ServerAnnouncement getLatestAnnouncement()
+	{
+		synchronized (lock) {
+			return latestAnnouncement;
+		}
+	}
+
+	/**
+	 * Waits until a server other than the given one is announced, or the timeout expires.
+	 * @param previous the announcement already known, or null to wait for any announcement
+	 * @param timeoutMillis the longest time to wait
+	 * @return the latest announcement, which is still the previous one (or null) if the timeout expired
+	 * @throws InterruptedException thrown if the thread is interrupted while waiting
+	 */
+	public ServerAnnouncement awaitAnnouncement(ServerAnnouncement previous, long timeoutMillis) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (lock) {
+			long remainingMillis = timeoutMillis;
+			while (isSameServer(previous, latestAnnouncement) && remainingMillis > 0) {
+				lock.wait(remainingMillis);
+				remainingMillis = deadline - System.currentTimeMillis();
+			}
+			return latestAnnouncement;
+		}
+	}
+
+	private void listen()
+	{
+		byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+		while ( ! socket.isClosed()) {
+			DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+			try {
+				socket.receive(packet);
+			}
+			catch (IOException e) {
+				if ( ! socket.isClosed()) {
+					log.error("Failed to receive a server announcement. Error = {}", e.getMessage());
+				}
+				continue;
+			}
+
+			ServerAnnouncement announcement = ServerAnnouncement.decode(packet);
+			if (announcement == null) {
+				continue;
+			}
+
+			synchronized (lock) {
+				if ( ! announcement.isSameServer(latestAnnouncement)) {
+					log.info("Server announced at {}:{}.", announcement.getServerIp(), announcement.getPort());
+					latestAnnouncement = announcement;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	private static boolean isSameServer(ServerAnnouncement previous, ServerAnnouncement latest)
+	{
+		return previous == null ? latest == null : previous.isSameServer(latest);
+	}
+}
@@ -0,0 +1,45 @@
+package edu.nyu.cess.remote.common.message;
+
+import java.io.Serializable;
+
+/**
+ * An NTP style probe of the server's clock, in microseconds of the {@link edu.nyu.cess.remote.common.net.PreciseClock}.
+ * The client sends the probe with the time it was sent, the server returns it with the times it received and
+ * answered it. Along with the time the answer is received, the client derives the offset of the server's clock and
+ * the round trip time of the probe.
+ */
+public class ClockProbe implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final long originateMicros;
+	private final long receiveMicros;
+	private final long transmitMicros;
+
+	/**
+	 * @param originateMicros the time the client sent the probe, on the client's clock
+	 * @param receiveMicros the time the server received the probe, on the server's clock, 0 until answered
+	 * @param transmitMicros the time the server answered the probe, on the server's clock, 0 until answered
+	 */
+	public ClockProbe(long originateMicros, long receiveMicros, long transmitMicros)
+	{
+		this.originateMicros = originateMicros;
+		this.receiveMicros = receiveMicros;
+		this.transmitMicros = transmitMicros;
+	}
+
+	public long getOriginateMicros()
+	{
+		return originateMicros;
+	}
+
+	public long getReceiveMicros()
+	{
+		return receiveMicros;
+	}
+
+	public long getTransmitMicros()
+	{
+		return transmitMicros;
+	}
+}
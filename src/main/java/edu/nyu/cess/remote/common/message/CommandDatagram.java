@@ -0,0 +1,127 @@
+package edu.nyu.cess.remote.common.message;
+
+import edu.nyu.cess.remote.common.message.codec.BinaryMessageCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A message sent to a group of clients in a single datagram, along with the ip addresses of the clients it is
+ * meant for. Every client receives the datagram, and only the targets act on it.
+ *
+ * Datagram layout:
+ *   bytes   magic 'L', 'M', 'C', 'C'
+ *   byte    version
+ *   short   target count, followed by every target ip as modified UTF-8
+ *   [message]  the message, framed by the {@link BinaryMessageCodec}
+ */
+public class CommandDatagram
+{
+	private static final byte[] MAGIC = {'L', 'M', 'C', 'C'};
+	private static final byte VERSION = 1;
+
+	// Keeps a datagram within the largest UDP payload
+	private static final int MAX_TARGETS = 4096;
+
+	private final Message message;
+	private final Set<String> targets;
+
+	/**
+	 * @param message the message, which should carry a sequence number so that its receivers can confirm it
+	 * @param targets the ip addresses of the clients the message is meant for
+	 */
+	public CommandDatagram(Message message, Collection<String> targets)
+	{
+		this.message = message;
+		this.targets = Collections.unmodifiableSet(new HashSet<>(targets));
+	}
+
+	/**
+	 * Decodes a received datagram.
+	 * @param packet the received datagram
+	 * @return the command, or null if the datagram is not a valid command
+	 */
+	public static CommandDatagram decode(DatagramPacket packet)
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if ( ! Arrays.equals(magic, MAGIC) || in.readByte() != VERSION) {
+				return null;
+			}
+
+			int targetCount = in.readUnsignedShort();
+			Set<String> targets = new HashSet<>();
+			for (int i = 0; i < targetCount; ++i) {
+				targets.add(in.readUTF());
+			}
+
+			int messageOffset = packet.getOffset() + packet.getLength() - in.available();
+			ByteBuffer frame = ByteBuffer.wrap(packet.getData(), messageOffset, in.available()).slice();
+			Message message = new BinaryMessageCodec().decode(frame);
+			if (message == null || frame.hasRemaining()) {
+				return null;
+			}
+			return new CommandDatagram(message, targets);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Encodes the command.
+	 * @return the datagram payload
+	 * @throws IOException thrown if the message cannot be encoded, or there are too many targets
+	 */
+	public byte[] encode() throws IOException
+	{
+		if (targets.size() > MAX_TARGETS) {
+			throw new IOException("Too many command targets: " + targets.size());
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(MAGIC);
+		out.writeByte(VERSION);
+		out.writeShort(targets.size());
+		for (String target : targets) {
+			out.writeUTF(target);
+		}
+
+		ByteBuffer frame = new BinaryMessageCodec().encode(message);
+		out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+		return bytes.toByteArray();
+	}
+
+	public Message getMessage()
+	{
+		return message;
+	}
+
+	public Set<String> getTargets()
+	{
+		return targets;
+	}
+
+	/**
+	 * Returns true if the command is meant for the client.
+	 * @param clientIp the client ip address
+	 * @return true if the client is a target
+	 */
+	public boolean isTarget(String clientIp)
+	{
+		return targets.contains(clientIp);
+	}
+}
@@ -0,0 +1,60 @@
+package edu.nyu.cess.remote.common.message;
+
+import java.io.Serializable;
+
+/**
+ * A chunk of a bulk payload (log lines, file contents, telemetry) sent on one of the bulk lanes of a connection.
+ * A payload is split into chunks numbered from 0, the last of which is flagged, so that the chunks of the
+ * different lanes can be interleaved with each other and with the control messages.
+ */
+public class DataChunk implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final byte lane;
+	private final long transferId;
+	private final int index;
+	private final boolean last;
+	private final byte[] data;
+
+	/**
+	 * @param lane the bulk lane, from {@link MessageLanes#FIRST_BULK_LANE}
+	 * @param transferId identifies the payload among those sent on the lane
+	 * @param index the position of the chunk in the payload
+	 * @param last true if this is the last chunk of the payload
+	 * @param data the chunk bytes
+	 */
+	public DataChunk(byte lane, long transferId, int index, boolean last, byte[] data)
+	{
+		this.lane = lane;
+		this.transferId = transferId;
+		this.index = index;
+		this.last = last;
+		this.data = data;
+	}
+
+	public byte getLane()
+	{
+		return lane;
+	}
+
+	public long getTransferId()
+	{
+		return transferId;
+	}
+
+	public int getIndex()
+	{
+		return index;
+	}
+
+	public boolean isLast()
+	{
+		return last;
+	}
+
+	public byte[] getData()
+	{
+		return data;
+	}
+}
@@ -0,0 +1,71 @@
+package edu.nyu.cess.remote.common.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reassembles the bulk payloads received from a single connection, one payload at a time per lane. Chunks of a
+ * lane arrive in order, since a connection delivers its messages in the order they were written.
+ */
+public class DataChunkAssembler
+{
+	private final int maxPayloadSize;
+	private final Map<Byte, Transfer> transfers = new HashMap<>();
+
+	/**
+	 * @param maxPayloadSize the largest payload accepted, in bytes
+	 */
+	public DataChunkAssembler(int maxPayloadSize)
+	{
+		this.maxPayloadSize = maxPayloadSize;
+	}
+
+	/**
+	 * Adds the received chunk to the payload of its lane.
+	 * @param dataChunk the chunk
+	 * @return the payload if the chunk completed it, otherwise null
+	 * @throws IOException thrown if the chunk is out of order, or the payload is too large, the lane's payload is
+	 *                     dropped
+	 */
+	public synchronized byte[] add(DataChunk dataChunk) throws IOException
+	{
+		Transfer transfer = transfers.get(dataChunk.getLane());
+		if (dataChunk.getIndex() == 0) {
+			transfer = new Transfer(dataChunk.getTransferId());
+			transfers.put(dataChunk.getLane(), transfer);
+		}
+		else if (transfer == null || transfer.transferId != dataChunk.getTransferId() || transfer.nextIndex != dataChunk.getIndex()) {
+			transfers.remove(dataChunk.getLane());
+			throw new IOException("Chunk " + dataChunk.getIndex() + " of transfer " + dataChunk.getTransferId() +
+					" received out of order on lane " + dataChunk.getLane() + ".");
+		}
+
+		if (transfer.payload.size() + dataChunk.getData().length > maxPayloadSize) {
+			transfers.remove(dataChunk.getLane());
+			throw new IOException("Transfer " + dataChunk.getTransferId() + " on lane " + dataChunk.getLane() +
+					" exceeds the maximum payload size of " + maxPayloadSize + " bytes.");
+		}
+		transfer.payload.write(dataChunk.getData(), 0, dataChunk.getData().length);
+		++transfer.nextIndex;
+
+		if ( ! dataChunk.isLast()) {
+			return null;
+		}
+		transfers.remove(dataChunk.getLane());
+		return transfer.payload.toByteArray();
+	}
+
+	private static class Transfer
+	{
+		private final long transferId;
+		private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		private int nextIndex;
+
+		Transfer(long transferId)
+		{
+			this.transferId = transferId;
+		}
+	}
+}
@@ -12,6 +12,10 @@ public class Message implements Serializable
 	private MessageType messageType;
 	private NetworkInfo networkInfo;
 	private AppExe appExe;
+	private long sequenceNumber;
+	private DataChunk dataChunk;
+	private ClockProbe clockProbe;
+	private StartTiming startTiming;
 
 	public Message(MessageType messageType, AppExe appExe, NetworkInfo networkInfo)
 	{
@@ -20,12 +24,62 @@ public class Message implements Serializable
 		this.networkInfo = networkInfo;
 	}
 
+	/**
+	 * Creates a message identified by a sequence number, which lets the receiver recognize the same command
+	 * delivered more than once, and confirm it.
+	 * @param messageType the message type
+	 * @param appExe the app execution, may be null
+	 * @param networkInfo the network information
+	 * @param sequenceNumber the sequence number, 0 meaning none
+	 */
+	public Message(MessageType messageType, AppExe appExe, NetworkInfo networkInfo, long sequenceNumber)
+	{
+		this(messageType, appExe, networkInfo);
+		this.sequenceNumber = sequenceNumber;
+	}
+
+	/**
+	 * Creates a message carrying the timing of a synchronized start.
+	 * @param messageType the message type
+	 * @param appExe the app execution, may be null
+	 * @param networkInfo the network information
+	 * @param sequenceNumber the sequence number, 0 meaning none
+	 * @param startTiming the start timing, may be null
+	 */
+	public Message(MessageType messageType, AppExe appExe, NetworkInfo networkInfo, long sequenceNumber, StartTiming startTiming)
+	{
+		this(messageType, appExe, networkInfo, sequenceNumber);
+		this.startTiming = startTiming;
+	}
+
 	public Message(MessageType messageType, NetworkInfo networkInfo)
 	{
 		this.messageType = messageType;
 		this.networkInfo = networkInfo;
 	}
 
+	/**
+	 * Creates a message carrying a chunk of a bulk payload, on the chunk's bulk lane.
+	 * @param dataChunk the chunk
+	 * @param networkInfo the network information
+	 */
+	public Message(DataChunk dataChunk, NetworkInfo networkInfo)
+	{
+		this(MessageType.DATA_CHUNK, networkInfo);
+		this.dataChunk = dataChunk;
+	}
+
+	/**
+	 * Creates a message carrying a probe of the server's clock.
+	 * @param clockProbe the probe
+	 * @param networkInfo the network information
+	 */
+	public Message(ClockProbe clockProbe, NetworkInfo networkInfo)
+	{
+		this(MessageType.CLOCK_PROBE, networkInfo);
+		this.clockProbe = clockProbe;
+	}
+
 	public MessageType getMessageType() {
 		return this.messageType;
 	}
@@ -39,4 +93,40 @@ public class Message implements Serializable
 	{
 		return appExe;
 	}
+
+	/**
+	 * Returns the sequence number of the message.
+	 * @return the sequence number, or 0 if the message has none
+	 */
+	public long getSequenceNumber()
+	{
+		return sequenceNumber;
+	}
+
+	/**
+	 * Returns the bulk payload chunk carried by the message.
+	 * @return the chunk, or null if the message is a control message
+	 */
+	public DataChunk getDataChunk()
+	{
+		return dataChunk;
+	}
+
+	/**
+	 * Returns the clock probe carried by the message.
+	 * @return the probe, or null if the message is not a clock probe
+	 */
+	public ClockProbe getClockProbe()
+	{
+		return clockProbe;
+	}
+
+	/**
+	 * Returns the timing of the synchronized start carried by the message.
+	 * @return the start timing, or null if the message has none
+	 */
+	public StartTiming getStartTiming()
+	{
+		return startTiming;
+	}
 }
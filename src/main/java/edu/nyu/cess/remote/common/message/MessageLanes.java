@@ -0,0 +1,64 @@
+package edu.nyu.cess.remote.common.message;
+
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The logical lanes multiplexed over a connection.
+ *
+ * Every message other than a {@link DataChunk} travels on the control lane, which has strict priority: a control
+ * message is written ahead of any bulk chunk still waiting. The bulk lanes share the rest of the connection fairly,
+ * one chunk of each waiting lane at a time. A control message therefore waits for at most one chunk per bulk lane,
+ * however large the bulk payloads are.
+ */
+public class MessageLanes
+{
+	public static final byte CONTROL_LANE = 0;
+	public static final byte FIRST_BULK_LANE = 1;
+
+	/**
+	 * The chunk size used to split bulk payloads by default, small enough to keep the wait of control messages in
+	 * the low milliseconds on a lab network.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+	private MessageLanes() {}
+
+	/**
+	 * Returns the lane the message travels on.
+	 * @param message the message
+	 * @return the lane of the message's chunk, or the control lane
+	 */
+	public static byte getLane(Message message)
+	{
+		DataChunk dataChunk = message.getDataChunk();
+		return dataChunk == null ? CONTROL_LANE : dataChunk.getLane();
+	}
+
+	/**
+	 * Splits the payload into the chunk messages sending it on a bulk lane.
+	 * @param lane the bulk lane
+	 * @param transferId identifies the payload among those sent on the lane
+	 * @param payload the payload
+	 * @param chunkSize the maximum number of payload bytes per chunk
+	 * @param networkInfo the network information of the messages
+	 * @return the chunk messages, in order
+	 */
+	public static List<Message> split(byte lane, long transferId, byte[] payload, int chunkSize, NetworkInfo networkInfo)
+	{
+		if (lane < FIRST_BULK_LANE) {
+			throw new IllegalArgumentException("Invalid bulk lane " + lane);
+		}
+
+		int chunkCount = Math.max(1, (payload.length + chunkSize - 1) / chunkSize);
+		List<Message> chunks = new ArrayList<>(chunkCount);
+		for (int i = 0; i < chunkCount; ++i) {
+			byte[] data = Arrays.copyOfRange(payload, i * chunkSize, Math.min(payload.length, (i + 1) * chunkSize));
+			chunks.add(new Message(new DataChunk(lane, transferId, i, i == chunkCount - 1, data), networkInfo));
+		}
+		return chunks;
+	}
+}
@@ -1,9 +1,17 @@
 package edu.nyu.cess.remote.common.message;
 
+import java.util.List;
+
 /**
  * Created by aruff on 1/26/16.
  */
 public interface MessageSender
 {
 	void sendMessage(Message message);
+
+	/**
+	 * Sends the messages together, in order.
+	 * @param messages the messages
+	 */
+	void sendMessages(List<Message> messages);
 }
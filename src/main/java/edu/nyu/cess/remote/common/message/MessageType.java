@@ -2,5 +2,6 @@ package edu.nyu.cess.remote.common.message;
 
 public enum MessageType
 {
-	APP_EXE_REQUEST, APP_EXE_UPDATE, KEEP_ALIVE_PING
+	APP_EXE_REQUEST, APP_EXE_UPDATE, KEEP_ALIVE_PING, APP_EXE_ACK, DATA_CHUNK, CLOCK_PROBE, START_REPORT,
+	APP_EXE_PREPARE, APP_EXE_READY, APP_EXE_GO
 }
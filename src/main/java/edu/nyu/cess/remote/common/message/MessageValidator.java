@@ -26,6 +26,27 @@ public class MessageValidator
 			return false;
 		}
 
+		if (message.getMessageType() == MessageType.DATA_CHUNK && message.getDataChunk() == null) {
+			errorMessage = "Error: Data chunk null";
+			return false;
+		}
+
+		if (message.getMessageType() == MessageType.CLOCK_PROBE && message.getClockProbe() == null) {
+			errorMessage = "Error: Clock probe null";
+			return false;
+		}
+
+		if (message.getMessageType() == MessageType.START_REPORT && message.getStartTiming() == null) {
+			errorMessage = "Error: Start timing null";
+			return false;
+		}
+
+		if ((message.getMessageType() == MessageType.APP_EXE_PREPARE || message.getMessageType() == MessageType.APP_EXE_READY
+				|| message.getMessageType() == MessageType.APP_EXE_GO) && message.getAppExe() == null) {
+			errorMessage = "Error: App execution null";
+			return false;
+		}
+
 		return true;
 	}
 
@@ -0,0 +1,64 @@
+package edu.nyu.cess.remote.common.message;
+
+import java.io.Serializable;
+
+/**
+ * The timing of a synchronized start, in microseconds of the server's
+ * {@link edu.nyu.cess.remote.common.net.PreciseClock}. An app execution request carries the time the app is to be
+ * started at, the client's start report adds the time it was actually launched, as estimated from the client's clock
+ * offset, and the uncertainty of that estimate.
+ */
+public class StartTiming implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final long scheduledMicros;
+	private final long launchedMicros;
+	private final long uncertaintyMicros;
+
+	/**
+	 * Creates the timing of a start request.
+	 * @param scheduledMicros the time the app is to be started at
+	 */
+	public StartTiming(long scheduledMicros)
+	{
+		this(scheduledMicros, 0, -1);
+	}
+
+	/**
+	 * Creates the timing of a start report.
+	 * @param scheduledMicros the time the app was to be started at
+	 * @param launchedMicros the time the app was launched
+	 * @param uncertaintyMicros the uncertainty of the launch time, -1 if the client's clock offset is unknown
+	 */
+	public StartTiming(long scheduledMicros, long launchedMicros, long uncertaintyMicros)
+	{
+		this.scheduledMicros = scheduledMicros;
+		this.launchedMicros = launchedMicros;
+		this.uncertaintyMicros = uncertaintyMicros;
+	}
+
+	public long getScheduledMicros()
+	{
+		return scheduledMicros;
+	}
+
+	public long getLaunchedMicros()
+	{
+		return launchedMicros;
+	}
+
+	public long getUncertaintyMicros()
+	{
+		return uncertaintyMicros;
+	}
+
+	/**
+	 * Returns how late the app was launched.
+	 * @return the launch skew in microseconds, negative if the app was launched early
+	 */
+	public long getSkewMicros()
+	{
+		return launchedMicros - scheduledMicros;
+	}
+}
@@ -0,0 +1,65 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+/**
+ * Decides which payloads of a connection are compressed.
+ *
+ * Payloads from the threshold size are compressed as long as compression pays off: the compressed size is within
+ * the maximum ratio, and compressing took less time than sending the saved bytes would have. Each time it does not
+ * pay off, the following payloads are sent without an attempt, twice as many as after the previous failure, up to
+ * {@link #MAX_SKIPPED} payloads. A payload that pays off again resets the backoff.
+ */
+class AdaptiveCompression
+{
+	static final int MAX_SKIPPED = 64;
+
+	private final CompressionSettings compressionSettings;
+
+	private int skipped;
+	private int remainingSkips;
+
+	AdaptiveCompression(CompressionSettings compressionSettings)
+	{
+		this.compressionSettings = compressionSettings;
+	}
+
+	/**
+	 * Returns true if the payload is to be compressed.
+	 * @param length the payload length
+	 * @return true to attempt compression
+	 */
+	boolean shouldCompress(int length)
+	{
+		if (length < compressionSettings.getThresholdBytes()) {
+			return false;
+		}
+		if (remainingSkips > 0) {
+			--remainingSkips;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Records the outcome of a compression attempt.
+	 * @param originalLength the payload length
+	 * @param compressedLength the compressed length, or -1 if the payload did not compress within its length
+	 * @param nanos the time spent compressing
+	 * @return true if compression paid off
+	 */
+	boolean notifyCompressed(int originalLength, int compressedLength, long nanos)
+	{
+		int savedBytes = originalLength - compressedLength;
+		boolean paidOff = compressedLength >= 0
+				&& compressedLength <= originalLength * compressionSettings.getMaxRatio()
+				&& nanos <= savedBytes * compressionSettings.getWireNanosPerByte();
+
+		if (paidOff) {
+			skipped = 0;
+		}
+		else {
+			skipped = Math.min(MAX_SKIPPED, Math.max(1, skipped * 2));
+			remainingSkips = skipped;
+		}
+		return paidOff;
+	}
+}
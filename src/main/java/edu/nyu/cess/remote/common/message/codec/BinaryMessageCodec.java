@@ -0,0 +1,497 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import edu.nyu.cess.remote.common.app.ErrorType;
+import edu.nyu.cess.remote.common.message.ClockProbe;
+import edu.nyu.cess.remote.common.message.DataChunk;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.message.StartTiming;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compact, length prefixed binary codec.
+ *
+ * Frame layout:
+ *   int     payload length
+ *   byte    message type ordinal
+ *   byte    field flags (network info, app execution, sequence number, data chunk, clock probe, start timing present)
+ *   [network info]   client name, client IP, server IP
+ *   [app execution]  app info present, name, path, args, state ordinal, error type ordinal, error message
+ *   [sequence number] long
+ *   [data chunk]     lane, transfer id (long), index (varint), last, length (varint), data
+ *   [clock probe]    originate, receive, transmit (longs)
+ *   [start timing]   scheduled, launched, uncertainty (longs)
+ *
+ * Strings are written as a varint of the UTF-8 length plus one (zero meaning null), followed by the UTF-8 bytes.
+ * Enums are written as their ordinal, or -1 for null. Frames are encoded into a single buffer that is reused for
+ * every message.
+ *
+ * With compression, the fields following the flags of large messages are deflated when it pays off, as decided by
+ * {@link AdaptiveCompression}. A compressed frame is flagged, and its fields are replaced by their length (varint)
+ * followed by the deflated bytes.
+ */
+public class BinaryMessageCodec implements MessageCodec
+{
+	private static final int FRAME_HEADER_SIZE = 4;
+	private static final int INITIAL_FRAME_SIZE = 256;
+
+	private static final int HAS_NETWORK_INFO = 1;
+	private static final int HAS_APP_EXE = 1 << 1;
+	private static final int HAS_SEQUENCE_NUMBER = 1 << 2;
+	private static final int HAS_DATA_CHUNK = 1 << 3;
+	private static final int COMPRESSED = 1 << 4;
+	private static final int HAS_CLOCK_PROBE = 1 << 5;
+	private static final int HAS_START_TIMING = 1 << 6;
+	private static final int FIELDS_OFFSET = FRAME_HEADER_SIZE + 2;
+
+	private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+	private static final AppState[] APP_STATES = AppState.values();
+	private static final ErrorType[] ERROR_TYPES = ErrorType.values();
+
+	private ByteBuffer frame = ByteBuffer.allocate(INITIAL_FRAME_SIZE);
+
+	private final AdaptiveCompression adaptiveCompression;
+	private final CompressionStats compressionStats;
+	private Deflater deflater;
+	private Inflater inflater;
+	private byte[] compressed = new byte[0];
+
+	/**
+	 * Creates the codec without compression.
+	 */
+	public BinaryMessageCodec()
+	{
+		this.adaptiveCompression = null;
+		this.compressionStats = null;
+	}
+
+	/**
+	 * Creates the codec compressing the large messages when it pays off.
+	 * @param compressionSettings when compression is attempted and pays off
+	 * @param compressionStats counts the compressed messages
+	 */
+	public BinaryMessageCodec(CompressionSettings compressionSettings, CompressionStats compressionStats)
+	{
+		this.adaptiveCompression = new AdaptiveCompression(compressionSettings);
+		this.compressionStats = compressionStats;
+	}
+
+	/**
+	 * {@link MessageCodec}
+	 */
+	@Override public byte getId()
+	{
+		return adaptiveCompression != null ? MessageCodecs.DEFLATE : MessageCodecs.BINARY;
+	}
+
+	/**
+	 * {@link MessageCodec}
+	 */
+	@Override public ByteBuffer encode(Message message) throws IOException
+	{
+		frame.clear();
+		frame.position(FRAME_HEADER_SIZE);
+
+		NetworkInfo networkInfo = message.getNetworkInfo();
+		AppExe appExe = message.getAppExe();
+		DataChunk dataChunk = message.getDataChunk();
+		ClockProbe clockProbe = message.getClockProbe();
+		StartTiming startTiming = message.getStartTiming();
+
+		ensureCapacity(2);
+		putEnum(message.getMessageType());
+		long sequenceNumber = message.getSequenceNumber();
+		frame.put((byte) ((networkInfo != null ? HAS_NETWORK_INFO : 0) | (appExe != null ? HAS_APP_EXE : 0)
+				| (sequenceNumber != 0 ? HAS_SEQUENCE_NUMBER : 0) | (dataChunk != null ? HAS_DATA_CHUNK : 0)
+				| (clockProbe != null ? HAS_CLOCK_PROBE : 0) | (startTiming != null ? HAS_START_TIMING : 0)));
+
+		if (networkInfo != null) {
+			putString(networkInfo.getClientName());
+			putString(networkInfo.getClientIp());
+			putString(networkInfo.getServerIp());
+		}
+
+		if (appExe != null) {
+			AppInfo appInfo = appExe.getAppInfo();
+			ensureCapacity(1);
+			frame.put((byte) (appInfo != null ? 1 : 0));
+			if (appInfo != null) {
+				putString(appInfo.getName());
+				putString(appInfo.getPath());
+				putString(appInfo.getArgs());
+			}
+			ensureCapacity(2);
+			putEnum(appExe.getState());
+			putEnum(appExe.getErrorType());
+			putString(appExe.getErrorMessage());
+		}
+
+		if (sequenceNumber != 0) {
+			ensureCapacity(8);
+			frame.putLong(sequenceNumber);
+		}
+
+		if (dataChunk != null) {
+			byte[] data = dataChunk.getData();
+			ensureCapacity(9);
+			frame.put(dataChunk.getLane()).putLong(dataChunk.getTransferId());
+			putVarInt(dataChunk.getIndex());
+			ensureCapacity(1);
+			frame.put((byte) (dataChunk.isLast() ? 1 : 0));
+			putVarInt(data.length);
+			ensureCapacity(data.length);
+			frame.put(data);
+		}
+
+		if (clockProbe != null) {
+			ensureCapacity(24);
+			frame.putLong(clockProbe.getOriginateMicros()).putLong(clockProbe.getReceiveMicros())
+					.putLong(clockProbe.getTransmitMicros());
+		}
+
+		if (startTiming != null) {
+			ensureCapacity(24);
+			frame.putLong(startTiming.getScheduledMicros()).putLong(startTiming.getLaunchedMicros())
+					.putLong(startTiming.getUncertaintyMicros());
+		}
+
+		int fieldsLength = frame.position() - FIELDS_OFFSET;
+		if (adaptiveCompression != null && adaptiveCompression.shouldCompress(fieldsLength)) {
+			compressFields(fieldsLength);
+		}
+
+		int payloadLength = frame.position() - FRAME_HEADER_SIZE;
+		if (payloadLength > MessageBuffer.MAX_FRAME_SIZE) {
+			throw new IOException("Message exceeds the maximum frame size: " + payloadLength);
+		}
+		frame.putInt(0, payloadLength);
+		frame.flip();
+		return frame;
+	}
+
+	/**
+	 * {@link MessageCodec}
+	 */
+	@Override public Message decode(ByteBuffer buffer) throws IOException
+	{
+		int start = buffer.position();
+		if (buffer.remaining() < FRAME_HEADER_SIZE) {
+			return null;
+		}
+
+		int payloadLength = buffer.getInt(start);
+		if (payloadLength < 2 || payloadLength > MessageBuffer.MAX_FRAME_SIZE) {
+			throw new IOException("Invalid frame length " + payloadLength);
+		}
+		if (buffer.remaining() < FRAME_HEADER_SIZE + payloadLength) {
+			return null;
+		}
+
+		int end = start + FRAME_HEADER_SIZE + payloadLength;
+		ByteBuffer payload = buffer.duplicate();
+		payload.position(start + FRAME_HEADER_SIZE);
+		payload.limit(end);
+
+		Message message;
+		try {
+			MessageType messageType = getEnum(payload, MESSAGE_TYPES);
+			int flags = payload.get();
+			if ((flags & COMPRESSED) != 0) {
+				payload = inflateFields(payload);
+			}
+
+			NetworkInfo networkInfo = null;
+			if ((flags & HAS_NETWORK_INFO) != 0) {
+				String clientName = getString(payload);
+				String clientIp = getString(payload);
+				String serverIp = getString(payload);
+				networkInfo = new NetworkInfo(clientName, clientIp, serverIp);
+			}
+
+			AppExe appExe = null;
+			if ((flags & HAS_APP_EXE) != 0) {
+				AppInfo appInfo = null;
+				if (payload.get() != 0) {
+					String name = getString(payload);
+					String path = getString(payload);
+					String args = getString(payload);
+					appInfo = new AppInfo(name, path, args);
+				}
+				AppState appState = getEnum(payload, APP_STATES);
+				ErrorType errorType = getEnum(payload, ERROR_TYPES);
+				String errorMessage = getString(payload);
+				appExe = new AppExe(appInfo, appState, errorType, errorMessage);
+			}
+
+			long sequenceNumber = (flags & HAS_SEQUENCE_NUMBER) != 0 ? payload.getLong() : 0;
+
+			if ((flags & HAS_DATA_CHUNK) != 0) {
+				message = new Message(getDataChunk(payload), networkInfo);
+			}
+			else if ((flags & HAS_CLOCK_PROBE) != 0) {
+				message = new Message(new ClockProbe(payload.getLong(), payload.getLong(), payload.getLong()), networkInfo);
+			}
+			else {
+				StartTiming startTiming = (flags & HAS_START_TIMING) != 0
+						? new StartTiming(payload.getLong(), payload.getLong(), payload.getLong()) : null;
+				message = new Message(messageType, appExe, networkInfo, sequenceNumber, startTiming);
+			}
+		}
+		catch (RuntimeException e) {
+			throw new IOException("Malformed frame", e);
+		}
+
+		if (payload.hasRemaining()) {
+			throw new IOException("Malformed frame, " + payload.remaining() + " unread bytes.");
+		}
+
+		buffer.position(end);
+		return message;
+	}
+
+	/* ---------------------------------------------------------------------
+	 *                          ENCODING
+	 * ---------------------------------------------------------------------*/
+
+	/**
+	 * Replaces the encoded fields by their deflated bytes, if compression pays off.
+	 * @param fieldsLength the length of the encoded fields
+	 */
+	private void compressFields(int fieldsLength)
+	{
+		if (deflater == null) {
+			deflater = new Deflater(Deflater.BEST_SPEED);
+		}
+		if (compressed.length < fieldsLength) {
+			compressed = new byte[fieldsLength];
+		}
+
+		long start = System.nanoTime();
+		deflater.reset();
+		deflater.setInput(frame.array(), FIELDS_OFFSET, fieldsLength);
+		deflater.finish();
+		int compressedLength = 0;
+		while ( ! deflater.finished() && compressedLength < fieldsLength) {
+			compressedLength += deflater.deflate(compressed, compressedLength, fieldsLength - compressedLength);
+		}
+		// The length prefix takes up to 5 bytes, the deflated fields must leave room for it
+		if ( ! deflater.finished() || compressedLength + 5 > fieldsLength) {
+			compressedLength = -1;
+		}
+		long nanos = System.nanoTime() - start;
+
+		if ( ! adaptiveCompression.notifyCompressed(fieldsLength, compressedLength, nanos)) {
+			compressionStats.notifyNotCompressed(nanos);
+			return;
+		}
+
+		frame.position(FIELDS_OFFSET);
+		putVarInt(fieldsLength);
+		frame.put(compressed, 0, compressedLength);
+		frame.put(FIELDS_OFFSET - 1, (byte) (frame.get(FIELDS_OFFSET - 1) | COMPRESSED));
+		compressionStats.notifyCompressed(fieldsLength, frame.position() - FIELDS_OFFSET, nanos);
+	}
+
+	private void ensureCapacity(int length)
+	{
+		if (frame.remaining() >= length) {
+			return;
+		}
+
+		ByteBuffer largerFrame = ByteBuffer.allocate(Math.max(frame.capacity() * 2, frame.position() + length));
+		frame.flip();
+		largerFrame.put(frame);
+		frame = largerFrame;
+	}
+
+	private void putEnum(Enum<?> value)
+	{
+		frame.put((byte) (value == null ? -1 : value.ordinal()));
+	}
+
+	private void putVarInt(int value)
+	{
+		ensureCapacity(5);
+		while ((value & ~0x7F) != 0) {
+			frame.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		frame.put((byte) value);
+	}
+
+	private void putString(String value)
+	{
+		if (value == null) {
+			putVarInt(0);
+			return;
+		}
+
+		int utf8Length = getUtf8Length(value);
+		putVarInt(utf8Length + 1);
+		ensureCapacity(utf8Length);
+
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				frame.put((byte) c);
+			}
+			else if (c < 0x800) {
+				frame.put((byte) (0xC0 | (c >> 6)));
+				frame.put((byte) (0x80 | (c & 0x3F)));
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				frame.put((byte) (0xF0 | (codePoint >> 18)));
+				frame.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				frame.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				frame.put((byte) (0x80 | (codePoint & 0x3F)));
+			}
+			else if (Character.isSurrogate(c)) {
+				// Unpaired surrogates are replaced, as String.getBytes does
+				frame.put((byte) '?');
+			}
+			else {
+				frame.put((byte) (0xE0 | (c >> 12)));
+				frame.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				frame.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	private static int getUtf8Length(String value)
+	{
+		int length = 0;
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				length += 1;
+			}
+			else if (c < 0x800) {
+				length += 2;
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+				length += 4;
+				++i;
+			}
+			else if (Character.isSurrogate(c)) {
+				length += 1;
+			}
+			else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	/* ---------------------------------------------------------------------
+	 *                          DECODING
+	 * ---------------------------------------------------------------------*/
+
+	/**
+	 * Inflates the compressed fields of the payload.
+	 * @param payload the payload, positioned at the compressed fields
+	 * @return the inflated fields
+	 * @throws IOException thrown if the fields can not be inflated
+	 */
+	private ByteBuffer inflateFields(ByteBuffer payload) throws IOException
+	{
+		int fieldsLength = getVarInt(payload);
+		if (fieldsLength < 0 || fieldsLength > MessageBuffer.MAX_FRAME_SIZE) {
+			throw new IOException("Invalid compressed fields length " + fieldsLength);
+		}
+		if (inflater == null) {
+			inflater = new Inflater();
+		}
+
+		long start = System.nanoTime();
+		byte[] fields = new byte[fieldsLength];
+		inflater.reset();
+		inflater.setInput(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+		try {
+			int inflatedLength = 0;
+			while (inflatedLength < fieldsLength && ! inflater.finished()) {
+				int inflated = inflater.inflate(fields, inflatedLength, fieldsLength - inflatedLength);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflatedLength += inflated;
+			}
+			if (inflatedLength != fieldsLength || ! inflater.finished() || inflater.getRemaining() != 0) {
+				throw new IOException("Malformed compressed fields.");
+			}
+		}
+		catch (DataFormatException e) {
+			throw new IOException("Malformed compressed fields", e);
+		}
+		if (compressionStats != null) {
+			compressionStats.notifyDecompressed(System.nanoTime() - start);
+		}
+		return ByteBuffer.wrap(fields);
+	}
+
+	private static <E extends Enum<E>> E getEnum(ByteBuffer payload, E[] values) throws IOException
+	{
+		int ordinal = payload.get();
+		if (ordinal == -1) {
+			return null;
+		}
+		if (ordinal < 0 || ordinal >= values.length) {
+			throw new IOException("Invalid " + values.getClass().getComponentType().getSimpleName() + " ordinal " + ordinal);
+		}
+		return values[ordinal];
+	}
+
+	private static int getVarInt(ByteBuffer payload) throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = payload.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private static DataChunk getDataChunk(ByteBuffer payload) throws IOException
+	{
+		byte lane = payload.get();
+		long transferId = payload.getLong();
+		int index = getVarInt(payload);
+		boolean last = payload.get() != 0;
+		int length = getVarInt(payload);
+		if (length < 0 || length > payload.remaining()) {
+			throw new IOException("Invalid data chunk length " + length);
+		}
+
+		byte[] data = new byte[length];
+		payload.get(data);
+		return new DataChunk(lane, transferId, index, last, data);
+	}
+
+	private static String getString(ByteBuffer payload) throws IOException
+	{
+		int length = getVarInt(payload) - 1;
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0 || length > payload.remaining()) {
+			throw new IOException("Invalid string length " + length);
+		}
+
+		String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+		payload.position(payload.position() + length);
+		return value;
+	}
+}
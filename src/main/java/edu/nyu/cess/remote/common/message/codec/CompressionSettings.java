@@ -0,0 +1,57 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+/**
+ * When the payload of a message is worth compressing.
+ */
+public class CompressionSettings
+{
+	public static final int DEFAULT_THRESHOLD_BYTES = 1024;
+	public static final double DEFAULT_MAX_RATIO = 0.9;
+	public static final int DEFAULT_LINK_MBPS = 100;
+
+	private final int thresholdBytes;
+	private final double maxRatio;
+	private final int linkMbps;
+
+	public CompressionSettings()
+	{
+		this(DEFAULT_THRESHOLD_BYTES, DEFAULT_MAX_RATIO, DEFAULT_LINK_MBPS);
+	}
+
+	/**
+	 * @param thresholdBytes the payload size from which compression is attempted
+	 * @param maxRatio the largest compressed to original size ratio for which compression pays off
+	 * @param linkMbps the speed of the slowest client links, compression pays off if it takes less time than
+	 *                 sending the bytes it saves at this speed
+	 */
+	public CompressionSettings(int thresholdBytes, double maxRatio, int linkMbps)
+	{
+		this.thresholdBytes = Math.max(1, thresholdBytes);
+		this.maxRatio = maxRatio;
+		this.linkMbps = Math.max(1, linkMbps);
+	}
+
+	public int getThresholdBytes()
+	{
+		return thresholdBytes;
+	}
+
+	public double getMaxRatio()
+	{
+		return maxRatio;
+	}
+
+	public int getLinkMbps()
+	{
+		return linkMbps;
+	}
+
+	/**
+	 * Returns the time a byte takes to be sent over the slowest client links.
+	 * @return the time in nanoseconds
+	 */
+	public double getWireNanosPerByte()
+	{
+		return 8000.0 / linkMbps;
+	}
+}
@@ -0,0 +1,92 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the payloads compressed by every codec of the process, the bytes saved, and the time spent compressing
+ * and decompressing them.
+ */
+public class CompressionStats
+{
+	private final AtomicLong compressedCount = new AtomicLong();
+	private final AtomicLong uncompressedCount = new AtomicLong();
+	private final AtomicLong originalBytes = new AtomicLong();
+	private final AtomicLong compressedBytes = new AtomicLong();
+	private final AtomicLong compressionNanos = new AtomicLong();
+	private final AtomicLong decompressionNanos = new AtomicLong();
+
+	void notifyCompressed(int originalLength, int compressedLength, long nanos)
+	{
+		compressedCount.incrementAndGet();
+		originalBytes.addAndGet(originalLength);
+		compressedBytes.addAndGet(compressedLength);
+		compressionNanos.addAndGet(nanos);
+	}
+
+	void notifyNotCompressed(long nanos)
+	{
+		uncompressedCount.incrementAndGet();
+		compressionNanos.addAndGet(nanos);
+	}
+
+	void notifyDecompressed(long nanos)
+	{
+		decompressionNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Returns the number of payloads sent compressed.
+	 * @return the compressed payload count
+	 */
+	public long getCompressedCount()
+	{
+		return compressedCount.get();
+	}
+
+	/**
+	 * Returns the number of payloads above the threshold that were sent uncompressed, because compression did not
+	 * pay off, or recently did not pay off on their connection.
+	 * @return the uncompressed payload count
+	 */
+	public long getUncompressedCount()
+	{
+		return uncompressedCount.get();
+	}
+
+	/**
+	 * Returns the number of bytes compression saved, over every payload sent compressed.
+	 * @return the saved byte count
+	 */
+	public long getSavedBytes()
+	{
+		return originalBytes.get() - compressedBytes.get();
+	}
+
+	/**
+	 * Returns the compressed to original size ratio, over every payload sent compressed.
+	 * @return the ratio, or 1 if nothing was compressed
+	 */
+	public double getRatio()
+	{
+		long original = originalBytes.get();
+		return original == 0 ? 1 : (double) compressedBytes.get() / original;
+	}
+
+	/**
+	 * Returns the time spent compressing, including the attempts that did not pay off.
+	 * @return the time in nanoseconds
+	 */
+	public long getCompressionNanos()
+	{
+		return compressionNanos.get();
+	}
+
+	/**
+	 * Returns the time spent decompressing received payloads.
+	 * @return the time in nanoseconds
+	 */
+	public long getDecompressionNanos()
+	{
+		return decompressionNanos.get();
+	}
+}
@@ -0,0 +1,327 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The handshake performed when a client connects.
+ *
+ * The client sends a HELLO with its protocol version, the codecs it supports in order of preference, its
+ * capabilities, and the resume token of its previous session (0 if it has none):
+ *   'L' 'M' 'H' 'I'  version  count  codec id...  capabilities (int)  resume token (long)
+ * The server selects the first offered codec it accepts, and replies with a WELCOME holding the protocol version
+ * both sides speak, the selected codec, the capabilities both sides support, the token of the session, and whether
+ * the previous session was resumed:
+ *   'L' 'M' 'W' 'E'  version  codec id  capabilities (int)  session token (long)  resumed
+ * Every subsequent message, in both directions, is encoded with the selected codec.
+ *
+ * Two older forms are still accepted from clients. Clients of protocol version 1 only send a codec offer, which is
+ * answered with the selected codec:
+ *   'L' 'M' 'C' 'N'  count  codec id...       answered by      'L' 'M' 'C' 'N'  codec id
+ * Clients that predate the handshake start sending a Java serialization stream right away. The server recognizes
+ * the stream header, and uses the unframed legacy codec for those clients without replying.
+ */
+public class ConnectionHandshake
+{
+	public static final byte PROTOCOL_VERSION = 2;
+
+	/**
+	 * The protocol version of clients that predate the handshake.
+	 */
+	public static final byte LEGACY_PROTOCOL_VERSION = 0;
+
+	/**
+	 * The protocol version of clients that only send a codec offer.
+	 */
+	public static final byte CODEC_OFFER_PROTOCOL_VERSION = 1;
+
+	/**
+	 * The session can be resumed with the token of the WELCOME after the connection is lost.
+	 */
+	public static final int SESSION_RESUME = 1;
+
+	/**
+	 * Keep alive pings are echoed.
+	 */
+	public static final int PING_ECHO = 1 << 1;
+
+	/**
+	 * Sequence numbered app execution requests are confirmed.
+	 */
+	public static final int SEQUENCED_REQUESTS = 1 << 2;
+
+	/**
+	 * Bulk payloads can be sent in chunks on the bulk lanes, see {@link edu.nyu.cess.remote.common.message.MessageLanes}.
+	 */
+	public static final int BULK_LANES = 1 << 3;
+
+	/**
+	 * App execution updates are sequence numbered per session, the client's state is only polled when one is missed.
+	 */
+	public static final int SEQUENCED_STATE = 1 << 4;
+
+	/**
+	 * The server answers clock probes, and app execution requests may be scheduled at a time of the server's clock.
+	 */
+	public static final int CLOCK_SYNC = 1 << 5;
+
+	/**
+	 * Starts may be prepared ahead, the client reports when it is ready and launches the prepared app on the go.
+	 */
+	public static final int PREPARED_START = 1 << 6;
+
+	/**
+	 * The capabilities supported by this version of the client and server.
+	 */
+	public static final int CAPABILITIES = SESSION_RESUME | PING_ECHO | SEQUENCED_REQUESTS | BULK_LANES | SEQUENCED_STATE
+			| CLOCK_SYNC | PREPARED_START;
+
+	private static final byte[] OFFER_MAGIC = {'L', 'M', 'C', 'N'};
+	private static final byte[] HELLO_MAGIC = {'L', 'M', 'H', 'I'};
+	private static final byte[] WELCOME_MAGIC = {'L', 'M', 'W', 'E'};
+	private static final byte[] SERIALIZATION_STREAM_MAGIC = {(byte) 0xAC, (byte) 0xED};
+	private static final int MAX_OFFERED_CODECS = 16;
+	private static final int WELCOME_LENGTH = WELCOME_MAGIC.length + 1 + 1 + 4 + 8 + 1;
+
+	/**
+	 * The time a client has to send its hello once connected, by default.
+	 */
+	public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+	private final List<Byte> acceptedCodecIds;
+	private final long timeoutMillis;
+
+	/**
+	 * Initializes the server side of the handshake.
+	 * @param acceptedCodecIds the codecs the server accepts
+	 */
+	public ConnectionHandshake(List<Byte> acceptedCodecIds)
+	{
+		this(acceptedCodecIds, DEFAULT_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Initializes the server side of the handshake.
+	 * @param acceptedCodecIds the codecs the server accepts
+	 * @param timeoutMillis the time a client has to send its hello once connected
+	 */
+	public ConnectionHandshake(List<Byte> acceptedCodecIds, long timeoutMillis)
+	{
+		this.acceptedCodecIds = acceptedCodecIds;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Returns the time a client has to send its hello once connected. A connection that has not sent it by then is
+	 * closed, so that it does not hold on to the server's resources.
+	 * @return the handshake timeout in milliseconds
+	 */
+	public long getTimeoutMillis()
+	{
+		return timeoutMillis;
+	}
+
+	/* ---------------------------------------------------------------------
+	 *                          CLIENT
+	 * ---------------------------------------------------------------------*/
+
+	/**
+	 * Sends the client's HELLO.
+	 * @param outputStream the connection output stream
+	 * @param codecIds the codecs supported by the client, in order of preference
+	 * @param resumeToken the session token received in the previous WELCOME, or 0 to start a new session
+	 * @throws IOException thrown if the HELLO can not be sent
+	 */
+	public static void writeHello(OutputStream outputStream, List<Byte> codecIds, long resumeToken) throws IOException
+	{
+		ByteBuffer hello = ByteBuffer.allocate(HELLO_MAGIC.length + 2 + codecIds.size() + 4 + 8);
+		hello.put(HELLO_MAGIC).put(PROTOCOL_VERSION).put((byte) codecIds.size());
+		for (Byte codecId : codecIds) {
+			hello.put(codecId);
+		}
+		hello.putInt(CAPABILITIES).putLong(resumeToken);
+
+		outputStream.write(hello.array());
+		outputStream.flush();
+	}
+
+	/**
+	 * Reads the server's WELCOME.
+	 * @param inputStream the connection input stream
+	 * @return the WELCOME
+	 * @throws IOException thrown if the server's reply is invalid
+	 */
+	public static Welcome readWelcome(InputStream inputStream) throws IOException
+	{
+		byte[] bytes = new byte[WELCOME_LENGTH];
+		new DataInputStream(inputStream).readFully(bytes);
+		ByteBuffer welcome = ByteBuffer.wrap(bytes);
+		if ( ! startsWith(welcome, WELCOME_MAGIC)) {
+			throw new IOException("Invalid welcome received from the server.");
+		}
+		welcome.position(WELCOME_MAGIC.length);
+
+		byte protocolVersion = welcome.get();
+		if (protocolVersion < CODEC_OFFER_PROTOCOL_VERSION || protocolVersion > PROTOCOL_VERSION) {
+			throw new IOException("Unsupported protocol version " + protocolVersion + " selected by the server.");
+		}
+
+		byte codecId = welcome.get();
+		MessageCodec codec = MessageCodecs.create(codecId);
+		if (codec == null) {
+			throw new IOException("Unknown codec " + codecId + " selected by the server.");
+		}
+		return new Welcome(protocolVersion, codec, welcome.getInt(), welcome.getLong(), welcome.get() != 0);
+	}
+
+	/* ---------------------------------------------------------------------
+	 *                          SERVER
+	 * ---------------------------------------------------------------------*/
+
+	/**
+	 * Reads the client's HELLO, or one of the older handshakes, from the received bytes, and selects the codec for
+	 * the connection.
+	 * @param received the received bytes, ready to be read, the position is advanced past the handshake
+	 * @return the HELLO, or null if the complete handshake has not been received
+	 * @throws IOException thrown if the handshake is invalid, or none of the offered codecs are accepted
+	 */
+	public Hello readHello(ByteBuffer received) throws IOException
+	{
+		int start = received.position();
+		if (received.remaining() < SERIALIZATION_STREAM_MAGIC.length) {
+			return null;
+		}
+		if (received.get(start) == SERIALIZATION_STREAM_MAGIC[0] && received.get(start + 1) == SERIALIZATION_STREAM_MAGIC[1]) {
+			return new Hello(LEGACY_PROTOCOL_VERSION, MessageCodecs.create(MessageCodecs.LEGACY_STREAM), 0, 0);
+		}
+
+		if (received.remaining() < HELLO_MAGIC.length) {
+			return null;
+		}
+		if (startsWith(received, OFFER_MAGIC)) {
+			return readCodecOffer(received);
+		}
+		if ( ! startsWith(received, HELLO_MAGIC)) {
+			throw new IOException("Unknown protocol, the connection did not start with a hello.");
+		}
+
+		if (received.remaining() < HELLO_MAGIC.length + 2) {
+			return null;
+		}
+		byte clientVersion = received.get(start + HELLO_MAGIC.length);
+		int count = received.get(start + HELLO_MAGIC.length + 1) & 0xFF;
+		if (clientVersion < PROTOCOL_VERSION || count > MAX_OFFERED_CODECS) {
+			throw new IOException("Invalid hello, version " + clientVersion + " with " + count + " codecs offered.");
+		}
+		if (received.remaining() < HELLO_MAGIC.length + 2 + count + 4 + 8) {
+			return null;
+		}
+
+		MessageCodec codec = selectCodec(received, start + HELLO_MAGIC.length + 2, count);
+		received.position(start + HELLO_MAGIC.length + 2 + count);
+		int capabilities = received.getInt() & CAPABILITIES;
+		long resumeToken = received.getLong();
+		return new Hello(PROTOCOL_VERSION, codec, capabilities, resumeToken);
+	}
+
+	/**
+	 * Reads the client's HELLO, or one of the older handshakes, from the stream, and selects the codec for the
+	 * connection.
+	 * @param inputStream the connection input stream
+	 * @param received the buffer used for the connection's inbound messages, bytes of the first message that are
+	 *                 read along with the handshake are left in it
+	 * @return the HELLO
+	 * @throws IOException thrown if the handshake is invalid, or none of the offered codecs are accepted
+	 */
+	public Hello readHello(InputStream inputStream, MessageBuffer received) throws IOException
+	{
+		while (true) {
+			ByteBuffer bytes = received.acquire();
+			Hello hello;
+			try {
+				hello = readHello(bytes);
+			}
+			finally {
+				received.release();
+			}
+
+			if (hello != null) {
+				return hello;
+			}
+			if (received.readFrom(inputStream) < 0) {
+				throw new IOException("Connection closed before the hello was received.");
+			}
+		}
+	}
+
+	/**
+	 * Returns the server's reply to the client's HELLO.
+	 * @param hello the client's HELLO
+	 * @param sessionToken the token of the client's session, 0 if the session can not be resumed
+	 * @param resumed true if the client's previous session was resumed
+	 * @return the reply, ready to be written, or null if the client does not expect a reply
+	 */
+	public static ByteBuffer createWelcome(Hello hello, long sessionToken, boolean resumed)
+	{
+		switch (hello.getProtocolVersion()) {
+			case LEGACY_PROTOCOL_VERSION:
+				return null;
+			case CODEC_OFFER_PROTOCOL_VERSION:
+				ByteBuffer selection = ByteBuffer.allocate(OFFER_MAGIC.length + 1);
+				selection.put(OFFER_MAGIC).put(hello.getCodec().getId());
+				selection.flip();
+				return selection;
+			default:
+				ByteBuffer welcome = ByteBuffer.allocate(WELCOME_LENGTH);
+				welcome.put(WELCOME_MAGIC).put(hello.getProtocolVersion()).put(hello.getCodec().getId())
+						.putInt(hello.getCapabilities()).putLong(sessionToken).put((byte) (resumed ? 1 : 0));
+				welcome.flip();
+				return welcome;
+		}
+	}
+
+	private Hello readCodecOffer(ByteBuffer received) throws IOException
+	{
+		int start = received.position();
+		if (received.remaining() < OFFER_MAGIC.length + 1) {
+			return null;
+		}
+
+		int count = received.get(start + OFFER_MAGIC.length) & 0xFF;
+		if (count > MAX_OFFERED_CODECS) {
+			throw new IOException("Invalid codec offer, " + count + " codecs offered.");
+		}
+		if (received.remaining() < OFFER_MAGIC.length + 1 + count) {
+			return null;
+		}
+
+		MessageCodec codec = selectCodec(received, start + OFFER_MAGIC.length + 1, count);
+		received.position(start + OFFER_MAGIC.length + 1 + count);
+		return new Hello(CODEC_OFFER_PROTOCOL_VERSION, codec, 0, 0);
+	}
+
+	private MessageCodec selectCodec(ByteBuffer received, int offset, int count) throws IOException
+	{
+		for (int i = 0; i < count; ++i) {
+			byte codecId = received.get(offset + i);
+			if (acceptedCodecIds.contains(codecId)) {
+				return MessageCodecs.create(codecId);
+			}
+		}
+		throw new IOException("None of the offered codecs are accepted.");
+	}
+
+	private static boolean startsWith(ByteBuffer bytes, byte[] magic)
+	{
+		for (int i = 0; i < magic.length; ++i) {
+			if (bytes.get(bytes.position() + i) != magic[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,57 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+/**
+ * A client's HELLO, as read by the server: the codec selected for the connection, and the capabilities both sides
+ * support.
+ */
+public class Hello
+{
+	private final byte protocolVersion;
+	private final MessageCodec codec;
+	private final int capabilities;
+	private final long resumeToken;
+
+	/**
+	 * @param protocolVersion the protocol version spoken on the connection
+	 * @param codec the codec selected for the connection
+	 * @param capabilities the capabilities supported by both the client and the server
+	 * @param resumeToken the token of the session the client wants to resume, or 0
+	 */
+	public Hello(byte protocolVersion, MessageCodec codec, int capabilities, long resumeToken)
+	{
+		this.protocolVersion = protocolVersion;
+		this.codec = codec;
+		this.capabilities = capabilities;
+		this.resumeToken = resumeToken;
+	}
+
+	public byte getProtocolVersion()
+	{
+		return protocolVersion;
+	}
+
+	public MessageCodec getCodec()
+	{
+		return codec;
+	}
+
+	public int getCapabilities()
+	{
+		return capabilities;
+	}
+
+	/**
+	 * Returns true if both sides support the capability.
+	 * @param capability one of the {@link ConnectionHandshake} capabilities
+	 * @return true if the capability is supported
+	 */
+	public boolean supports(int capability)
+	{
+		return (capabilities & capability) == capability;
+	}
+
+	public long getResumeToken()
+	{
+		return resumeToken;
+	}
+}
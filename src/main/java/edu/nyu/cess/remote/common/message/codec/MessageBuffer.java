@@ -0,0 +1,106 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+import edu.nyu.cess.remote.common.message.Message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Accumulates the bytes received on a connection, and decodes them into messages once complete frames are available.
+ * The buffer grows as required, up to the maximum frame size.
+ */
+public class MessageBuffer
+{
+	/**
+	 * The largest frame accepted from, or sent to, a connection.
+	 */
+	public static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+
+	// Write mode: the position marks the end of the received bytes
+	private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+	/**
+	 * Reads the available bytes from the channel.
+	 * @param channel the channel to read from
+	 * @return the number of bytes read, or -1 if the end of the stream has been reached
+	 * @throws IOException thrown if the read fails, or the received frame is too large
+	 */
+	public int readFrom(ReadableByteChannel channel) throws IOException
+	{
+		ensureSpace();
+		return channel.read(buffer);
+	}
+
+	/**
+	 * Reads at least one byte from the stream, blocking until it is available.
+	 * @param inputStream the stream to read from
+	 * @return the number of bytes read, or -1 if the end of the stream has been reached
+	 * @throws IOException thrown if the read fails, or the received frame is too large
+	 */
+	public int readFrom(InputStream inputStream) throws IOException
+	{
+		ensureSpace();
+		int count = inputStream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		if (count > 0) {
+			buffer.position(buffer.position() + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Decodes the next complete message from the received bytes.
+	 * @param codec the connection codec
+	 * @return the message, or null if no complete message has been received
+	 * @throws IOException thrown if the received bytes are malformed
+	 */
+	public Message nextMessage(MessageCodec codec) throws IOException
+	{
+		buffer.flip();
+		try {
+			return codec.decode(buffer);
+		}
+		finally {
+			buffer.compact();
+		}
+	}
+
+	/**
+	 * Returns the received bytes, ready to be read. The caller must call {@link #release()} once done, after
+	 * advancing the position past the bytes it has consumed.
+	 * @return the received bytes
+	 */
+	public ByteBuffer acquire()
+	{
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Discards the bytes consumed since {@link #acquire()}.
+	 */
+	public void release()
+	{
+		buffer.compact();
+	}
+
+	private void ensureSpace() throws IOException
+	{
+		if (buffer.hasRemaining()) {
+			return;
+		}
+
+		// Room for the largest frame and its header
+		if (buffer.capacity() >= MAX_FRAME_SIZE + 64) {
+			throw new IOException("Inbound frame exceeds " + MAX_FRAME_SIZE + " bytes.");
+		}
+
+		ByteBuffer largerBuffer = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_FRAME_SIZE + 64));
+		buffer.flip();
+		largerBuffer.put(buffer);
+		buffer = largerBuffer;
+	}
+}
@@ -0,0 +1,42 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+import edu.nyu.cess.remote.common.message.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A message codec converts messages to and from the frames that are sent over a client connection.
+ *
+ * Codec instances hold reusable buffers, and are therefore not thread safe. Every connection uses its own instance,
+ * created by {@link MessageCodecs}.
+ */
+public interface MessageCodec
+{
+	/**
+	 * Returns the codec identifier, which is exchanged during the {@link ConnectionHandshake}.
+	 * @return the codec identifier
+	 */
+	byte getId();
+
+	/**
+	 * Encodes the message into a frame.
+	 *
+	 * Note: The returned buffer is owned by the codec, and is only valid until the next call to encode.
+	 *
+	 * @param message the message to encode
+	 * @return a buffer, ready to be read, containing the encoded frame
+	 * @throws IOException thrown if the message can not be encoded
+	 */
+	ByteBuffer encode(Message message) throws IOException;
+
+	/**
+	 * Decodes the next frame contained in the buffer. If the buffer does not contain a complete frame, null is
+	 * returned and the buffer position is left unchanged, otherwise the position is advanced past the frame.
+	 *
+	 * @param buffer a buffer, ready to be read, containing the received bytes
+	 * @return the decoded message, or null if the frame is incomplete
+	 * @throws IOException thrown if the frame is malformed
+	 */
+	Message decode(ByteBuffer buffer) throws IOException;
+}
@@ -0,0 +1,104 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The message codec registry.
+ */
+public class MessageCodecs
+{
+	/**
+	 * Unframed Java serialization, spoken by clients that predate the connection handshake. It is never negotiated.
+	 */
+	public static final byte LEGACY_STREAM = 0;
+
+	/**
+	 * Length prefixed Java serialization.
+	 */
+	public static final byte SERIALIZED = 1;
+
+	/**
+	 * Length prefixed compact binary encoding.
+	 */
+	public static final byte BINARY = 2;
+
+	/**
+	 * The compact binary encoding, with the large messages deflated when it pays off.
+	 */
+	public static final byte DEFLATE = 3;
+
+	/**
+	 * The codecs offered and accepted when none are configured, in order of preference.
+	 */
+	public static final String DEFAULT_CODECS = "deflate,binary,serialized";
+
+	private static final CompressionStats COMPRESSION_STATS = new CompressionStats();
+	private static volatile CompressionSettings compressionSettings = new CompressionSettings();
+
+	/**
+	 * Sets when the codecs created from now on compress messages.
+	 * @param settings the compression settings
+	 */
+	public static void setCompressionSettings(CompressionSettings settings)
+	{
+		compressionSettings = settings;
+	}
+
+	/**
+	 * Returns the compression counters of every codec created.
+	 * @return the compression stats
+	 */
+	public static CompressionStats getCompressionStats()
+	{
+		return COMPRESSION_STATS;
+	}
+
+	/**
+	 * Creates a new codec instance.
+	 * @param codecId the codec identifier
+	 * @return the codec, or null if the identifier is unknown
+	 */
+	public static MessageCodec create(byte codecId)
+	{
+		switch (codecId) {
+			case LEGACY_STREAM:
+				return new SerializedMessageCodec(false);
+			case SERIALIZED:
+				return new SerializedMessageCodec(true);
+			case BINARY:
+				return new BinaryMessageCodec();
+			case DEFLATE:
+				return new BinaryMessageCodec(compressionSettings, COMPRESSION_STATS);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Parses a comma separated list of codec names (deflate, binary, serialized) into codec identifiers.
+	 * @param codecNames the codec names, in order of preference
+	 * @return the codec identifiers, in order of preference
+	 * @throws IllegalArgumentException thrown if a codec name is unknown
+	 */
+	public static List<Byte> parseCodecIds(String codecNames)
+	{
+		List<Byte> codecIds = new ArrayList<>();
+		for (String codecName : codecNames.split(",")) {
+			switch (codecName.trim().toLowerCase()) {
+				case "deflate":
+					codecIds.add(DEFLATE);
+					break;
+				case "binary":
+					codecIds.add(BINARY);
+					break;
+				case "serialized":
+					codecIds.add(SERIALIZED);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown message codec: " + codecName);
+			}
+		}
+		return codecIds;
+	}
+}
@@ -0,0 +1,124 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+import edu.nyu.cess.remote.common.message.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The Java serialization codec. Every message is written as a self contained serialization stream, exactly as the
+ * message sockets have always done.
+ *
+ * When framed, every stream is prefixed by its length. When unframed the codec speaks the original wire format,
+ * in which the end of a message is only known once the stream has been successfully read.
+ */
+public class SerializedMessageCodec implements MessageCodec
+{
+	private static final int FRAME_HEADER_SIZE = 4;
+
+	private final boolean framed;
+	private final ExposedByteArrayOutputStream outputStream = new ExposedByteArrayOutputStream();
+
+	public SerializedMessageCodec(boolean framed)
+	{
+		this.framed = framed;
+	}
+
+	/**
+	 * {@link MessageCodec}
+	 */
+	@Override public byte getId()
+	{
+		return framed ? MessageCodecs.SERIALIZED : MessageCodecs.LEGACY_STREAM;
+	}
+
+	/**
+	 * {@link MessageCodec}
+	 */
+	@Override public ByteBuffer encode(Message message) throws IOException
+	{
+		outputStream.reset();
+		if (framed) {
+			outputStream.write(new byte[FRAME_HEADER_SIZE]);
+		}
+
+		ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream);
+		objectOutputStream.writeObject(message);
+		objectOutputStream.flush();
+
+		ByteBuffer frame = ByteBuffer.wrap(outputStream.getBuffer(), 0, outputStream.size());
+		if (framed) {
+			frame.putInt(0, outputStream.size() - FRAME_HEADER_SIZE);
+		}
+		return frame;
+	}
+
+	/**
+	 * {@link MessageCodec}
+	 */
+	@Override public Message decode(ByteBuffer buffer) throws IOException
+	{
+		int start = buffer.position();
+		int length = buffer.remaining();
+		if (framed) {
+			if (length < FRAME_HEADER_SIZE) {
+				return null;
+			}
+			int frameLength = buffer.getInt(start);
+			if (frameLength < 0 || frameLength > MessageBuffer.MAX_FRAME_SIZE) {
+				throw new IOException("Invalid frame length " + frameLength);
+			}
+			if (length < FRAME_HEADER_SIZE + frameLength) {
+				return null;
+			}
+			start += FRAME_HEADER_SIZE;
+			length = frameLength;
+		}
+
+		byte[] bytes = buffer.array();
+		ByteArrayInputStream byteStream = new ByteArrayInputStream(bytes, buffer.arrayOffset() + start, length);
+		Object object;
+		try {
+			object = new ObjectInputStream(byteStream).readObject();
+		}
+		catch (EOFException e) {
+			if (framed) {
+				throw new IOException("Truncated frame", e);
+			}
+			// The remainder of the unframed message has not arrived yet
+			return null;
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException("Error reading object from the stream", e);
+		}
+
+		if ( ! (object instanceof Message)) {
+			throw new IOException("Unexpected object received: " + object);
+		}
+
+		int end = framed ? start + length : start + length - byteStream.available();
+		buffer.position(end);
+		return (Message) object;
+	}
+
+	/**
+	 * A byte array output stream whose buffer can be read without being copied.
+	 */
+	private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream
+	{
+		ExposedByteArrayOutputStream()
+		{
+			super(512);
+		}
+
+		byte[] getBuffer()
+		{
+			return buf;
+		}
+	}
+}
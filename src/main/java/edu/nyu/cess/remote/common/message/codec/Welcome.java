@@ -0,0 +1,59 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+/**
+ * The server's WELCOME, as read by the client.
+ */
+public class Welcome
+{
+	private final byte protocolVersion;
+	private final MessageCodec codec;
+	private final int capabilities;
+	private final long sessionToken;
+	private final boolean resumed;
+
+	/**
+	 * @param protocolVersion the protocol version spoken on the connection
+	 * @param codec the codec selected for the connection
+	 * @param capabilities the capabilities supported by both the client and the server
+	 * @param sessionToken the token resuming the session on the next connection, 0 if it can not be resumed
+	 * @param resumed true if the server resumed the client's previous session
+	 */
+	public Welcome(byte protocolVersion, MessageCodec codec, int capabilities, long sessionToken, boolean resumed)
+	{
+		this.protocolVersion = protocolVersion;
+		this.codec = codec;
+		this.capabilities = capabilities;
+		this.sessionToken = sessionToken;
+		this.resumed = resumed;
+	}
+
+	public byte getProtocolVersion()
+	{
+		return protocolVersion;
+	}
+
+	public MessageCodec getCodec()
+	{
+		return codec;
+	}
+
+	/**
+	 * Returns true if both sides support the capability.
+	 * @param capability one of the {@link ConnectionHandshake} capabilities
+	 * @return true if the capability is supported
+	 */
+	public boolean supports(int capability)
+	{
+		return (capabilities & capability) == capability;
+	}
+
+	public long getSessionToken()
+	{
+		return sessionToken;
+	}
+
+	public boolean isResumed()
+	{
+		return resumed;
+	}
+}
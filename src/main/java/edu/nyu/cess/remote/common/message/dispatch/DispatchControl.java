@@ -4,6 +4,8 @@ import edu.nyu.cess.remote.common.message.Message;
 import edu.nyu.cess.remote.common.message.MessageType;
 import edu.nyu.cess.remote.common.net.NetworkInfo;
 
+import java.util.List;
+
 /**
  * Created by aruff on 1/26/16.
  */
@@ -23,6 +25,12 @@ public interface DispatchControl
      */
 	void dispatchOutboundMessage(Message message);
 
+	/**
+	 * Dispatches the messages to the client together, in order.
+	 * @param messages the messages to dispatch
+	 */
+	void dispatchOutboundMessages(List<Message> messages);
+
     /**
      * Dispatches the message to the client.
 	 * @param networkInfo the message socket network information
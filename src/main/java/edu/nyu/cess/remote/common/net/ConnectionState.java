@@ -2,8 +2,11 @@ package edu.nyu.cess.remote.common.net;
 
 /**
  * Created by aruff on 2/26/16.
+ *
+ * RESUMED is a connection that took over the server side session of the previous one, the server still knows
+ * everything reported before the connection was lost.
  */
 public enum ConnectionState
 {
-    CONNECTED, DISCONNECTED
+    CONNECTED, DISCONNECTED, RESUMED
 }
@@ -0,0 +1,108 @@
+package edu.nyu.cess.remote.common.net;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+
+/**
+ * The address datagrams are sent to: a multicast group, or a broadcast (or plain unicast) address. Multicast may be
+ * bound to a single network interface, for example "lo" to reach a server or client on the same machine.
+ *
+ * Used by the server announcements and by the multicast command channel.
+ */
+public class DatagramSettings
+{
+	public static final String DEFAULT_DISCOVERY_ADDRESS = "239.255.26.0";
+	public static final int DEFAULT_DISCOVERY_PORT = 2601;
+	public static final String DEFAULT_COMMAND_ADDRESS = "239.255.26.1";
+	public static final int DEFAULT_COMMAND_PORT = 2602;
+
+	private final InetAddress address;
+	private final int port;
+	private final String interfaceName;
+
+	/**
+	 * @param address the multicast group, or broadcast address
+	 * @param port the datagram port
+	 * @param interfaceName the name of the network interface used for multicast, or null for the default one
+	 * @throws IOException thrown if the address cannot be resolved
+	 */
+	public DatagramSettings(String address, int port, String interfaceName) throws IOException
+	{
+		this.address = InetAddress.getByName(address);
+		this.port = port;
+		this.interfaceName = (interfaceName == null || interfaceName.trim().isEmpty()) ? null : interfaceName.trim();
+	}
+
+	public InetAddress getAddress()
+	{
+		return address;
+	}
+
+	public int getPort()
+	{
+		return port;
+	}
+
+	/**
+	 * Opens the socket datagrams are sent from.
+	 * @return the socket
+	 * @throws IOException thrown if the socket cannot be opened
+	 */
+	public DatagramSocket openSendingSocket() throws IOException
+	{
+		if (address.isMulticastAddress()) {
+			MulticastSocket socket = new MulticastSocket();
+			NetworkInterface networkInterface = getNetworkInterface();
+			if (networkInterface != null) {
+				socket.setNetworkInterface(networkInterface);
+			}
+			return socket;
+		}
+
+		DatagramSocket socket = new DatagramSocket();
+		socket.setBroadcast(true);
+		return socket;
+	}
+
+	/**
+	 * Opens the socket datagrams are received on, joined to the multicast group if there is one.
+	 * @return the socket
+	 * @throws IOException thrown if the socket cannot be opened, or the group cannot be joined
+	 */
+	public DatagramSocket openReceivingSocket() throws IOException
+	{
+		if (address.isMulticastAddress()) {
+			MulticastSocket socket = new MulticastSocket(port);
+			socket.joinGroup(new InetSocketAddress(address, port), getNetworkInterface());
+			return socket;
+		}
+
+		DatagramSocket socket = new DatagramSocket(null);
+		socket.setReuseAddress(true);
+		socket.bind(new InetSocketAddress(port));
+		return socket;
+	}
+
+	private NetworkInterface getNetworkInterface() throws SocketException
+	{
+		if (interfaceName == null) {
+			return null;
+		}
+
+		NetworkInterface networkInterface = NetworkInterface.getByName(interfaceName);
+		if (networkInterface == null) {
+			throw new SocketException("Network interface " + interfaceName + " not found.");
+		}
+		return networkInterface;
+	}
+
+	@Override public String toString()
+	{
+		return address.getHostAddress() + ":" + port + (interfaceName == null ? "" : " on " + interfaceName);
+	}
+}
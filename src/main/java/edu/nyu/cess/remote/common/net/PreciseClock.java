@@ -0,0 +1,47 @@
+package edu.nyu.cess.remote.common.net;
+
+/**
+ * A wall clock with microsecond resolution. The wall clock time is read once, and advanced with the monotonic
+ * {@link System#nanoTime()}, so the clock never steps and converts exactly to and from nano times.
+ *
+ * The clocks of two processes differ by the error of their anchors on top of the offset of their wall clocks, which
+ * is why the offset between a client and the server is measured between their precise clocks.
+ */
+public final class PreciseClock
+{
+	private static final long ANCHOR_MICROS = System.currentTimeMillis() * 1000;
+	private static final long ANCHOR_NANOS = System.nanoTime();
+
+	private PreciseClock()
+	{
+	}
+
+	/**
+	 * Returns the current time.
+	 * @return the time in microseconds since the epoch
+	 */
+	public static long currentTimeMicros()
+	{
+		return toMicros(System.nanoTime());
+	}
+
+	/**
+	 * Converts a {@link System#nanoTime()} value to the time of this clock.
+	 * @param nanoTime the nano time
+	 * @return the time in microseconds since the epoch
+	 */
+	public static long toMicros(long nanoTime)
+	{
+		return ANCHOR_MICROS + (nanoTime - ANCHOR_NANOS) / 1000;
+	}
+
+	/**
+	 * Converts a time of this clock to a {@link System#nanoTime()} value.
+	 * @param micros the time in microseconds since the epoch
+	 * @return the nano time
+	 */
+	public static long toNanoTime(long micros)
+	{
+		return ANCHOR_NANOS + (micros - ANCHOR_MICROS) * 1000;
+	}
+}
@@ -0,0 +1,119 @@
+package edu.nyu.cess.remote.common.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.util.Arrays;
+
+/**
+ * The datagram a server periodically sends to announce where clients can connect to it.
+ *
+ * The datagram holds a magic number, a version, the server port, an instance id chosen randomly when the server
+ * starts (so that a restarted server can be told apart from the one it replaced), and optionally the server ip.
+ * Without an ip, the source address of the datagram is the server address.
+ */
+public class ServerAnnouncement
+{
+	private static final byte[] MAGIC = {'L', 'M', 'S', 'D'};
+	private static final byte VERSION = 1;
+
+	private final String serverIp;
+	private final int port;
+	private final long instanceId;
+
+	/**
+	 * @param serverIp the server ip, or null to let clients use the datagram source address
+	 * @param port the port clients connect to
+	 * @param instanceId the id of this server run
+	 */
+	public ServerAnnouncement(String serverIp, int port, long instanceId)
+	{
+		this.serverIp = serverIp;
+		this.port = port;
+		this.instanceId = instanceId;
+	}
+
+	/**
+	 * Decodes a received announcement.
+	 * @param packet the received datagram
+	 * @return the announcement, or null if the datagram is not a server announcement
+	 */
+	public static ServerAnnouncement decode(DatagramPacket packet)
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if ( ! Arrays.equals(magic, MAGIC) || in.readByte() != VERSION) {
+				return null;
+			}
+
+			int port = in.readInt();
+			long instanceId = in.readLong();
+			String serverIp = in.readUTF();
+			if (serverIp.isEmpty()) {
+				serverIp = packet.getAddress().getHostAddress();
+			}
+			return new ServerAnnouncement(serverIp, port, instanceId);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Encodes the announcement.
+	 * @return the datagram payload
+	 */
+	public byte[] encode()
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.write(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(port);
+			out.writeLong(instanceId);
+			out.writeUTF(serverIp == null ? "" : serverIp);
+		}
+		catch (IOException e) {
+			// Not thrown by an in memory stream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public String getServerIp()
+	{
+		return serverIp;
+	}
+
+	public int getPort()
+	{
+		return port;
+	}
+
+	public long getInstanceId()
+	{
+		return instanceId;
+	}
+
+	/**
+	 * Returns true if both announcements come from the same server run, at the same address.
+	 * @param other the other announcement, may be null
+	 * @return true if the announcements are the same
+	 */
+	public boolean isSameServer(ServerAnnouncement other)
+	{
+		return other != null && instanceId == other.instanceId && port == other.port
+				&& (serverIp == null ? other.serverIp == null : serverIp.equals(other.serverIp));
+	}
+
+	@Override public String toString()
+	{
+		return String.format("{serverIp=%s, port=%d, instanceId=%x}", serverIp, port, instanceId);
+	}
+}
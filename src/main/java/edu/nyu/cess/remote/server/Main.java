@@ -3,12 +3,41 @@
  */
 package edu.nyu.cess.remote.server;
 
+import edu.nyu.cess.remote.common.message.codec.CompressionStats;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.codec.MessageCodecs;
+import edu.nyu.cess.remote.common.net.DatagramSettings;
 import edu.nyu.cess.remote.server.app.AppInfoCollection;
 import edu.nyu.cess.remote.server.client.ClientPoolProxy;
+import edu.nyu.cess.remote.server.client.ClientPoolSubscription;
 import edu.nyu.cess.remote.server.gui.ViewController;
 import edu.nyu.cess.remote.server.io.ConfigFileLoader;
+import edu.nyu.cess.remote.server.io.ServerConfigFile;
 import edu.nyu.cess.remote.server.lab.LabLayout;
+import edu.nyu.cess.remote.server.net.AdmissionStats;
 import edu.nyu.cess.remote.server.net.ClientSocketConnectionMonitor;
+import edu.nyu.cess.remote.server.net.CommandMulticaster;
+import edu.nyu.cess.remote.server.net.ConnectionMonitor;
+import edu.nyu.cess.remote.server.net.ConnectionStats;
+import edu.nyu.cess.remote.server.net.ExecutionModel;
+import edu.nyu.cess.remote.server.net.ExecutionStats;
+import edu.nyu.cess.remote.server.net.HashedWheelTimer;
+import edu.nyu.cess.remote.server.net.HeartbeatMonitor;
+import edu.nyu.cess.remote.server.net.PooledExecutionModel;
+import edu.nyu.cess.remote.server.net.RateLimitingMessageObserver;
+import edu.nyu.cess.remote.server.net.SelectorConnectionMonitor;
+import edu.nyu.cess.remote.server.net.ServerAnnouncer;
+import edu.nyu.cess.remote.server.net.SessionManager;
+import edu.nyu.cess.remote.server.net.SlowClientMonitor;
+import edu.nyu.cess.remote.server.net.ThreadPerClientExecutionModel;
+import edu.nyu.cess.remote.server.net.VirtualThreadExecutionModel;
+import edu.nyu.cess.remote.server.net.WriterPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The server main class loads the lab layout, and application config files, generates the lab view, and finally
@@ -16,18 +45,181 @@ import edu.nyu.cess.remote.server.net.ClientSocketConnectionMonitor;
  */
 public class Main
 {
+	private final static Logger log = LoggerFactory.getLogger(Main.class);
+
     public static void main(String[] args)
     {
+		ServerConfigFile serverConfig = ConfigFileLoader.getServerConfig("server.properties");
         AppInfoCollection appInfoCollection = ConfigFileLoader.getAppInfoCollection("production/app-config.yaml");
 		LabLayout labLayout = ConfigFileLoader.getLabLayout("lab-layout.yaml");
 
-		ClientPoolProxy clientPoolProxy = new ClientPoolProxy();
+		ClientPoolProxy clientPoolProxy = new ClientPoolProxy(labLayout);
         ViewController viewController = new ViewController(appInfoCollection, clientPoolProxy, labLayout);
 
 		clientPoolProxy.addObserver(viewController);
+		clientPoolProxy.setSynchronizedStartDelay(serverConfig.getSynchronizedStartDelayMillis(), TimeUnit.MILLISECONDS);
+		viewController.setPreparedStartTimeout(serverConfig.getPreparedStartTimeoutMillis(), TimeUnit.MILLISECONDS);
+		AdmissionStats admissionStats = new AdmissionStats();
+		viewController.setAdmissionStats(admissionStats);
+		clientPoolProxy.setAdmissionStats(admissionStats);
+		try {
+			DatagramSettings commandChannelSettings = serverConfig.getCommandChannelSettings();
+			if (commandChannelSettings != null) {
+				clientPoolProxy.setCommandMulticaster(new CommandMulticaster(commandChannelSettings),
+						serverConfig.getCommandRetransmitDelayMillis(), TimeUnit.MILLISECONDS);
+			}
+		}
+		catch (IOException e) {
+			log.error("Failed to open the command channel, group app executions are sent over every client connection.", e);
+		}
         viewController.display();
 
-        ClientSocketConnectionMonitor messageObserver = new ClientSocketConnectionMonitor(clientPoolProxy);
-        messageObserver.monitorNewClientSocketConnections(2600, labLayout);
+		HashedWheelTimer timer = new HashedWheelTimer("heartbeat-timer", 50, TimeUnit.MILLISECONDS, 512);
+		SessionManager sessionManager = new SessionManager(clientPoolProxy, clientPoolProxy, timer,
+				serverConfig.getSessionGraceMillis());
+		HeartbeatMonitor heartbeatMonitor = new HeartbeatMonitor(sessionManager, clientPoolProxy, sessionManager, timer,
+				serverConfig.getHeartbeatSettings());
+		heartbeatMonitor.setClientStateTable(labLayout, clientPoolProxy.getClientStateTable());
+		RateLimitingMessageObserver rateLimitingObserver = new RateLimitingMessageObserver(heartbeatMonitor, heartbeatMonitor,
+				heartbeatMonitor, timer, serverConfig.getMessageRateLimits(), serverConfig.getSessionGraceMillis());
+
+		try {
+			DatagramSettings discoverySettings = serverConfig.getDiscoverySettings();
+			if (discoverySettings != null) {
+				new ServerAnnouncer(discoverySettings, serverConfig.getDiscoveryAnnouncedIp(), serverConfig.getPort(), timer,
+						serverConfig.getDiscoveryIntervalMillis()).start();
+			}
+		}
+		catch (IOException e) {
+			log.error("Failed to start the server announcements, clients must be configured with the server ip.", e);
+		}
+
+		ConnectionStats connectionStats = new ConnectionStats();
+		SlowClientMonitor slowClientMonitor = new SlowClientMonitor(serverConfig.getSendSettings());
+		slowClientMonitor.setObserver(clientPoolProxy);
+		ExecutionModel executionModel = createExecutionModel(serverConfig);
+
+		MessageCodecs.setCompressionSettings(serverConfig.getCompressionSettings());
+		ConnectionHandshake connectionHandshake = new ConnectionHandshake(serverConfig.getCodecIds(),
+				serverConfig.getHandshakeTimeoutMillis());
+		ConnectionMonitor connectionMonitor;
+		WriterPool writerPool = null;
+		switch (serverConfig.getTransportType()) {
+			case SELECTOR:
+				connectionMonitor = new SelectorConnectionMonitor(rateLimitingObserver, rateLimitingObserver, rateLimitingObserver,
+						serverConfig.getSelectorThreads(), connectionHandshake, serverConfig.getOutboundQueueCapacity(),
+						serverConfig.getAdmissionSettings(), admissionStats, connectionStats, slowClientMonitor);
+				break;
+			case BLOCKING:
+			default:
+				writerPool = new WriterPool(serverConfig.getWriterThreads());
+				connectionMonitor = new ClientSocketConnectionMonitor(rateLimitingObserver, rateLimitingObserver, rateLimitingObserver,
+						connectionHandshake, serverConfig.getOutboundQueueCapacity(), writerPool,
+						executionModel, serverConfig.getAdmissionSettings(), admissionStats, connectionStats, slowClientMonitor);
+				break;
+		}
+
+		if (serverConfig.getResourceReportIntervalMillis() > 0) {
+			scheduleResourceReport(timer, serverConfig.getResourceReportIntervalMillis(), connectionStats, sessionManager,
+					heartbeatMonitor, rateLimitingObserver, slowClientMonitor, writerPool, executionModel, clientPoolProxy);
+		}
+        connectionMonitor.monitorNewClientSocketConnections(serverConfig.getPort(), labLayout);
+	}
+
+	/**
+	 * Creates the execution model running the per-client tasks. The virtual thread model falls back to a thread per
+	 * client when the runtime does not support virtual threads.
+	 */
+	private static ExecutionModel createExecutionModel(ServerConfigFile serverConfig)
+	{
+		switch (serverConfig.getExecutionModelType()) {
+			case POOL:
+				return new PooledExecutionModel(serverConfig.getExecutionPoolThreads());
+			case VIRTUAL:
+				try {
+					return new VirtualThreadExecutionModel();
+				}
+				catch (UnsupportedOperationException e) {
+					log.error("{} Running a thread per client instead.", e.getMessage());
+					return new ThreadPerClientExecutionModel();
+				}
+			case THREAD_PER_CLIENT:
+			default:
+				return new ThreadPerClientExecutionModel();
+		}
+	}
+
+	/**
+	 * Logs the connection resource counters at every interval. With no client connected, the open connections,
+	 * reader threads, sessions and heartbeats are all back at zero however often the clients have reconnected.
+	 *
+	 * The report also covers the messages throttled by the rate limits, the bytes saved by compression and the time it
+	 * cost, the threads and scheduling latency of the execution model, how many command channel requests had to be
+	 * retransmitted over the client connections, and how far behind each client pool subscriber is. The clients
+	 * currently throttled are listed, as are the clients that missed the most send deadlines, with their send latency,
+	 * and the clients closest to being declared failed, with their heartbeat round trip time. With the blocking
+	 * transport, the shared writers standing in for writers blocked on quarantined clients are counted as well.
+	 */
+	private static void scheduleResourceReport(final HashedWheelTimer timer, final long intervalMillis,
+											   final ConnectionStats connectionStats, final SessionManager sessionManager,
+											   final HeartbeatMonitor heartbeatMonitor,
+											   final RateLimitingMessageObserver rateLimitingObserver,
+											   final SlowClientMonitor slowClientMonitor, final WriterPool writerPool,
+											   final ExecutionModel executionModel, final ClientPoolProxy clientPoolProxy)
+	{
+		timer.schedule(new Runnable() {
+			@Override public void run()
+			{
+				log.info("Connections: {} open ({} opened in total), {} reader threads, {} sessions ({} resumed, {} expired), " +
+								"{} heartbeats, {} superseded, {} handshake timeouts, {} state update gaps.",
+						connectionStats.getOpenConnectionCount(), connectionStats.getOpenedConnectionCount(),
+						connectionStats.getLiveReaderCount(), sessionManager.getSessionCount(),
+						sessionManager.getResumedSessionCount(), sessionManager.getExpiredSessionCount(),
+						heartbeatMonitor.getMonitoredClientCount(), sessionManager.getSupersededConnectionCount(),
+						connectionStats.getHandshakeTimeoutCount(), heartbeatMonitor.getStateGapCount());
+				Map<String, Long> throttledClients = rateLimitingObserver.getThrottledClients();
+				log.info("Rate limits: {} messages throttled, {} clients throttled now{}.",
+						rateLimitingObserver.getThrottledMessageCount(), throttledClients.size(),
+						throttledClients.isEmpty() ? "" : " (messages throttled by client: " + throttledClients + ")");
+				log.info("Send deadlines: {} quarantines, {} disconnected while quarantined.",
+						slowClientMonitor.getQuarantineCount(), slowClientMonitor.getQuarantineDisconnectCount());
+				if (writerPool != null) {
+					log.info("Writers: {} shared writers added to stand in for writers blocked on quarantined clients.",
+							writerPool.getCompensatingWriterCount());
+				}
+				CompressionStats compressionStats = MessageCodecs.getCompressionStats();
+				log.info("Compression: {} messages compressed, {} not worth it, {} bytes saved (ratio {}), {} ms compressing, " +
+								"{} ms decompressing.", compressionStats.getCompressedCount(), compressionStats.getUncompressedCount(),
+						compressionStats.getSavedBytes(), String.format("%.2f", compressionStats.getRatio()),
+						TimeUnit.NANOSECONDS.toMillis(compressionStats.getCompressionNanos()),
+						TimeUnit.NANOSECONDS.toMillis(compressionStats.getDecompressionNanos()));
+				ExecutionStats executionStats = executionModel.getStats();
+				log.info("Execution model {}: {} threads, {} tasks running (peak {}), {} waiting, scheduling latency " +
+								"p50={}us p99={}us.", executionModel.getType(), executionModel.getThreadCount(),
+						executionStats.getRunningTaskCount(), executionStats.getPeakRunningTaskCount(),
+						executionStats.getWaitingTaskCount(),
+						executionStats.getSchedulingLatency(50, TimeUnit.MICROSECONDS),
+						executionStats.getSchedulingLatency(99, TimeUnit.MICROSECONDS));
+				log.info("Command channel: {} requests confirmed by their targets, {} retransmitted over a client connection.",
+						clientPoolProxy.getConfirmedCommandCount(), clientPoolProxy.getRetransmittedCommandCount());
+				for (ClientPoolSubscription subscription : clientPoolProxy.getEventBus().getSubscriptions()) {
+					log.info("Subscriber {}: {} events queued, {} delivered, {} dropped.", subscription.getName(),
+							subscription.getQueuedCount(), subscription.getDeliveredCount(), subscription.getDroppedCount());
+				}
+				for (String clientIp : slowClientMonitor.getSlowestClients(5)) {
+					log.info("Slow client {}: {} missed deadlines, send latency p50={}ms p99={}ms{}.", clientIp,
+							slowClientMonitor.getMissedDeadlineCount(clientIp),
+							slowClientMonitor.getSendLatency(clientIp, 50, TimeUnit.MILLISECONDS),
+							slowClientMonitor.getSendLatency(clientIp, 99, TimeUnit.MILLISECONDS),
+							slowClientMonitor.isQuarantined(clientIp) ? ", quarantined" : "");
+				}
+				for (String clientIp : heartbeatMonitor.getMostSuspectedClients(5)) {
+					log.info("Heartbeat of {}: phi={}, round trip time {}us.", clientIp,
+							String.format("%.1f", heartbeatMonitor.getPhi(clientIp)),
+							heartbeatMonitor.getRoundTripTime(clientIp, TimeUnit.MICROSECONDS));
+				}
+				timer.schedule(this, intervalMillis, TimeUnit.MILLISECONDS);
+			}
+		}, intervalMillis, TimeUnit.MILLISECONDS);
 	}
 }
@@ -0,0 +1,9 @@
+package edu.nyu.cess.remote.server.client;
+
+/**
+ * Notified of every bulk payload received from a client, once all of its chunks have arrived.
+ */
+public interface BulkPayloadObserver
+{
+	void notifyBulkPayloadReceived(String clientIp, byte lane, byte[] payload);
+}
@@ -1,11 +1,15 @@
 package edu.nyu.cess.remote.server.client;
 
-import edu.nyu.cess.remote.server.net.ClientSocket;
+import edu.nyu.cess.remote.common.message.MessageSocket;
 
 /**
  * Created by aruff on 2/16/16.
  */
 public interface ClientPool
 {
-	void addClient(ClientSocket socket);
+	/**
+	 * Adds a newly connected client to the pool.
+	 * @param messageSocket the client's message socket
+	 */
+	void addClient(MessageSocket messageSocket);
 }
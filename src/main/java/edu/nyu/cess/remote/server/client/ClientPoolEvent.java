@@ -0,0 +1,78 @@
+package edu.nyu.cess.remote.server.client;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+
+/**
+ * A client pool notification, queued for delivery to the {@link ClientPoolObserver} of a subscription.
+ */
+abstract class ClientPoolEvent
+{
+	private final String ipAddress;
+	private final boolean appUpdate;
+
+	private ClientPoolEvent(String ipAddress, boolean appUpdate)
+	{
+		this.ipAddress = ipAddress;
+		this.appUpdate = appUpdate;
+	}
+
+	String getIpAddress()
+	{
+		return ipAddress;
+	}
+
+	/**
+	 * Returns whether the event is an app update, which a later app update of the same client supersedes.
+	 * @return true if the event is an app update
+	 */
+	boolean isAppUpdate()
+	{
+		return appUpdate;
+	}
+
+	/**
+	 * Delivers the event to the observer.
+	 * @param observer the observer
+	 */
+	abstract void deliver(ClientPoolObserver observer);
+
+	static ClientPoolEvent connected(final String hostName, final String ipAddress)
+	{
+		return new ClientPoolEvent(ipAddress, false) {
+			@Override void deliver(ClientPoolObserver observer)
+			{
+				observer.notifyNewClientConnected(hostName, ipAddress);
+			}
+		};
+	}
+
+	static ClientPoolEvent disconnected(final String ipAddress)
+	{
+		return new ClientPoolEvent(ipAddress, false) {
+			@Override void deliver(ClientPoolObserver observer)
+			{
+				observer.notifyClientDisconnected(ipAddress);
+			}
+		};
+	}
+
+	static ClientPoolEvent appUpdate(final AppExe appExe, final String ipAddress)
+	{
+		return new ClientPoolEvent(ipAddress, true) {
+			@Override void deliver(ClientPoolObserver observer)
+			{
+				observer.notifyClientAppUpdate(appExe, ipAddress);
+			}
+		};
+	}
+
+	static ClientPoolEvent degraded(final String ipAddress, final boolean degraded)
+	{
+		return new ClientPoolEvent(ipAddress, false) {
+			@Override void deliver(ClientPoolObserver observer)
+			{
+				observer.notifyClientDegraded(ipAddress, degraded);
+			}
+		};
+	}
+}
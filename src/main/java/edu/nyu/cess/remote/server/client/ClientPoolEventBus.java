@@ -0,0 +1,94 @@
+package edu.nyu.cess.remote.server.client;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers the client pool notifications to any number of subscribers, such as the view, metrics or persistence.
+ *
+ * The notifications are published by the network threads, and each subscriber receives them in order on a delivery
+ * thread of its own, from a bounded queue, see {@link ClientPoolSubscription}. Publishing never waits for a
+ * subscriber, a slow subscriber only falls behind, or loses events once its queue is full, without holding up the
+ * network threads or the other subscribers.
+ */
+public class ClientPoolEventBus implements ClientPoolObserver
+{
+	private final List<ClientPoolSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Subscribes the observer to the client pool notifications.
+	 * @param name the subscriber name, naming its delivery thread
+	 * @param observer the observer
+	 * @param capacity the number of events that can be queued for the observer
+	 * @param overflowPolicy what is done with an event published while the queue is full
+	 * @return the subscription
+	 */
+	public ClientPoolSubscription subscribe(String name, ClientPoolObserver observer, int capacity,
+											EventOverflowPolicy overflowPolicy)
+	{
+		ClientPoolSubscription subscription = new ClientPoolSubscription(name, observer, capacity, overflowPolicy);
+		subscriptions.add(subscription);
+		return subscription;
+	}
+
+	/**
+	 * Cancels the subscription, its observer receives no further notifications.
+	 * @param subscription the subscription
+	 */
+	public void unsubscribe(ClientPoolSubscription subscription)
+	{
+		subscriptions.remove(subscription);
+		subscription.cancel();
+	}
+
+	/**
+	 * Returns the current subscriptions.
+	 * @return the subscriptions
+	 */
+	public List<ClientPoolSubscription> getSubscriptions()
+	{
+		return new ArrayList<>(subscriptions);
+	}
+
+	/**
+	 * {@link ClientPoolObserver}
+	 */
+	@Override public void notifyNewClientConnected(String hostName, String ipAddress)
+	{
+		publish(ClientPoolEvent.connected(hostName, ipAddress));
+	}
+
+	/**
+	 * {@link ClientPoolObserver}
+	 */
+	@Override public void notifyClientDisconnected(String ipAddress)
+	{
+		publish(ClientPoolEvent.disconnected(ipAddress));
+	}
+
+	/**
+	 * {@link ClientPoolObserver}
+	 */
+	@Override public void notifyClientAppUpdate(AppExe appExe, String ipAddress)
+	{
+		publish(ClientPoolEvent.appUpdate(appExe, ipAddress));
+	}
+
+	/**
+	 * {@link ClientPoolObserver}
+	 */
+	@Override public void notifyClientDegraded(String ipAddress, boolean degraded)
+	{
+		publish(ClientPoolEvent.degraded(ipAddress, degraded));
+	}
+
+	private void publish(ClientPoolEvent event)
+	{
+		for (ClientPoolSubscription subscription : subscriptions) {
+			subscription.publish(event);
+		}
+	}
+}
@@ -3,6 +3,9 @@ package edu.nyu.cess.remote.server.client;
 import edu.nyu.cess.remote.common.app.AppExe;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by aruff on 2/15/16.
@@ -10,4 +13,68 @@ import java.util.ArrayList;
 public interface ClientPoolExecutionManager
 {
     void executeApp(AppExe appExe, ArrayList<String> ipAddresses);
+
+	/**
+	 * Sends the app execution request to every connected client in the group, without waiting for any of them.
+	 * @param appExe the requested app execution
+	 * @param ipAddresses the ip addresses of the clients
+	 * @param timeout the time each client has to respond
+	 * @param unit the timeout unit
+	 * @return the group execution, tracking the response of every client
+	 */
+	GroupExecution executeAppGroup(AppExe appExe, Collection<String> ipAddresses, long timeout, TimeUnit unit);
+
+	/**
+	 * Sends the app execution request to every connected client in the group, without waiting for any of them.
+	 * @param appExe the requested app execution
+	 * @param clientIds the ids the lab layout assigned to the clients
+	 * @param timeout the time each client has to respond
+	 * @param unit the timeout unit
+	 * @return the group execution, tracking the response of every client
+	 */
+	GroupExecution executeAppGroup(AppExe appExe, BitSet clientIds, long timeout, TimeUnit unit);
+
+	/**
+	 * Sends the app execution request to every connected client in the group, to be executed at the given time of the
+	 * server's clock.
+	 * @param appExe the requested app execution
+	 * @param ipAddresses the ip addresses of the clients
+	 * @param startTimeMicros the time the clients execute the request at, in microseconds of the server's
+	 *                        {@link edu.nyu.cess.remote.common.net.PreciseClock}, 0 to execute it once received
+	 * @param timeout the time each client has to respond, from the time the request is sent
+	 * @param unit the timeout unit
+	 * @return the group execution, tracking the response of every client
+	 */
+	GroupExecution executeAppGroupAt(AppExe appExe, Collection<String> ipAddresses, long startTimeMicros, long timeout,
+									 TimeUnit unit);
+
+	/**
+	 * Sends the app start to prepare to every connected client in the group, the first phase of a prepared start.
+	 * @param appExe the app start to prepare
+	 * @param ipAddresses the ip addresses of the clients
+	 * @param timeout the time each client has to report its readiness
+	 * @param unit the timeout unit
+	 * @return the start barrier, tracking the readiness of every client
+	 */
+	StartBarrier prepareAppGroup(AppExe appExe, Collection<String> ipAddresses, long timeout, TimeUnit unit);
+
+	/**
+	 * Sends the app start to prepare to every connected client in the group, the first phase of a prepared start.
+	 * @param appExe the app start to prepare
+	 * @param clientIds the ids the lab layout assigned to the clients
+	 * @param timeout the time each client has to report its readiness
+	 * @param unit the timeout unit
+	 * @return the start barrier, tracking the readiness of every client
+	 */
+	StartBarrier prepareAppGroup(AppExe appExe, BitSet clientIds, long timeout, TimeUnit unit);
+
+	/**
+	 * Sends the go to every ready client of the start barrier, launching the prepared app. The clients that are not
+	 * ready fail in the returned group execution.
+	 * @param startBarrier the start barrier
+	 * @param timeout the time each client has to respond
+	 * @param unit the timeout unit
+	 * @return the group execution, tracking the response of every client
+	 */
+	GroupExecution releaseAppGroup(StartBarrier startBarrier, long timeout, TimeUnit unit);
 }
@@ -5,5 +5,21 @@ package edu.nyu.cess.remote.server.client;
  */
 public interface ClientPoolObservable
 {
+	/**
+	 * Subscribes the observer to the client pool notifications, with the default queue capacity. Once the queue is
+	 * full, only superseded app updates are dropped, see {@link EventOverflowPolicy#COALESCE_UPDATES}.
+	 * @param clientPoolObserver the observer
+	 */
 	void addObserver(ClientPoolObserver clientPoolObserver);
+
+	/**
+	 * Subscribes the observer to the client pool notifications, delivered on a thread of its own.
+	 * @param name the subscriber name
+	 * @param clientPoolObserver the observer
+	 * @param capacity the number of events that can be queued for the observer
+	 * @param overflowPolicy what is done with an event published while the queue is full
+	 * @return the subscription
+	 */
+	ClientPoolSubscription subscribe(String name, ClientPoolObserver clientPoolObserver, int capacity,
+									 EventOverflowPolicy overflowPolicy);
 }
@@ -10,4 +10,5 @@ public interface ClientPoolObserver
     void notifyNewClientConnected(String hostName, String ipAddress);
     void notifyClientDisconnected(String ipAddress);
     void notifyClientAppUpdate(AppExe appExe, String ipAddress);
+    void notifyClientDegraded(String ipAddress, boolean degraded);
 }
@@ -4,60 +4,257 @@
 package edu.nyu.cess.remote.server.client;
 
 import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppState;
+import edu.nyu.cess.remote.common.message.DataChunk;
+import edu.nyu.cess.remote.common.message.DataChunkAssembler;
 import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocket;
 import edu.nyu.cess.remote.common.message.MessageSocketObserver;
 import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.message.StartTiming;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.codec.Hello;
 import edu.nyu.cess.remote.common.net.ConnectionState;
 import edu.nyu.cess.remote.common.net.NetworkInfo;
-import edu.nyu.cess.remote.server.net.ClientConnectionMonitor;
-import edu.nyu.cess.remote.server.net.ClientSocket;
-import edu.nyu.cess.remote.server.net.MessageMonitorThread;
+import edu.nyu.cess.remote.common.net.PreciseClock;
+import edu.nyu.cess.remote.server.lab.LabLayout;
+import edu.nyu.cess.remote.server.net.AdmissionStats;
+import edu.nyu.cess.remote.server.net.CommandMulticaster;
+import edu.nyu.cess.remote.server.net.ServerMessageSocket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 
 /**
  * ClientPoolProxy handles all client app executions that are currently connected to the server, and forwards
  * the client state changes to the the client observer.
+ *
+ * With a {@link CommandMulticaster}, group app executions are sent to every target in a single datagram, so that
+ * the clients all receive them at about the same moment. Each client confirms the request over its connection,
+ * and the request is retransmitted over the connection to the clients that have not confirmed it in time.
+ *
+ * A group start may be prepared ahead: the clients are sent the app to prepare, their readiness is tracked by a
+ * {@link StartBarrier}, and a go then launches the prepared app on the ready clients, sent like a group request.
+ *
+ * The clients are kept in a concurrent map, one {@link ConnectedClient} each, so that the messages of different
+ * clients are handled in parallel. No lock is held while a message is sent. The observers are notified through a
+ * {@link ClientPoolEventBus}, a slow observer does not hold up the handling of the messages.
+ *
+ * The live state of the clients of the lab layout is also kept in a {@link ClientStateTable}, indexed by the client
+ * ids the layout assigned, and group app executions may target a set of client ids.
  */
-public class ClientPoolProxy implements ClientPoolExecutionManager, ClientPoolObservable, ClientPool, MessageSocketObserver, ClientDisconnectionObserver
+public class ClientPoolProxy implements ClientPoolExecutionManager, ClientPoolObservable, ClientPool, MessageSocketObserver, ClientDisconnectionObserver,
+		SlowClientObserver
 {
 	private final static Logger log = LoggerFactory.getLogger(ClientPoolProxy.class);
 
-	private Map<String, AppExe> clientAppExecutions = new HashMap<>();
-	private Map<String, ClientSocket> clientSockets = new HashMap<>();
+	private final ConcurrentMap<String, ConnectedClient> clients = new ConcurrentHashMap<>();
+	private final LabLayout labLayout;
+	private final ClientStateTable clientStateTable;
+
+	private static final int DEFAULT_EVENT_QUEUE_CAPACITY = 8192;
+
+	private final ClientPoolEventBus eventBus = new ClientPoolEventBus();
+
+	private final List<GroupExecution> groupExecutions = new CopyOnWriteArrayList<>();
+	private final List<StartBarrier> startBarriers = new CopyOnWriteArrayList<>();
+	private final ScheduledExecutorService groupExecutionTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "group-execution-timer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private volatile CommandMulticaster commandMulticaster;
+	private volatile long commandRetransmitDelayMillis;
+	private final AtomicLong nextSequenceNumber = new AtomicLong((new Random().nextLong() >>> 2) + 1);
+	private final Map<Long, Map<String, MessageSocket>> unconfirmedCommands = new ConcurrentHashMap<>();
+	private final AtomicLong confirmedCommandCount = new AtomicLong();
+	private final AtomicLong retransmittedCommandCount = new AtomicLong();
+
+	private static final int MAX_BULK_PAYLOAD_SIZE = 16 * 1024 * 1024;
+	private volatile BulkPayloadObserver bulkPayloadObserver;
+	private final Map<String, DataChunkAssembler> chunkAssemblers = new ConcurrentHashMap<>();
 
-	private final Object clientSocketsLock = new Object();
-	private final Object clientAppExecutionsLock = new Object();
-	private final Object clientPoolObserverLock = new Object();
+	private volatile long synchronizedStartDelayMillis;
+	private final Map<String, StartTiming> startTimings = new ConcurrentHashMap<>();
 
-    private ClientPoolObserver clientPoolObserver;
+	private volatile AdmissionStats admissionStats;
+
+	/**
+	 * Creates a client pool whose state table is empty, for clients that are not part of any lab layout.
+	 */
+	public ClientPoolProxy()
+	{
+		this(new LabLayout());
+	}
+
+	/**
+	 * Creates a client pool keeping the live state of the clients of the lab layout.
+	 * @param labLayout the lab layout, assigning the client ids
+	 */
+	public ClientPoolProxy(LabLayout labLayout)
+	{
+		this.labLayout = labLayout;
+		this.clientStateTable = new ClientStateTable(labLayout.getComputerCount());
+	}
+
+	/**
+	 * Returns the live state of the clients of the lab layout.
+	 * @return the client state table
+	 */
+	public ClientStateTable getClientStateTable()
+	{
+		return clientStateTable;
+	}
+
+	/**
+	 * Sends the group app executions on the command channel, instead of over every target connection.
+	 * @param commandMulticaster the command channel
+	 * @param retransmitDelay the time clients have to confirm a request before it is sent over their connection
+	 * @param unit the retransmit delay unit
+	 */
+	public void setCommandMulticaster(CommandMulticaster commandMulticaster, long retransmitDelay, TimeUnit unit)
+	{
+		this.commandRetransmitDelayMillis = unit.toMillis(retransmitDelay);
+		this.commandMulticaster = commandMulticaster;
+	}
+
+	/**
+	 * Sets the observer receiving the bulk payloads sent by the clients. Without one, the chunks of bulk payloads
+	 * are dropped as they arrive.
+	 * @param bulkPayloadObserver the observer
+	 */
+	public void setBulkPayloadObserver(BulkPayloadObserver bulkPayloadObserver)
+	{
+		this.bulkPayloadObserver = bulkPayloadObserver;
+	}
+
+	/**
+	 * Schedules the starts of group app executions this long ahead, so that every client launches the app at the
+	 * same time of the server's clock. The delay must cover the time taken to deliver the requests.
+	 * @param delay the delay, 0 to start the apps as soon as the requests are received
+	 * @param unit the delay unit
+	 */
+	public void setSynchronizedStartDelay(long delay, TimeUnit unit)
+	{
+		this.synchronizedStartDelayMillis = unit.toMillis(delay);
+	}
+
+	/**
+	 * Sets the admission statistics, in which a connection replacing the one of a known client is recorded as visible
+	 * as soon as it is added, the client being shown already.
+	 * @param admissionStats the admission statistics
+	 */
+	public void setAdmissionStats(AdmissionStats admissionStats)
+	{
+		this.admissionStats = admissionStats;
+	}
+
+	/**
+	 * Returns the timing the client reported for its last synchronized start.
+	 * @param clientIp the client ip address
+	 * @return the start timing, or null if the client has not reported a synchronized start
+	 */
+	public StartTiming getStartTiming(String clientIp)
+	{
+		return startTimings.get(clientIp);
+	}
+
+	/**
+	 * Returns the number of command channel requests the targets confirmed in time.
+	 * @return the confirmed request count
+	 */
+	public long getConfirmedCommandCount()
+	{
+		return confirmedCommandCount.get();
+	}
+
+	/**
+	 * Returns the number of command channel requests retransmitted over a client connection.
+	 * @return the retransmitted request count
+	 */
+	public long getRetransmittedCommandCount()
+	{
+		return retransmittedCommandCount.get();
+	}
 
 	/**
 	 * {@link ClientPoolObservable}
      */
-    public void addObserver(ClientPoolObserver clientPoolObserver)
+    @Override public void addObserver(ClientPoolObserver clientPoolObserver)
     {
-        this.clientPoolObserver = clientPoolObserver;
+		String name = clientPoolObserver.getClass().getSimpleName();
+		subscribe(name.isEmpty() ? clientPoolObserver.getClass().getName() : name, clientPoolObserver,
+				DEFAULT_EVENT_QUEUE_CAPACITY, EventOverflowPolicy.COALESCE_UPDATES);
     }
 
+	/**
+	 * {@link ClientPoolObservable}
+	 */
+	@Override public ClientPoolSubscription subscribe(String name, ClientPoolObserver clientPoolObserver, int capacity,
+													  EventOverflowPolicy overflowPolicy)
+	{
+		return eventBus.subscribe(name, clientPoolObserver, capacity, overflowPolicy);
+	}
+
+	/**
+	 * Returns the event bus notifying the observers.
+	 * @return the event bus
+	 */
+	public ClientPoolEventBus getEventBus()
+	{
+		return eventBus;
+	}
+
 	/**
 	 * {@link ClientDisconnectionObserver}
 	 */
 	@Override public void notifyClientDisconnected(String clientIp)
 	{
-		synchronized (clientAppExecutionsLock) {
-			clientAppExecutions.remove(clientIp);
+		ConnectedClient client = clients.remove(clientIp);
+		if (client != null && client.getClientId() >= 0) {
+			clientStateTable.notifyDisconnected(client.getClientId());
+		}
+		chunkAssemblers.remove(clientIp);
+
+		for (GroupExecution groupExecution : groupExecutions) {
+			groupExecution.notifyFailure(clientIp, new IOException("Client " + clientIp + " disconnected."));
 		}
-		synchronized (clientSocketsLock) {
-			clientSockets.remove(clientIp);
+		for (StartBarrier startBarrier : startBarriers) {
+			startBarrier.notifyFailure(clientIp, new IOException("Client " + clientIp + " disconnected."));
 		}
 
-		synchronized (clientPoolObserverLock) {
-			clientPoolObserver.notifyClientDisconnected(clientIp);
+		eventBus.notifyClientDisconnected(clientIp);
+	}
+
+	/**
+	 * {@link SlowClientObserver}
+	 */
+	@Override public void notifyClientDegraded(String clientIp, boolean degraded)
+	{
+		ConnectedClient client = clients.get(clientIp);
+		if (client != null && client.getClientId() >= 0) {
+			clientStateTable.setDegraded(client.getClientId(), degraded);
 		}
+		eventBus.notifyClientDegraded(clientIp, degraded);
 	}
 
 	/**
@@ -65,23 +262,39 @@ public class ClientPoolProxy implements ClientPoolExecutionManager, ClientPoolOb
 	 */
 	@Override public void notifyMessageReceived(NetworkInfo networkInfo, Message message)
 	{
-		synchronized (clientSocketsLock) {
-			if ( ! clientSockets.containsKey(networkInfo.getClientIp())) {
-				log.error("Message received from an unknown computer {}.", networkInfo.getClientIp());
-				return;
-			}
+		ConnectedClient client = clients.get(networkInfo.getClientIp());
+		if (client == null) {
+			log.error("Message received from an unknown computer {}.", networkInfo.getClientIp());
+			return;
+		}
+		if (client.getClientId() >= 0) {
+			clientStateTable.notifyMessageReceived(client.getClientId(), System.nanoTime());
 		}
 
 		switch(message.getMessageType()) {
 			case APP_EXE_UPDATE:
                 log.debug("App execution update received from computer {}.", networkInfo.getClientName());
 				AppExe appExe = message.getAppExe();
-                handleAppExeUpdate(networkInfo, appExe);
+                handleAppExeUpdate(networkInfo, client, appExe);
+				break;
+			case APP_EXE_ACK:
+				handleCommandConfirmation(networkInfo.getClientIp(), message.getSequenceNumber());
 				break;
 			case APP_EXE_REQUEST:
 				log.error("Ignored app execution request from computer {}. The server does not perform app executions.",
 						networkInfo.getClientName());
 				break;
+			case DATA_CHUNK:
+				handleDataChunk(networkInfo.getClientIp(), message.getDataChunk());
+				break;
+			case START_REPORT:
+				handleStartReport(networkInfo.getClientIp(), message.getStartTiming());
+				break;
+			case APP_EXE_READY:
+				for (StartBarrier startBarrier : startBarriers) {
+					startBarrier.notifyReady(networkInfo.getClientIp(), message.getAppExe());
+				}
+				break;
 			case KEEP_ALIVE_PING:
 			default:
 				break;
@@ -98,24 +311,39 @@ public class ClientPoolProxy implements ClientPoolExecutionManager, ClientPoolOb
 
 	/**
 	 * {@link ClientPool}
+	 *
+	 * A connection replacing the one of a client that is still known, such as a resumed session, is taken over
+	 * silently: the client's app execution state is kept and the observer is not notified again.
      */
-	public void addClient(ClientSocket clientSocket)
+	public void addClient(MessageSocket clientSocket)
 	{
-		String clientIp = clientSocket.getClientIp();
+		final String clientIp = clientSocket.getClientIp();
 
-		synchronized (clientSocketsLock) {
-			clientSockets.put(clientIp, clientSocket);
+		// The connection of a known client is replaced atomically with its removal
+		final ConnectedClient newClient = new ConnectedClient(labLayout.getClientId(clientIp), clientSocket);
+		ConnectedClient client = clients.compute(clientIp, new BiFunction<String, ConnectedClient, ConnectedClient>() {
+			@Override public ConnectedClient apply(String ip, ConnectedClient knownClient)
+			{
+				if (knownClient == null) {
+					return newClient;
+				}
+				knownClient.setSocket(newClient.getSocket());
+				return knownClient;
+			}
+		});
+		if (client.getClientId() >= 0) {
+			clientStateTable.notifyConnected(client.getClientId());
 		}
-
-		Thread messageMonitorThread = new Thread(new MessageMonitorThread(clientSocket, this));
-		messageMonitorThread.start();
-
-		Thread portMonitorThread = new Thread(new ClientConnectionMonitor(clientSocket, this));
-		portMonitorThread.start();
-
-		synchronized (clientPoolObserverLock) {
-            clientPoolObserver.notifyNewClientConnected(clientSocket.getClientName(), clientIp);
+		if (client != newClient) {
+			log.debug("Connection of computer {} replaced.", clientIp);
+			AdmissionStats stats = admissionStats;
+			if (stats != null) {
+				stats.notifyVisible(clientIp);
+			}
+			return;
 		}
+
+		eventBus.notifyNewClientConnected(clientSocket.getClientName(), clientIp);
 	}
 
     /**
@@ -126,47 +354,425 @@ public class ClientPoolProxy implements ClientPoolExecutionManager, ClientPoolOb
 		long seed = System.nanoTime();
 		Collections.shuffle(ipAddresses, new Random(seed));
 
-		synchronized (clientSocketsLock) {
-			for (String ipAddress : ipAddresses) {
-				if (clientSockets.containsKey(ipAddress)) {
-					ClientSocket clientSocket = clientSockets.get(ipAddress);
-					try {
-						clientSocket.sendMessage(new Message(MessageType.APP_EXE_REQUEST, appExe, clientSocket.getNetworkInfo()));
-						log.debug("Message sent to client. " + clientSocket.getNetworkInfo().toString());
-					} catch (IOException e) {
-						log.error("Failed to send application execution request", e);
-					}
+		for (String ipAddress : ipAddresses) {
+			MessageSocket clientSocket = getSocket(ipAddress);
+			if (clientSocket == null) {
+				continue;
+			}
+			try {
+				clientSocket.sendMessage(new Message(MessageType.APP_EXE_REQUEST, appExe, clientSocket.getNetworkInfo()));
+				log.debug("Message sent to client. " + clientSocket.getNetworkInfo().toString());
+			} catch (IOException e) {
+				log.error("Failed to send application execution request", e);
+			}
+		}
+	}
+
+    /**
+     * {@link ClientPoolExecutionManager}
+	 *
+	 * Starts are scheduled the synchronized start delay ahead, if one is set.
+     */
+	@Override public GroupExecution executeAppGroup(AppExe appExe, Collection<String> ipAddresses, long timeout, TimeUnit unit)
+	{
+		long delayMillis = synchronizedStartDelayMillis;
+		if (appExe.getState() != AppState.STARTED || delayMillis <= 0) {
+			return executeAppGroupAt(appExe, ipAddresses, 0, timeout, unit);
+		}
+		return executeAppGroupAt(appExe, ipAddresses, PreciseClock.currentTimeMicros() + delayMillis * 1000,
+				unit.toMillis(timeout) + delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * {@link ClientPoolExecutionManager}
+	 */
+	@Override public GroupExecution executeAppGroup(AppExe appExe, BitSet clientIds, long timeout, TimeUnit unit)
+	{
+		return executeAppGroup(appExe, labLayout.getIpAddresses(clientIds), timeout, unit);
+	}
+
+    /**
+     * {@link ClientPoolExecutionManager}
+	 *
+	 * The group execution is registered before any request is sent, so that no response can be missed. Sending
+	 * only queues the request for each client's writer, the requests are written to the clients concurrently.
+	 *
+	 * The start is only scheduled if every target supports {@link ConnectionHandshake#CLOCK_SYNC}, the others would
+	 * not be able to read the request. The app is started as soon as the requests are received otherwise.
+     */
+	@Override public GroupExecution executeAppGroupAt(AppExe appExe, Collection<String> ipAddresses, long startTimeMicros,
+													  long timeout, TimeUnit unit)
+	{
+		GroupExecution groupExecution = registerGroupExecution(appExe, ipAddresses);
+		Map<String, MessageSocket> targetSockets = getTargetSockets(groupExecution.getTargets(), groupExecution);
+		sendAppGroup(MessageType.APP_EXE_REQUEST, groupExecution, appExe, getStartTiming(startTimeMicros, targetSockets.values()),
+				targetSockets);
+		expireGroupExecution(groupExecution, timeout, unit);
+		return groupExecution;
+	}
+
+	/**
+	 * {@link ClientPoolExecutionManager}
+	 *
+	 * The clients that can not prepare a start, lacking {@link ConnectionHandshake#PREPARED_START}, are ready at once.
+	 */
+	@Override public StartBarrier prepareAppGroup(AppExe appExe, Collection<String> ipAddresses, long timeout, TimeUnit unit)
+	{
+		final StartBarrier startBarrier = new StartBarrier(appExe, new LinkedHashSet<>(ipAddresses));
+		startBarriers.add(startBarrier);
+		startBarrier.getCompletion().whenComplete(new BiConsumer<Void, Throwable>() {
+			@Override public void accept(Void result, Throwable failure)
+			{
+				startBarriers.remove(startBarrier);
+				log.info("Start barrier completed {}", startBarrier);
+			}
+		});
+
+		Map<String, MessageSocket> targetSockets = new HashMap<>();
+		for (String ipAddress : startBarrier.getTargets()) {
+			targetSockets.put(ipAddress, getSocket(ipAddress));
+		}
+
+		for (Map.Entry<String, MessageSocket> target : targetSockets.entrySet()) {
+			String ipAddress = target.getKey();
+			MessageSocket clientSocket = target.getValue();
+			if (clientSocket == null) {
+				startBarrier.notifyFailure(ipAddress, new IOException("Client " + ipAddress + " is not connected."));
+			}
+			else if ( ! supports(clientSocket, ConnectionHandshake.PREPARED_START)) {
+				startBarrier.notifyUnprepared(ipAddress);
+			}
+			else {
+				startBarrier.notifyPrepareSent(ipAddress);
+				try {
+					clientSocket.sendMessage(new Message(MessageType.APP_EXE_PREPARE, appExe, clientSocket.getNetworkInfo()));
+				} catch (IOException e) {
+					log.error("Failed to send the prepare to {}. Error = {}", ipAddress, e.getMessage());
+					startBarrier.notifyFailure(ipAddress, e);
 				}
 			}
 		}
+
+		groupExecutionTimer.schedule(new Runnable() {
+			@Override public void run()
+			{
+				startBarrier.expire();
+			}
+		}, timeout, unit);
+
+		return startBarrier;
+	}
+
+	/**
+	 * {@link ClientPoolExecutionManager}
+	 */
+	@Override public StartBarrier prepareAppGroup(AppExe appExe, BitSet clientIds, long timeout, TimeUnit unit)
+	{
+		return prepareAppGroup(appExe, labLayout.getIpAddresses(clientIds), timeout, unit);
+	}
+
+	/**
+	 * {@link ClientPoolExecutionManager}
+	 *
+	 * The prepared clients are sent the go, the others a start request. The go is scheduled the synchronized start
+	 * delay ahead, if one is set and every ready client can synchronize its start.
+	 */
+	@Override public GroupExecution releaseAppGroup(StartBarrier startBarrier, long timeout, TimeUnit unit)
+	{
+		AppExe appExe = startBarrier.getAppExe();
+		GroupExecution groupExecution = registerGroupExecution(appExe, startBarrier.getTargets());
+
+		Set<String> readyTargets = startBarrier.getReadyTargets();
+		for (String ipAddress : startBarrier.getTargets()) {
+			if ( ! readyTargets.contains(ipAddress)) {
+				groupExecution.notifyFailure(ipAddress, getNotReadyCause(ipAddress, startBarrier.getFuture(ipAddress)));
+			}
+		}
+
+		Map<String, MessageSocket> targetSockets = getTargetSockets(readyTargets, groupExecution);
+		Map<String, MessageSocket> unpreparedSockets = new HashMap<>();
+		Iterator<Map.Entry<String, MessageSocket>> targets = targetSockets.entrySet().iterator();
+		while (targets.hasNext()) {
+			Map.Entry<String, MessageSocket> target = targets.next();
+			if (startBarrier.isUnprepared(target.getKey())) {
+				unpreparedSockets.put(target.getKey(), target.getValue());
+				targets.remove();
+			}
+		}
+
+		long delayMillis = synchronizedStartDelayMillis;
+		StartTiming startTiming = null;
+		if (delayMillis > 0) {
+			List<MessageSocket> readySockets = new ArrayList<>(targetSockets.values());
+			readySockets.addAll(unpreparedSockets.values());
+			startTiming = getStartTiming(PreciseClock.currentTimeMicros() + delayMillis * 1000, readySockets);
+		}
+		if (startTiming != null) {
+			timeout = unit.toMillis(timeout) + delayMillis;
+			unit = TimeUnit.MILLISECONDS;
+		}
+
+		long lastReadyNanoTime = startBarrier.getLastReadyNanoTime();
+		if (lastReadyNanoTime != 0) {
+			log.info("Go sent to {} prepared clients {} ms after the last was ready.", targetSockets.size(),
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastReadyNanoTime));
+		}
+		sendAppGroup(MessageType.APP_EXE_GO, groupExecution, appExe, startTiming, targetSockets);
+		sendAppGroup(MessageType.APP_EXE_REQUEST, groupExecution, appExe, startTiming, unpreparedSockets);
+		expireGroupExecution(groupExecution, timeout, unit);
+		return groupExecution;
+	}
+
+	private GroupExecution registerGroupExecution(AppExe appExe, Collection<String> ipAddresses)
+	{
+		final GroupExecution groupExecution = new GroupExecution(appExe, new LinkedHashSet<>(ipAddresses));
+		groupExecutions.add(groupExecution);
+		groupExecution.getCompletion().whenComplete(new BiConsumer<Void, Throwable>() {
+			@Override public void accept(Void result, Throwable failure)
+			{
+				groupExecutions.remove(groupExecution);
+				log.info("Group execution completed {}", groupExecution);
+			}
+		});
+		return groupExecution;
+	}
+
+	private void expireGroupExecution(final GroupExecution groupExecution, long timeout, TimeUnit unit)
+	{
+		groupExecutionTimer.schedule(new Runnable() {
+			@Override public void run()
+			{
+				groupExecution.expire();
+			}
+		}, timeout, unit);
+	}
+
+	/**
+	 * Returns the sockets of the connected targets, the others are failed.
+	 */
+	private Map<String, MessageSocket> getTargetSockets(Collection<String> ipAddresses, GroupExecution groupExecution)
+	{
+		Map<String, MessageSocket> targetSockets = new HashMap<>();
+		for (String ipAddress : ipAddresses) {
+			targetSockets.put(ipAddress, getSocket(ipAddress));
+		}
+
+		Iterator<Map.Entry<String, MessageSocket>> targets = targetSockets.entrySet().iterator();
+		while (targets.hasNext()) {
+			Map.Entry<String, MessageSocket> target = targets.next();
+			if (target.getValue() == null) {
+				groupExecution.notifyFailure(target.getKey(), new IOException("Client " + target.getKey() + " is not connected."));
+				targets.remove();
+			}
+		}
+		return targetSockets;
+	}
+
+	/**
+	 * Returns the timing of a start at the given time, if every target can synchronize its start.
+	 */
+	private StartTiming getStartTiming(long startTimeMicros, Collection<MessageSocket> targetSockets)
+	{
+		if (startTimeMicros <= 0) {
+			return null;
+		}
+		for (MessageSocket clientSocket : targetSockets) {
+			if ( ! supports(clientSocket, ConnectionHandshake.CLOCK_SYNC)) {
+				log.warn("Not every client of the group can synchronize its start, the app is started at once.");
+				return null;
+			}
+		}
+		return new StartTiming(startTimeMicros);
+	}
+
+	private static Throwable getNotReadyCause(String ipAddress, CompletableFuture<AppExe> readiness)
+	{
+		if ( ! readiness.isDone()) {
+			return new TimeoutException("Client " + ipAddress + " was not ready in time.");
+		}
+		try {
+			return new IllegalStateException("Client " + ipAddress + " is not ready: " + readiness.get().getErrorMessage());
+		} catch (ExecutionException e) {
+			return e.getCause();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return e;
+		}
+	}
+
+	/**
+	 * Sends the request to every target, with the command multicaster if one is set.
+	 */
+	private void sendAppGroup(MessageType messageType, GroupExecution groupExecution, AppExe appExe, StartTiming startTiming,
+							  Map<String, MessageSocket> targetSockets)
+	{
+		CommandMulticaster multicaster = commandMulticaster;
+		if (multicaster != null && ! targetSockets.isEmpty()) {
+			multicastAppGroup(multicaster, messageType, groupExecution, appExe, startTiming, targetSockets);
+		}
+		else {
+			for (Map.Entry<String, MessageSocket> target : targetSockets.entrySet()) {
+				groupExecution.notifyRequestSent(target.getKey());
+				sendAppExeRequest(groupExecution, target.getKey(), target.getValue(),
+						new Message(messageType, appExe, target.getValue().getNetworkInfo(), 0, startTiming));
+			}
+		}
+	}
+
+	/**
+	 * Sends the request to every target in a single datagram, and schedules its retransmission over the connections
+	 * of the targets that have not confirmed it by then. The request is retransmitted at once if the datagram
+	 * cannot be sent.
+	 */
+	private void multicastAppGroup(CommandMulticaster multicaster, final MessageType messageType, final GroupExecution groupExecution,
+								   final AppExe appExe, final StartTiming startTiming, Map<String, MessageSocket> targetSockets)
+	{
+		final long sequenceNumber = nextSequenceNumber.getAndIncrement();
+		unconfirmedCommands.put(sequenceNumber, new ConcurrentHashMap<>(targetSockets));
+		for (String ipAddress : targetSockets.keySet()) {
+			groupExecution.notifyRequestSent(ipAddress);
+		}
+
+		long retransmitDelayMillis = commandRetransmitDelayMillis;
+		try {
+			multicaster.send(new Message(messageType, appExe, null, sequenceNumber, startTiming),
+					targetSockets.keySet());
+		} catch (IOException e) {
+			log.error("Failed to send the group command {}, sending it over the connections. Error = {}", sequenceNumber, e.getMessage());
+			retransmitDelayMillis = 0;
+		}
+
+		groupExecutionTimer.schedule(new Runnable() {
+			@Override public void run()
+			{
+				retransmitAppGroup(messageType, groupExecution, appExe, startTiming, sequenceNumber);
+			}
+		}, retransmitDelayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void retransmitAppGroup(MessageType messageType, GroupExecution groupExecution, AppExe appExe, StartTiming startTiming,
+									long sequenceNumber)
+	{
+		Map<String, MessageSocket> unconfirmedTargets = unconfirmedCommands.remove(sequenceNumber);
+		if (unconfirmedTargets == null || unconfirmedTargets.isEmpty()) {
+			return;
+		}
+
+		log.info("Retransmitting group command {} to {} clients.", sequenceNumber, unconfirmedTargets.size());
+		for (Map.Entry<String, MessageSocket> target : unconfirmedTargets.entrySet()) {
+			retransmittedCommandCount.incrementAndGet();
+			// The target's connection may have been superseded since the request was sent
+			MessageSocket clientSocket = getSocket(target.getKey());
+			if (clientSocket == null) {
+				clientSocket = target.getValue();
+			}
+			sendAppExeRequest(groupExecution, target.getKey(), clientSocket,
+					new Message(messageType, appExe, clientSocket.getNetworkInfo(), sequenceNumber, startTiming));
+		}
+	}
+
+	private void sendAppExeRequest(GroupExecution groupExecution, String ipAddress, MessageSocket clientSocket, Message message)
+	{
+		try {
+			clientSocket.sendMessage(message);
+		} catch (IOException e) {
+			log.error("Failed to send application execution request to {}. Error = {}", ipAddress, e.getMessage());
+			groupExecution.notifyFailure(ipAddress, e);
+		}
+	}
+
+	private static boolean supports(MessageSocket clientSocket, int capability)
+	{
+		Hello hello = (clientSocket instanceof ServerMessageSocket) ? ((ServerMessageSocket) clientSocket).getHello() : null;
+		return hello != null && hello.supports(capability);
+	}
+
+	private void handleStartReport(String clientIp, StartTiming startTiming)
+	{
+		startTimings.put(clientIp, startTiming);
+		if (startTiming.getUncertaintyMicros() < 0) {
+			log.info("Client {} started {} us after the scheduled start, its clock offset was unknown.", clientIp,
+					startTiming.getSkewMicros());
+		}
+		else {
+			log.info("Client {} started {} us after the scheduled start (+/- {} us).", clientIp, startTiming.getSkewMicros(),
+					startTiming.getUncertaintyMicros());
+		}
+	}
+
+	private void handleCommandConfirmation(String clientIp, long sequenceNumber)
+	{
+		Map<String, MessageSocket> unconfirmedTargets = unconfirmedCommands.get(sequenceNumber);
+		if (unconfirmedTargets != null && unconfirmedTargets.remove(clientIp) != null) {
+			confirmedCommandCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Adds the chunk to the bulk payload of its lane, and passes the payload on once it is complete.
+	 */
+	private void handleDataChunk(String clientIp, DataChunk dataChunk)
+	{
+		BulkPayloadObserver observer = bulkPayloadObserver;
+		if (observer == null) {
+			log.debug("Chunk on lane {} from {} dropped, no bulk payload observer is set.", dataChunk.getLane(), clientIp);
+			return;
+		}
+
+		DataChunkAssembler assembler = chunkAssemblers.get(clientIp);
+		if (assembler == null) {
+			DataChunkAssembler newAssembler = new DataChunkAssembler(MAX_BULK_PAYLOAD_SIZE);
+			assembler = chunkAssemblers.putIfAbsent(clientIp, newAssembler);
+			if (assembler == null) {
+				assembler = newAssembler;
+			}
+		}
+
+		byte[] payload;
+		try {
+			payload = assembler.add(dataChunk);
+		}
+		catch (IOException e) {
+			log.error("Bulk payload from {} dropped. Error = {}", clientIp, e.getMessage());
+			return;
+		}
+		if (payload != null) {
+			observer.notifyBulkPayloadReceived(clientIp, dataChunk.getLane(), payload);
+		}
 	}
 
 	/**
 	 * Handles application executions updates sent by the client, and notifies observers of any changes.
 	 *
 	 * @param networkInfo The client's network information
+	 * @param client The client
 	 * @param currentAppExe The current application execution information
      */
-	private void handleAppExeUpdate(NetworkInfo networkInfo, AppExe currentAppExe)
+	private void handleAppExeUpdate(NetworkInfo networkInfo, ConnectedClient client, AppExe currentAppExe)
 	{
-		String clientName = networkInfo.getClientName();
 		String clientIp = networkInfo.getClientIp();
-		synchronized (clientAppExecutionsLock) {
-			boolean clientHasAppExe = clientAppExecutions.containsKey(clientIp);
-			AppExe previousAppExe = clientAppExecutions.get(clientIp);
-			if (clientHasAppExe && previousAppExe.isSame(currentAppExe)) {
-				log.debug("Duplicate app update from computer {} received and ignored. previous = {}, current = {}",
-						clientName, previousAppExe, currentAppExe);
-				return;
-			}
 
-			log.debug("AppExe ({}) received from {} received. ", currentAppExe, networkInfo.getClientName());
-			clientAppExecutions.put(networkInfo.getClientIp(), currentAppExe);
+		// Duplicate updates may still answer a group execution
+		for (GroupExecution groupExecution : groupExecutions) {
+			groupExecution.notifyClientAppUpdate(clientIp, currentAppExe);
 		}
 
-		synchronized (clientPoolObserverLock) {
-			clientPoolObserver.notifyClientAppUpdate(currentAppExe, networkInfo.getClientIp());
+		if ( ! client.updateAppExe(currentAppExe)) {
+			log.debug("Duplicate app update from computer {} received and ignored. current = {}",
+					networkInfo.getClientName(), currentAppExe);
+			return;
 		}
+
+		if (client.getClientId() >= 0) {
+			clientStateTable.updateAppExe(client.getClientId(), currentAppExe);
+		}
+		log.debug("AppExe ({}) received from {} received. ", currentAppExe, networkInfo.getClientName());
+		eventBus.notifyClientAppUpdate(currentAppExe, clientIp);
 	}
 
+	private MessageSocket getSocket(String clientIp)
+	{
+		ConnectedClient client = clients.get(clientIp);
+		return (client == null) ? null : client.getSocket();
+	}
 }
@@ -0,0 +1,178 @@
+package edu.nyu.cess.remote.server.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A subscriber of the {@link ClientPoolEventBus}: a bounded queue of events, delivered in order to the subscriber's
+ * observer by a thread of its own.
+ *
+ * Queueing an event takes no lock and never waits for the delivery thread, a full queue is handled by the
+ * subscription's {@link EventOverflowPolicy} instead, which may let the queue grow past its capacity. The delivery
+ * thread is only woken up when it is parked waiting for events. An observer that throws is logged, and keeps
+ * receiving the events that follow.
+ */
+public class ClientPoolSubscription
+{
+	private final static Logger log = LoggerFactory.getLogger(ClientPoolSubscription.class);
+
+	private final String name;
+	private final ClientPoolObserver observer;
+	private final int capacity;
+	private final EventOverflowPolicy overflowPolicy;
+
+	private final Queue<ClientPoolEvent> events = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queuedCount = new AtomicInteger();
+	private final AtomicLong deliveredCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicBoolean parked = new AtomicBoolean();
+	private final Thread deliveryThread;
+	private volatile boolean cancelled;
+
+	ClientPoolSubscription(String name, ClientPoolObserver observer, int capacity, EventOverflowPolicy overflowPolicy)
+	{
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The queue capacity must be at least 1.");
+		}
+		this.name = name;
+		this.observer = observer;
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+
+		deliveryThread = new Thread(new Runnable() {
+			@Override public void run()
+			{
+				deliverEvents();
+			}
+		}, "client-pool-events-" + name);
+		deliveryThread.setDaemon(true);
+		deliveryThread.start();
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Returns the number of events waiting to be delivered.
+	 * @return the queued event count
+	 */
+	public int getQueuedCount()
+	{
+		return Math.max(0, queuedCount.get());
+	}
+
+	/**
+	 * Returns the number of events delivered to the observer.
+	 * @return the delivered event count
+	 */
+	public long getDeliveredCount()
+	{
+		return deliveredCount.get();
+	}
+
+	/**
+	 * Returns the number of events dropped because the queue was full.
+	 * @return the dropped event count
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+
+	/**
+	 * Stops the delivery, the queued events are discarded.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+		LockSupport.unpark(deliveryThread);
+	}
+
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+	 * Queues the event for delivery.
+	 * @param event the event
+	 */
+	void publish(ClientPoolEvent event)
+	{
+		if (cancelled) {
+			return;
+		}
+
+		if (queuedCount.incrementAndGet() > capacity) {
+			if (overflowPolicy == EventOverflowPolicy.DROP_NEWEST) {
+				queuedCount.decrementAndGet();
+				droppedCount.incrementAndGet();
+				return;
+			}
+			if (overflowPolicy == EventOverflowPolicy.DROP_OLDEST) {
+				// The delivery thread may have taken the oldest event meanwhile, there is then room for this one
+				if (events.poll() != null) {
+					queuedCount.decrementAndGet();
+					droppedCount.incrementAndGet();
+				}
+			}
+			else if (event.isAppUpdate() && removeAppUpdate(event.getIpAddress())) {
+				queuedCount.decrementAndGet();
+				droppedCount.incrementAndGet();
+			}
+		}
+		events.add(event);
+
+		if (parked.get() && parked.compareAndSet(true, false)) {
+			LockSupport.unpark(deliveryThread);
+		}
+	}
+
+	/**
+	 * Removes the queued app update of the client, unless the delivery thread has taken it meanwhile.
+	 * @return true if an app update was removed
+	 */
+	private boolean removeAppUpdate(String ipAddress)
+	{
+		for (ClientPoolEvent queuedEvent : events) {
+			if (queuedEvent.isAppUpdate() && ipAddress.equals(queuedEvent.getIpAddress())) {
+				return events.remove(queuedEvent);
+			}
+		}
+		return false;
+	}
+
+	private void deliverEvents()
+	{
+		while ( ! cancelled) {
+			ClientPoolEvent event = events.poll();
+			if (event == null) {
+				parked.set(true);
+				// An event queued before the flag was set would not wake the thread up
+				if (events.isEmpty() && ! cancelled) {
+					LockSupport.park(this);
+				}
+				parked.set(false);
+				continue;
+			}
+			queuedCount.decrementAndGet();
+
+			try {
+				event.deliver(observer);
+				deliveredCount.incrementAndGet();
+			} catch (RuntimeException e) {
+				log.error("Observer {} failed to handle a client pool event.", name, e);
+			}
+		}
+		events.clear();
+	}
+}
@@ -0,0 +1,266 @@
+package edu.nyu.cess.remote.server.client;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppState;
+import edu.nyu.cess.remote.common.app.ErrorType;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The live state of every client of the lab layout, in parallel arrays indexed by the client id the layout assigned,
+ * see {@link edu.nyu.cess.remote.server.lab.LabLayout#getClientId(String)}. The memory taken and the cost of a lookup
+ * do not depend on the number of clients connected.
+ *
+ * The connection flags, the app, its state and error type of a client are packed in a single word, so that they are
+ * always read and updated together without locking. The time the client was last heard from and its round trip time
+ * are kept in their own arrays, they are written far more often. App names are interned, a client's word only holds
+ * the id of its app's name.
+ */
+public class ClientStateTable
+{
+	private static final long CONNECTED = 1L << 48;
+	private static final long DEGRADED = 1L << 49;
+
+	private static final int APP_STATE_SHIFT = 32;
+	private static final int ERROR_TYPE_SHIFT = 40;
+	private static final long NO_APP = 0xFFFFFFFFL;
+
+	private static final AppState[] APP_STATES = AppState.values();
+	private static final ErrorType[] ERROR_TYPES = ErrorType.values();
+
+	private final AtomicLongArray states;
+	private final AtomicLongArray lastSeenNanos;
+	private final AtomicLongArray roundTripNanos;
+
+	private final Map<String, Integer> appIds = new ConcurrentHashMap<>();
+	private final List<String> appNames = new ArrayList<>();
+
+	/**
+	 * Creates the table of the clients with ids from 0 to the client count, exclusive, none of them connected.
+	 * @param clientCount the number of clients
+	 */
+	public ClientStateTable(int clientCount)
+	{
+		states = new AtomicLongArray(clientCount);
+		lastSeenNanos = new AtomicLongArray(clientCount);
+		roundTripNanos = new AtomicLongArray(clientCount);
+		for (int clientId = 0; clientId < clientCount; clientId++) {
+			states.set(clientId, NO_APP);
+			roundTripNanos.set(clientId, -1);
+		}
+	}
+
+	public int getClientCount()
+	{
+		return states.length();
+	}
+
+	/* ---------------------------------------------------------------------
+	 *                          UPDATES
+	 * ---------------------------------------------------------------------*/
+
+	/**
+	 * Marks the client connected. A connection replacing one that is still known keeps the client's app state.
+	 * @param clientId the client id
+	 */
+	public void notifyConnected(int clientId)
+	{
+		long state;
+		do {
+			state = states.get(clientId);
+		} while ( ! states.compareAndSet(clientId, state, state | CONNECTED));
+		lastSeenNanos.set(clientId, System.nanoTime());
+	}
+
+	/**
+	 * Clears the client's state, and its round trip time.
+	 * @param clientId the client id
+	 */
+	public void notifyDisconnected(int clientId)
+	{
+		states.set(clientId, NO_APP);
+		roundTripNanos.set(clientId, -1);
+	}
+
+	/**
+	 * Marks the client degraded, or no longer degraded.
+	 * @param clientId the client id
+	 * @param degraded true if the client is degraded
+	 */
+	public void setDegraded(int clientId, boolean degraded)
+	{
+		long state;
+		do {
+			state = states.get(clientId);
+		} while ( ! states.compareAndSet(clientId, state, degraded ? (state | DEGRADED) : (state & ~DEGRADED)));
+	}
+
+	/**
+	 * Replaces the client's app, its state and error type with the ones of the app execution.
+	 * @param clientId the client id
+	 * @param appExe the app execution reported by the client
+	 */
+	public void updateAppExe(int clientId, AppExe appExe)
+	{
+		long appState = (appExe.getState() == null) ? 0 : appExe.getState().ordinal() + 1;
+		long errorType = (appExe.getErrorType() == null) ? 0 : appExe.getErrorType().ordinal() + 1;
+		long appId = (appExe.getAppInfo() == null) ? NO_APP : (getAppId(appExe.getAppInfo().getName()) & NO_APP);
+		long appBits = appId | (appState << APP_STATE_SHIFT) | (errorType << ERROR_TYPE_SHIFT);
+
+		long state;
+		do {
+			state = states.get(clientId);
+		} while ( ! states.compareAndSet(clientId, state, (state & (CONNECTED | DEGRADED)) | appBits));
+	}
+
+	/**
+	 * Records that a message was received from the client.
+	 * @param clientId the client id
+	 * @param nanoTime the {@link System#nanoTime()} the message was received at
+	 */
+	public void notifyMessageReceived(int clientId, long nanoTime)
+	{
+		lastSeenNanos.lazySet(clientId, nanoTime);
+	}
+
+	/**
+	 * Records the client's round trip time.
+	 * @param clientId the client id
+	 * @param roundTripTime the round trip time
+	 * @param unit the round trip time unit
+	 */
+	public void setRoundTripTime(int clientId, long roundTripTime, TimeUnit unit)
+	{
+		roundTripNanos.lazySet(clientId, unit.toNanos(roundTripTime));
+	}
+
+	/* ---------------------------------------------------------------------
+	 *                          QUERIES
+	 * ---------------------------------------------------------------------*/
+
+	public boolean isConnected(int clientId)
+	{
+		return (states.get(clientId) & CONNECTED) != 0;
+	}
+
+	public boolean isDegraded(int clientId)
+	{
+		return (states.get(clientId) & DEGRADED) != 0;
+	}
+
+	/**
+	 * Returns the name of the client's app.
+	 * @param clientId the client id
+	 * @return the app name, or null if the client has not reported an app
+	 */
+	public String getAppName(int clientId)
+	{
+		long appId = states.get(clientId) & NO_APP;
+		if (appId == NO_APP) {
+			return null;
+		}
+		synchronized (appNames) {
+			return appNames.get((int) appId);
+		}
+	}
+
+	/**
+	 * Returns the state of the client's app.
+	 * @param clientId the client id
+	 * @return the app state, or null if the client has not reported an app
+	 */
+	public AppState getAppState(int clientId)
+	{
+		int appState = (int) (states.get(clientId) >>> APP_STATE_SHIFT) & 0xFF;
+		return (appState == 0) ? null : APP_STATES[appState - 1];
+	}
+
+	/**
+	 * Returns the error type of the client's last app execution.
+	 * @param clientId the client id
+	 * @return the error type, or null if the client has not reported an app
+	 */
+	public ErrorType getErrorType(int clientId)
+	{
+		int errorType = (int) (states.get(clientId) >>> ERROR_TYPE_SHIFT) & 0xFF;
+		return (errorType == 0) ? null : ERROR_TYPES[errorType - 1];
+	}
+
+	/**
+	 * Returns the {@link System#nanoTime()} a message was last received from the client.
+	 * @param clientId the client id
+	 * @return the nano time, or 0 if the client has never connected
+	 */
+	public long getLastSeenNanos(int clientId)
+	{
+		return lastSeenNanos.get(clientId);
+	}
+
+	/**
+	 * Returns the client's round trip time.
+	 * @param clientId the client id
+	 * @param unit the unit of the returned time
+	 * @return the round trip time, or -1 if the client is not connected or its round trip time is unknown
+	 */
+	public long getRoundTripTime(int clientId, TimeUnit unit)
+	{
+		long roundTripTime = roundTripNanos.get(clientId);
+		return (roundTripTime < 0) ? -1 : unit.convert(roundTripTime, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the ids of the connected clients.
+	 * @return the client ids
+	 */
+	public BitSet getConnectedClients()
+	{
+		BitSet clientIds = new BitSet(states.length());
+		for (int clientId = 0; clientId < states.length(); clientId++) {
+			if ((states.get(clientId) & CONNECTED) != 0) {
+				clientIds.set(clientId);
+			}
+		}
+		return clientIds;
+	}
+
+	/**
+	 * Returns the ids of the connected clients whose app is in the given state.
+	 * @param appState the app state
+	 * @return the client ids
+	 */
+	public BitSet getConnectedClients(AppState appState)
+	{
+		long appStateBits = (long) (appState.ordinal() + 1) << APP_STATE_SHIFT;
+		BitSet clientIds = new BitSet(states.length());
+		for (int clientId = 0; clientId < states.length(); clientId++) {
+			long state = states.get(clientId);
+			if ((state & CONNECTED) != 0 && (state & (0xFFL << APP_STATE_SHIFT)) == appStateBits) {
+				clientIds.set(clientId);
+			}
+		}
+		return clientIds;
+	}
+
+	private int getAppId(String appName)
+	{
+		Integer appId = appIds.get(appName);
+		if (appId != null) {
+			return appId;
+		}
+		synchronized (appNames) {
+			appId = appIds.get(appName);
+			if (appId == null) {
+				appId = appNames.size();
+				appNames.add(appName);
+				appIds.put(appName, appId);
+			}
+			return appId;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package edu.nyu.cess.remote.server.client;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.message.MessageSocket;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A client known to the client pool: its current connection and its last known app execution state. The connection
+ * is replaced when the client reconnects, the state is kept.
+ *
+ * Both are read without locking, and the state only changes through {@link #updateAppExe(AppExe)}, so that
+ * concurrent updates are applied one at a time without blocking each other.
+ */
+class ConnectedClient
+{
+	private final int clientId;
+	private volatile MessageSocket socket;
+	private final AtomicReference<AppExe> appExe = new AtomicReference<>();
+
+	ConnectedClient(int clientId, MessageSocket socket)
+	{
+		this.clientId = clientId;
+		this.socket = socket;
+	}
+
+	/**
+	 * Returns the id the lab layout assigned to the client.
+	 * @return the client id, or -1 if the client is not part of the lab layout
+	 */
+	int getClientId()
+	{
+		return clientId;
+	}
+
+	MessageSocket getSocket()
+	{
+		return socket;
+	}
+
+	void setSocket(MessageSocket socket)
+	{
+		this.socket = socket;
+	}
+
+	/**
+	 * Returns the last known app execution state.
+	 * @return the app execution, or null if the client has not reported one
+	 */
+	AppExe getAppExe()
+	{
+		return appExe.get();
+	}
+
+	/**
+	 * Replaces the app execution state, unless it is the same as the current one.
+	 * @param update the app execution reported by the client
+	 * @return true if the state changed, false if the update was the same as the current state
+	 */
+	boolean updateAppExe(AppExe update)
+	{
+		while (true) {
+			AppExe current = appExe.get();
+			if (current != null && current.isSame(update)) {
+				return false;
+			}
+			if (appExe.compareAndSet(current, update)) {
+				return true;
+			}
+		}
+	}
+}
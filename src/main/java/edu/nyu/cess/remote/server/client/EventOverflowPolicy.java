@@ -0,0 +1,25 @@
+package edu.nyu.cess.remote.server.client;
+
+/**
+ * What a {@link ClientPoolSubscription} does with an event published while its queue is full.
+ */
+public enum EventOverflowPolicy
+{
+	/**
+	 * The published event is dropped, the queued events are kept.
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * The oldest queued event is dropped to make room for the published one, for subscribers that care about the
+	 * latest state rather than every change.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * No connection, disconnection or degradation of a client is ever dropped, the queue grows past its capacity
+	 * instead. A published app update replaces the queued app update of the same client, if any, as it describes the
+	 * client's current state. For subscribers that must see every client come and go, such as the view.
+	 */
+	COALESCE_UPDATES
+}
@@ -0,0 +1,269 @@
+package edu.nyu.cess.remote.server.client;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.ErrorType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Tracks an app execution request sent to a group of clients.
+ *
+ * Every target client has its own future, completed with the app execution update the client sends back in
+ * response to the request (which may carry an error), or completed exceptionally if the request could not be
+ * sent, the client disconnected, or no response arrived in time. The acknowledgement latency of every response
+ * is recorded from the moment the request was queued for that client.
+ */
+public class GroupExecution
+{
+	private final AppExe appExe;
+	private final Map<String, CompletableFuture<AppExe>> futures;
+	private final CompletableFuture<Void> completion;
+
+	private final Map<String, Long> sendTimes = new ConcurrentHashMap<>();
+	private final List<Long> ackLatencies = new ArrayList<>();
+	private final Map<String, Long> targetAckLatencies = new ConcurrentHashMap<>();
+	private final AtomicInteger acknowledgedCount = new AtomicInteger();
+	private final AtomicInteger errorCount = new AtomicInteger();
+	private final AtomicInteger failedCount = new AtomicInteger();
+
+	GroupExecution(AppExe appExe, Collection<String> ipAddresses)
+	{
+		this.appExe = appExe;
+
+		Map<String, CompletableFuture<AppExe>> targetFutures = new LinkedHashMap<>();
+		List<CompletableFuture<AppExe>> recordedFutures = new ArrayList<>();
+		for (final String ipAddress : ipAddresses) {
+			CompletableFuture<AppExe> future = new CompletableFuture<>();
+			targetFutures.put(ipAddress, future);
+			// The group completes after the counters have been updated
+			recordedFutures.add(future.whenComplete(new BiConsumer<AppExe, Throwable>() {
+				@Override public void accept(AppExe response, Throwable failure)
+				{
+					recordCompletion(ipAddress, response, failure);
+				}
+			}));
+		}
+		this.futures = Collections.unmodifiableMap(targetFutures);
+		this.completion = CompletableFuture.allOf(recordedFutures.toArray(new CompletableFuture<?>[recordedFutures.size()]));
+	}
+
+	/**
+	 * Returns the requested app execution.
+	 * @return the app execution
+	 */
+	public AppExe getAppExe()
+	{
+		return appExe;
+	}
+
+	/**
+	 * Returns the target client ip addresses.
+	 * @return the ip addresses
+	 */
+	public Set<String> getTargets()
+	{
+		return futures.keySet();
+	}
+
+	/**
+	 * Returns the future completed by the target's response.
+	 * @param ipAddress the target ip address
+	 * @return the future, or null if the ip address is not a target
+	 */
+	public CompletableFuture<AppExe> getFuture(String ipAddress)
+	{
+		return futures.get(ipAddress);
+	}
+
+	/**
+	 * Returns a future completed once every target's future has completed. It completes exceptionally if any
+	 * target failed, the responses remain available from the target futures.
+	 * @return the group completion future
+	 */
+	public CompletableFuture<Void> getCompletion()
+	{
+		return completion;
+	}
+
+	public int getTargetCount()
+	{
+		return futures.size();
+	}
+
+	/**
+	 * Returns the number of targets that have responded, including the responses that carry an error.
+	 * @return the number of responses
+	 */
+	public int getAcknowledgedCount()
+	{
+		return acknowledgedCount.get();
+	}
+
+	/**
+	 * Returns the number of responses that carry an error.
+	 * @return the number of error responses
+	 */
+	public int getErrorCount()
+	{
+		return errorCount.get();
+	}
+
+	/**
+	 * Returns the number of targets that could not be reached, disconnected or did not respond in time.
+	 * @return the number of failed targets
+	 */
+	public int getFailedCount()
+	{
+		return failedCount.get();
+	}
+
+	public int getPendingCount()
+	{
+		return getTargetCount() - getAcknowledgedCount() - getFailedCount();
+	}
+
+	/**
+	 * Returns the fraction of the targets whose future has completed.
+	 * @return a value between 0 and 1
+	 */
+	public double getProgress()
+	{
+		return futures.isEmpty() ? 1.0 : (getAcknowledgedCount() + getFailedCount()) / (double) getTargetCount();
+	}
+
+	public boolean isDone()
+	{
+		return completion.isDone();
+	}
+
+	/**
+	 * Returns the acknowledgement latency at the given percentile (nearest rank) of the responses received so far.
+	 * @param percentile the percentile, between 0 and 100
+	 * @param unit the unit of the returned latency
+	 * @return the latency, or -1 if no response has been received
+	 */
+	public long getAckLatency(double percentile, TimeUnit unit)
+	{
+		List<Long> sortedLatencies;
+		synchronized (ackLatencies) {
+			if (ackLatencies.isEmpty()) {
+				return -1;
+			}
+			sortedLatencies = new ArrayList<>(ackLatencies);
+		}
+		Collections.sort(sortedLatencies);
+
+		int rank = (int) Math.ceil(percentile / 100.0 * sortedLatencies.size());
+		int index = Math.min(sortedLatencies.size() - 1, Math.max(0, rank - 1));
+		return unit.convert(sortedLatencies.get(index), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the acknowledgement latency of the target's response.
+	 * @param ipAddress the target ip address
+	 * @param unit the unit of the returned latency
+	 * @return the latency, or -1 if the target has not responded
+	 */
+	public long getAckLatency(String ipAddress, TimeUnit unit)
+	{
+		Long latency = targetAckLatencies.get(ipAddress);
+		return (latency == null) ? -1 : unit.convert(latency, TimeUnit.NANOSECONDS);
+	}
+
+	@Override public String toString()
+	{
+		return String.format("{app=%s, state=%s, targets=%d, acknowledged=%d, errors=%d, failed=%d, pending=%d, p50=%dms, p99=%dms}",
+				appExe.getAppInfo().getName(), appExe.getState(), getTargetCount(), getAcknowledgedCount(),
+				getErrorCount(), getFailedCount(), getPendingCount(),
+				getAckLatency(50, TimeUnit.MILLISECONDS), getAckLatency(99, TimeUnit.MILLISECONDS));
+	}
+
+	/* ---------------------------------------------------------------------
+	 *                          CLIENT POOL
+	 * ---------------------------------------------------------------------*/
+
+	/**
+	 * Records the moment the request was queued for the target.
+	 * @param ipAddress the target ip address
+	 */
+	void notifyRequestSent(String ipAddress)
+	{
+		sendTimes.put(ipAddress, System.nanoTime());
+	}
+
+	/**
+	 * Completes the target's future if the update responds to the request: it reports the requested state of the
+	 * requested app, or an error.
+	 * @param ipAddress the client ip address
+	 * @param update the app execution update sent by the client
+	 */
+	void notifyClientAppUpdate(String ipAddress, AppExe update)
+	{
+		CompletableFuture<AppExe> future = futures.get(ipAddress);
+		if (future == null || future.isDone() || ! sendTimes.containsKey(ipAddress)) {
+			return;
+		}
+
+		boolean requestedState = update.getState() == appExe.getState()
+				&& appExe.getAppInfo().getName().equals(update.getAppInfo().getName());
+		if (requestedState || update.getErrorType() != ErrorType.NO_ERROR) {
+			future.complete(update);
+		}
+	}
+
+	/**
+	 * Completes the target's future exceptionally, unless it has already completed.
+	 * @param ipAddress the target ip address
+	 * @param cause the failure
+	 */
+	void notifyFailure(String ipAddress, Throwable cause)
+	{
+		CompletableFuture<AppExe> future = futures.get(ipAddress);
+		if (future != null) {
+			future.completeExceptionally(cause);
+		}
+	}
+
+	/**
+	 * Completes every pending future with a timeout.
+	 */
+	void expire()
+	{
+		for (Map.Entry<String, CompletableFuture<AppExe>> target : futures.entrySet()) {
+			target.getValue().completeExceptionally(new TimeoutException("No response from " + target.getKey() + "."));
+		}
+	}
+
+	private void recordCompletion(String ipAddress, AppExe response, Throwable failure)
+	{
+		if (failure != null) {
+			failedCount.incrementAndGet();
+			return;
+		}
+
+		Long sendTime = sendTimes.get(ipAddress);
+		if (sendTime != null) {
+			long latency = System.nanoTime() - sendTime;
+			targetAckLatencies.put(ipAddress, latency);
+			synchronized (ackLatencies) {
+				ackLatencies.add(latency);
+			}
+		}
+		if (response.getErrorType() != ErrorType.NO_ERROR) {
+			errorCount.incrementAndGet();
+		}
+		acknowledgedCount.incrementAndGet();
+	}
+}
@@ -0,0 +1,9 @@
+package edu.nyu.cess.remote.server.client;
+
+/**
+ * Notified when a client is quarantined for missing its send deadlines, and when it is released.
+ */
+public interface SlowClientObserver
+{
+	void notifyClientDegraded(String clientIp, boolean degraded);
+}
@@ -0,0 +1,258 @@
+package edu.nyu.cess.remote.server.client;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.ErrorType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the readiness of a group of clients preparing the start of an app, the first phase of a prepared start.
+ *
+ * Every target has its own future, completed with the readiness the client reports once it has prepared the app
+ * (which may carry an error), or completed exceptionally if the prepare could not be sent, the client disconnected,
+ * or it did not report in time. Targets that can not prepare a start are ready at once, they are sent a plain start
+ * request on the go. The readiness latency of every target is recorded from the moment the prepare was queued.
+ */
+public class StartBarrier
+{
+	private final AppExe appExe;
+	private final Map<String, CompletableFuture<AppExe>> futures;
+	private final CompletableFuture<Void> completion;
+
+	private final Set<String> unpreparedTargets = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final Map<String, Long> sendTimes = new ConcurrentHashMap<>();
+	private final Map<String, Long> readyLatencies = new ConcurrentHashMap<>();
+	private final AtomicLong lastReadyNanoTime = new AtomicLong();
+
+	StartBarrier(AppExe appExe, Collection<String> ipAddresses)
+	{
+		this.appExe = appExe;
+
+		Map<String, CompletableFuture<AppExe>> targetFutures = new LinkedHashMap<>();
+		for (String ipAddress : ipAddresses) {
+			targetFutures.put(ipAddress, new CompletableFuture<AppExe>());
+		}
+		this.futures = Collections.unmodifiableMap(targetFutures);
+		this.completion = CompletableFuture.allOf(targetFutures.values().toArray(new CompletableFuture<?>[targetFutures.size()]));
+	}
+
+	/**
+	 * Returns the app execution being prepared.
+	 * @return the app execution
+	 */
+	public AppExe getAppExe()
+	{
+		return appExe;
+	}
+
+	/**
+	 * Returns the target client ip addresses.
+	 * @return the ip addresses
+	 */
+	public Set<String> getTargets()
+	{
+		return futures.keySet();
+	}
+
+	/**
+	 * Returns the future completed by the target's readiness.
+	 * @param ipAddress the target ip address
+	 * @return the future, or null if the ip address is not a target
+	 */
+	public CompletableFuture<AppExe> getFuture(String ipAddress)
+	{
+		return futures.get(ipAddress);
+	}
+
+	/**
+	 * Returns a future completed once every target's future has completed. It completes exceptionally if any
+	 * target failed, the readiness of the others remains available from the target futures.
+	 * @return the barrier completion future
+	 */
+	public CompletableFuture<Void> getCompletion()
+	{
+		return completion;
+	}
+
+	/**
+	 * Returns the targets that are ready to start, in target order.
+	 * @return the ready ip addresses
+	 */
+	public Set<String> getReadyTargets()
+	{
+		Set<String> readyTargets = new LinkedHashSet<>();
+		for (Map.Entry<String, CompletableFuture<AppExe>> target : futures.entrySet()) {
+			if (isReady(target.getValue())) {
+				readyTargets.add(target.getKey());
+			}
+		}
+		return readyTargets;
+	}
+
+	public int getReadyCount()
+	{
+		return getReadyTargets().size();
+	}
+
+	public int getPendingCount()
+	{
+		int pendingCount = 0;
+		for (CompletableFuture<AppExe> future : futures.values()) {
+			if ( ! future.isDone()) {
+				pendingCount++;
+			}
+		}
+		return pendingCount;
+	}
+
+	/**
+	 * Returns true if the target is ready without having prepared the start, it is sent a start request on the go.
+	 * @param ipAddress the target ip address
+	 * @return true if the target can not prepare a start
+	 */
+	public boolean isUnprepared(String ipAddress)
+	{
+		return unpreparedTargets.contains(ipAddress);
+	}
+
+	public boolean isDone()
+	{
+		return completion.isDone();
+	}
+
+	/**
+	 * Returns the time from the prepare being queued to the readiness report of the target.
+	 * @param ipAddress the target ip address
+	 * @param unit the unit of the returned latency
+	 * @return the latency, or -1 if the target has not reported its readiness
+	 */
+	public long getReadyLatency(String ipAddress, TimeUnit unit)
+	{
+		Long latency = readyLatencies.get(ipAddress);
+		return (latency == null) ? -1 : unit.convert(latency, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the readiness latency at the given percentile (nearest rank) of the reports received so far.
+	 * @param percentile the percentile, between 0 and 100
+	 * @param unit the unit of the returned latency
+	 * @return the latency, or -1 if no report has been received
+	 */
+	public long getReadyLatency(double percentile, TimeUnit unit)
+	{
+		List<Long> sortedLatencies = new ArrayList<>(readyLatencies.values());
+		if (sortedLatencies.isEmpty()) {
+			return -1;
+		}
+		Collections.sort(sortedLatencies);
+
+		int rank = (int) Math.ceil(percentile / 100.0 * sortedLatencies.size());
+		int index = Math.min(sortedLatencies.size() - 1, Math.max(0, rank - 1));
+		return unit.convert(sortedLatencies.get(index), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the {@link System#nanoTime()} of the last readiness report.
+	 * @return the nano time, or 0 if no report has been received
+	 */
+	public long getLastReadyNanoTime()
+	{
+		return lastReadyNanoTime.get();
+	}
+
+	@Override public String toString()
+	{
+		return String.format("{app=%s, targets=%d, ready=%d, pending=%d, p50=%dms, p99=%dms}",
+				appExe.getAppInfo().getName(), futures.size(), getReadyCount(), getPendingCount(),
+				getReadyLatency(50, TimeUnit.MILLISECONDS), getReadyLatency(99, TimeUnit.MILLISECONDS));
+	}
+
+	/* ---------------------------------------------------------------------
+	 *                          CLIENT POOL
+	 * ---------------------------------------------------------------------*/
+
+	/**
+	 * Records the moment the prepare was queued for the target.
+	 * @param ipAddress the target ip address
+	 */
+	void notifyPrepareSent(String ipAddress)
+	{
+		sendTimes.put(ipAddress, System.nanoTime());
+	}
+
+	/**
+	 * Marks the target, which can not prepare a start, as ready.
+	 * @param ipAddress the target ip address
+	 */
+	void notifyUnprepared(String ipAddress)
+	{
+		CompletableFuture<AppExe> future = futures.get(ipAddress);
+		if (future != null) {
+			unpreparedTargets.add(ipAddress);
+			future.complete(new AppExe(appExe.getAppInfo(), appExe.getState()));
+		}
+	}
+
+	/**
+	 * Completes the target's future if the readiness is for the prepared app.
+	 * @param ipAddress the client ip address
+	 * @param readiness the readiness reported by the client
+	 */
+	void notifyReady(String ipAddress, AppExe readiness)
+	{
+		CompletableFuture<AppExe> future = futures.get(ipAddress);
+		Long sendTime = sendTimes.get(ipAddress);
+		if (future == null || future.isDone() || sendTime == null
+				|| ! appExe.getAppInfo().getName().equals(readiness.getAppInfo().getName())) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		readyLatencies.put(ipAddress, now - sendTime);
+		if (readiness.getErrorType() == ErrorType.NO_ERROR) {
+			lastReadyNanoTime.set(now);
+		}
+		future.complete(readiness);
+	}
+
+	/**
+	 * Completes the target's future exceptionally, unless it has already completed.
+	 * @param ipAddress the target ip address
+	 * @param cause the failure
+	 */
+	void notifyFailure(String ipAddress, Throwable cause)
+	{
+		CompletableFuture<AppExe> future = futures.get(ipAddress);
+		if (future != null) {
+			future.completeExceptionally(cause);
+		}
+	}
+
+	/**
+	 * Completes every pending future with a timeout.
+	 */
+	void expire()
+	{
+		for (Map.Entry<String, CompletableFuture<AppExe>> target : futures.entrySet()) {
+			target.getValue().completeExceptionally(new TimeoutException("No readiness from " + target.getKey() + "."));
+		}
+	}
+
+	private static boolean isReady(CompletableFuture<AppExe> future)
+	{
+		return future.isDone() && ! future.isCompletedExceptionally()
+				&& future.getNow(null).getErrorType() == ErrorType.NO_ERROR;
+	}
+}
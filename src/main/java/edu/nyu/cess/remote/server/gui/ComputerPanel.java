@@ -21,8 +21,10 @@ public class ComputerPanel extends JPanel
 	private final Color PANEL_RUNNING_APP_COLOR = new Color(204, 255, 204);
 	private final Color PANEL_CONNECTED_COLOR = new Color(255, 255, 255);
 	private final Color PANEL_NOT_CONNECTED_COLOR = new Color(255, 194, 194);
+	private final Color DEGRADED_COLOR = new Color(230, 140, 0);
 
     private ConnectionState connectionState;
+    private boolean degraded;
 
     public boolean isConnectionState(ConnectionState connectionState)
     {
@@ -150,8 +152,30 @@ public class ComputerPanel extends JPanel
     }
 
 
+	/**
+	 * Marks the computer as degraded while its client is quarantined for being slow to accept messages. Its
+	 * messages are still delivered, but may be late.
+	 * @param degraded true if the client is quarantined
+	 */
+	public void updateDegraded(boolean degraded)
+	{
+		if (connectionState != ConnectionState.CONNECTED || this.degraded == degraded) {
+			return;
+		}
+
+		this.degraded = degraded;
+		setBorder(BorderFactory.createLineBorder(degraded ? DEGRADED_COLOR : Color.GRAY, degraded ? 3 : 1));
+		hostNameLabel.setForeground(degraded ? DEGRADED_COLOR : Color.BLACK);
+		setToolTipText(degraded ? "Degraded: slow to accept messages" : null);
+	}
+
 	public void updateState(ConnectionState connectionState)
 	{
+        if (degraded && connectionState != this.connectionState) {
+            degraded = false;
+            setToolTipText(null);
+        }
+
         switch(connectionState) {
             case CONNECTED:
                 if (this.connectionState == ConnectionState.DISCONNECTED) {
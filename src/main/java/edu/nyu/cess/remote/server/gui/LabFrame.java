@@ -14,13 +14,12 @@ import edu.nyu.cess.remote.server.gui.panels.ComputerLayoutPanel;
 import edu.nyu.cess.remote.server.gui.panels.ComputersConnectedPanel;
 import edu.nyu.cess.remote.server.lab.Computer;
 import edu.nyu.cess.remote.server.lab.LabLayout;
-import edu.nyu.cess.remote.server.lib.ComputerNameAlphaNumericSort;
 import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * The lab frame lays the the lab manager view, and renders it, and handles any events that occur.
@@ -43,11 +42,13 @@ public class LabFrame extends JFrame implements StartStopGroupButtonObserver, St
 
 	private final ViewAppExeObserver viewAppExeObserver;
 
-	private final ArrayList<Computer> labComputers;
+	private final LabLayout labLayout;
+	private final List<Computer> labComputers;
 
 	public LabFrame(String[] appNames, LabLayout labLayout, ViewAppExeObserver viewAppExeObserver)
 	{
 		this.viewAppExeObserver = viewAppExeObserver;
+		this.labLayout = labLayout;
 
 		// Content Panel
 		contentPane.setBackground(Color.white);
@@ -82,9 +83,8 @@ public class LabFrame extends JFrame implements StartStopGroupButtonObserver, St
 
 		// Group App Execution Panel
 
-		// Sort lab computers
-		labComputers = labLayout.getAllComputers();
-		Collections.sort(labComputers, new ComputerNameAlphaNumericSort());
+		// Lab computers, sorted once by the layout
+		labComputers = labLayout.getSortedComputers();
 		String[] names = new String[labComputers.size()];
 		for (int i = 0; i < labComputers.size(); ++i) {
 			names[i] = labComputers.get(i).getName();
@@ -150,14 +150,14 @@ public class LabFrame extends JFrame implements StartStopGroupButtonObserver, St
 
 		int smallestId = (start < stop) ? start : stop;
 		int largestId = (start == smallestId) ? stop : start;
-		ArrayList<String> ipAddresses = new ArrayList<>();
+		BitSet clientIds = new BitSet(labComputers.size());
 		for (int i = smallestId; i <= largestId; ++i) {
-			ipAddresses.add(labComputers.get(i).getIp());
+			clientIds.set(labComputers.get(i).getId());
 		}
 
 		String appName = String.valueOf(appNameComboBox.getSelectedItem());
 
-		viewAppExeObserver.notifyAppExeRequest(appName, state, ipAddresses);
+		viewAppExeObserver.notifyAppExeRequest(appName, state, clientIds);
 	}
 
 	/**
@@ -166,9 +166,12 @@ public class LabFrame extends JFrame implements StartStopGroupButtonObserver, St
 	@Override public void notifyExeRequest(AppState appState, String clientIp)
 	{
 		String appName = String.valueOf(appNameComboBox.getSelectedItem());
-		ArrayList<String> ipAddresses = new ArrayList<>();
-		ipAddresses.add(clientIp);
-		viewAppExeObserver.notifyAppExeRequest(appName, appState, ipAddresses);
+		BitSet clientIds = new BitSet();
+		int clientId = labLayout.getClientId(clientIp);
+		if (clientId >= 0) {
+			clientIds.set(clientId);
+		}
+		viewAppExeObserver.notifyAppExeRequest(appName, appState, clientIds);
 	}
 
 	/**
@@ -203,4 +206,12 @@ public class LabFrame extends JFrame implements StartStopGroupButtonObserver, St
 		contentPane.validate();
 		pack();
 	}
+
+	/**
+	 * {@link LabView}
+	 */
+	@Override public void setClientDegraded(String clientIp, boolean degraded)
+	{
+		computerLayoutPanel.updateComputerDegraded(clientIp, degraded);
+	}
 }
@@ -10,4 +10,5 @@ public interface LabView
 	void addClient(String clientName, String clientIp);
 	void updateClient(String clientIp, AppExe appExe);
 	void removeClient(String clientIp);
+	void setClientDegraded(String clientIp, boolean degraded);
 }
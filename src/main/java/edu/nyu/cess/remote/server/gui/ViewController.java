@@ -6,23 +6,32 @@ import edu.nyu.cess.remote.server.Main;
 import edu.nyu.cess.remote.server.app.AppInfoCollection;
 import edu.nyu.cess.remote.server.client.ClientPoolExecutionManager;
 import edu.nyu.cess.remote.server.client.ClientPoolObserver;
+import edu.nyu.cess.remote.server.client.StartBarrier;
 import edu.nyu.cess.remote.server.gui.observers.ViewAppExeObserver;
 import edu.nyu.cess.remote.server.gui.runnables.AddClientRunnable;
+import edu.nyu.cess.remote.server.gui.runnables.DegradeClientRunnable;
 import edu.nyu.cess.remote.server.gui.runnables.RemoveClientRunnable;
 import edu.nyu.cess.remote.server.gui.runnables.UpdateClientRunnable;
 import edu.nyu.cess.remote.server.lab.LabLayout;
+import edu.nyu.cess.remote.server.net.AdmissionStats;
 import org.apache.log4j.Logger;
 
 import javax.swing.*;
-import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 public class ViewController implements ClientPoolObserver, ViewAppExeObserver
 {
 	final static Logger logger = Logger.getLogger(Main.class);
 
+	private static final long APP_EXE_RESPONSE_TIMEOUT_SECONDS = 30;
+
 	private final AppInfoCollection appInfoCollection;
 	private LabFrame labFrame;
     private ClientPoolExecutionManager clientPoolExecutionManager;
+	private volatile AdmissionStats admissionStats;
+	private volatile long preparedStartTimeoutMillis;
 
     public ViewController(AppInfoCollection appInfoCollection,
 						  ClientPoolExecutionManager clientPoolExecutionManager,
@@ -33,6 +42,26 @@ public class ViewController implements ClientPoolObserver, ViewAppExeObserver
 		this.labFrame = new LabFrame(appInfoCollection.getAppNames(), labLayout, this);
 	}
 
+	/**
+	 * Sets the statistics told when a new client becomes visible in the lab view.
+	 * @param admissionStats the admission statistics
+	 */
+	public void setAdmissionStats(AdmissionStats admissionStats)
+	{
+		this.admissionStats = admissionStats;
+	}
+
+	/**
+	 * Prepares app starts on the clients before launching them, the app is launched on the clients that are ready once
+	 * all of them are, or the timeout has passed.
+	 * @param timeout the time the clients have to prepare the start, 0 to start the apps without preparing them
+	 * @param unit the timeout unit
+	 */
+	public void setPreparedStartTimeout(long timeout, TimeUnit unit)
+	{
+		this.preparedStartTimeoutMillis = unit.toMillis(timeout);
+	}
+
 	/**
 	 * Display the lab manager panel
 	 */
@@ -49,18 +78,46 @@ public class ViewController implements ClientPoolObserver, ViewAppExeObserver
 	/**
 	 * {@link ViewAppExeObserver}
      */
-	@Override public void notifyAppExeRequest(String appName, AppState appState, ArrayList<String> ipAddresses)
+	@Override public void notifyAppExeRequest(String appName, AppState appState, BitSet clientIds)
 	{
 		AppExe appExe = new AppExe(appInfoCollection.getAppInfo(appName), appState);
-		clientPoolExecutionManager.executeApp(appExe, ipAddresses);
+		long prepareTimeoutMillis = preparedStartTimeoutMillis;
+		if (appState != AppState.STARTED || prepareTimeoutMillis <= 0) {
+			clientPoolExecutionManager.executeAppGroup(appExe, clientIds, APP_EXE_RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			return;
+		}
+
+		final StartBarrier startBarrier = clientPoolExecutionManager.prepareAppGroup(appExe, clientIds,
+				prepareTimeoutMillis, TimeUnit.MILLISECONDS);
+		startBarrier.getCompletion().whenComplete(new BiConsumer<Void, Throwable>() {
+			@Override public void accept(Void result, Throwable failure)
+			{
+				if (startBarrier.getReadyCount() < startBarrier.getTargets().size()) {
+					logger.warn(String.format("Only %d of %d computers ready to start %s.", startBarrier.getReadyCount(),
+							startBarrier.getTargets().size(), startBarrier.getAppExe().getAppInfo().getName()));
+				}
+				clientPoolExecutionManager.releaseAppGroup(startBarrier, APP_EXE_RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			}
+		});
 	}
 
 	/**
 	 * {@link ClientPoolObserver}
 	 */
-	@Override public void notifyNewClientConnected(String hostName, String ipAddress)
+	@Override public void notifyNewClientConnected(String hostName, final String ipAddress)
 	{
         SwingUtilities.invokeLater(new AddClientRunnable(labFrame, hostName, ipAddress));
+
+		final AdmissionStats stats = admissionStats;
+		if (stats != null) {
+			// Runs on the event dispatch thread once the client has been added to the view
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override public void run()
+				{
+					stats.notifyVisible(ipAddress);
+				}
+			});
+		}
 	}
 
 	/**
@@ -78,4 +135,12 @@ public class ViewController implements ClientPoolObserver, ViewAppExeObserver
 	{
         SwingUtilities.invokeLater(new UpdateClientRunnable(labFrame, ipAddress, appExe));
 	}
+
+	/**
+	 * {@link ClientPoolObserver}
+	 */
+	@Override public void notifyClientDegraded(String ipAddress, boolean degraded)
+	{
+		SwingUtilities.invokeLater(new DegradeClientRunnable(labFrame, ipAddress, degraded));
+	}
 }
@@ -2,12 +2,18 @@ package edu.nyu.cess.remote.server.gui.observers;
 
 import edu.nyu.cess.remote.common.app.AppState;
 
-import java.util.ArrayList;
+import java.util.BitSet;
 
 /**
  * Created by aruff on 2/16/16.
  */
 public interface ViewAppExeObserver
 {
-	void notifyAppExeRequest(String appName, AppState appState, ArrayList<String> ipAddresses);
+	/**
+	 * Notifies the observer of an app execution requested for a group of computers.
+	 * @param appName the app name
+	 * @param appState the requested app state
+	 * @param clientIds the ids the lab layout assigned to the computers
+	 */
+	void notifyAppExeRequest(String appName, AppState appState, BitSet clientIds);
 }
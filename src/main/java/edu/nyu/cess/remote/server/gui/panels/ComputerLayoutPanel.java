@@ -11,15 +11,15 @@ import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Created by aruff on 2/25/16.
  */
 public class ComputerLayoutPanel extends JPanel
 {
-	private final Map<String, ComputerPanel> computerPanels = new HashMap<>();
+	private final LabLayout labLayout;
+	// Indexed by the client ids the lab layout assigned
+	private final ComputerPanel[] computerPanels;
 
 	public ComputerLayoutPanel(LabLayout labLayout, StartStopButtonObserver startStopButtonObserver)
 	{
@@ -27,6 +27,9 @@ public class ComputerLayoutPanel extends JPanel
 
         setBackground(Color.white);
 
+		this.labLayout = labLayout;
+		this.computerPanels = new ComputerPanel[labLayout.getComputerCount()];
+
 
 		for (Row row : labLayout.getRows()) {
 			int counter = 1;
@@ -34,7 +37,7 @@ public class ComputerLayoutPanel extends JPanel
 				String computerName = computer.getName();
 				String computerIp = computer.getIp();
 				ComputerPanel computerPanel = new ComputerPanel(computerName, computerIp, ConnectionState.DISCONNECTED, startStopButtonObserver);
-				computerPanels.put(computerIp, computerPanel);
+				computerPanels[computer.getId()] = computerPanel;
 				add(computerPanel, (counter == row.getComputers().size()) ? "wrap" : "");
 				++counter;
 			}
@@ -43,7 +46,10 @@ public class ComputerLayoutPanel extends JPanel
 
 	public void updateComputerConnectionState(String computerIp, ConnectionState connectionState)
 	{
-        ComputerPanel computerPanel = computerPanels.get(computerIp);
+        ComputerPanel computerPanel = getComputerPanel(computerIp);
+        if (computerPanel == null) {
+            return;
+        }
         switch(connectionState) {
             case CONNECTED:
                 if (computerPanel.isConnectionState(ConnectionState.DISCONNECTED)) {
@@ -58,10 +64,25 @@ public class ComputerLayoutPanel extends JPanel
         }
 	}
 
+	public void updateComputerDegraded(String computerIp, boolean degraded)
+	{
+		ComputerPanel computerPanel = getComputerPanel(computerIp);
+		if (computerPanel != null) {
+			computerPanel.updateDegraded(degraded);
+		}
+	}
+
 	public void updateAppExeState(String computerIp, AppExe appExe)
 	{
-        ComputerPanel computerPanel = computerPanels.get(computerIp);
-        computerPanel.updateAppExe(appExe);
+        ComputerPanel computerPanel = getComputerPanel(computerIp);
+        if (computerPanel != null) {
+            computerPanel.updateAppExe(appExe);
+        }
+	}
 
+	private ComputerPanel getComputerPanel(String computerIp)
+	{
+		int clientId = labLayout.getClientId(computerIp);
+		return (clientId < 0) ? null : computerPanels[clientId];
 	}
 }
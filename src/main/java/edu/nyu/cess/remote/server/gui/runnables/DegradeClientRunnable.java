@@ -0,0 +1,21 @@
+package edu.nyu.cess.remote.server.gui.runnables;
+
+import edu.nyu.cess.remote.server.gui.LabView;
+
+public class DegradeClientRunnable implements Runnable {
+	private final LabView labView;
+	private final String clientIp;
+	private final boolean degraded;
+
+	public DegradeClientRunnable(LabView labView, String clientIp, boolean degraded)
+	{
+		this.labView = labView;
+		this.clientIp = clientIp;
+		this.degraded = degraded;
+	}
+
+	@Override public void run()
+	{
+		labView.setClientDegraded(clientIp, degraded);
+	}
+}
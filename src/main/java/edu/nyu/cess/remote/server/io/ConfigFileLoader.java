@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.error.YAMLException;
 
 import javax.swing.*;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -66,6 +67,26 @@ public class ConfigFileLoader
 			logger.error("YAML Exception: Unable to read the lab config file", e);
 		}
 
-		return new LabLayout();
+		return new LabLayout().freeze();
+	}
+
+	/**
+	 * Produces and returns the server configuration, which is read from the file specified by the
+	 * serverConfigFileName argument. If the file can not be read the default configuration is returned, since
+	 * every server property is optional.
+	 *
+	 * @param serverConfigFileName the server configuration file name
+	 * @return The server configuration
+	 */
+	public static ServerConfigFile getServerConfig(String serverConfigFileName)
+	{
+		try {
+			return new ServerConfigFile(serverConfigFileName);
+		}
+		catch (IOException e) {
+			logger.info("Server config file could not be read, using the default configuration. Error: {}", e.getMessage());
+		}
+
+		return new ServerConfigFile();
 	}
 }
@@ -22,6 +22,7 @@ public class LabLayoutFile
 	public static LabLayout readFile(InputStream inputStream) throws YAMLException
 	{
 		Yaml yaml = new Yaml(new Constructor(LabLayout.class));
-		return (LabLayout) yaml.load(inputStream);
+		LabLayout labLayout = (LabLayout) yaml.load(inputStream);
+		return (labLayout == null) ? null : labLayout.freeze();
 	}
 }
@@ -0,0 +1,313 @@
+package edu.nyu.cess.remote.server.io;
+
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.message.codec.CompressionSettings;
+import edu.nyu.cess.remote.common.message.codec.MessageCodecs;
+import edu.nyu.cess.remote.common.net.DatagramSettings;
+import edu.nyu.cess.remote.server.net.AdmissionSettings;
+import edu.nyu.cess.remote.server.net.ExecutionModelType;
+import edu.nyu.cess.remote.server.net.HeartbeatSettings;
+import edu.nyu.cess.remote.server.net.MessageRateLimit;
+import edu.nyu.cess.remote.server.net.SendSettings;
+import edu.nyu.cess.remote.server.net.TransportType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Contains the server configuration properties. Any property that is missing from the file falls back to its
+ * default value, so an empty (or absent) file starts the server exactly as it always has.
+ */
+public class ServerConfigFile
+{
+	private final Properties properties = new Properties();
+
+	/**
+	 * Creates a configuration containing only default values.
+	 */
+	public ServerConfigFile() {}
+
+	/**
+	 * Loads the server property file's fields.
+	 * @param fileName file path and name
+	 * @throws IOException exception that may occur when reading an invalidly specified file
+	 */
+	public ServerConfigFile(String fileName) throws IOException
+	{
+		InputStream in = ServerConfigFile.class.getClassLoader().getResourceAsStream(fileName);
+		if (in == null) {
+			throw new IOException("Server config file " + fileName + " not found.");
+		}
+
+		try {
+			properties.load(in);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the port the server listens on for client connections.
+	 * @return the port number
+	 */
+	public int getPort()
+	{
+		return getInt("port", 2600);
+	}
+
+	/**
+	 * Returns the transport used to serve client connections.
+	 * @return the transport type
+	 */
+	public TransportType getTransportType()
+	{
+		return TransportType.valueOf(getString("transport", TransportType.BLOCKING.name()).trim().toUpperCase());
+	}
+
+	/**
+	 * Returns the number of selector threads used by the selector transport.
+	 * @return the number of selector threads
+	 */
+	public int getSelectorThreads()
+	{
+		return Math.max(1, getInt("selector.threads", 1));
+	}
+
+	/**
+	 * Returns the maximum number of messages waiting to be written to a single client. Sending to a client whose
+	 * queue is full fails immediately instead of waiting for the client.
+	 * @return the outbound queue capacity
+	 */
+	public int getOutboundQueueCapacity()
+	{
+		return Math.max(1, getInt("outbound.queue.capacity", 256));
+	}
+
+	/**
+	 * Returns the number of threads writing queued messages to the clients of the blocking transport.
+	 * @return the number of writer threads
+	 */
+	public int getWriterThreads()
+	{
+		return Math.max(1, getInt("writer.threads", 2));
+	}
+
+	/**
+	 * Returns how far ahead the starts of group app executions are scheduled.
+	 * @return the synchronized start delay in milliseconds, 0 to start the apps as soon as the requests are received
+	 */
+	public long getSynchronizedStartDelayMillis()
+	{
+		return Math.max(0, getLong("start.sync.delay.ms", 0));
+	}
+
+	/**
+	 * Returns the time the clients have to prepare a group app start, before the ready clients are sent the go.
+	 * @return the prepare timeout in milliseconds, 0 to start the apps without preparing them
+	 */
+	public long getPreparedStartTimeoutMillis()
+	{
+		return Math.max(0, getLong("start.prepare.timeout.ms", 0));
+	}
+
+	/**
+	 * Returns the execution model running the per-client tasks of the blocking transport.
+	 * @return the execution model type
+	 */
+	public ExecutionModelType getExecutionModelType()
+	{
+		return ExecutionModelType.valueOf(getString("execution.model", "thread-per-client").trim().toUpperCase()
+				.replace('-', '_'));
+	}
+
+	/**
+	 * Returns the number of threads of the pooled execution model.
+	 * @return the number of pool threads
+	 */
+	public int getExecutionPoolThreads()
+	{
+		return Math.max(1, getInt("execution.pool.threads", 600));
+	}
+
+	/**
+	 * Returns the send deadline of the client connections, and when the clients missing it are quarantined and
+	 * disconnected.
+	 * @return the send settings
+	 */
+	public SendSettings getSendSettings()
+	{
+		return new SendSettings(getLong("send.deadline.ms", 2000), getInt("send.deadline.misses", 3),
+				getLong("send.quarantine.ms", 30000));
+	}
+
+	/**
+	 * Returns the message codecs accepted from clients. Clients that predate the connection handshake are always accepted.
+	 * @return the accepted codec identifiers
+	 */
+	public List<Byte> getCodecIds()
+	{
+		return MessageCodecs.parseCodecIds(getString("codecs", MessageCodecs.DEFAULT_CODECS));
+	}
+
+	/**
+	 * Returns when the deflate codec compresses the messages it sends.
+	 * @return the compression settings
+	 */
+	public CompressionSettings getCompressionSettings()
+	{
+		return new CompressionSettings(getInt("compression.threshold.bytes", CompressionSettings.DEFAULT_THRESHOLD_BYTES),
+				getDouble("compression.max.ratio", CompressionSettings.DEFAULT_MAX_RATIO),
+				getInt("compression.link.mbps", CompressionSettings.DEFAULT_LINK_MBPS));
+	}
+
+	/**
+	 * Returns the rate at which a single client may send each type of message, read from the rate.[type] and
+	 * rate.[type].burst properties (for example rate.app_exe_update). A rate of 0 disables the limit.
+	 * @return the rate limit of every message type
+	 */
+	public Map<MessageType, MessageRateLimit> getMessageRateLimits()
+	{
+		Map<MessageType, MessageRateLimit> rateLimits = new EnumMap<>(MessageType.class);
+		rateLimits.put(MessageType.APP_EXE_UPDATE, getMessageRateLimit(MessageType.APP_EXE_UPDATE, 20, 40));
+		rateLimits.put(MessageType.KEEP_ALIVE_PING, getMessageRateLimit(MessageType.KEEP_ALIVE_PING, 5, 10));
+		rateLimits.put(MessageType.APP_EXE_REQUEST, getMessageRateLimit(MessageType.APP_EXE_REQUEST, 1, 5));
+		return rateLimits;
+	}
+
+	/**
+	 * Returns the heartbeat timings and the failure detection threshold.
+	 * @return the heartbeat settings
+	 */
+	public HeartbeatSettings getHeartbeatSettings()
+	{
+		return new HeartbeatSettings(getLong("heartbeat.interval.ms", 1000), getLong("heartbeat.legacy.interval.ms", 10000),
+				getLong("state.poll.interval.ms", 60000), getLong("heartbeat.acceptable.pause.ms", 2000),
+				getDouble("heartbeat.phi.threshold", 8));
+	}
+
+	/**
+	 * Returns the time a client has to send its hello once connected, before its connection is closed.
+	 * @return the handshake timeout in milliseconds
+	 */
+	public long getHandshakeTimeoutMillis()
+	{
+		return Math.max(1, getLong("handshake.timeout.ms", 10000));
+	}
+
+	/**
+	 * Returns the interval at which the connection resource counters are logged.
+	 * @return the report interval in milliseconds, 0 to never log them
+	 */
+	public long getResourceReportIntervalMillis()
+	{
+		return Math.max(0, getLong("resource.report.interval.ms", 300000));
+	}
+
+	/**
+	 * Returns the time a client can reconnect and resume its session after losing its connection, during which it
+	 * is still shown as connected.
+	 * @return the grace window in milliseconds, 0 to end sessions with their connection
+	 */
+	public long getSessionGraceMillis()
+	{
+		return Math.max(0, getLong("session.grace.ms", 10000));
+	}
+
+	/**
+	 * Returns the accept backlog, and the number of threads and rate at which accepted clients are registered.
+	 * @return the admission settings
+	 */
+	public AdmissionSettings getAdmissionSettings()
+	{
+		return new AdmissionSettings(getInt("accept.backlog", 512), getInt("registration.threads", 2),
+				getDouble("registration.rate", 100), getInt("registration.burst", 50));
+	}
+
+	/**
+	 * Returns where the server is announced to clients in discovery mode.
+	 * @return the discovery settings, or null if the server is not announced
+	 * @throws IOException thrown if the discovery address cannot be resolved
+	 */
+	public DatagramSettings getDiscoverySettings() throws IOException
+	{
+		if ( ! Boolean.parseBoolean(getString("discovery", "false"))) {
+			return null;
+		}
+		return new DatagramSettings(getString("discovery.address", DatagramSettings.DEFAULT_DISCOVERY_ADDRESS),
+				getInt("discovery.port", DatagramSettings.DEFAULT_DISCOVERY_PORT), getString("discovery.interface", null));
+	}
+
+	/**
+	 * Returns the ip announced to clients, when it should not be the address the announcements are sent from.
+	 * @return the announced ip, or null
+	 */
+	public String getDiscoveryAnnouncedIp()
+	{
+		return getString("discovery.announced.ip", null);
+	}
+
+	/**
+	 * Returns the time between two server announcements.
+	 * @return the announcement interval in milliseconds
+	 */
+	public long getDiscoveryIntervalMillis()
+	{
+		return Math.max(1, getLong("discovery.interval.ms", 500));
+	}
+
+	/**
+	 * Returns the command channel group app executions are sent on.
+	 * @return the command channel settings, or null if group app executions are sent over every client connection
+	 * @throws IOException thrown if the command channel address cannot be resolved
+	 */
+	public DatagramSettings getCommandChannelSettings() throws IOException
+	{
+		if ( ! Boolean.parseBoolean(getString("command.multicast", "false"))) {
+			return null;
+		}
+		return new DatagramSettings(getString("command.multicast.address", DatagramSettings.DEFAULT_COMMAND_ADDRESS),
+				getInt("command.multicast.port", DatagramSettings.DEFAULT_COMMAND_PORT), getString("command.multicast.interface", null));
+	}
+
+	/**
+	 * Returns the time clients have to confirm a command channel request before it is retransmitted over their
+	 * connection.
+	 * @return the retransmit delay in milliseconds
+	 */
+	public long getCommandRetransmitDelayMillis()
+	{
+		return Math.max(0, getLong("command.retransmit.ms", 200));
+	}
+
+	private MessageRateLimit getMessageRateLimit(MessageType messageType, double defaultRate, int defaultBurst)
+	{
+		String key = "rate." + messageType.name().toLowerCase();
+		return new MessageRateLimit(getDouble(key, defaultRate), getInt(key + ".burst", defaultBurst));
+	}
+
+	private String getString(String key, String defaultValue)
+	{
+		String value = properties.getProperty(key);
+		return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+	}
+
+	private int getInt(String key, int defaultValue)
+	{
+		return Integer.parseInt(getString(key, String.valueOf(defaultValue)));
+	}
+
+	private long getLong(String key, long defaultValue)
+	{
+		return Long.parseLong(getString(key, String.valueOf(defaultValue)));
+	}
+
+	private double getDouble(String key, double defaultValue)
+	{
+		return Double.parseDouble(getString(key, String.valueOf(defaultValue)));
+	}
+}
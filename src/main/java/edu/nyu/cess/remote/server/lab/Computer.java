@@ -2,11 +2,15 @@ package edu.nyu.cess.remote.server.lab;
 
 /**
  * Created by aruff on 2/24/16.
+ *
+ * A computer can no longer be changed once its lab layout is frozen.
  */
 public class Computer
 {
-	public String name;
-	public String ip;
+	private String name;
+	private String ip;
+	private int id = -1;
+	private boolean frozen;
 
 	public String getName()
 	{
@@ -15,6 +19,7 @@ public class Computer
 
 	public void setName(String name)
 	{
+		checkNotFrozen();
 		this.name = name;
 	}
 
@@ -25,6 +30,30 @@ public class Computer
 
 	public void setIp(String ip)
 	{
+		checkNotFrozen();
 		this.ip = ip;
 	}
+
+	/**
+	 * Returns the client id the lab layout assigned to the computer, see {@link LabLayout#getClientId(String)}.
+	 * @return the client id, or -1 if the computer is not part of a frozen lab layout
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
+	synchronized void freeze(int id)
+	{
+		checkNotFrozen();
+		this.id = id;
+		this.frozen = true;
+	}
+
+	private synchronized void checkNotFrozen()
+	{
+		if (frozen) {
+			throw new IllegalStateException("The computer " + name + " belongs to a frozen lab layout.");
+		}
+	}
 }
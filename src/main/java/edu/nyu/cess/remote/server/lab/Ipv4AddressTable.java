@@ -0,0 +1,104 @@
+package edu.nyu.cess.remote.server.lab;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing table from IPv4 addresses, as ints, to client ids. Looking up an address allocates nothing.
+ */
+class Ipv4AddressTable
+{
+	private final int[] addresses;
+	private final int[] clientIds;
+	private final int mask;
+
+	/**
+	 * @param capacity the number of addresses the table holds
+	 */
+	Ipv4AddressTable(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+		addresses = new int[size];
+		clientIds = new int[size];
+		mask = size - 1;
+		Arrays.fill(clientIds, -1);
+	}
+
+	/**
+	 * Adds the address, unless the table already holds it.
+	 * @param address the address
+	 * @param clientId the client id
+	 * @return true if the address was added
+	 */
+	boolean put(int address, int clientId)
+	{
+		int slot = hash(address) & mask;
+		while (clientIds[slot] >= 0) {
+			if (addresses[slot] == address) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		addresses[slot] = address;
+		clientIds[slot] = clientId;
+		return true;
+	}
+
+	/**
+	 * Returns the client id of the address.
+	 * @param address the address
+	 * @return the client id, or -1 if the table does not hold the address
+	 */
+	int get(int address)
+	{
+		int slot = hash(address) & mask;
+		while (clientIds[slot] >= 0) {
+			if (addresses[slot] == address) {
+				return clientIds[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses a dotted quad IPv4 address.
+	 * @param ip the address
+	 * @return the address as an int, or null if it is not a dotted quad
+	 */
+	static Integer parse(String ip)
+	{
+		if (ip == null) {
+			return null;
+		}
+		int address = 0;
+		int octet = -1;
+		int octetCount = 0;
+		for (int i = 0; i <= ip.length(); i++) {
+			char c = (i < ip.length()) ? ip.charAt(i) : '.';
+			if (c == '.') {
+				if (octet < 0 || ++octetCount > 4) {
+					return null;
+				}
+				address = (address << 8) | octet;
+				octet = -1;
+			}
+			else if (c >= '0' && c <= '9') {
+				octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+				if (octet > 255) {
+					return null;
+				}
+			}
+			else {
+				return null;
+			}
+		}
+		return (octetCount == 4) ? address : null;
+	}
+
+	private static int hash(int address)
+	{
+		// The addresses of a lab differ in their last octets
+		int h = address * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -1,16 +1,37 @@
 package edu.nyu.cess.remote.server.lab;
 
+import edu.nyu.cess.remote.server.lib.ComputerNameAlphaNumericSort;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class contains the lab layout information, such as the
  * computer names, IP address, and row they are located in.
+ *
+ * Once loaded, the layout is frozen: its rows and computers can no longer be changed, and the computers are indexed
+ * once, by ip address, name, row and natural name order. A layout that has not been frozen explicitly is frozen by
+ * its first query.
+ *
+ * Every computer is assigned a dense client id, from 0 in layout order, when the layout is frozen. The server keys
+ * its per-client state by these ids, in arrays sized by {@link #getComputerCount()}, rather than by ip address.
  */
 public class LabLayout
 {
-	public List<Row> rows;
+	// Whether an IPv4 address hashes to its own value, which lets it be looked up without allocating
+	private static final boolean IPV4_HASH_IS_ADDRESS = isIpv4HashAddress();
+
+	private List<Row> rows;
+
+	private volatile Index index;
 
 	public LabLayout()
 	{
@@ -19,35 +40,281 @@ public class LabLayout
 
 	public List<Row> getRows()
 	{
-		return rows;
+		return getIndex().rows;
 	}
 
 	public void setRows(List<Row> rows)
 	{
+		if (index != null) {
+			throw new IllegalStateException("The lab layout is frozen.");
+		}
 		this.rows = rows;
 	}
 
+	/**
+	 * Freezes the layout and indexes its computers, assigning their client ids.
+	 * @return this layout
+	 */
+	public LabLayout freeze()
+	{
+		getIndex();
+		return this;
+	}
+
+	public boolean isFrozen()
+	{
+		return index != null;
+	}
+
+	/**
+	 * Returns a new list of the computers, in layout order, which the caller may change.
+	 * @return the computers
+	 */
 	public ArrayList<Computer> getAllComputers()
 	{
-		ArrayList<Computer> computerList = new ArrayList<>();
-		for (Row row : getRows()) {
-			for (Computer computer : row.getComputers()) {
-				computerList.add(computer);
+		return new ArrayList<>(getIndex().computers);
+	}
+
+	/**
+	 * Returns the computers in layout order, the computer at an index has that client id.
+	 * @return the unmodifiable computers
+	 */
+	public List<Computer> getComputers()
+	{
+		return getIndex().computers;
+	}
+
+	/**
+	 * Returns the computers sorted by name, numbers within the names compared by value.
+	 * @return the unmodifiable sorted computers
+	 */
+	public List<Computer> getSortedComputers()
+	{
+		return getIndex().sortedComputers;
+	}
+
+	/**
+	 * Returns the computers by ip address.
+	 * @return the unmodifiable map of computers
+	 */
+	public Map<String, Computer> getComputersByIp()
+	{
+		return getIndex().computersByIp;
+	}
+
+	/**
+	 * Returns the computer with the ip address.
+	 * @param ipAddress the ip address
+	 * @return the computer, or null if no computer of the layout has the ip address
+	 */
+	public Computer getComputer(String ipAddress)
+	{
+		return getIndex().computersByIp.get(ipAddress);
+	}
+
+	/**
+	 * Returns the computer with the address of a connecting client. Looking up an IPv4 address of the layout
+	 * allocates nothing.
+	 * @param address the client address
+	 * @return the computer, or null if no computer of the layout has the address
+	 */
+	public Computer getComputer(InetAddress address)
+	{
+		Index current = getIndex();
+		if (IPV4_HASH_IS_ADDRESS && address instanceof Inet4Address) {
+			int clientId = current.ipv4Table.get(address.hashCode());
+			if (clientId >= 0 && address.equals(current.addresses[clientId])) {
+				return current.computers.get(clientId);
+			}
+			if (current.allIpv4) {
+				return null;
+			}
+		}
+		return current.computersByIp.get(address.getHostAddress());
+	}
+
+	/**
+	 * Returns the computer with the name.
+	 * @param name the computer name
+	 * @return the computer, or null if no computer of the layout has the name
+	 */
+	public Computer getComputerByName(String name)
+	{
+		return getIndex().computersByName.get(name);
+	}
+
+	/**
+	 * Returns the row with the number.
+	 * @param rowNumber the row number
+	 * @return the row, or null if the layout has no row with the number
+	 */
+	public Row getRow(int rowNumber)
+	{
+		return getIndex().rowsByNumber.get(rowNumber);
+	}
+
+	/**
+	 * Returns the number of computers, the client ids range from 0 to this count, exclusive.
+	 * @return the computer count
+	 */
+	public int getComputerCount()
+	{
+		return getIndex().computers.size();
+	}
+
+	/**
+	 * Returns the computer assigned the client id.
+	 * @param clientId the client id
+	 * @return the computer
+	 */
+	public Computer getComputer(int clientId)
+	{
+		return getIndex().computers.get(clientId);
+	}
+
+	/**
+	 * Returns the client id of the computer with the ip address.
+	 * @param ipAddress the ip address
+	 * @return the client id, or -1 if no computer of the layout has the ip address
+	 */
+	public int getClientId(String ipAddress)
+	{
+		Computer computer = getIndex().computersByIp.get(ipAddress);
+		return (computer == null) ? -1 : computer.getId();
+	}
+
+	/**
+	 * Returns the client ids of the computers with the ip addresses, those not in the layout are left out.
+	 * @param ipAddresses the ip addresses
+	 * @return the client ids
+	 */
+	public BitSet getClientIds(Iterable<String> ipAddresses)
+	{
+		BitSet clientIds = new BitSet(getComputerCount());
+		for (String ipAddress : ipAddresses) {
+			int clientId = getClientId(ipAddress);
+			if (clientId >= 0) {
+				clientIds.set(clientId);
+			}
+		}
+		return clientIds;
+	}
+
+	/**
+	 * Returns the ip addresses of the computers with the client ids, in client id order.
+	 * @param clientIds the client ids
+	 * @return the ip addresses
+	 */
+	public List<String> getIpAddresses(BitSet clientIds)
+	{
+		List<Computer> computers = getIndex().computers;
+		List<String> ipAddresses = new ArrayList<>(clientIds.cardinality());
+		for (int clientId = clientIds.nextSetBit(0); clientId >= 0 && clientId < computers.size();
+			 clientId = clientIds.nextSetBit(clientId + 1)) {
+			ipAddresses.add(computers.get(clientId).getIp());
+		}
+		return ipAddresses;
+	}
+
+	private Index getIndex()
+	{
+		Index current = index;
+		if (current == null) {
+			synchronized (this) {
+				current = index;
+				if (current == null) {
+					current = new Index(rows);
+					index = current;
+				}
 			}
 		}
+		return current;
+	}
 
-		return computerList;
+	private static boolean isIpv4HashAddress()
+	{
+		try {
+			return InetAddress.getByAddress(new byte[] {10, 20, 30, 40}).hashCode() == 0x0A141E28;
+		}
+		catch (UnknownHostException e) {
+			return false;
+		}
 	}
 
-    public HashMap<String, Computer> getComputersByIp()
-    {
-        HashMap<String, Computer> computerMap = new HashMap<>();
-        for (Row row : getRows()) {
-            for (Computer computer : row.getComputers()) {
-                computerMap.put(computer.getIp(), computer);
-            }
-        }
+	/**
+	 * The frozen rows and the indexes of their computers.
+	 */
+	private static class Index
+	{
+		private final List<Row> rows;
+		private final List<Computer> computers;
+		private final List<Computer> sortedComputers;
+		private final Map<String, Computer> computersByIp;
+		private final Map<String, Computer> computersByName;
+		private final Map<Integer, Row> rowsByNumber;
+
+		private final Ipv4AddressTable ipv4Table;
+		// Indexed by client id, null for the computers whose ip is not an IPv4 address
+		private final InetAddress[] addresses;
+		private final boolean allIpv4;
+
+		Index(List<Row> layoutRows)
+		{
+			List<Row> frozenRows = new ArrayList<>();
+			List<Computer> layoutComputers = new ArrayList<>();
+			Map<String, Computer> byIp = new HashMap<>();
+			Map<String, Computer> byName = new HashMap<>();
+			Map<Integer, Row> byNumber = new LinkedHashMap<>();
+			if (layoutRows != null) {
+				for (Row row : layoutRows) {
+					row.freeze();
+					frozenRows.add(row);
+					byNumber.put(row.getNumber(), row);
+					for (Computer computer : row.getComputers()) {
+						computer.freeze(layoutComputers.size());
+						layoutComputers.add(computer);
+						byIp.put(computer.getIp(), computer);
+						byName.put(computer.getName(), computer);
+					}
+				}
+			}
+
+			ipv4Table = new Ipv4AddressTable(layoutComputers.size());
+			addresses = new InetAddress[layoutComputers.size()];
+			boolean ipv4 = true;
+			// A repeated ip address belongs to its last computer, as in the ip map
+			for (Computer computer : byIp.values()) {
+				Integer address = Ipv4AddressTable.parse(computer.getIp());
+				if (address == null) {
+					ipv4 = false;
+				}
+				else {
+					ipv4Table.put(address, computer.getId());
+					addresses[computer.getId()] = toInetAddress(address);
+				}
+			}
+			allIpv4 = ipv4;
+
+			List<Computer> sorted = new ArrayList<>(layoutComputers);
+			Collections.sort(sorted, new ComputerNameAlphaNumericSort());
+
+			rows = Collections.unmodifiableList(frozenRows);
+			computers = Collections.unmodifiableList(layoutComputers);
+			sortedComputers = Collections.unmodifiableList(sorted);
+			computersByIp = Collections.unmodifiableMap(byIp);
+			computersByName = Collections.unmodifiableMap(byName);
+			rowsByNumber = Collections.unmodifiableMap(byNumber);
+		}
 
-        return computerMap;
-    }
+		private static InetAddress toInetAddress(int address)
+		{
+			try {
+				return InetAddress.getByAddress(new byte[] {(byte) (address >>> 24), (byte) (address >>> 16),
+						(byte) (address >>> 8), (byte) address});
+			}
+			catch (UnknownHostException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
 }
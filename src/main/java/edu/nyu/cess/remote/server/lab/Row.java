@@ -1,14 +1,19 @@
 package edu.nyu.cess.remote.server.lab;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Created by aruff on 2/24/16.
+ *
+ * A row can no longer be changed once its lab layout is frozen.
  */
 public class Row
 {
-	public int number;
-	public List<Computer> computers;
+	private int number;
+	private List<Computer> computers;
+	private boolean frozen;
 
 	public int getNumber()
 	{
@@ -17,6 +22,7 @@ public class Row
 
 	public void setNumber(int number)
 	{
+		checkNotFrozen();
 		this.number = number;
 	}
 
@@ -27,6 +33,22 @@ public class Row
 
 	public void setComputers(List<Computer> computers)
 	{
+		checkNotFrozen();
 		this.computers = computers;
 	}
+
+	synchronized void freeze()
+	{
+		checkNotFrozen();
+		computers = (computers == null) ? Collections.<Computer>emptyList()
+				: Collections.unmodifiableList(new ArrayList<>(computers));
+		frozen = true;
+	}
+
+	private synchronized void checkNotFrozen()
+	{
+		if (frozen) {
+			throw new IllegalStateException("Row " + number + " belongs to a frozen lab layout.");
+		}
+	}
 }
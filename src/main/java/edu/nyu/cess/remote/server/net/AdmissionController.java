@@ -0,0 +1,117 @@
+package edu.nyu.cess.remote.server.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registers accepted clients on a small pool of worker threads, so that the accept loop only accepts connections
+ * and checks them against the lab layout. Registrations are paced by a token bucket, which spreads a connection
+ * storm over time instead of letting every client compete for the client pool and the lab view at once.
+ *
+ * A client whose registration fails is recorded as abandoned, it will never become visible.
+ */
+class AdmissionController
+{
+	private final static Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+	private final AdmissionStats admissionStats;
+	private final ExecutorService registrationPool;
+	private final TokenBucket registrationBucket;
+
+	/**
+	 * @param admissionSettings the registration threads and rate
+	 * @param admissionStats the statistics the accepted and registered clients are recorded in
+	 * @param threadNamePrefix the registration thread name prefix
+	 */
+	AdmissionController(AdmissionSettings admissionSettings, AdmissionStats admissionStats, final String threadNamePrefix)
+	{
+		this.admissionStats = admissionStats;
+		this.registrationPool = Executors.newFixedThreadPool(admissionSettings.getRegistrationThreads(), new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, threadNamePrefix + threadCount.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		MessageRateLimit registrationRate = new MessageRateLimit(admissionSettings.getRegistrationsPerSecond(),
+				admissionSettings.getRegistrationBurst());
+		this.registrationBucket = registrationRate.isUnlimited() ? null : new TokenBucket(registrationRate, System.nanoTime());
+	}
+
+	/**
+	 * Records the accepted client, and queues its registration.
+	 * @param clientIp the client ip address
+	 * @param registration registers the client with the client pool
+	 */
+	void admit(final String clientIp, final Registration registration)
+	{
+		admissionStats.notifyAccepted(clientIp);
+		registrationPool.execute(new Runnable() {
+			@Override public void run()
+			{
+				try {
+					awaitRegistrationToken();
+					registration.register();
+					admissionStats.notifyRegistered(clientIp);
+				}
+				catch (InterruptedException e) {
+					admissionStats.notifyAbandoned(clientIp);
+					Thread.currentThread().interrupt();
+				}
+				catch (IOException | RuntimeException e) {
+					admissionStats.notifyAbandoned(clientIp);
+					log.error("Failed to register client " + clientIp + ".", e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Records a rejected connection.
+	 */
+	void reject()
+	{
+		admissionStats.notifyRejected();
+	}
+
+	/**
+	 * Registers an admitted client with the client pool.
+	 */
+	interface Registration
+	{
+		/**
+		 * @throws IOException if the client's connection could not be set up, it has been closed
+		 */
+		void register() throws IOException;
+	}
+
+	private void awaitRegistrationToken() throws InterruptedException
+	{
+		if (registrationBucket == null) {
+			return;
+		}
+
+		while (true) {
+			long waitNanos;
+			synchronized (registrationBucket) {
+				long nowNanos = System.nanoTime();
+				if (registrationBucket.tryAcquire(nowNanos)) {
+					return;
+				}
+				waitNanos = registrationBucket.getNanosUntilAvailable(nowNanos);
+			}
+			TimeUnit.NANOSECONDS.sleep(Math.max(1, waitNanos));
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package edu.nyu.cess.remote.server.net;
+
+/**
+ * How new client connections are admitted: the accept backlog, the number of threads registering accepted clients,
+ * and the rate at which they are registered.
+ */
+public class AdmissionSettings
+{
+	private final int backlog;
+	private final int registrationThreads;
+	private final double registrationsPerSecond;
+	private final int registrationBurst;
+
+	/**
+	 * @param backlog the number of connections the operating system queues while they wait to be accepted
+	 * @param registrationThreads the number of threads registering accepted clients
+	 * @param registrationsPerSecond the sustained registration rate, a rate of zero or less disables the limit
+	 * @param registrationBurst the largest number of clients registered at once
+	 */
+	public AdmissionSettings(int backlog, int registrationThreads, double registrationsPerSecond, int registrationBurst)
+	{
+		this.backlog = Math.max(1, backlog);
+		this.registrationThreads = Math.max(1, registrationThreads);
+		this.registrationsPerSecond = registrationsPerSecond;
+		this.registrationBurst = Math.max(1, registrationBurst);
+	}
+
+	public int getBacklog()
+	{
+		return backlog;
+	}
+
+	public int getRegistrationThreads()
+	{
+		return registrationThreads;
+	}
+
+	public double getRegistrationsPerSecond()
+	{
+		return registrationsPerSecond;
+	}
+
+	public int getRegistrationBurst()
+	{
+		return registrationBurst;
+	}
+}
@@ -0,0 +1,157 @@
+package edu.nyu.cess.remote.server.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long accepted clients take to be registered with the client pool, and to become visible in the lab
+ * view. Once every accepted client is visible, the latencies of the clients admitted since the last summary are
+ * logged, which reports on the whole of a connection storm at once.
+ */
+public class AdmissionStats
+{
+	private final static Logger log = LoggerFactory.getLogger(AdmissionStats.class);
+
+	private static final int SAMPLE_SIZE = 1024;
+
+	private final ConcurrentHashMap<String, Long> acceptTimes = new ConcurrentHashMap<>();
+	private final AtomicLong acceptedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final LatencySamples registrationLatencies = new LatencySamples(SAMPLE_SIZE);
+	private final LatencySamples visibleLatencies = new LatencySamples(SAMPLE_SIZE);
+
+	private final Object summaryLock = new Object();
+	private int visibleSinceSummary;
+	private long maxVisibleLatencySinceSummary;
+
+	/**
+	 * Records that a connection from the client was accepted.
+	 * @param clientIp the client ip address
+	 */
+	public void notifyAccepted(String clientIp)
+	{
+		acceptTimes.put(clientIp, System.nanoTime());
+		acceptedCount.incrementAndGet();
+	}
+
+	/**
+	 * Records that a connection was rejected.
+	 */
+	public void notifyRejected()
+	{
+		rejectedCount.incrementAndGet();
+	}
+
+	/**
+	 * Records that the accepted client was registered with the client pool.
+	 * @param clientIp the client ip address
+	 */
+	public void notifyRegistered(String clientIp)
+	{
+		Long acceptTime = acceptTimes.get(clientIp);
+		if (acceptTime != null) {
+			registrationLatencies.add(System.nanoTime() - acceptTime);
+		}
+	}
+
+	/**
+	 * Records that the accepted client will not become visible, its registration failed or its connection was closed
+	 * before it could be added to the client pool.
+	 * @param clientIp the client ip address
+	 */
+	public void notifyAbandoned(String clientIp)
+	{
+		if (acceptTimes.remove(clientIp) == null) {
+			return;
+		}
+
+		log.debug("Client {} abandoned before it became visible.", clientIp);
+		synchronized (summaryLock) {
+			logSummaryIfSettled();
+		}
+	}
+
+	/**
+	 * Records that the accepted client is visible in the lab view.
+	 * @param clientIp the client ip address
+	 */
+	public void notifyVisible(String clientIp)
+	{
+		Long acceptTime = acceptTimes.remove(clientIp);
+		if (acceptTime == null) {
+			return;
+		}
+
+		long latency = System.nanoTime() - acceptTime;
+		visibleLatencies.add(latency);
+		log.debug("Client {} visible {} ms after its connection was accepted.", clientIp, TimeUnit.NANOSECONDS.toMillis(latency));
+
+		synchronized (summaryLock) {
+			++visibleSinceSummary;
+			maxVisibleLatencySinceSummary = Math.max(maxVisibleLatencySinceSummary, latency);
+			logSummaryIfSettled();
+		}
+	}
+
+	/**
+	 * Logs the summary of the clients admitted since the last one, once no accepted client is pending.
+	 * Guarded by the summary lock.
+	 */
+	private void logSummaryIfSettled()
+	{
+		if ( ! acceptTimes.isEmpty() || visibleSinceSummary == 0) {
+			return;
+		}
+		log.info("Admitted {} clients, accept to visible p50={}ms p99={}ms max={}ms, rejected {} connections in total.",
+				visibleSinceSummary, getVisibleLatency(50, TimeUnit.MILLISECONDS),
+				getVisibleLatency(99, TimeUnit.MILLISECONDS),
+				TimeUnit.NANOSECONDS.toMillis(maxVisibleLatencySinceSummary), rejectedCount.get());
+		visibleSinceSummary = 0;
+		maxVisibleLatencySinceSummary = 0;
+	}
+
+	public long getAcceptedCount()
+	{
+		return acceptedCount.get();
+	}
+
+	public long getRejectedCount()
+	{
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Returns the number of accepted clients that are not visible yet.
+	 * @return the pending client count
+	 */
+	public int getPendingCount()
+	{
+		return acceptTimes.size();
+	}
+
+	/**
+	 * Returns a percentile of the time from accept to registration, over the most recent clients.
+	 * @param percentile the percentile, between 0 and 100
+	 * @param unit the unit of the returned latency
+	 * @return the latency, or -1 if no client has been registered
+	 */
+	public long getRegistrationLatency(double percentile, TimeUnit unit)
+	{
+		return registrationLatencies.getPercentile(percentile, unit);
+	}
+
+	/**
+	 * Returns a percentile of the time from accept to being visible in the lab view, over the most recent clients.
+	 * @param percentile the percentile, between 0 and 100
+	 * @param unit the unit of the returned latency
+	 * @return the latency, or -1 if no client has become visible
+	 */
+	public long getVisibleLatency(double percentile, TimeUnit unit)
+	{
+		return visibleLatencies.getPercentile(percentile, unit);
+	}
+}
@@ -2,67 +2,203 @@ package edu.nyu.cess.remote.server.net;
 
 import edu.nyu.cess.remote.common.message.Message;
 import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.codec.Hello;
+import edu.nyu.cess.remote.common.message.codec.MessageBuffer;
+import edu.nyu.cess.remote.common.message.codec.MessageCodec;
+import edu.nyu.cess.remote.common.message.codec.MessageCodecs;
 import edu.nyu.cess.remote.common.net.NetworkInfo;
 import org.apache.log4j.Logger;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class ClientSocket implements MessageSocket
+/**
+ * A blocking client connection. Messages are read by the calling thread, while sent messages are queued and
+ * written by a shared writer pool: at most one writer drains a given client's queue at a time, and every message
+ * it finds pending is written before a single flush. Each batch holds the pending control messages and a single
+ * chunk of each bulk lane, so a control message is never queued behind more than one chunk per lane.
+ *
+ * Every write is held to the {@link SendDeadline} of the connection, checked when the write completes and whenever
+ * a message is sent while it is still pending. Once the client is quarantined its writes are moved off the shared
+ * writers, and the socket is closed if the client stays quarantined for too long.
+ */
+public class ClientSocket implements ServerMessageSocket
 {
 	final static Logger logger = Logger.getLogger(ClientSocket.class);
 
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
 	private final Object inboundSocketLock = new Object();
-	private final Object outboundSocketLock = new Object();
 
 	private Socket socket;
+	private final ConnectionHandshake connectionHandshake;
+
+	private final MessageBuffer inboundBuffer = new MessageBuffer();
+	private MessageCodec inboundCodec;
+	private volatile Hello hello;
+	private volatile long sessionToken;
+	private volatile boolean resumed;
+
+	private final OutboundQueue outboundQueue;
+	private final WriterPool writerPool;
+	private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+	private final ConnectionStats connectionStats;
+	private final SlowClientMonitor slowClientMonitor;
+	private final SendDeadline sendDeadline;
+
+	private final Object writeStateLock = new Object();
+	// Guarded by writeStateLock
+	private long writeStartNanos = -1;
+	private boolean sharedWriteInProgress;
+	private boolean writerCompensated;
+
+	// Set once the welcome has been written, only used by the writer afterwards
+	private volatile MessageCodec outboundCodec;
+	private OutputStream outputStream;
 
     private volatile NetworkInfo networkInfo;
 
-    public ClientSocket(NetworkInfo networkInfo, Socket socket)
+	/**
+	 * @param networkInfo the client network info
+	 * @param socket the connected socket
+	 * @param connectionHandshake the server side of the connection handshake
+	 * @param outboundQueueCapacity the maximum number of messages waiting to be written
+	 * @param writerPool the writers running the writes
+	 * @param connectionStats counts the socket as open until it is closed
+	 * @param slowClientMonitor holds the writes to the send deadline
+	 */
+    public ClientSocket(NetworkInfo networkInfo, Socket socket, ConnectionHandshake connectionHandshake,
+						int outboundQueueCapacity, WriterPool writerPool, ConnectionStats connectionStats,
+						SlowClientMonitor slowClientMonitor)
     {
 		this.networkInfo = networkInfo;
 		this.socket = socket;
+		this.connectionHandshake = connectionHandshake;
+		this.outboundQueue = new OutboundQueue(outboundQueueCapacity);
+		this.writerPool = writerPool;
+		this.connectionStats = connectionStats;
+		this.slowClientMonitor = slowClientMonitor;
+		this.sendDeadline = slowClientMonitor.newSendDeadline(networkInfo.getClientIp());
+		connectionStats.notifyConnectionOpened();
     }
 
     /**
      * {@link MessageSocket}
+	 *
+	 * The handshake is performed by the first call, unless it has already been performed by
+	 * {@link #readHello()} and {@link #writeWelcome()}.
      */
     @Override public Message readMessage() throws IOException
     {
 		synchronized (inboundSocketLock) {
-			if (!socket.isConnected()) {
+			if ( ! isConnected()) {
 				throw new IOException("Attempting to read message from an disconnected socket.");
 			}
 
-			ObjectInputStream objectInputStream = new ObjectInputStream(socket.getInputStream());
+			if (inboundCodec == null) {
+				readHello();
+				writeWelcome();
+			}
 
-			Object object;
-			try {
-				object = objectInputStream.readObject();
-			} catch (ClassNotFoundException e) {
-				throw new IOException(e);
+			Message message;
+			while ((message = inboundBuffer.nextMessage(inboundCodec)) == null) {
+				if (inboundBuffer.readFrom(socket.getInputStream()) < 0) {
+					throw new IOException("Connection closed by the client.");
+				}
 			}
-			return (Message) object;
+			return message;
 		}
     }
 
     /**
      * {@link MessageSocket}
+	 *
+	 * The message is queued and written by the writer pool, this call never waits for the client. Messages sent
+	 * before the WELCOME are written after it. The write in progress, if any, is checked against the send deadline.
+	 *
+	 * @throws IOException thrown if the socket is closed, or too many messages are already waiting
      */
 	@Override public void sendMessage(Message message) throws IOException
     {
-		synchronized (outboundSocketLock) {
-			if ( ! socket.isConnected()) {
-				throw new IOException("Attempting to send an error message using a disconnected socket.");
-			}
+		if ( ! isConnected()) {
+			throw new IOException("Attempting to send a message using a disconnected socket.");
+		}
+		if (message.getDataChunk() != null && ! supportsBulkLanes()) {
+			throw new IOException("Client " + networkInfo.getClientIp() + " does not accept bulk lanes.");
+		}
+
+		long pendingWriteStart;
+		synchronized (writeStateLock) {
+			pendingWriteStart = writeStartNanos;
+		}
+		switch (slowClientMonitor.notifyPending(networkInfo.getClientIp(), sendDeadline, pendingWriteStart)) {
+			case QUARANTINED:
+				compensateBlockedWriter();
+				break;
+			case DISCONNECT:
+				// Ends the blocked write, as well as the reader
+				closeSocket();
+				throw new IOException("The connection of " + networkInfo.getClientIp() + " was closed, it stayed quarantined too long.");
+			default:
+				break;
+		}
 
-			ObjectOutputStream objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
-			objectOutputStream.writeObject(message);
-			objectOutputStream.flush();
+		if ( ! outboundQueue.offer(message)) {
+			throw new IOException("The outbound queue of " + networkInfo.getClientIp() + " is full.");
 		}
+		scheduleWrite();
+	}
+
+	/**
+	 * {@link ServerMessageSocket}
+	 *
+	 * Closing the socket ends the blocked read of the {@link MessageMonitorThread}, which reports the disconnection.
+	 */
+	@Override public void close()
+	{
+		closeSocket();
+	}
+
+	/**
+	 * {@link ServerMessageSocket}
+	 */
+	@Override public boolean isLegacyClient()
+	{
+		Hello receivedHello = hello;
+		return receivedHello != null && receivedHello.getProtocolVersion() == ConnectionHandshake.LEGACY_PROTOCOL_VERSION;
+	}
+
+	/**
+	 * {@link ServerMessageSocket}
+	 */
+	@Override public Hello getHello()
+	{
+		return hello;
+	}
+
+	/**
+	 * {@link ServerMessageSocket}
+	 */
+	@Override public void setSession(long sessionToken, boolean resumed)
+	{
+		this.sessionToken = sessionToken;
+		this.resumed = resumed;
+	}
+
+	/**
+	 * {@link ServerMessageSocket}
+	 */
+	@Override public long getSessionToken()
+	{
+		return sessionToken;
 	}
 
 	/**
@@ -78,7 +214,7 @@ public class ClientSocket implements MessageSocket
      */
     @Override public boolean isConnected()
     {
-        return socket.isConnected();
+        return socket.isConnected() && ! socket.isClosed();
     }
 
 	/**
@@ -104,4 +240,184 @@ public class ClientSocket implements MessageSocket
     {
         return networkInfo.getClientName();
     }
+
+	/**
+	 * Reads the client's hello, blocking until it has been received or the handshake timeout expires.
+	 * @return the hello
+	 * @throws java.net.SocketTimeoutException thrown if the hello is not received in time
+	 * @throws IOException thrown if the hello is invalid, or the connection fails
+	 */
+	public Hello readHello() throws IOException
+	{
+		synchronized (inboundSocketLock) {
+			socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, connectionHandshake.getTimeoutMillis()));
+			Hello receivedHello = connectionHandshake.readHello(socket.getInputStream(), inboundBuffer);
+			socket.setSoTimeout(0);
+			inboundCodec = receivedHello.getCodec();
+			hello = receivedHello;
+			logger.debug("Codec " + inboundCodec.getId() + " selected for " + networkInfo.getClientIp());
+			return receivedHello;
+		}
+	}
+
+	/**
+	 * Answers the hello with the WELCOME of the assigned session, then starts writing the queued messages.
+	 * @throws IOException thrown if the WELCOME can not be written
+	 */
+	public void writeWelcome() throws IOException
+	{
+		outputStream = new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE);
+		ByteBuffer welcome = ConnectionHandshake.createWelcome(hello, sessionToken, resumed);
+		if (welcome != null) {
+			write(welcome);
+			outputStream.flush();
+		}
+
+		outboundCodec = MessageCodecs.create(inboundCodec.getId());
+		scheduleWrite();
+	}
+
+	/**
+	 * Hands the queue to the writer pool, unless a writer is already draining it or the codec is not known yet.
+	 */
+	private void scheduleWrite()
+	{
+		if (outboundCodec != null && writeScheduled.compareAndSet(false, true)) {
+			dispatchWrite(sendDeadline.isQuarantined());
+		}
+	}
+
+	private void dispatchWrite(final boolean quarantined)
+	{
+		Runnable write = new Runnable() {
+			@Override public void run()
+			{
+				writeQueuedMessages(quarantined);
+			}
+		};
+		if (quarantined) {
+			writerPool.executeQuarantined(write);
+		}
+		else {
+			writerPool.execute(write);
+		}
+	}
+
+	/**
+	 * Writes the queued messages until the queue is empty, flushing once per batch. A failed write closes the
+	 * socket, which ends the reader and fails the following sends. The writes are handed over to the other writers
+	 * when the client is quarantined or released.
+	 * @param quarantineWriter true if running on a writer of the quarantined clients
+	 */
+	private void writeQueuedMessages(boolean quarantineWriter)
+	{
+		List<Message> batch = new ArrayList<>();
+		while (true) {
+			if (sendDeadline.isQuarantined() != quarantineWriter) {
+				// Still scheduled, the queue is drained by the other writers from now on
+				dispatchWrite( ! quarantineWriter);
+				return;
+			}
+
+			if (outboundQueue.drainTo(batch) == 0) {
+				writeScheduled.set(false);
+				// A message queued after the drain, but before the flag was cleared, is still ours to write
+				if (outboundQueue.isEmpty() || ! writeScheduled.compareAndSet(false, true)) {
+					return;
+				}
+				continue;
+			}
+
+			long writeStart = startWrite(quarantineWriter);
+			try {
+				for (Message message : batch) {
+					ByteBuffer frame;
+					try {
+						frame = outboundCodec.encode(message);
+					}
+					catch (IOException e) {
+						logger.error("Failed to encode message for " + networkInfo.getClientIp() + ", message dropped. Error = " + e.getMessage());
+						continue;
+					}
+					write(frame);
+				}
+				outputStream.flush();
+			}
+			catch (IOException e) {
+				endWrite();
+				logger.error("Failed to write to " + networkInfo.getClientIp() + ", closing the socket. Error = " + e.getMessage());
+				closeSocket();
+				writeScheduled.set(false);
+				return;
+			}
+			endWrite();
+			batch.clear();
+
+			if (slowClientMonitor.notifyWritten(networkInfo.getClientIp(), sendDeadline, writeStart) == SendDeadline.Verdict.DISCONNECT) {
+				closeSocket();
+			}
+		}
+	}
+
+	private long startWrite(boolean quarantineWriter)
+	{
+		synchronized (writeStateLock) {
+			writeStartNanos = System.nanoTime();
+			sharedWriteInProgress = ! quarantineWriter;
+			return writeStartNanos;
+		}
+	}
+
+	private void endWrite()
+	{
+		synchronized (writeStateLock) {
+			writeStartNanos = -1;
+			sharedWriteInProgress = false;
+			if (writerCompensated) {
+				writerCompensated = false;
+				writerPool.removeWriter();
+			}
+		}
+	}
+
+	/**
+	 * Gives the shared writers an extra writer while one of them is blocked on this client.
+	 */
+	private void compensateBlockedWriter()
+	{
+		synchronized (writeStateLock) {
+			if (sharedWriteInProgress && ! writerCompensated) {
+				writerCompensated = true;
+				writerPool.addWriter();
+			}
+		}
+	}
+
+	private boolean supportsBulkLanes()
+	{
+		Hello receivedHello = hello;
+		return receivedHello != null && receivedHello.supports(ConnectionHandshake.BULK_LANES);
+	}
+
+	private void write(ByteBuffer frame) throws IOException
+	{
+		outputStream.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+	}
+
+	private void closeSocket()
+	{
+		if ( ! closed.compareAndSet(false, true)) {
+			return;
+		}
+
+		// Releases the queued messages right away, the socket may stay referenced until its disconnection is handled
+		outboundQueue.clear();
+		connectionStats.notifyConnectionClosed();
+		try {
+			socket.close();
+		}
+		catch (IOException e) {
+			// The socket is unusable either way
+		}
+	}
 }
@@ -3,9 +3,13 @@
  */
 package edu.nyu.cess.remote.server.net;
 
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
 import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
 import edu.nyu.cess.remote.server.client.ClientPool;
 import edu.nyu.cess.remote.server.client.ClientPoolProxy;
+import edu.nyu.cess.remote.server.lab.Computer;
 import edu.nyu.cess.remote.server.lab.LabLayout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,29 +20,64 @@ import java.net.Socket;
 
 /**
  * This class waits for new client connections to be established and sends them to the {@link ClientPoolProxy}
- * to be managed along with other clients.
+ * to be managed along with other clients. Every accepted client is served by its own {@link MessageMonitorThread},
+ * run by the {@link ExecutionModel}, while the messages sent to the clients are written by a shared pool of writer
+ * threads.
+ *
+ * The accept loop only checks new connections against the lab layout, the clients are registered by the
+ * {@link AdmissionController} workers. A client is only added to the pool once its hello has been received.
  */
-public class ClientSocketConnectionMonitor
+public class ClientSocketConnectionMonitor implements ConnectionMonitor
 {
 	private final static Logger log = LoggerFactory.getLogger(ClientSocketConnectionMonitor.class);
 
     private ClientPool clientPool;
+	private MessageSocketObserver messageSocketObserver;
+	private ClientDisconnectionObserver clientDisconnectionObserver;
+	private ConnectionHandshake connectionHandshake;
+	private int outboundQueueCapacity;
+	private WriterPool writerPool;
+	private ExecutionModel executionModel;
+	private AdmissionSettings admissionSettings;
+	private AdmissionStats admissionStats;
+	private ConnectionStats connectionStats;
+	private SlowClientMonitor slowClientMonitor;
 
-    public ClientSocketConnectionMonitor(ClientPool clientPool)
+    public ClientSocketConnectionMonitor(ClientPool clientPool, MessageSocketObserver messageSocketObserver,
+										 ClientDisconnectionObserver clientDisconnectionObserver, ConnectionHandshake connectionHandshake,
+										 int outboundQueueCapacity, WriterPool writerPool, ExecutionModel executionModel,
+										 AdmissionSettings admissionSettings,
+										 AdmissionStats admissionStats, ConnectionStats connectionStats,
+										 SlowClientMonitor slowClientMonitor)
     {
         this.clientPool = clientPool;
+		this.messageSocketObserver = messageSocketObserver;
+		this.clientDisconnectionObserver = clientDisconnectionObserver;
+		this.connectionHandshake = connectionHandshake;
+		this.outboundQueueCapacity = outboundQueueCapacity;
+		this.admissionSettings = admissionSettings;
+		this.admissionStats = admissionStats;
+		this.connectionStats = connectionStats;
+		this.slowClientMonitor = slowClientMonitor;
+		this.writerPool = writerPool;
+		this.executionModel = executionModel;
 	}
 
-	public void monitorNewClientSocketConnections(int port, LabLayout labLayout)
+	/**
+	 * {@link ConnectionMonitor}
+	 */
+	@Override public void monitorNewClientSocketConnections(int port, LabLayout labLayout)
     {
 		ServerSocket serverSocket;
 		try {
-			serverSocket = new ServerSocket(port);
+			serverSocket = new ServerSocket(port, admissionSettings.getBacklog());
 		} catch (IOException e) {
 			log.error("Failed to start the server socket. Error: {}", e.getMessage());
 			return;
 		}
 
+		AdmissionController admissionController = new AdmissionController(admissionSettings, admissionStats, "client-registration-");
+
 		Socket clientSocket;
 		while (true) {
             clientSocket = null;
@@ -51,24 +90,43 @@ public class ClientSocketConnectionMonitor
                 }
             }
 
-            String remoteIp = clientSocket.getInetAddress().getHostAddress();
-            if (! labLayout.getComputersByIp().containsKey(remoteIp)) {
+            Computer computer = labLayout.getComputer(clientSocket.getInetAddress());
+            if (computer == null) {
+                String remoteIp = clientSocket.getInetAddress().getHostAddress();
 				try {
 					clientSocket.close();
 				} catch (IOException e) {
 					log.error("Failed to close the server socket. Error: {}", e.getMessage());
 				}
+				admissionController.reject();
 				log.error("Connection by " + remoteIp + " was rejected. Only clients in lab-layout.yaml are allowed.");
             }
             else {
-                log.debug("Client connected: " + remoteIp);
-
-                String clientName = labLayout.getComputersByIp().get(remoteIp).getName();
-                String serverIp = clientSocket.getLocalAddress().getHostAddress();
-                NetworkInfo clientNetworkInfo = new NetworkInfo(clientName, remoteIp, serverIp);
+                String remoteIp = computer.getIp();
+                log.debug("Client connected: {}", remoteIp);
 
-                clientPool.addClient(new ClientSocket(clientNetworkInfo, clientSocket));
+                final Socket acceptedSocket = clientSocket;
+                final String clientName = computer.getName();
+                admissionController.admit(remoteIp, new AdmissionController.Registration() {
+					@Override public void register()
+					{
+						registerClient(acceptedSocket, clientName);
+					}
+				});
             }
 		}
 	}
+
+	private void registerClient(Socket clientSocket, String clientName)
+	{
+		String remoteIp = clientSocket.getInetAddress().getHostAddress();
+		String serverIp = clientSocket.getLocalAddress().getHostAddress();
+		NetworkInfo clientNetworkInfo = new NetworkInfo(clientName, remoteIp, serverIp);
+
+		ClientSocket socket = new ClientSocket(clientNetworkInfo, clientSocket, connectionHandshake,
+				outboundQueueCapacity, writerPool, connectionStats, slowClientMonitor);
+		executionModel.execute("client-reader-" + remoteIp,
+				new MessageMonitorThread(socket, clientPool, messageSocketObserver, clientDisconnectionObserver, connectionStats,
+						admissionStats));
+	}
 }
@@ -0,0 +1,58 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.CommandDatagram;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.net.DatagramSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.util.Collection;
+
+/**
+ * Sends a message to a group of clients at once, as a single {@link CommandDatagram} on the command channel
+ * address. Delivery is not guaranteed, the clients confirm the commands they receive over their connections.
+ */
+public class CommandMulticaster
+{
+	private final static Logger log = LoggerFactory.getLogger(CommandMulticaster.class);
+
+	private final DatagramSettings datagramSettings;
+	private final DatagramSocket socket;
+
+	/**
+	 * Opens the command channel socket.
+	 * @param datagramSettings the command channel address
+	 * @throws IOException thrown if the socket cannot be opened
+	 */
+	public CommandMulticaster(DatagramSettings datagramSettings) throws IOException
+	{
+		this.datagramSettings = datagramSettings;
+		this.socket = datagramSettings.openSendingSocket();
+		log.info("Sending group commands to {}.", datagramSettings);
+	}
+
+	/**
+	 * Sends the message to the targets.
+	 * @param message the message
+	 * @param targets the ip addresses of the target clients
+	 * @throws IOException thrown if the datagram could not be sent
+	 */
+	public void send(Message message, Collection<String> targets) throws IOException
+	{
+		byte[] datagram = new CommandDatagram(message, targets).encode();
+		synchronized (socket) {
+			socket.send(new DatagramPacket(datagram, datagram.length, datagramSettings.getAddress(), datagramSettings.getPort()));
+		}
+	}
+
+	/**
+	 * Closes the command channel socket.
+	 */
+	public void close()
+	{
+		socket.close();
+	}
+}
@@ -0,0 +1,18 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.server.lab.LabLayout;
+
+/**
+ * Implementors wait for new client connections, and hand every accepted client belonging to the lab layout to
+ * the client pool.
+ */
+public interface ConnectionMonitor
+{
+	/**
+	 * Accepts client connections on the specified port until the server is stopped. This call blocks.
+	 *
+	 * @param port the server port
+	 * @param labLayout the lab layout, only computers listed in it are allowed to connect
+	 */
+	void monitorNewClientSocketConnections(int port, LabLayout labLayout);
+}
@@ -0,0 +1,94 @@
+package edu.nyu.cess.remote.server.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the connections and reader threads of a transport over the lifetime of the server. Every connection that
+ * is opened is eventually closed, and every reader thread that is started eventually finishes, so with no client
+ * connected the open connection and live reader thread counts are back at zero however often the clients have
+ * reconnected. A count that keeps growing with the reconnections is a leak.
+ */
+public class ConnectionStats
+{
+	private final AtomicLong openedConnectionCount = new AtomicLong();
+	private final AtomicLong closedConnectionCount = new AtomicLong();
+	private final AtomicLong startedReaderCount = new AtomicLong();
+	private final AtomicLong finishedReaderCount = new AtomicLong();
+	private final AtomicLong handshakeTimeoutCount = new AtomicLong();
+
+	/**
+	 * Records that a client connection was opened.
+	 */
+	public void notifyConnectionOpened()
+	{
+		openedConnectionCount.incrementAndGet();
+	}
+
+	/**
+	 * Records that a client connection was closed. Must be called once per opened connection.
+	 */
+	public void notifyConnectionClosed()
+	{
+		closedConnectionCount.incrementAndGet();
+	}
+
+	/**
+	 * Records that a thread reading a client connection was started.
+	 */
+	public void notifyReaderStarted()
+	{
+		startedReaderCount.incrementAndGet();
+	}
+
+	/**
+	 * Records that a thread reading a client connection has finished.
+	 */
+	public void notifyReaderFinished()
+	{
+		finishedReaderCount.incrementAndGet();
+	}
+
+	/**
+	 * Records that a connection was closed because its hello was not received in time.
+	 */
+	public void notifyHandshakeTimedOut()
+	{
+		handshakeTimeoutCount.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of client connections that are currently open.
+	 * @return the open connection count
+	 */
+	public long getOpenConnectionCount()
+	{
+		return openedConnectionCount.get() - closedConnectionCount.get();
+	}
+
+	/**
+	 * Returns the number of client connections opened since the server started.
+	 * @return the opened connection count
+	 */
+	public long getOpenedConnectionCount()
+	{
+		return openedConnectionCount.get();
+	}
+
+	/**
+	 * Returns the number of threads currently reading a client connection.
+	 * @return the live reader thread count
+	 */
+	public long getLiveReaderCount()
+	{
+		return startedReaderCount.get() - finishedReaderCount.get();
+	}
+
+	/**
+	 * Returns the number of connections closed because their hello was not received in time.
+	 * @return the handshake timeout count
+	 */
+	public long getHandshakeTimeoutCount()
+	{
+		return handshakeTimeoutCount.get();
+	}
+}
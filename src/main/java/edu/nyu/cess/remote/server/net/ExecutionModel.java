@@ -0,0 +1,34 @@
+package edu.nyu.cess.remote.server.net;
+
+/**
+ * Runs the long lived tasks the server keeps for each client, such as the reader of a blocking connection. The
+ * model decides which threads run the tasks, so the threading of the server can be sized and swapped without
+ * touching the transports.
+ */
+public interface ExecutionModel
+{
+	/**
+	 * Runs the task.
+	 * @param taskName the name of the task, given to the thread running it
+	 * @param task the task
+	 */
+	void execute(String taskName, Runnable task);
+
+	/**
+	 * Returns the number of threads currently started by the model, whether or not they are running a task.
+	 * @return the thread count
+	 */
+	int getThreadCount();
+
+	/**
+	 * Returns the statistics of the tasks run by the model.
+	 * @return the execution statistics
+	 */
+	ExecutionStats getStats();
+
+	/**
+	 * Returns the type of the model.
+	 * @return the execution model type
+	 */
+	ExecutionModelType getType();
+}
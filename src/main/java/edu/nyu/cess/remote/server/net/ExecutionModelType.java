@@ -0,0 +1,13 @@
+package edu.nyu.cess.remote.server.net;
+
+/**
+ * The execution models available for running the per-client tasks of the server.
+ *
+ * THREAD_PER_CLIENT: every task is run by a platform thread of its own.
+ * POOL: the tasks are run by a bounded pool of platform threads, tasks beyond the bound wait for a thread.
+ * VIRTUAL: every task is run by a virtual thread of its own, requires Java 21 or later.
+ */
+public enum ExecutionModelType
+{
+	THREAD_PER_CLIENT, POOL, VIRTUAL
+}
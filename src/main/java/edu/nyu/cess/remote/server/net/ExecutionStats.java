@@ -0,0 +1,103 @@
+package edu.nyu.cess.remote.server.net;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the tasks of an execution model, and samples their scheduling latency, the time from the submission of a
+ * task until a thread starts running it.
+ */
+public class ExecutionStats
+{
+	private static final int SAMPLE_SIZE = 1024;
+
+	private final AtomicLong submittedTaskCount = new AtomicLong();
+	private final AtomicLong finishedTaskCount = new AtomicLong();
+	private final AtomicInteger runningTaskCount = new AtomicInteger();
+	private final AtomicInteger peakRunningTaskCount = new AtomicInteger();
+	private final LatencySamples schedulingLatencies = new LatencySamples(SAMPLE_SIZE);
+
+	/**
+	 * Records the submission of the task, and returns the task to be run in its place.
+	 * @param task the task
+	 * @return the task recording when it starts and finishes
+	 */
+	Runnable track(final Runnable task)
+	{
+		final long submittedNanos = System.nanoTime();
+		submittedTaskCount.incrementAndGet();
+		return new Runnable() {
+			@Override public void run()
+			{
+				schedulingLatencies.add(System.nanoTime() - submittedNanos);
+				notifyStarted();
+				try {
+					task.run();
+				}
+				finally {
+					runningTaskCount.decrementAndGet();
+					finishedTaskCount.incrementAndGet();
+				}
+			}
+		};
+	}
+
+	private void notifyStarted()
+	{
+		int running = runningTaskCount.incrementAndGet();
+		int peak;
+		while (running > (peak = peakRunningTaskCount.get())) {
+			if (peakRunningTaskCount.compareAndSet(peak, running)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of tasks currently running.
+	 * @return the running task count
+	 */
+	public int getRunningTaskCount()
+	{
+		return runningTaskCount.get();
+	}
+
+	/**
+	 * Returns the largest number of tasks that were running at once.
+	 * @return the peak running task count
+	 */
+	public int getPeakRunningTaskCount()
+	{
+		return peakRunningTaskCount.get();
+	}
+
+	/**
+	 * Returns the number of tasks submitted but not yet started.
+	 * @return the waiting task count
+	 */
+	public long getWaitingTaskCount()
+	{
+		return submittedTaskCount.get() - finishedTaskCount.get() - runningTaskCount.get();
+	}
+
+	/**
+	 * Returns the number of tasks submitted since the server started.
+	 * @return the submitted task count
+	 */
+	public long getSubmittedTaskCount()
+	{
+		return submittedTaskCount.get();
+	}
+
+	/**
+	 * Returns a percentile of the recent scheduling latencies.
+	 * @param percentile the percentile, between 0 and 100
+	 * @param unit the unit of the returned latency
+	 * @return the scheduling latency, or -1 if no task has started yet
+	 */
+	public long getSchedulingLatency(double percentile, TimeUnit unit)
+	{
+		return schedulingLatencies.getPercentile(percentile, unit);
+	}
+}
@@ -0,0 +1,174 @@
+package edu.nyu.cess.remote.server.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timer for large numbers of short tasks, driven by a single thread.
+ *
+ * Scheduled tasks are placed in the bucket of a wheel that is advanced once per tick, so scheduling and cancelling
+ * are constant time whatever the number of pending tasks. Tasks run on the timer thread, up to one tick late, and
+ * must not block.
+ */
+public class HashedWheelTimer
+{
+	private final static Logger log = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+	private final long tickNanos;
+	private final ArrayList<LinkedList<Timeout>> wheel;
+	private final int mask;
+	private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+	private final long startNanos = System.nanoTime();
+	private final Thread workerThread;
+
+	private volatile boolean running = true;
+
+	/**
+	 * Creates and starts the timer.
+	 * @param threadName the name of the timer thread
+	 * @param tickDuration the duration of a tick
+	 * @param unit the tick duration unit
+	 * @param ticksPerWheel the number of buckets, rounded up to a power of two
+	 */
+	public HashedWheelTimer(String threadName, long tickDuration, TimeUnit unit, int ticksPerWheel)
+	{
+		this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+
+		int wheelSize = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+		this.wheel = new ArrayList<>(wheelSize);
+		for (int i = 0; i < wheelSize; ++i) {
+			wheel.add(new LinkedList<Timeout>());
+		}
+		this.mask = wheelSize - 1;
+
+		workerThread = new Thread(new Runnable() {
+			@Override public void run()
+			{
+				runWheel();
+			}
+		}, threadName);
+		workerThread.setDaemon(true);
+		workerThread.start();
+	}
+
+	/**
+	 * Schedules the task to run once, after the delay.
+	 * @param task the task
+	 * @param delay the delay
+	 * @param unit the delay unit
+	 * @return the timeout, which may be used to cancel the task
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit)
+	{
+		Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + unit.toNanos(Math.max(0, delay)));
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Stops the timer, the pending tasks never run.
+	 */
+	public void stop()
+	{
+		running = false;
+		workerThread.interrupt();
+	}
+
+	private void runWheel()
+	{
+		long tick = 0;
+		while (running) {
+			long sleepNanos = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+			if (sleepNanos > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+			}
+
+			transferPendingTimeouts(tick);
+			expireTimeouts(wheel.get((int) (tick & mask)));
+			++tick;
+		}
+	}
+
+	private void transferPendingTimeouts(long currentTick)
+	{
+		Timeout timeout;
+		while ((timeout = pendingTimeouts.poll()) != null) {
+			if (timeout.isCancelled()) {
+				continue;
+			}
+
+			long deadlineTick = timeout.deadlineNanos / tickNanos;
+			timeout.remainingRounds = (deadlineTick - currentTick) / wheel.size();
+			// A deadline that has already passed runs on the current tick
+			long bucketTick = Math.max(deadlineTick, currentTick);
+			wheel.get((int) (bucketTick & mask)).add(timeout);
+		}
+	}
+
+	private void expireTimeouts(LinkedList<Timeout> bucket)
+	{
+		Iterator<Timeout> timeouts = bucket.iterator();
+		while (timeouts.hasNext()) {
+			Timeout timeout = timeouts.next();
+			if (timeout.isCancelled()) {
+				timeouts.remove();
+			}
+			else if (timeout.remainingRounds <= 0) {
+				timeouts.remove();
+				try {
+					timeout.task.run();
+				}
+				catch (RuntimeException e) {
+					log.error("Timer task failed.", e);
+				}
+			}
+			else {
+				--timeout.remainingRounds;
+			}
+		}
+	}
+
+	/**
+	 * A task scheduled with the timer.
+	 */
+	public static class Timeout
+	{
+		private final Runnable task;
+		private final long deadlineNanos;
+		private volatile boolean cancelled;
+
+		// Only accessed by the timer thread
+		private long remainingRounds;
+
+		private Timeout(Runnable task, long deadlineNanos)
+		{
+			this.task = task;
+			this.deadlineNanos = deadlineNanos;
+		}
+
+		/**
+		 * Prevents the task from running, if it has not run yet.
+		 */
+		public void cancel()
+		{
+			cancelled = true;
+		}
+
+		public boolean isCancelled()
+		{
+			return cancelled;
+		}
+	}
+}
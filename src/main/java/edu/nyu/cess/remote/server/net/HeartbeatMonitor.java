@@ -0,0 +1,400 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.ClockProbe;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.codec.Hello;
+import edu.nyu.cess.remote.common.net.ConnectionState;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.common.net.PreciseClock;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
+import edu.nyu.cess.remote.server.client.ClientStateTable;
+import edu.nyu.cess.remote.server.lab.LabLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the liveness of every connected client from a single {@link HashedWheelTimer}.
+ *
+ * Every client is sent a keep alive ping each ping interval, which it echoes back. The echoes feed a per client
+ * {@link PhiAccrualFailureDetector} and its round trip time, and a client whose suspicion level crosses the
+ * threshold is closed, which its transport reports as a disconnection. Clients that predate the echo are polled
+ * for their app execution state instead, and their replies serve as heartbeats.
+ *
+ * Clients that support {@link ConnectionHandshake#SEQUENCED_STATE} push every state change, numbered from 1 in each
+ * session. The monitor follows the numbers across the connections of a resumed session, and only polls a client for
+ * its state when one of its updates is missing. Other clients are polled once per state poll interval.
+ *
+ * Clock probes of the clients that support {@link ConnectionHandshake#CLOCK_SYNC} are answered along with the pings,
+ * stamped with the time they were received and answered.
+ *
+ * With a {@link ClientStateTable}, the round trip times of the clients of the lab layout are also recorded in the
+ * table.
+ *
+ * The monitor decorates the client pool, message observer and disconnection observer handed to the transport,
+ * forwarding everything except the ping echoes and the clock probes.
+ */
+public class HeartbeatMonitor implements ClientPool, MessageSocketObserver, ClientDisconnectionObserver
+{
+	private final static Logger log = LoggerFactory.getLogger(HeartbeatMonitor.class);
+
+	private static final int FAILURE_DETECTOR_SAMPLE_SIZE = 100;
+	private static final double ROUND_TRIP_TIME_SMOOTHING = 0.125;
+
+	private final ClientPool clientPool;
+	private final MessageSocketObserver messageSocketObserver;
+	private final ClientDisconnectionObserver clientDisconnectionObserver;
+	private final HashedWheelTimer timer;
+	private final HeartbeatSettings settings;
+
+	private final ConcurrentHashMap<String, ClientHeartbeat> clientHeartbeats = new ConcurrentHashMap<>();
+	// Kept once the client disconnects, its session may be resumed by the next connection
+	private final ConcurrentHashMap<String, Long> stateSequenceNumbers = new ConcurrentHashMap<>();
+	private final AtomicLong stateGapCount = new AtomicLong();
+
+	private volatile LabLayout labLayout;
+	private volatile ClientStateTable clientStateTable;
+
+	public HeartbeatMonitor(ClientPool clientPool, MessageSocketObserver messageSocketObserver,
+							ClientDisconnectionObserver clientDisconnectionObserver, HashedWheelTimer timer,
+							HeartbeatSettings settings)
+	{
+		this.clientPool = clientPool;
+		this.messageSocketObserver = messageSocketObserver;
+		this.clientDisconnectionObserver = clientDisconnectionObserver;
+		this.timer = timer;
+		this.settings = settings;
+	}
+
+	/**
+	 * Records the round trip times of the clients connecting from now on in the state table.
+	 * @param labLayout the lab layout, assigning the client ids
+	 * @param clientStateTable the client state table
+	 */
+	public void setClientStateTable(LabLayout labLayout, ClientStateTable clientStateTable)
+	{
+		this.labLayout = labLayout;
+		this.clientStateTable = clientStateTable;
+	}
+
+	/**
+	 * {@link ClientPool}
+	 *
+	 * Only {@link ServerMessageSocket}s can be closed when they fail, any other socket is forwarded unmonitored.
+	 */
+	@Override public void addClient(MessageSocket messageSocket)
+	{
+		if (messageSocket instanceof ServerMessageSocket) {
+			ClientHeartbeat clientHeartbeat = new ClientHeartbeat((ServerMessageSocket) messageSocket);
+			ClientHeartbeat replacedHeartbeat = clientHeartbeats.put(messageSocket.getClientIp(), clientHeartbeat);
+			if (replacedHeartbeat != null) {
+				replacedHeartbeat.stop();
+			}
+			clientHeartbeat.start();
+		}
+		clientPool.addClient(messageSocket);
+	}
+
+	/**
+	 * {@link MessageSocketObserver}
+	 */
+	@Override public void notifyMessageReceived(NetworkInfo networkInfo, Message message)
+	{
+		if (message.getMessageType() == MessageType.CLOCK_PROBE) {
+			answerClockProbe(networkInfo.getClientIp(), message.getClockProbe(), PreciseClock.currentTimeMicros());
+			return;
+		}
+
+		ClientHeartbeat clientHeartbeat = clientHeartbeats.get(networkInfo.getClientIp());
+		if (clientHeartbeat != null) {
+			clientHeartbeat.notifyMessageReceived(message.getMessageType());
+		}
+		if (message.getMessageType() == MessageType.APP_EXE_UPDATE && message.getSequenceNumber() != 0) {
+			checkStateSequenceNumber(networkInfo.getClientIp(), message.getSequenceNumber(), clientHeartbeat);
+		}
+
+		if (message.getMessageType() != MessageType.KEEP_ALIVE_PING) {
+			messageSocketObserver.notifyMessageReceived(networkInfo, message);
+		}
+	}
+
+	/**
+	 * {@link MessageSocketObserver}
+	 */
+	@Override public void notifyMessageSenderState(ConnectionState connectionState)
+	{
+		messageSocketObserver.notifyMessageSenderState(connectionState);
+	}
+
+	/**
+	 * {@link ClientDisconnectionObserver}
+	 */
+	@Override public void notifyClientDisconnected(String clientIp)
+	{
+		ClientHeartbeat clientHeartbeat = clientHeartbeats.get(clientIp);
+		// The client may already have reconnected, in which case the heartbeat belongs to the new connection
+		if (clientHeartbeat != null && ! clientHeartbeat.socket.isConnected()) {
+			clientHeartbeats.remove(clientIp, clientHeartbeat);
+			clientHeartbeat.stop();
+		}
+		clientDisconnectionObserver.notifyClientDisconnected(clientIp);
+	}
+
+	/**
+	 * Returns the number of times a client's state was polled because one of its updates was missing.
+	 * @return the state update gap count
+	 */
+	public long getStateGapCount()
+	{
+		return stateGapCount.get();
+	}
+
+	/**
+	 * Returns the number of connections whose heartbeat is running.
+	 * @return the monitored connection count
+	 */
+	public int getMonitoredClientCount()
+	{
+		return clientHeartbeats.size();
+	}
+
+	/**
+	 * Returns the smoothed round trip time of the client's keep alive pings.
+	 * @param clientIp the client ip address
+	 * @param unit the unit of the returned time
+	 * @return the round trip time, or -1 if the client is not connected or has not echoed a ping yet
+	 */
+	public long getRoundTripTime(String clientIp, TimeUnit unit)
+	{
+		ClientHeartbeat clientHeartbeat = clientHeartbeats.get(clientIp);
+		return clientHeartbeat == null ? -1 : clientHeartbeat.getRoundTripTime(unit);
+	}
+
+	/**
+	 * Returns the client's current suspicion level.
+	 * @param clientIp the client ip address
+	 * @return phi, or -1 if the client is not connected
+	 */
+	public double getPhi(String clientIp)
+	{
+		ClientHeartbeat clientHeartbeat = clientHeartbeats.get(clientIp);
+		return clientHeartbeat == null ? -1 : clientHeartbeat.getPhi();
+	}
+
+	/**
+	 * Returns the connected clients closest to being declared failed, those with the highest suspicion level first.
+	 * @param limit the maximum number of clients returned
+	 * @return the client ip addresses
+	 */
+	public List<String> getMostSuspectedClients(int limit)
+	{
+		// The suspicion levels rise as time passes, they are sorted as they were when taken
+		final Map<String, Double> phis = new HashMap<>();
+		for (Map.Entry<String, ClientHeartbeat> entry : clientHeartbeats.entrySet()) {
+			phis.put(entry.getKey(), entry.getValue().getPhi());
+		}
+		List<String> suspectedClients = new ArrayList<>(phis.keySet());
+		Collections.sort(suspectedClients, new Comparator<String>() {
+			@Override public int compare(String first, String second)
+			{
+				return Double.compare(phis.get(second), phis.get(first));
+			}
+		});
+		return suspectedClients.size() > limit ? suspectedClients.subList(0, limit) : suspectedClients;
+	}
+
+	private void answerClockProbe(String clientIp, ClockProbe clockProbe, long receiveMicros)
+	{
+		ClientHeartbeat clientHeartbeat = clientHeartbeats.get(clientIp);
+		if (clientHeartbeat != null) {
+			clientHeartbeat.send(new Message(new ClockProbe(clockProbe.getOriginateMicros(), receiveMicros,
+					PreciseClock.currentTimeMicros()), clientHeartbeat.socket.getNetworkInfo()));
+		}
+	}
+
+	/**
+	 * Polls the client for its state if the update does not follow the previous one. The updates of a client are
+	 * received in order by a single thread.
+	 */
+	private void checkStateSequenceNumber(String clientIp, long sequenceNumber, ClientHeartbeat clientHeartbeat)
+	{
+		Long previousSequenceNumber = stateSequenceNumbers.put(clientIp, sequenceNumber);
+		// Every new session is numbered from 1
+		if (sequenceNumber == 1 || (previousSequenceNumber != null && sequenceNumber == previousSequenceNumber + 1)) {
+			return;
+		}
+
+		stateGapCount.incrementAndGet();
+		log.info("State update {} of {} received after update {}, polling its state.", sequenceNumber, clientIp,
+				previousSequenceNumber);
+		if (clientHeartbeat != null) {
+			clientHeartbeat.pollState();
+		}
+	}
+
+	/**
+	 * The heartbeat of a single connection.
+	 */
+	private class ClientHeartbeat implements Runnable
+	{
+		private final ServerMessageSocket socket;
+		private final Message ping;
+		private final Message statePoll;
+		private final boolean sequencedState;
+		private final ClientStateTable stateTable;
+		private final int clientId;
+
+		// Guarded by this
+		private PhiAccrualFailureDetector failureDetector;
+		private HashedWheelTimer.Timeout nextTick;
+		private boolean stopped;
+		private boolean legacyClient;
+		private long lastStatePollNanos;
+		private long pendingPingNanos = -1;
+		private double roundTripTimeNanos = -1;
+
+		ClientHeartbeat(ServerMessageSocket socket)
+		{
+			this.socket = socket;
+			this.ping = new Message(MessageType.KEEP_ALIVE_PING, socket.getNetworkInfo());
+			this.statePoll = new Message(MessageType.APP_EXE_UPDATE, socket.getNetworkInfo());
+			Hello hello = socket.getHello();
+			this.sequencedState = hello != null && hello.supports(ConnectionHandshake.SEQUENCED_STATE);
+			LabLayout layout = labLayout;
+			this.stateTable = clientStateTable;
+			this.clientId = (layout == null || stateTable == null) ? -1 : layout.getClientId(socket.getClientIp());
+		}
+
+		synchronized void start()
+		{
+			long now = System.nanoTime();
+			failureDetector = createFailureDetector(settings.getPingIntervalMillis(), now);
+			// Clients report their state on connection, the first poll is due an interval later
+			lastStatePollNanos = now;
+			send(ping);
+			pendingPingNanos = now;
+			scheduleNextTick(settings.getPingIntervalMillis());
+		}
+
+		synchronized void stop()
+		{
+			stopped = true;
+			if (nextTick != null) {
+				nextTick.cancel();
+			}
+		}
+
+		synchronized void notifyMessageReceived(MessageType messageType)
+		{
+			long now = System.nanoTime();
+			if (messageType == MessageType.KEEP_ALIVE_PING) {
+				failureDetector.heartbeat(now);
+				if (pendingPingNanos >= 0) {
+					long roundTripTime = now - pendingPingNanos;
+					roundTripTimeNanos = roundTripTimeNanos < 0 ? roundTripTime
+							: roundTripTimeNanos + ROUND_TRIP_TIME_SMOOTHING * (roundTripTime - roundTripTimeNanos);
+					pendingPingNanos = -1;
+					if (clientId >= 0) {
+						stateTable.setRoundTripTime(clientId, (long) roundTripTimeNanos, TimeUnit.NANOSECONDS);
+					}
+				}
+			}
+			else if (legacyClient && messageType == MessageType.APP_EXE_UPDATE) {
+				failureDetector.heartbeat(now);
+			}
+		}
+
+		/**
+		 * Runs on the timer thread at every ping (or legacy poll) interval.
+		 */
+		@Override public synchronized void run()
+		{
+			if (stopped) {
+				return;
+			}
+
+			long now = System.nanoTime();
+			if ( ! legacyClient && socket.isLegacyClient()) {
+				// The handshake has revealed a client that will never echo a ping
+				legacyClient = true;
+				failureDetector = createFailureDetector(settings.getLegacyPollIntervalMillis(), now);
+			}
+
+			double phi = failureDetector.phi(now);
+			if (phi > settings.getPhiThreshold()) {
+				log.warn("Client {} failed: no heartbeat for {} ms (phi = {}).", socket.getClientIp(),
+						TimeUnit.NANOSECONDS.toMillis(now - failureDetector.getLastHeartbeatNanos()), String.format("%.1f", phi));
+				stopped = true;
+				socket.close();
+				return;
+			}
+
+			if (legacyClient || ( ! sequencedState
+					&& now - lastStatePollNanos >= TimeUnit.MILLISECONDS.toNanos(settings.getStatePollIntervalMillis()))) {
+				pollState();
+			}
+			if ( ! legacyClient) {
+				send(ping);
+				if (pendingPingNanos < 0) {
+					pendingPingNanos = now;
+				}
+			}
+
+			scheduleNextTick(legacyClient ? settings.getLegacyPollIntervalMillis() : settings.getPingIntervalMillis());
+		}
+
+		synchronized void pollState()
+		{
+			if ( ! stopped) {
+				send(statePoll);
+				lastStatePollNanos = System.nanoTime();
+			}
+		}
+
+		synchronized long getRoundTripTime(TimeUnit unit)
+		{
+			return roundTripTimeNanos < 0 ? -1 : unit.convert((long) roundTripTimeNanos, TimeUnit.NANOSECONDS);
+		}
+
+		synchronized double getPhi()
+		{
+			return failureDetector.phi(System.nanoTime());
+		}
+
+		private PhiAccrualFailureDetector createFailureDetector(long heartbeatIntervalMillis, long now)
+		{
+			return new PhiAccrualFailureDetector(FAILURE_DETECTOR_SAMPLE_SIZE, heartbeatIntervalMillis, heartbeatIntervalMillis / 10,
+					settings.getAcceptablePauseMillis(), TimeUnit.MILLISECONDS, now);
+		}
+
+		private void scheduleNextTick(long delayMillis)
+		{
+			nextTick = timer.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+		}
+
+		private void send(Message message)
+		{
+			try {
+				socket.sendMessage(message);
+			}
+			catch (IOException e) {
+				log.debug("Failed to send heartbeat to {}. Error = {}", socket.getClientIp(), e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package edu.nyu.cess.remote.server.net;
+
+/**
+ * The heartbeat timings and failure detection threshold, in milliseconds.
+ */
+public class HeartbeatSettings
+{
+	private final long pingIntervalMillis;
+	private final long legacyPollIntervalMillis;
+	private final long statePollIntervalMillis;
+	private final long acceptablePauseMillis;
+	private final double phiThreshold;
+
+	/**
+	 * @param pingIntervalMillis the interval between two keep alive pings
+	 * @param legacyPollIntervalMillis the interval between two app execution update polls sent in place of pings to
+	 *                                 clients that do not answer pings
+	 * @param statePollIntervalMillis the interval between two app execution update polls sent to the clients that do
+	 *                                not number their state updates
+	 * @param acceptablePauseMillis the delay tolerated on top of the expected heartbeat interval
+	 * @param phiThreshold the suspicion level above which a client is declared failed
+	 */
+	public HeartbeatSettings(long pingIntervalMillis, long legacyPollIntervalMillis, long statePollIntervalMillis,
+							 long acceptablePauseMillis, double phiThreshold)
+	{
+		this.pingIntervalMillis = Math.max(1, pingIntervalMillis);
+		this.legacyPollIntervalMillis = Math.max(1, legacyPollIntervalMillis);
+		this.statePollIntervalMillis = Math.max(1, statePollIntervalMillis);
+		this.acceptablePauseMillis = Math.max(0, acceptablePauseMillis);
+		this.phiThreshold = phiThreshold;
+	}
+
+	public long getPingIntervalMillis()
+	{
+		return pingIntervalMillis;
+	}
+
+	public long getLegacyPollIntervalMillis()
+	{
+		return legacyPollIntervalMillis;
+	}
+
+	public long getStatePollIntervalMillis()
+	{
+		return statePollIntervalMillis;
+	}
+
+	public long getAcceptablePauseMillis()
+	{
+		return acceptablePauseMillis;
+	}
+
+	public double getPhiThreshold()
+	{
+		return phiThreshold;
+	}
+}
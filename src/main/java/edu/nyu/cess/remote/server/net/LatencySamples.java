@@ -0,0 +1,48 @@
+package edu.nyu.cess.remote.server.net;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The most recent latencies, in nanoseconds. Once full, each new sample replaces the oldest one.
+ */
+class LatencySamples
+{
+	private final long[] samples;
+	private long count;
+
+	/**
+	 * @param size the number of samples kept
+	 */
+	LatencySamples(int size)
+	{
+		this.samples = new long[size];
+	}
+
+	synchronized void add(long latency)
+	{
+		samples[(int) (count++ % samples.length)] = latency;
+	}
+
+	/**
+	 * Returns a percentile of the samples kept.
+	 * @param percentile the percentile, between 0 and 100
+	 * @param unit the unit of the returned latency
+	 * @return the latency, or -1 if there are no samples
+	 */
+	long getPercentile(double percentile, TimeUnit unit)
+	{
+		long[] sortedSamples;
+		synchronized (this) {
+			if (count == 0) {
+				return -1;
+			}
+			sortedSamples = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+		}
+		Arrays.sort(sortedSamples);
+
+		int rank = (int) Math.ceil(percentile / 100.0 * sortedSamples.length);
+		int index = Math.min(sortedSamples.length - 1, Math.max(0, rank - 1));
+		return unit.convert(sortedSamples[index], TimeUnit.NANOSECONDS);
+	}
+}
@@ -1,31 +1,84 @@
 package edu.nyu.cess.remote.server.net;
 
 import edu.nyu.cess.remote.common.message.Message;
-import edu.nyu.cess.remote.common.message.MessageSocket;
 import edu.nyu.cess.remote.common.message.MessageSocketObserver;
 import edu.nyu.cess.remote.common.message.MessageValidator;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 
+/**
+ * Performs the handshake of a blocking client connection, adds the client to the client pool, then reads its
+ * messages until the connection fails or is closed, and reports the disconnection. A connection that fails before
+ * the handshake completes, or does not complete it in time, is closed without ever being added or reported, and the
+ * client is recorded as abandoned in the admission statistics.
+ */
 public class MessageMonitorThread implements Runnable
 {
 	private final static Logger logger = LoggerFactory.getLogger(MessageMonitorThread.class);
 
+    private ClientPool clientPool;
     private MessageSocketObserver messageSocketObserver;
-    private MessageSocket messageSocket;
+    private ClientDisconnectionObserver clientDisconnectionObserver;
+    private ClientSocket messageSocket;
+    private ConnectionStats connectionStats;
+    private AdmissionStats admissionStats;
 
-    public MessageMonitorThread(MessageSocket messageSocket, MessageSocketObserver messageSocketObserver)
+    public MessageMonitorThread(ClientSocket messageSocket, ClientPool clientPool, MessageSocketObserver messageSocketObserver,
+								ClientDisconnectionObserver clientDisconnectionObserver, ConnectionStats connectionStats,
+								AdmissionStats admissionStats)
     {
         this.messageSocket = messageSocket;
+        this.clientPool = clientPool;
         this.messageSocketObserver = messageSocketObserver;
+        this.clientDisconnectionObserver = clientDisconnectionObserver;
+        this.connectionStats = connectionStats;
+        this.admissionStats = admissionStats;
     }
 
     public void run()
 	{
+		connectionStats.notifyReaderStarted();
+		try {
+			monitor();
+		}
+		finally {
+			connectionStats.notifyReaderFinished();
+		}
+	}
+
+	private void monitor()
+	{
+		try {
+			messageSocket.readHello();
+		} catch (SocketTimeoutException e) {
+			logger.info("No hello received from {} in time, closing the connection.", messageSocket.getClientIp());
+			connectionStats.notifyHandshakeTimedOut();
+			messageSocket.close();
+			admissionStats.notifyAbandoned(messageSocket.getClientIp());
+			return;
+		} catch (IOException e) {
+			logger.info("Handshake with {} failed, closing the connection. Error = {}", messageSocket.getClientIp(), e.getMessage());
+			messageSocket.close();
+			admissionStats.notifyAbandoned(messageSocket.getClientIp());
+			return;
+		}
+
+		clientPool.addClient(messageSocket);
+
 		MessageValidator messageValidator = new MessageValidator();
 		boolean socketEnabled = true;
+		try {
+			messageSocket.writeWelcome();
+		} catch (IOException e) {
+			logger.info("Failed to welcome {}. Error = {}", messageSocket.getClientIp(), e.getMessage());
+			socketEnabled = false;
+		}
+
         while (socketEnabled) {
             try {
                 Message message = messageSocket.readMessage();
@@ -35,14 +88,13 @@ public class MessageMonitorThread implements Runnable
 				}
 
 				messageSocketObserver.notifyMessageReceived(messageSocket.getNetworkInfo(), message);
-				Thread.sleep(1000);
             } catch (IOException e) {
                 logger.info("IO Exception occurred, halting read message. Error = {}", e.getMessage());
 				socketEnabled = false;
-            } catch (InterruptedException e) {
-				logger.error("Failed to pause the message monitor thread.", e);
-			}
+            }
 		}
 
+		messageSocket.close();
+		clientDisconnectionObserver.notifyClientDisconnected(messageSocket.getClientIp());
     }
 }
@@ -0,0 +1,41 @@
+package edu.nyu.cess.remote.server.net;
+
+/**
+ * The number of messages of one type a single client may send: a sustained rate, and a burst that may be sent
+ * at once.
+ */
+public class MessageRateLimit
+{
+	private final double messagesPerSecond;
+	private final int burst;
+
+	/**
+	 * @param messagesPerSecond the sustained rate, a rate of zero or less disables the limit
+	 * @param burst the largest number of messages accepted at once
+	 */
+	public MessageRateLimit(double messagesPerSecond, int burst)
+	{
+		this.messagesPerSecond = messagesPerSecond;
+		this.burst = Math.max(1, burst);
+	}
+
+	public double getMessagesPerSecond()
+	{
+		return messagesPerSecond;
+	}
+
+	public int getBurst()
+	{
+		return burst;
+	}
+
+	public boolean isUnlimited()
+	{
+		return messagesPerSecond <= 0;
+	}
+
+	@Override public String toString()
+	{
+		return isUnlimited() ? "unlimited" : messagesPerSecond + "/s (burst " + burst + ")";
+	}
+}
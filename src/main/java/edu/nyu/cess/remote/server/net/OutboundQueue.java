@@ -0,0 +1,148 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageLanes;
+import edu.nyu.cess.remote.common.message.MessageType;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded queue of the messages waiting to be written to a single client.
+ *
+ * App execution update polls (an update message without an app execution) supersede each other: offering a poll
+ * while one is still pending replaces the pending poll, so a client that is slow to read is asked for its state
+ * once rather than once per missed period.
+ *
+ * The messages are queued per {@link MessageLanes lane}. Control messages are always taken first, the chunks of
+ * the bulk lanes are taken one per lane in turn, so that no lane waits for another lane's whole payload.
+ */
+class OutboundQueue
+{
+	private final int capacity;
+	private final ArrayDeque<Message> messages = new ArrayDeque<>();
+	private Message pendingUpdatePoll;
+	// The bulk lanes with chunks waiting, in the order they take their next turn
+	private final LinkedHashMap<Byte, ArrayDeque<Message>> bulkLanes = new LinkedHashMap<>();
+
+	/**
+	 * @param capacity the maximum number of pending control messages, and of pending chunks per bulk lane
+	 */
+	OutboundQueue(int capacity)
+	{
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Adds the message to the queue of its lane, unless that queue is full. Never blocks.
+	 * @param message the message
+	 * @return true if the message was queued (or replaced a pending poll), false if the queue is full
+	 */
+	synchronized boolean offer(Message message)
+	{
+		byte lane = MessageLanes.getLane(message);
+		if (lane != MessageLanes.CONTROL_LANE) {
+			return offerChunk(lane, message);
+		}
+
+		boolean updatePoll = isUpdatePoll(message);
+		if (updatePoll && pendingUpdatePoll != null) {
+			messages.remove(pendingUpdatePoll);
+		}
+		else if (messages.size() >= capacity) {
+			return false;
+		}
+
+		messages.add(message);
+		if (updatePoll) {
+			pendingUpdatePoll = message;
+		}
+		return true;
+	}
+
+	/**
+	 * Moves every pending control message to the collection, in the order they were queued, followed by the next
+	 * chunk of every bulk lane.
+	 * @param drained the collection receiving the messages
+	 * @return the number of messages moved
+	 */
+	synchronized int drainTo(Collection<Message> drained)
+	{
+		int count = messages.size();
+		drained.addAll(messages);
+		messages.clear();
+		pendingUpdatePoll = null;
+
+		for (int lanes = bulkLanes.size(); lanes > 0; --lanes) {
+			drained.add(pollChunk());
+			++count;
+		}
+		return count;
+	}
+
+	/**
+	 * Removes the next pending message, a control message if any is pending.
+	 * @return the message, or null if the queue is empty
+	 */
+	synchronized Message poll()
+	{
+		Message message = messages.poll();
+		if (message == null) {
+			return bulkLanes.isEmpty() ? null : pollChunk();
+		}
+		if (message == pendingUpdatePoll) {
+			pendingUpdatePoll = null;
+		}
+		return message;
+	}
+
+	synchronized boolean isEmpty()
+	{
+		return messages.isEmpty() && bulkLanes.isEmpty();
+	}
+
+	synchronized void clear()
+	{
+		messages.clear();
+		pendingUpdatePoll = null;
+		bulkLanes.clear();
+	}
+
+	private boolean offerChunk(byte lane, Message chunk)
+	{
+		ArrayDeque<Message> chunks = bulkLanes.get(lane);
+		if (chunks == null) {
+			chunks = new ArrayDeque<>();
+			bulkLanes.put(lane, chunks);
+		}
+		else if (chunks.size() >= capacity) {
+			return false;
+		}
+		chunks.add(chunk);
+		return true;
+	}
+
+	/**
+	 * Takes the next chunk of the lane whose turn it is, and moves the lane to the end of the turns.
+	 */
+	private Message pollChunk()
+	{
+		Iterator<Map.Entry<Byte, ArrayDeque<Message>>> lanes = bulkLanes.entrySet().iterator();
+		Map.Entry<Byte, ArrayDeque<Message>> lane = lanes.next();
+		lanes.remove();
+
+		Message chunk = lane.getValue().poll();
+		if ( ! lane.getValue().isEmpty()) {
+			bulkLanes.put(lane.getKey(), lane.getValue());
+		}
+		return chunk;
+	}
+
+	private static boolean isUpdatePoll(Message message)
+	{
+		return message.getMessageType() == MessageType.APP_EXE_UPDATE && message.getAppExe() == null;
+	}
+}
@@ -0,0 +1,101 @@
+package edu.nyu.cess.remote.server.net;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An accrual failure detector (Hayashibara et al.), which turns the time since the last heartbeat into a suspicion
+ * level, phi, rather than a yes or no answer.
+ *
+ * The intervals between the most recent heartbeats are assumed to be normally distributed, and phi is the negative
+ * base ten logarithm of the probability that the next heartbeat is still on its way: a phi of 1 is a 10% chance of
+ * being wrong when declaring a failure, 3 is a 0.1% chance, and so on. Since the distribution is learned from the
+ * connection, a client behind a slow link is given more time than one that has always answered promptly.
+ *
+ * Not thread-safe.
+ */
+class PhiAccrualFailureDetector
+{
+	private final long[] intervals;
+	private final long minStdDeviationNanos;
+	private final long acceptablePauseNanos;
+
+	private int intervalCount;
+	private int nextInterval;
+	private double intervalSum;
+	private double intervalSquaredSum;
+	private long lastHeartbeatNanos;
+
+	/**
+	 * @param maxSampleSize the number of recent intervals the distribution is estimated from
+	 * @param firstIntervalEstimate the expected interval, used until actual intervals have been measured
+	 * @param minStdDeviation the lower bound of the standard deviation, keeps very regular heartbeats from
+	 *                        making the detector overly sensitive
+	 * @param acceptablePause the additional delay tolerated on top of the expected interval
+	 * @param unit the unit of the durations
+	 * @param nowNanos the current {@link System#nanoTime()}, treated as the first heartbeat
+	 */
+	PhiAccrualFailureDetector(int maxSampleSize, long firstIntervalEstimate, long minStdDeviation, long acceptablePause,
+							  TimeUnit unit, long nowNanos)
+	{
+		this.intervals = new long[Math.max(2, maxSampleSize)];
+		this.minStdDeviationNanos = unit.toNanos(minStdDeviation);
+		this.acceptablePauseNanos = unit.toNanos(acceptablePause);
+		this.lastHeartbeatNanos = nowNanos;
+
+		// Seed the distribution with the estimate, and a deviation of a quarter of it
+		long estimateNanos = unit.toNanos(firstIntervalEstimate);
+		addInterval(estimateNanos - estimateNanos / 4);
+		addInterval(estimateNanos + estimateNanos / 4);
+	}
+
+	/**
+	 * Records the arrival of a heartbeat.
+	 * @param nowNanos the current {@link System#nanoTime()}
+	 */
+	void heartbeat(long nowNanos)
+	{
+		addInterval(nowNanos - lastHeartbeatNanos);
+		lastHeartbeatNanos = nowNanos;
+	}
+
+	/**
+	 * Returns the suspicion level at the given time.
+	 * @param nowNanos the current {@link System#nanoTime()}
+	 * @return phi, 0 or more
+	 */
+	double phi(long nowNanos)
+	{
+		double elapsed = nowNanos - lastHeartbeatNanos;
+		double mean = intervalSum / intervalCount;
+		double variance = Math.max(0, intervalSquaredSum / intervalCount - mean * mean);
+		double stdDeviation = Math.max(Math.sqrt(variance), minStdDeviationNanos);
+
+		// Logistic approximation of the normal cumulative distribution function
+		double y = (elapsed - mean - acceptablePauseNanos) / stdDeviation;
+		double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+		double phi = elapsed > mean + acceptablePauseNanos ? -Math.log10(e / (1.0 + e)) : -Math.log10(1.0 - 1.0 / (1.0 + e));
+		return Math.max(0, phi);
+	}
+
+	long getLastHeartbeatNanos()
+	{
+		return lastHeartbeatNanos;
+	}
+
+	private void addInterval(long intervalNanos)
+	{
+		if (intervalCount == intervals.length) {
+			long oldest = intervals[nextInterval];
+			intervalSum -= oldest;
+			intervalSquaredSum -= (double) oldest * oldest;
+		}
+		else {
+			++intervalCount;
+		}
+
+		intervals[nextInterval] = intervalNanos;
+		nextInterval = (nextInterval + 1) % intervals.length;
+		intervalSum += intervalNanos;
+		intervalSquaredSum += (double) intervalNanos * intervalNanos;
+	}
+}
@@ -0,0 +1,90 @@
+package edu.nyu.cess.remote.server.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tasks on a bounded pool of platform threads. A thread takes the name of the task while running it.
+ *
+ * The tasks of the blocking transport hold their thread for as long as the client is connected, so the bound must
+ * cover every seat of the lab: a task submitted while all the threads are busy waits until a client disconnects.
+ */
+public class PooledExecutionModel implements ExecutionModel
+{
+	private final static Logger log = LoggerFactory.getLogger(PooledExecutionModel.class);
+
+	private final int maxThreads;
+	private final ThreadPoolExecutor executor;
+	private final ExecutionStats stats = new ExecutionStats();
+
+	/**
+	 * @param maxThreads the number of threads of the pool
+	 */
+	public PooledExecutionModel(int maxThreads)
+	{
+		this.maxThreads = maxThreads;
+		this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new PoolThreadFactory());
+		// Idle threads are released, the pool only holds as many threads as there are clients
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/** {@link ExecutionModel} */
+	@Override public void execute(final String taskName, final Runnable task)
+	{
+		if (executor.getActiveCount() >= maxThreads) {
+			log.warn("All {} pooled threads are busy, {} waits for a thread.", maxThreads, taskName);
+		}
+
+		executor.execute(stats.track(new Runnable() {
+			@Override public void run()
+			{
+				Thread thread = Thread.currentThread();
+				String poolName = thread.getName();
+				thread.setName(taskName);
+				try {
+					task.run();
+				}
+				finally {
+					thread.setName(poolName);
+				}
+			}
+		}));
+	}
+
+	/** {@link ExecutionModel} */
+	@Override public int getThreadCount()
+	{
+		return executor.getPoolSize();
+	}
+
+	/** {@link ExecutionModel} */
+	@Override public ExecutionStats getStats()
+	{
+		return stats;
+	}
+
+	/** {@link ExecutionModel} */
+	@Override public ExecutionModelType getType()
+	{
+		return ExecutionModelType.POOL;
+	}
+
+	private static class PoolThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		@Override public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "client-task-" + threadCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,413 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.net.ConnectionState;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards the messages received from the clients to the observer, dropping the messages of any client that
+ * exceeds the rate limit of their message type. Every client has its own token bucket per limited message type.
+ *
+ * App execution updates are never lost: they describe the client's state, and the client does not send its state
+ * again unless asked. The newest update of a throttled client is held back instead, and forwarded as soon as its
+ * bucket has a token again, or before the client's disconnection. Any older update held back is dropped.
+ *
+ * A client is throttled from its first throttled message until a message of that type is accepted again, and
+ * both transitions are logged once rather than per throttled message.
+ *
+ * The limiter also decorates the client pool, which tells the disconnection of a client's current connection from
+ * that of a connection it has superseded. Once its current connection is lost, a client's buckets are kept for the
+ * retention time, and at least until they would be full again, so that neither a resumed session nor a new
+ * connection starts over with full buckets. Disconnections are forwarded in any case.
+ */
+public class RateLimitingMessageObserver implements ClientPool, MessageSocketObserver, ClientDisconnectionObserver
+{
+	private final static Logger log = LoggerFactory.getLogger(RateLimitingMessageObserver.class);
+
+	private final ClientPool clientPool;
+	private final MessageSocketObserver messageSocketObserver;
+	private final ClientDisconnectionObserver clientDisconnectionObserver;
+	private final HashedWheelTimer timer;
+	private final Map<MessageType, MessageRateLimit> rateLimits;
+	private final long retainMillis;
+
+	private final ConcurrentHashMap<String, ClientFlow> clientFlows = new ConcurrentHashMap<>();
+	private final AtomicLong throttledMessageCount = new AtomicLong();
+
+	/**
+	 * @param clientPool the client pool the clients are added to
+	 * @param messageSocketObserver the observer receiving the accepted messages
+	 * @param clientDisconnectionObserver the observer receiving the disconnections
+	 * @param timer the timer forwarding the updates held back and discarding the buckets of lost clients
+	 * @param rateLimits the rate limit of each message type, message types without a limit are never dropped
+	 * @param retainMillis the least time the buckets of a client are kept once its connection is lost, such as the
+	 *                     session grace window
+	 */
+	public RateLimitingMessageObserver(ClientPool clientPool, MessageSocketObserver messageSocketObserver,
+									   ClientDisconnectionObserver clientDisconnectionObserver, HashedWheelTimer timer,
+									   Map<MessageType, MessageRateLimit> rateLimits, long retainMillis)
+	{
+		this.clientPool = clientPool;
+		this.messageSocketObserver = messageSocketObserver;
+		this.clientDisconnectionObserver = clientDisconnectionObserver;
+		this.timer = timer;
+		this.rateLimits = new EnumMap<>(MessageType.class);
+		for (Map.Entry<MessageType, MessageRateLimit> rateLimit : rateLimits.entrySet()) {
+			if ( ! rateLimit.getValue().isUnlimited()) {
+				this.rateLimits.put(rateLimit.getKey(), rateLimit.getValue());
+			}
+		}
+		this.retainMillis = retainMillis;
+	}
+
+	/**
+	 * {@link ClientPool}
+	 */
+	@Override public void addClient(MessageSocket messageSocket)
+	{
+		getClientFlow(messageSocket.getClientIp()).notifyConnected(messageSocket);
+		clientPool.addClient(messageSocket);
+	}
+
+	/**
+	 * {@link MessageSocketObserver}
+	 */
+	@Override public void notifyMessageReceived(NetworkInfo networkInfo, Message message)
+	{
+		MessageRateLimit rateLimit = rateLimits.get(message.getMessageType());
+		if (rateLimit == null) {
+			messageSocketObserver.notifyMessageReceived(networkInfo, message);
+			return;
+		}
+
+		String clientIp = networkInfo.getClientIp();
+		ClientFlow clientFlow = getClientFlow(clientIp);
+		if (message.getMessageType() == MessageType.APP_EXE_UPDATE) {
+			receiveUpdate(clientFlow, networkInfo, message, rateLimit);
+		}
+		else if (clientFlow.tryAccept(clientIp, message.getMessageType(), rateLimit)) {
+			messageSocketObserver.notifyMessageReceived(networkInfo, message);
+		}
+		else {
+			throttledMessageCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * {@link MessageSocketObserver}
+	 */
+	@Override public void notifyMessageSenderState(ConnectionState connectionState)
+	{
+		messageSocketObserver.notifyMessageSenderState(connectionState);
+	}
+
+	/**
+	 * {@link ClientDisconnectionObserver}
+	 */
+	@Override public void notifyClientDisconnected(final String clientIp)
+	{
+		final ClientFlow clientFlow = clientFlows.get(clientIp);
+		if (clientFlow != null) {
+			synchronized (clientFlow) {
+				// The disconnection of a superseded connection leaves the buckets to the client's current connection
+				if ( ! clientFlow.isConnectionOpen()) {
+					HeldUpdate heldUpdate = clientFlow.takeHeldUpdate();
+					if (heldUpdate != null) {
+						messageSocketObserver.notifyMessageReceived(heldUpdate.networkInfo, heldUpdate.message);
+					}
+					long delayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(retainMillis), clientFlow.getNanosUntilFull());
+					clientFlow.notifyDisconnected(timer.schedule(new Runnable() {
+						@Override public void run()
+						{
+							discard(clientIp, clientFlow);
+						}
+					}, delayNanos, TimeUnit.NANOSECONDS));
+				}
+			}
+		}
+		clientDisconnectionObserver.notifyClientDisconnected(clientIp);
+	}
+
+	/**
+	 * Returns the total number of messages throttled since the server started, the app execution updates held back
+	 * included.
+	 * @return the number of throttled messages
+	 */
+	public long getThrottledMessageCount()
+	{
+		return throttledMessageCount.get();
+	}
+
+	/**
+	 * Returns the connected clients that are currently throttled, with the number of messages throttled from each
+	 * since its buckets were created.
+	 * @return the throttled message count by client ip
+	 */
+	public Map<String, Long> getThrottledClients()
+	{
+		Map<String, Long> throttledClients = new HashMap<>();
+		for (Map.Entry<String, ClientFlow> clientFlow : clientFlows.entrySet()) {
+			if (clientFlow.getValue().isThrottled() && ! clientFlow.getValue().isDisconnected()) {
+				throttledClients.put(clientFlow.getKey(), clientFlow.getValue().getThrottledMessageCount());
+			}
+		}
+		return Collections.unmodifiableMap(throttledClients);
+	}
+
+	private ClientFlow getClientFlow(String clientIp)
+	{
+		ClientFlow clientFlow = clientFlows.get(clientIp);
+		if (clientFlow == null) {
+			ClientFlow newClientFlow = new ClientFlow();
+			clientFlow = clientFlows.putIfAbsent(clientIp, newClientFlow);
+			if (clientFlow == null) {
+				clientFlow = newClientFlow;
+			}
+		}
+		return clientFlow;
+	}
+
+	private void discard(String clientIp, ClientFlow clientFlow)
+	{
+		synchronized (clientFlow) {
+			if (clientFlow.isDisconnected()) {
+				clientFlows.remove(clientIp, clientFlow);
+			}
+		}
+	}
+
+	/**
+	 * Forwards the update, or holds it back in place of any update already held back. The client flow is locked
+	 * while the update is forwarded, so that the updates of a client are forwarded in order.
+	 */
+	private void receiveUpdate(final ClientFlow clientFlow, NetworkInfo networkInfo, Message message,
+							   final MessageRateLimit rateLimit)
+	{
+		synchronized (clientFlow) {
+			if (clientFlow.tryAccept(networkInfo.getClientIp(), MessageType.APP_EXE_UPDATE, rateLimit)) {
+				// The update held back is older than this one
+				clientFlow.takeHeldUpdate();
+				messageSocketObserver.notifyMessageReceived(networkInfo, message);
+				return;
+			}
+
+			throttledMessageCount.incrementAndGet();
+			if (clientFlow.holdUpdate(new HeldUpdate(networkInfo, message))) {
+				scheduleHeldUpdate(clientFlow, rateLimit);
+			}
+		}
+	}
+
+	private void scheduleHeldUpdate(final ClientFlow clientFlow, final MessageRateLimit rateLimit)
+	{
+		long delayNanos = Math.max(1, clientFlow.getNanosUntilAvailable(MessageType.APP_EXE_UPDATE));
+		clientFlow.setHeldUpdateDelivery(timer.schedule(new Runnable() {
+			@Override public void run()
+			{
+				forwardHeldUpdate(clientFlow, rateLimit);
+			}
+		}, delayNanos, TimeUnit.NANOSECONDS));
+	}
+
+	private void forwardHeldUpdate(ClientFlow clientFlow, MessageRateLimit rateLimit)
+	{
+		synchronized (clientFlow) {
+			HeldUpdate heldUpdate = clientFlow.releaseHeldUpdate();
+			if (heldUpdate != null) {
+				messageSocketObserver.notifyMessageReceived(heldUpdate.networkInfo, heldUpdate.message);
+			}
+			else if (clientFlow.hasHeldUpdate()) {
+				// The token has not been refilled yet
+				scheduleHeldUpdate(clientFlow, rateLimit);
+			}
+		}
+	}
+
+	/**
+	 * An app execution update held back, and the client it was received from.
+	 */
+	private static class HeldUpdate
+	{
+		private final NetworkInfo networkInfo;
+		private final Message message;
+
+		HeldUpdate(NetworkInfo networkInfo, Message message)
+		{
+			this.networkInfo = networkInfo;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * The token buckets of a single client, its app execution update held back, and its current connection.
+	 */
+	private static class ClientFlow
+	{
+		private final Map<MessageType, TokenBucket> tokenBuckets = new EnumMap<>(MessageType.class);
+		private final Map<MessageType, Boolean> throttledTypes = new EnumMap<>(MessageType.class);
+		private long throttledMessageCount;
+
+		private HeldUpdate heldUpdate;
+		private HashedWheelTimer.Timeout heldUpdateDelivery;
+
+		private MessageSocket socket;
+		private HashedWheelTimer.Timeout discard;
+
+		synchronized boolean tryAccept(String clientIp, MessageType messageType, MessageRateLimit rateLimit)
+		{
+			long now = System.nanoTime();
+			TokenBucket tokenBucket = tokenBuckets.get(messageType);
+			if (tokenBucket == null) {
+				tokenBucket = new TokenBucket(rateLimit, now);
+				tokenBuckets.put(messageType, tokenBucket);
+			}
+
+			boolean throttled = throttledTypes.containsKey(messageType);
+			if (tokenBucket.tryAcquire(now)) {
+				if (throttled) {
+					throttledTypes.remove(messageType);
+					log.info("Client {} is no longer throttled for {} messages, {} messages dropped so far.",
+							clientIp, messageType, throttledMessageCount);
+				}
+				return true;
+			}
+
+			++throttledMessageCount;
+			if ( ! throttled) {
+				throttledTypes.put(messageType, Boolean.TRUE);
+				log.warn("Client {} exceeded the {} rate limit of {}, dropping its messages.", clientIp, messageType, rateLimit);
+			}
+			return false;
+		}
+
+		synchronized void notifyConnected(MessageSocket socket)
+		{
+			this.socket = socket;
+			if (discard != null) {
+				discard.cancel();
+				discard = null;
+			}
+		}
+
+		/**
+		 * Records the loss of the client's current connection.
+		 * @param discard the discard of the buckets once they are no longer needed
+		 */
+		synchronized void notifyDisconnected(HashedWheelTimer.Timeout discard)
+		{
+			if (this.discard != null) {
+				this.discard.cancel();
+			}
+			this.discard = discard;
+		}
+
+		synchronized boolean isConnectionOpen()
+		{
+			return socket != null && socket.isConnected();
+		}
+
+		synchronized boolean isDisconnected()
+		{
+			return discard != null;
+		}
+
+		/**
+		 * Returns how long until every bucket is full again.
+		 * @return the wait in nanoseconds
+		 */
+		synchronized long getNanosUntilFull()
+		{
+			long now = System.nanoTime();
+			long nanosUntilFull = 0;
+			for (TokenBucket tokenBucket : tokenBuckets.values()) {
+				nanosUntilFull = Math.max(nanosUntilFull, tokenBucket.getNanosUntilFull(now));
+			}
+			return nanosUntilFull;
+		}
+
+		/**
+		 * Holds the update back, in place of any update already held back.
+		 * @return true if no update was held back, and its delivery must be scheduled
+		 */
+		synchronized boolean holdUpdate(HeldUpdate update)
+		{
+			boolean first = heldUpdate == null;
+			heldUpdate = update;
+			return first;
+		}
+
+		synchronized void setHeldUpdateDelivery(HashedWheelTimer.Timeout delivery)
+		{
+			heldUpdateDelivery = delivery;
+		}
+
+		synchronized boolean hasHeldUpdate()
+		{
+			return heldUpdate != null;
+		}
+
+		/**
+		 * Takes the update held back, cancelling its delivery.
+		 * @return the update, or null if none is held back
+		 */
+		synchronized HeldUpdate takeHeldUpdate()
+		{
+			if (heldUpdateDelivery != null) {
+				heldUpdateDelivery.cancel();
+				heldUpdateDelivery = null;
+			}
+			HeldUpdate update = heldUpdate;
+			heldUpdate = null;
+			return update;
+		}
+
+		/**
+		 * Takes the update held back if a token is available for it, which ends the throttling of the updates.
+		 * @return the update, or null if none is held back or the bucket is still empty
+		 */
+		synchronized HeldUpdate releaseHeldUpdate()
+		{
+			heldUpdateDelivery = null;
+			if (heldUpdate == null || ! tokenBuckets.get(MessageType.APP_EXE_UPDATE).tryAcquire(System.nanoTime())) {
+				return null;
+			}
+			if (throttledTypes.remove(MessageType.APP_EXE_UPDATE) != null) {
+				log.info("Client {} is no longer throttled for {} messages, {} messages dropped so far.",
+						heldUpdate.networkInfo.getClientIp(), MessageType.APP_EXE_UPDATE, throttledMessageCount);
+			}
+			HeldUpdate update = heldUpdate;
+			heldUpdate = null;
+			return update;
+		}
+
+		synchronized long getNanosUntilAvailable(MessageType messageType)
+		{
+			return tokenBuckets.get(messageType).getNanosUntilAvailable(System.nanoTime());
+		}
+
+		synchronized boolean isThrottled()
+		{
+			return ! throttledTypes.isEmpty();
+		}
+
+		synchronized long getThrottledMessageCount()
+		{
+			return throttledMessageCount;
+		}
+	}
+}
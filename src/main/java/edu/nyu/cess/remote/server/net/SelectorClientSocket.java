@@ -0,0 +1,372 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.codec.Hello;
+import edu.nyu.cess.remote.common.message.codec.MessageBuffer;
+import edu.nyu.cess.remote.common.message.codec.MessageCodec;
+import edu.nyu.cess.remote.common.message.codec.MessageCodecs;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A non-blocking client connection served by a {@link SelectorLoop}.
+ *
+ * Outbound messages are queued by the sending thread in a bounded {@link OutboundQueue}, and encoded and written by
+ * the selector thread whenever the channel becomes writable, so sending never blocks on the client. The pending
+ * control messages and a single chunk of each bulk lane are gathered into one buffer at a time and handed to the
+ * channel in a single write, so a control message is never queued behind more than one chunk per lane. Inbound bytes are read by the selector thread
+ * and accumulated until a complete message can be decoded. The connection's codec is selected by the
+ * {@link ConnectionHandshake} that starts every connection, messages queued before the WELCOME are sent after it.
+ *
+ * The send deadline applies to the time the written bytes wait for the channel to accept them. Since the writes
+ * never block the selector thread, a quarantined client only holds up its own messages, and it is disconnected if
+ * it stays quarantined for too long.
+ */
+public class SelectorClientSocket implements ServerMessageSocket
+{
+	private final static Logger log = LoggerFactory.getLogger(SelectorClientSocket.class);
+
+	private final NetworkInfo networkInfo;
+	private final SocketChannel channel;
+	private final SelectorLoop selectorLoop;
+	private final ConnectionHandshake connectionHandshake;
+
+	private static final int INITIAL_WRITE_BUFFER_SIZE = 16 * 1024;
+	private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+	private final OutboundQueue outboundQueue;
+	private final AtomicBoolean open = new AtomicBoolean(true);
+	private final ConnectionStats connectionStats;
+	private final SlowClientMonitor slowClientMonitor;
+	private final SendDeadline sendDeadline;
+
+	// Only accessed by the selector thread
+	private final MessageBuffer inboundBuffer = new MessageBuffer();
+	private MessageCodec inboundCodec;
+	private volatile MessageCodec outboundCodec;
+	private volatile Hello hello;
+	private volatile long sessionToken;
+	private volatile boolean resumed;
+	// Read mode: holds the frames that have not been written yet
+	private ByteBuffer writeBuffer = (ByteBuffer) ByteBuffer.allocate(INITIAL_WRITE_BUFFER_SIZE).flip();
+	private SelectionKey selectionKey;
+	private final List<Message> pendingMessages = new ArrayList<>();
+	// Written by the selector thread, the time bytes were first left unwritten, or -1
+	private volatile long unwrittenSinceNanos = -1;
+
+	SelectorClientSocket(NetworkInfo networkInfo, SocketChannel channel, SelectorLoop selectorLoop,
+						 ConnectionHandshake connectionHandshake, int outboundQueueCapacity, ConnectionStats connectionStats,
+						 SlowClientMonitor slowClientMonitor)
+	{
+		this.networkInfo = networkInfo;
+		this.channel = channel;
+		this.selectorLoop = selectorLoop;
+		this.connectionHandshake = connectionHandshake;
+		this.outboundQueue = new OutboundQueue(outboundQueueCapacity);
+		this.connectionStats = connectionStats;
+		this.slowClientMonitor = slowClientMonitor;
+		this.sendDeadline = slowClientMonitor.newSendDeadline(networkInfo.getClientIp());
+		connectionStats.notifyConnectionOpened();
+	}
+
+	/**
+	 * {@link MessageSocket}
+	 */
+	@Override public boolean isConnected()
+	{
+		return open.get() && channel.isOpen();
+	}
+
+	/**
+	 * {@link MessageSocket}
+	 *
+	 * The message is queued and written by the selector thread, this call does not wait for the write. The bytes
+	 * still unwritten, if any, are checked against the send deadline.
+	 *
+	 * @throws IOException thrown if the socket is closed, or too many messages are already waiting
+	 */
+	@Override public void sendMessage(Message message) throws IOException
+	{
+		if ( ! isConnected()) {
+			throw new IOException("Attempting to send a message using a disconnected socket.");
+		}
+		if (message.getDataChunk() != null && ! supportsBulkLanes()) {
+			throw new IOException("Client " + networkInfo.getClientIp() + " does not accept bulk lanes.");
+		}
+
+		if (slowClientMonitor.notifyPending(networkInfo.getClientIp(), sendDeadline, unwrittenSinceNanos) == SendDeadline.Verdict.DISCONNECT) {
+			close();
+			throw new IOException("The connection of " + networkInfo.getClientIp() + " is closing, it stayed quarantined too long.");
+		}
+
+		if ( ! outboundQueue.offer(message)) {
+			throw new IOException("The outbound queue of " + networkInfo.getClientIp() + " is full.");
+		}
+		selectorLoop.requestWrite(this);
+	}
+
+	/**
+	 * {@link MessageSocket}
+	 *
+	 * Decodes the next message from the bytes already read by the selector thread. Since the channel is
+	 * non-blocking, null is returned when no complete message has been received yet.
+	 */
+	@Override public Message readMessage() throws IOException
+	{
+		if (inboundCodec == null) {
+			return null;
+		}
+		return inboundBuffer.nextMessage(inboundCodec);
+	}
+
+	/**
+	 * {@link ServerMessageSocket}
+	 *
+	 * The channel is closed by the selector thread, which reports the disconnection.
+	 */
+	@Override public void close()
+	{
+		selectorLoop.requestClose(this);
+	}
+
+	/**
+	 * {@link ServerMessageSocket}
+	 */
+	@Override public boolean isLegacyClient()
+	{
+		Hello receivedHello = hello;
+		return receivedHello != null && receivedHello.getProtocolVersion() == ConnectionHandshake.LEGACY_PROTOCOL_VERSION;
+	}
+
+	/**
+	 * {@link ServerMessageSocket}
+	 */
+	@Override public Hello getHello()
+	{
+		return hello;
+	}
+
+	/**
+	 * {@link ServerMessageSocket}
+	 */
+	@Override public void setSession(long sessionToken, boolean resumed)
+	{
+		this.sessionToken = sessionToken;
+		this.resumed = resumed;
+	}
+
+	/**
+	 * {@link ServerMessageSocket}
+	 */
+	@Override public long getSessionToken()
+	{
+		return sessionToken;
+	}
+
+	/**
+	 * {@link MessageSocket}
+	 */
+	@Override public NetworkInfo getNetworkInfo()
+	{
+		return networkInfo;
+	}
+
+	/**
+	 * {@link MessageSocket}
+	 */
+	@Override public String getClientName()
+	{
+		return networkInfo.getClientName();
+	}
+
+	/**
+	 * {@link MessageSocket}
+	 */
+	@Override public String getClientIp()
+	{
+		return networkInfo.getClientIp();
+	}
+
+	/**
+	 * {@link MessageSocket}
+	 */
+	@Override public String getServerIp()
+	{
+		return networkInfo.getServerIp();
+	}
+
+	/* ---------------------------------------------------------------------
+	 *                    SELECTOR THREAD ONLY
+	 * ---------------------------------------------------------------------*/
+
+	SocketChannel getChannel()
+	{
+		return channel;
+	}
+
+	SelectionKey getSelectionKey()
+	{
+		return selectionKey;
+	}
+
+	void setSelectionKey(SelectionKey selectionKey)
+	{
+		this.selectionKey = selectionKey;
+	}
+
+	/**
+	 * Reads the available bytes from the channel.
+	 * @return the number of bytes read, or -1 if the client closed the connection
+	 * @throws IOException thrown if the read fails, or the client sends a message that is too large
+	 */
+	int readFromChannel() throws IOException
+	{
+		return inboundBuffer.readFrom(channel);
+	}
+
+	/**
+	 * Reads the client's hello from the bytes already read, and selects the codec of the connection.
+	 * @return true if the hello has been received, false if more bytes are needed
+	 * @throws IOException thrown if the hello is invalid, or none of the offered codecs are accepted
+	 */
+	boolean readHello() throws IOException
+	{
+		Hello receivedHello;
+		ByteBuffer received = inboundBuffer.acquire();
+		try {
+			receivedHello = connectionHandshake.readHello(received);
+		}
+		finally {
+			inboundBuffer.release();
+		}
+
+		if (receivedHello == null) {
+			return false;
+		}
+
+		inboundCodec = receivedHello.getCodec();
+		hello = receivedHello;
+		log.debug("Codec {} selected for {}.", inboundCodec.getId(), networkInfo.getClientIp());
+		return true;
+	}
+
+	/**
+	 * Queues the WELCOME of the assigned session ahead of any queued message, and enables the writes.
+	 */
+	void writeWelcome()
+	{
+		ByteBuffer welcome = ConnectionHandshake.createWelcome(hello, sessionToken, resumed);
+		if (welcome != null) {
+			append(welcome);
+		}
+		outboundCodec = MessageCodecs.create(inboundCodec.getId());
+	}
+
+	/**
+	 * Encodes and writes as many of the queued messages as the channel accepts. Nothing is written before the
+	 * WELCOME.
+	 * @return true if every queued message was written, otherwise false
+	 * @throws IOException thrown if the write fails
+	 */
+	boolean writeToChannel() throws IOException
+	{
+		if (outboundCodec == null) {
+			return true;
+		}
+
+		long writeStart = unwrittenSinceNanos != -1 ? unwrittenSinceNanos : System.nanoTime();
+		boolean written = false;
+		while (true) {
+			if (writeBuffer.hasRemaining()) {
+				channel.write(writeBuffer);
+				if (writeBuffer.hasRemaining()) {
+					unwrittenSinceNanos = writeStart;
+					return false;
+				}
+				written = true;
+			}
+
+			outboundQueue.drainTo(pendingMessages);
+			for (Message message : pendingMessages) {
+				try {
+					append(outboundCodec.encode(message));
+				}
+				catch (IOException e) {
+					log.error("Failed to encode message for {}, message dropped. Error = {}", networkInfo.getClientIp(), e.getMessage());
+				}
+			}
+			pendingMessages.clear();
+
+			if ( ! writeBuffer.hasRemaining()) {
+				unwrittenSinceNanos = -1;
+				if (written && slowClientMonitor.notifyWritten(networkInfo.getClientIp(), sendDeadline, writeStart) == SendDeadline.Verdict.DISCONNECT) {
+					close();
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Closes the channel.
+	 * @return true if this call closed the channel, false if it had already been closed
+	 */
+	boolean closeChannel()
+	{
+		if ( ! open.compareAndSet(true, false)) {
+			return false;
+		}
+
+		outboundQueue.clear();
+		writeBuffer = EMPTY_BUFFER;
+		connectionStats.notifyConnectionClosed();
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			// The channel is unusable either way
+		}
+		return true;
+	}
+
+	private boolean supportsBulkLanes()
+	{
+		Hello receivedHello = hello;
+		return receivedHello != null && receivedHello.supports(ConnectionHandshake.BULK_LANES);
+	}
+
+	/**
+	 * Appends the frame to the unwritten bytes, growing the write buffer if required.
+	 * @param frame the encoded frame
+	 */
+	private void append(ByteBuffer frame)
+	{
+		if (writeBuffer.capacity() - writeBuffer.limit() < frame.remaining()) {
+			writeBuffer.compact();
+			if (writeBuffer.remaining() < frame.remaining()) {
+				ByteBuffer largerBuffer = ByteBuffer.allocate(Math.max(writeBuffer.position() + frame.remaining(), writeBuffer.capacity() * 2));
+				writeBuffer.flip();
+				largerBuffer.put(writeBuffer);
+				writeBuffer = largerBuffer;
+			}
+			writeBuffer.flip();
+		}
+
+		int unwrittenPosition = writeBuffer.position();
+		writeBuffer.position(writeBuffer.limit());
+		writeBuffer.limit(writeBuffer.limit() + frame.remaining());
+		writeBuffer.put(frame);
+		writeBuffer.position(unwrittenPosition);
+	}
+}
@@ -0,0 +1,146 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
+import edu.nyu.cess.remote.server.lab.Computer;
+import edu.nyu.cess.remote.server.lab.LabLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class waits for new client connections, and serves every accepted client with non-blocking channels that are
+ * spread over a fixed number of {@link SelectorLoop} threads.
+ *
+ * The accept loop only checks new connections against the lab layout, the clients are registered by the
+ * {@link AdmissionController} workers. A client is only added to the pool once its selector loop has received its
+ * hello.
+ */
+public class SelectorConnectionMonitor implements ConnectionMonitor
+{
+	private final static Logger log = LoggerFactory.getLogger(SelectorConnectionMonitor.class);
+
+	private final ClientPool clientPool;
+	private final MessageSocketObserver messageSocketObserver;
+	private final ClientDisconnectionObserver clientDisconnectionObserver;
+	private final int selectorThreads;
+	private final ConnectionHandshake connectionHandshake;
+	private final int outboundQueueCapacity;
+	private final AdmissionSettings admissionSettings;
+	private final AdmissionStats admissionStats;
+	private final ConnectionStats connectionStats;
+	private final SlowClientMonitor slowClientMonitor;
+
+	private final AtomicInteger nextSelectorLoop = new AtomicInteger();
+
+	public SelectorConnectionMonitor(ClientPool clientPool, MessageSocketObserver messageSocketObserver,
+									 ClientDisconnectionObserver clientDisconnectionObserver, int selectorThreads,
+									 ConnectionHandshake connectionHandshake, int outboundQueueCapacity,
+									 AdmissionSettings admissionSettings, AdmissionStats admissionStats,
+									 ConnectionStats connectionStats, SlowClientMonitor slowClientMonitor)
+	{
+		this.clientPool = clientPool;
+		this.messageSocketObserver = messageSocketObserver;
+		this.clientDisconnectionObserver = clientDisconnectionObserver;
+		this.selectorThreads = selectorThreads;
+		this.connectionHandshake = connectionHandshake;
+		this.outboundQueueCapacity = outboundQueueCapacity;
+		this.admissionSettings = admissionSettings;
+		this.admissionStats = admissionStats;
+		this.connectionStats = connectionStats;
+		this.slowClientMonitor = slowClientMonitor;
+	}
+
+	/**
+	 * {@link ConnectionMonitor}
+	 */
+	@Override public void monitorNewClientSocketConnections(int port, LabLayout labLayout)
+	{
+		final SelectorLoop[] selectorLoops = new SelectorLoop[selectorThreads];
+		ServerSocketChannel serverChannel;
+		try {
+			for (int i = 0; i < selectorThreads; ++i) {
+				selectorLoops[i] = new SelectorLoop(Selector.open(), clientPool, messageSocketObserver, clientDisconnectionObserver,
+						connectionHandshake.getTimeoutMillis(), connectionStats, admissionStats);
+				new Thread(selectorLoops[i], "selector-loop-" + i).start();
+			}
+
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(new InetSocketAddress(port), admissionSettings.getBacklog());
+		} catch (IOException e) {
+			log.error("Failed to start the server channel. Error: {}", e.getMessage());
+			return;
+		}
+
+		AdmissionController admissionController = new AdmissionController(admissionSettings, admissionStats, "client-registration-");
+
+		while (true) {
+			SocketChannel channel;
+			try {
+				log.debug("Waiting for inbound client connection request.");
+				channel = serverChannel.accept(); // Blocking call
+			} catch (IOException e) {
+				log.error("Connection Error", e);
+				continue;
+			}
+
+			Computer computer = labLayout.getComputer(channel.socket().getInetAddress());
+			if (computer == null) {
+				String remoteIp = channel.socket().getInetAddress().getHostAddress();
+				try {
+					channel.close();
+				} catch (IOException e) {
+					log.error("Failed to close the client channel. Error: {}", e.getMessage());
+				}
+				admissionController.reject();
+				log.error("Connection by " + remoteIp + " was rejected. Only clients in lab-layout.yaml are allowed.");
+				continue;
+			}
+
+			String remoteIp = computer.getIp();
+			log.debug("Client connected: {}", remoteIp);
+			final SocketChannel acceptedChannel = channel;
+			final String clientName = computer.getName();
+			admissionController.admit(remoteIp, new AdmissionController.Registration() {
+				@Override public void register() throws IOException
+				{
+					registerClient(acceptedChannel, clientName, selectorLoops);
+				}
+			});
+		}
+	}
+
+	private void registerClient(SocketChannel channel, String clientName, SelectorLoop[] selectorLoops) throws IOException
+	{
+		try {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+		} catch (IOException e) {
+			try {
+				channel.close();
+			} catch (IOException closeException) {
+				log.error("Failed to close the client channel. Error: {}", closeException.getMessage());
+			}
+			throw new IOException("Failed to configure the client channel.", e);
+		}
+
+		String remoteIp = channel.socket().getInetAddress().getHostAddress();
+		String serverIp = channel.socket().getLocalAddress().getHostAddress();
+		NetworkInfo clientNetworkInfo = new NetworkInfo(clientName, remoteIp, serverIp);
+
+		SelectorLoop selectorLoop = selectorLoops[(nextSelectorLoop.getAndIncrement() & Integer.MAX_VALUE) % selectorLoops.length];
+
+		SelectorClientSocket socket = new SelectorClientSocket(clientNetworkInfo, channel, selectorLoop, connectionHandshake,
+				outboundQueueCapacity, connectionStats, slowClientMonitor);
+		selectorLoop.register(socket);
+	}
+}
@@ -0,0 +1,262 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.message.MessageValidator;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A selector loop serves the reads and writes of every client channel registered with it, using a single thread.
+ * A client is added to the client pool, and welcomed, as soon as its hello has been received. Received messages are
+ * validated and passed to the message socket observer on the selector thread, and a channel of an added client that
+ * fails or is closed by the client is reported to the disconnection observer. A channel that does not send its hello
+ * within the handshake timeout is closed. A client whose channel is closed before its handshake completes is recorded as
+ * abandoned in the admission statistics.
+ */
+class SelectorLoop implements Runnable
+{
+	private final static Logger log = LoggerFactory.getLogger(SelectorLoop.class);
+
+	private final Selector selector;
+	private final ClientPool clientPool;
+	private final MessageSocketObserver messageSocketObserver;
+	private final ClientDisconnectionObserver clientDisconnectionObserver;
+	private final long handshakeTimeoutNanos;
+	private final ConnectionStats connectionStats;
+	private final AdmissionStats admissionStats;
+
+	private final Queue<SelectorClientSocket> pendingRegistrations = new ConcurrentLinkedQueue<>();
+	private final Queue<SelectorClientSocket> pendingWrites = new ConcurrentLinkedQueue<>();
+	private final Queue<SelectorClientSocket> pendingCloses = new ConcurrentLinkedQueue<>();
+
+	private final MessageValidator messageValidator = new MessageValidator();
+
+	// Only accessed by the selector thread, in registration order and therefore in deadline order
+	private final Map<SelectorClientSocket, Long> handshakeDeadlines = new LinkedHashMap<>();
+
+	SelectorLoop(Selector selector, ClientPool clientPool, MessageSocketObserver messageSocketObserver,
+				 ClientDisconnectionObserver clientDisconnectionObserver, long handshakeTimeoutMillis,
+				 ConnectionStats connectionStats, AdmissionStats admissionStats)
+	{
+		this.selector = selector;
+		this.clientPool = clientPool;
+		this.messageSocketObserver = messageSocketObserver;
+		this.clientDisconnectionObserver = clientDisconnectionObserver;
+		this.handshakeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(handshakeTimeoutMillis);
+		this.connectionStats = connectionStats;
+		this.admissionStats = admissionStats;
+	}
+
+	/**
+	 * Queues the socket for registration with this loop's selector. The registration itself is performed by the
+	 * selector thread, since registering from another thread blocks while the selector is selecting.
+	 * @param socket the client socket
+	 */
+	void register(SelectorClientSocket socket)
+	{
+		pendingRegistrations.add(socket);
+		selector.wakeup();
+	}
+
+	/**
+	 * Notifies the loop that the socket has queued outbound data.
+	 * @param socket the client socket
+	 */
+	void requestWrite(SelectorClientSocket socket)
+	{
+		pendingWrites.add(socket);
+		selector.wakeup();
+	}
+
+	/**
+	 * Queues the socket to be closed, and its disconnection reported, by the selector thread.
+	 * @param socket the client socket
+	 */
+	void requestClose(SelectorClientSocket socket)
+	{
+		pendingCloses.add(socket);
+		selector.wakeup();
+	}
+
+	@Override public void run()
+	{
+		while ( ! Thread.currentThread().isInterrupted()) {
+			try {
+				selector.select(getSelectTimeoutMillis());
+			}
+			catch (IOException e) {
+				log.error("Selector failed, halting the selector loop. Error = {}", e.getMessage());
+				return;
+			}
+
+			registerPendingSockets();
+			writePendingSockets();
+			closePendingSockets();
+
+			Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+			while (selectedKeys.hasNext()) {
+				SelectionKey key = selectedKeys.next();
+				selectedKeys.remove();
+
+				SelectorClientSocket socket = (SelectorClientSocket) key.attachment();
+				if (key.isValid() && key.isReadable()) {
+					read(socket);
+				}
+				if (key.isValid() && key.isWritable()) {
+					write(socket);
+				}
+			}
+
+			closeExpiredHandshakes();
+		}
+	}
+
+	private void registerPendingSockets()
+	{
+		SelectorClientSocket socket;
+		while ((socket = pendingRegistrations.poll()) != null) {
+			try {
+				socket.setSelectionKey(socket.getChannel().register(selector, SelectionKey.OP_READ, socket));
+				handshakeDeadlines.put(socket, System.nanoTime() + handshakeTimeoutNanos);
+				// Messages may have been queued before the registration
+				write(socket);
+			}
+			catch (ClosedChannelException e) {
+				disconnect(socket);
+			}
+		}
+	}
+
+	private void writePendingSockets()
+	{
+		SelectorClientSocket socket;
+		while ((socket = pendingWrites.poll()) != null) {
+			if (socket.getSelectionKey() != null) {
+				write(socket);
+			}
+		}
+	}
+
+	private void closePendingSockets()
+	{
+		SelectorClientSocket socket;
+		while ((socket = pendingCloses.poll()) != null) {
+			disconnect(socket);
+		}
+	}
+
+	private void read(SelectorClientSocket socket)
+	{
+		try {
+			if (socket.readFromChannel() < 0) {
+				throw new IOException("Connection closed by the client.");
+			}
+
+			if (socket.getHello() == null) {
+				if ( ! socket.readHello()) {
+					return;
+				}
+				handshakeDeadlines.remove(socket);
+				clientPool.addClient(socket);
+				socket.writeWelcome();
+				write(socket);
+				if ( ! socket.isConnected()) {
+					return;
+				}
+			}
+
+			Message message;
+			while ((message = socket.readMessage()) != null) {
+				if ( ! messageValidator.validate(message)) {
+					log.error("Invalid message received. Error = {}", messageValidator.getErrorMessage());
+					continue;
+				}
+				messageSocketObserver.notifyMessageReceived(socket.getNetworkInfo(), message);
+			}
+		}
+		catch (IOException e) {
+			log.info("IO Exception occurred, halting read message. Error = {}", e.getMessage());
+			disconnect(socket);
+		}
+	}
+
+	private void write(SelectorClientSocket socket)
+	{
+		SelectionKey key = socket.getSelectionKey();
+		if ( ! key.isValid()) {
+			return;
+		}
+
+		try {
+			boolean drained = socket.writeToChannel();
+			key.interestOps(drained ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+		catch (IOException e) {
+			log.error("Socket connection to ({}:{}) lost: {}", socket.getClientName(), socket.getClientIp(), e.getMessage());
+			disconnect(socket);
+		}
+	}
+
+	/**
+	 * Returns how long the selector may wait, so that it wakes up for the next handshake deadline.
+	 * @return the select timeout in milliseconds, 0 to wait indefinitely
+	 */
+	private long getSelectTimeoutMillis()
+	{
+		if (handshakeDeadlines.isEmpty()) {
+			return 0;
+		}
+		long remainingNanos = handshakeDeadlines.values().iterator().next() - System.nanoTime();
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1);
+	}
+
+	private void closeExpiredHandshakes()
+	{
+		long now = System.nanoTime();
+		Iterator<Map.Entry<SelectorClientSocket, Long>> deadlines = handshakeDeadlines.entrySet().iterator();
+		while (deadlines.hasNext()) {
+			Map.Entry<SelectorClientSocket, Long> deadline = deadlines.next();
+			if (deadline.getValue() - now > 0) {
+				return;
+			}
+
+			deadlines.remove();
+			SelectorClientSocket socket = deadline.getKey();
+			log.info("No hello received from {} in time, closing the connection.", socket.getClientIp());
+			connectionStats.notifyHandshakeTimedOut();
+			disconnect(socket);
+		}
+	}
+
+	private void disconnect(SelectorClientSocket socket)
+	{
+		handshakeDeadlines.remove(socket);
+		if (socket.getSelectionKey() != null) {
+			socket.getSelectionKey().cancel();
+		}
+
+		// A client that never completed its handshake was never added, and is not reported
+		if (socket.closeChannel()) {
+			if (socket.getHello() != null) {
+				clientDisconnectionObserver.notifyClientDisconnected(socket.getClientIp());
+			}
+			else {
+				admissionStats.notifyAbandoned(socket.getClientIp());
+			}
+		}
+	}
+}
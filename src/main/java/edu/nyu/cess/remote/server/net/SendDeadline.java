@@ -0,0 +1,130 @@
+package edu.nyu.cess.remote.server.net;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the send deadline to the writes of a single connection.
+ *
+ * A write misses the deadline when the connection takes longer than the deadline to accept it, which is noticed
+ * once the write completes, or while it is still pending. A write stalled on a full TCP window counts as one more
+ * miss for every deadline period it stays pending. After a number of consecutive misses the connection is
+ * quarantined, and the same number of consecutive writes in time releases it. A connection that stays quarantined
+ * for longer than the quarantine time is to be disconnected.
+ *
+ * The times are given by the caller, as {@link System#nanoTime()} values.
+ */
+class SendDeadline
+{
+	/**
+	 * The outcome of a write, or of a check on a pending write.
+	 */
+	enum Verdict
+	{
+		NONE,
+		MISSED,
+		QUARANTINED,
+		RELEASED,
+		DISCONNECT
+	}
+
+	private final long deadlineNanos;
+	private final int missesBeforeQuarantine;
+	private final long quarantineNanos;
+
+	private int consecutiveMisses;
+	private int consecutiveWritesInTime;
+	private long pendingWriteStartNanos = -1;
+	private long pendingMissNanos;
+	private boolean quarantined;
+	private long quarantinedSinceNanos;
+	private boolean disconnectDue;
+
+	SendDeadline(SendSettings sendSettings)
+	{
+		this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(sendSettings.getDeadlineMillis());
+		this.missesBeforeQuarantine = sendSettings.getMissesBeforeQuarantine();
+		this.quarantineNanos = TimeUnit.MILLISECONDS.toNanos(sendSettings.getQuarantineMillis());
+	}
+
+	/**
+	 * Checks the write in progress against the deadline.
+	 * @param writeStartNanos the time the write in progress started, or -1 if none is in progress
+	 * @param nowNanos the current time
+	 * @return MISSED or QUARANTINED if another deadline period passed with the write pending, DISCONNECT once the
+	 *         quarantine time is over, otherwise NONE
+	 */
+	synchronized Verdict notifyPending(long writeStartNanos, long nowNanos)
+	{
+		if (isQuarantineOver(nowNanos)) {
+			return Verdict.DISCONNECT;
+		}
+		if (writeStartNanos == -1 || nowNanos - writeStartNanos <= deadlineNanos) {
+			return Verdict.NONE;
+		}
+		if (writeStartNanos == pendingWriteStartNanos && nowNanos - pendingMissNanos < deadlineNanos) {
+			return Verdict.NONE;
+		}
+
+		pendingWriteStartNanos = writeStartNanos;
+		pendingMissNanos = nowNanos;
+		return miss(nowNanos);
+	}
+
+	/**
+	 * Checks a completed write against the deadline.
+	 * @param writeStartNanos the time the write started
+	 * @param nowNanos the time the write completed
+	 * @return MISSED or QUARANTINED if the write was late, RELEASED if enough writes were in time to end the
+	 *         quarantine, DISCONNECT once the quarantine time is over, otherwise NONE
+	 */
+	synchronized Verdict notifyWritten(long writeStartNanos, long nowNanos)
+	{
+		boolean missCounted = writeStartNanos == pendingWriteStartNanos;
+		pendingWriteStartNanos = -1;
+
+		if (nowNanos - writeStartNanos > deadlineNanos) {
+			if (missCounted) {
+				return isQuarantineOver(nowNanos) ? Verdict.DISCONNECT : Verdict.NONE;
+			}
+			Verdict verdict = miss(nowNanos);
+			return verdict != Verdict.QUARANTINED && isQuarantineOver(nowNanos) ? Verdict.DISCONNECT : verdict;
+		}
+
+		consecutiveMisses = 0;
+		++consecutiveWritesInTime;
+		if (quarantined && consecutiveWritesInTime >= missesBeforeQuarantine) {
+			quarantined = false;
+			return Verdict.RELEASED;
+		}
+		return isQuarantineOver(nowNanos) ? Verdict.DISCONNECT : Verdict.NONE;
+	}
+
+	synchronized boolean isQuarantined()
+	{
+		return quarantined;
+	}
+
+	private Verdict miss(long nowNanos)
+	{
+		consecutiveWritesInTime = 0;
+		++consecutiveMisses;
+		if ( ! quarantined && consecutiveMisses >= missesBeforeQuarantine) {
+			quarantined = true;
+			quarantinedSinceNanos = nowNanos;
+			return Verdict.QUARANTINED;
+		}
+		return Verdict.MISSED;
+	}
+
+	/**
+	 * Returns true the first time the connection is found quarantined for longer than the quarantine time.
+	 */
+	private boolean isQuarantineOver(long nowNanos)
+	{
+		if (quarantined && ! disconnectDue && nowNanos - quarantinedSinceNanos >= quarantineNanos) {
+			disconnectDue = true;
+			return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,40 @@
+package edu.nyu.cess.remote.server.net;
+
+/**
+ * The send deadline of every client connection, and the quarantine of the clients that keep missing it, in
+ * milliseconds.
+ */
+public class SendSettings
+{
+	private final long deadlineMillis;
+	private final int missesBeforeQuarantine;
+	private final long quarantineMillis;
+
+	/**
+	 * @param deadlineMillis the time a client's connection has to accept a write
+	 * @param missesBeforeQuarantine the number of consecutive missed deadlines after which a client is quarantined,
+	 *                               and of consecutive writes in time after which it is released
+	 * @param quarantineMillis the time a client may stay quarantined before it is disconnected
+	 */
+	public SendSettings(long deadlineMillis, int missesBeforeQuarantine, long quarantineMillis)
+	{
+		this.deadlineMillis = Math.max(1, deadlineMillis);
+		this.missesBeforeQuarantine = Math.max(1, missesBeforeQuarantine);
+		this.quarantineMillis = Math.max(0, quarantineMillis);
+	}
+
+	public long getDeadlineMillis()
+	{
+		return deadlineMillis;
+	}
+
+	public int getMissesBeforeQuarantine()
+	{
+		return missesBeforeQuarantine;
+	}
+
+	public long getQuarantineMillis()
+	{
+		return quarantineMillis;
+	}
+}
@@ -0,0 +1,97 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.net.DatagramSettings;
+import edu.nyu.cess.remote.common.net.ServerAnnouncement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically announces the server endpoint to the discovery address, so that clients in discovery mode can find
+ * the server without a configured ip. Each server run announces a new random instance id, which lets clients tell
+ * a restarted server apart from the one they were connected to.
+ */
+public class ServerAnnouncer
+{
+	private final static Logger log = LoggerFactory.getLogger(ServerAnnouncer.class);
+
+	private final DatagramSettings discoverySettings;
+	private final HashedWheelTimer timer;
+	private final long intervalMillis;
+	private final byte[] announcement;
+
+	private DatagramSocket socket;
+	private volatile HashedWheelTimer.Timeout timeout;
+	private volatile boolean running;
+
+	/**
+	 * @param discoverySettings the address announcements are sent to
+	 * @param serverIp the announced ip, or null to let clients use the address the announcements come from
+	 * @param port the port the server accepts clients on
+	 * @param timer the timer the announcements are sent from
+	 * @param intervalMillis the time between announcements
+	 */
+	public ServerAnnouncer(DatagramSettings discoverySettings, String serverIp, int port, HashedWheelTimer timer,
+						   long intervalMillis)
+	{
+		this.discoverySettings = discoverySettings;
+		this.timer = timer;
+		this.intervalMillis = intervalMillis;
+		this.announcement = new ServerAnnouncement(serverIp, port, new Random().nextLong()).encode();
+	}
+
+	/**
+	 * Opens the announcement socket and sends the first announcement.
+	 * @throws IOException thrown if the socket cannot be opened
+	 */
+	public synchronized void start() throws IOException
+	{
+		socket = discoverySettings.openSendingSocket();
+		running = true;
+		log.info("Announcing the server to {} every {} ms.", discoverySettings, intervalMillis);
+		announce();
+	}
+
+	/**
+	 * Stops the announcements and closes the socket.
+	 */
+	public synchronized void stop()
+	{
+		running = false;
+		HashedWheelTimer.Timeout currentTimeout = timeout;
+		if (currentTimeout != null) {
+			currentTimeout.cancel();
+		}
+		if (socket != null) {
+			socket.close();
+		}
+	}
+
+	private void announce()
+	{
+		if ( ! running) {
+			return;
+		}
+
+		try {
+			socket.send(new DatagramPacket(announcement, announcement.length, discoverySettings.getAddress(),
+					discoverySettings.getPort()));
+		}
+		catch (IOException e) {
+			// The network may come back, keep announcing
+			log.debug("Failed to send the server announcement. Error = {}", e.getMessage());
+		}
+
+		timeout = timer.schedule(new Runnable() {
+			@Override public void run()
+			{
+				announce();
+			}
+		}, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,48 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.codec.Hello;
+
+/**
+ * The server side of a client connection.
+ *
+ * The transport adds a connection to the client pool once the client's {@link Hello} has been received, and
+ * answers it with the WELCOME right after, so the session assigned while the client is added is the one the client
+ * is told about.
+ */
+public interface ServerMessageSocket extends MessageSocket
+{
+	/**
+	 * Closes the connection. The transport reports the disconnection to its
+	 * {@link edu.nyu.cess.remote.server.client.ClientDisconnectionObserver} once, however the connection ended,
+	 * provided the connection had been added to the client pool.
+	 */
+	void close();
+
+	/**
+	 * Returns true if the client predates the connection handshake. Such clients ignore keep alive pings, but still
+	 * answer app execution update polls.
+	 * @return true for a legacy client, false otherwise or while the hello has not been received yet
+	 */
+	boolean isLegacyClient();
+
+	/**
+	 * Returns the client's hello.
+	 * @return the hello, or null while it has not been received yet
+	 */
+	Hello getHello();
+
+	/**
+	 * Assigns the connection's session, sent to the client in the WELCOME. Connections that are not assigned a
+	 * session are welcomed without one.
+	 * @param sessionToken the token the client resumes the session with, 0 if the session can not be resumed
+	 * @param resumed true if the client's previous session was resumed
+	 */
+	void setSession(long sessionToken, boolean resumed);
+
+	/**
+	 * Returns the token of the connection's session.
+	 * @return the session token, 0 if the session can not be resumed
+	 */
+	long getSessionToken();
+}
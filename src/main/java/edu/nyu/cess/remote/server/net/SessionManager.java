@@ -0,0 +1,243 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.codec.Hello;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the session of every client, and keeps it for a grace window once the client's connection is lost.
+ *
+ * Each client that supports resuming is given a random session token in its WELCOME. When the connection is lost,
+ * the disconnection is held back for the grace window: a client reconnecting with the token within it gets its
+ * previous session back, so it stays connected in the view and its known app execution state is kept, without the
+ * client having to report it again. The disconnection is only passed on once the window expires, and at once for
+ * clients that can not resume.
+ *
+ * A client is identified by its ip, as in the lab layout. A newer connection from a client supersedes the older one
+ * at once, whether it resumes the session or not: the older connection is closed, which ends its reader and its
+ * heartbeat, and its disconnection is ignored instead of ending the newer session. A client that reconnects before its
+ * half-open connection has been noticed therefore never loses its new session to the old connection.
+ *
+ * Sits between the transport side decorators and the {@link edu.nyu.cess.remote.server.client.ClientPoolProxy}, in
+ * both the client pool and the disconnection chains.
+ */
+public class SessionManager implements ClientPool, ClientDisconnectionObserver
+{
+	private final static Logger log = LoggerFactory.getLogger(SessionManager.class);
+
+	private final ClientPool clientPool;
+	private final ClientDisconnectionObserver clientDisconnectionObserver;
+	private final HashedWheelTimer timer;
+	private final long graceMillis;
+
+	private final SecureRandom random = new SecureRandom();
+	// Guarded by this
+	private final Map<String, Session> sessions = new HashMap<>();
+
+	private final AtomicLong resumedSessionCount = new AtomicLong();
+	private final AtomicLong expiredSessionCount = new AtomicLong();
+	private final AtomicLong supersededConnectionCount = new AtomicLong();
+
+	/**
+	 * @param clientPool the client pool the clients are added to
+	 * @param clientDisconnectionObserver notified once a client's session has ended
+	 * @param timer the timer expiring the grace windows
+	 * @param graceMillis the time a lost session can be resumed, 0 to end sessions with their connection
+	 */
+	public SessionManager(ClientPool clientPool, ClientDisconnectionObserver clientDisconnectionObserver,
+						  HashedWheelTimer timer, long graceMillis)
+	{
+		this.clientPool = clientPool;
+		this.clientDisconnectionObserver = clientDisconnectionObserver;
+		this.timer = timer;
+		this.graceMillis = graceMillis;
+	}
+
+	/**
+	 * {@link ClientPool}
+	 *
+	 * Resumes the client's previous session if the client presents its token, otherwise ends any previous session
+	 * of the client and starts a new one.
+	 */
+	@Override public void addClient(MessageSocket messageSocket)
+	{
+		if ( ! (messageSocket instanceof ServerMessageSocket)) {
+			clientPool.addClient(messageSocket);
+			return;
+		}
+
+		ServerMessageSocket socket = (ServerMessageSocket) messageSocket;
+		String clientIp = socket.getClientIp();
+		Hello hello = socket.getHello();
+		boolean resumable = graceMillis > 0 && hello != null && hello.supports(ConnectionHandshake.SESSION_RESUME);
+
+		ServerMessageSocket replacedSocket = null;
+		boolean resumed = false;
+		boolean previousSessionEnded = false;
+		synchronized (this) {
+			Session session = sessions.get(clientIp);
+			if (session != null) {
+				replacedSocket = session.socket;
+			}
+
+			if (resumable && session != null && session.token != 0 && session.token == hello.getResumeToken()) {
+				session.cancelExpiry();
+				session.socket = socket;
+				socket.setSession(session.token, true);
+				resumed = true;
+			}
+			else {
+				if (session != null && ! replacedSocket.isConnected()) {
+					session.cancelExpiry();
+					previousSessionEnded = true;
+				}
+				Session newSession = new Session(resumable ? nextToken() : 0, socket);
+				sessions.put(clientIp, newSession);
+				socket.setSession(newSession.token, false);
+			}
+		}
+
+		if (resumed) {
+			resumedSessionCount.incrementAndGet();
+			log.info("Session of {} resumed.", clientIp);
+		}
+		else if (previousSessionEnded) {
+			log.info("Previous session of {} ended by a new session.", clientIp);
+			clientDisconnectionObserver.notifyClientDisconnected(clientIp);
+		}
+
+		// The client has given up on the previous connection, which may be half-open, its disconnection is ignored
+		if (replacedSocket != null && replacedSocket.isConnected()) {
+			supersededConnectionCount.incrementAndGet();
+			log.info("Connection of {} superseded by a newer connection.", clientIp);
+			replacedSocket.close();
+		}
+
+		clientPool.addClient(socket);
+	}
+
+	/**
+	 * {@link ClientDisconnectionObserver}
+	 */
+	@Override public void notifyClientDisconnected(final String clientIp)
+	{
+		synchronized (this) {
+			final Session session = sessions.get(clientIp);
+			if (session != null) {
+				if (session.socket.isConnected()) {
+					log.debug("Ignored the disconnection of a replaced connection of {}.", clientIp);
+					return;
+				}
+
+				if (session.token != 0) {
+					if (session.expiry == null) {
+						log.info("Connection of {} lost, its session can be resumed for {} ms.", clientIp, graceMillis);
+						session.expiry = timer.schedule(new Runnable() {
+							@Override public void run()
+							{
+								expire(clientIp, session);
+							}
+						}, graceMillis, TimeUnit.MILLISECONDS);
+					}
+					return;
+				}
+				sessions.remove(clientIp);
+			}
+		}
+
+		clientDisconnectionObserver.notifyClientDisconnected(clientIp);
+	}
+
+	/**
+	 * Returns the number of sessions resumed by a reconnecting client.
+	 * @return the resumed session count
+	 */
+	public long getResumedSessionCount()
+	{
+		return resumedSessionCount.get();
+	}
+
+	/**
+	 * Returns the number of sessions that were not resumed within the grace window.
+	 * @return the expired session count
+	 */
+	public long getExpiredSessionCount()
+	{
+		return expiredSessionCount.get();
+	}
+
+	/**
+	 * Returns the number of connections closed because the client connected again.
+	 * @return the superseded connection count
+	 */
+	public long getSupersededConnectionCount()
+	{
+		return supersededConnectionCount.get();
+	}
+
+	/**
+	 * Returns the number of sessions currently held, those of the connected clients and those in their grace window.
+	 * @return the session count
+	 */
+	public synchronized int getSessionCount()
+	{
+		return sessions.size();
+	}
+
+	private void expire(String clientIp, Session session)
+	{
+		synchronized (this) {
+			if (sessions.get(clientIp) != session || session.expiry == null || session.expiry.isCancelled()) {
+				return;
+			}
+			sessions.remove(clientIp);
+		}
+
+		expiredSessionCount.incrementAndGet();
+		log.info("Session of {} expired.", clientIp);
+		clientDisconnectionObserver.notifyClientDisconnected(clientIp);
+	}
+
+	private long nextToken()
+	{
+		long token;
+		do {
+			token = random.nextLong();
+		} while (token == 0);
+		return token;
+	}
+
+	/**
+	 * A client's session, and its current connection.
+	 */
+	private static class Session
+	{
+		private final long token;
+		private ServerMessageSocket socket;
+		private HashedWheelTimer.Timeout expiry;
+
+		Session(long token, ServerMessageSocket socket)
+		{
+			this.token = token;
+			this.socket = socket;
+		}
+
+		void cancelExpiry()
+		{
+			if (expiry != null) {
+				expiry.cancel();
+				expiry = null;
+			}
+		}
+	}
+}
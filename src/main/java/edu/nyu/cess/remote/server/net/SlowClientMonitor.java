@@ -0,0 +1,223 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.server.client.SlowClientObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the send latency of every client, and acts on the verdicts of the connections' {@link SendDeadline}s: a
+ * quarantined client is reported to the observer as degraded, and logged with its send latency, until it is
+ * released. The statistics are kept per client ip, across the client's connections.
+ */
+public class SlowClientMonitor
+{
+	private final static Logger log = LoggerFactory.getLogger(SlowClientMonitor.class);
+
+	private static final int SAMPLE_SIZE = 256;
+
+	private final SendSettings sendSettings;
+	private final Map<String, ClientSendStats> clientStats = new ConcurrentHashMap<>();
+	private final AtomicLong quarantineCount = new AtomicLong();
+	private final AtomicLong quarantineDisconnectCount = new AtomicLong();
+
+	private volatile SlowClientObserver slowClientObserver;
+
+	/**
+	 * @param sendSettings the send deadline and quarantine settings
+	 */
+	public SlowClientMonitor(SendSettings sendSettings)
+	{
+		this.sendSettings = sendSettings;
+	}
+
+	/**
+	 * Sets the observer notified when a client is quarantined or released.
+	 * @param slowClientObserver the observer
+	 */
+	public void setObserver(SlowClientObserver slowClientObserver)
+	{
+		this.slowClientObserver = slowClientObserver;
+	}
+
+	/**
+	 * Returns the deadline of a new connection of the client. A client that was quarantined on its previous
+	 * connection starts over on the new one.
+	 * @param clientIp the client ip address
+	 * @return the connection's send deadline
+	 */
+	SendDeadline newSendDeadline(String clientIp)
+	{
+		ClientSendStats stats = getStats(clientIp);
+		if (stats.quarantined) {
+			stats.quarantined = false;
+			notifyObserver(clientIp, false);
+		}
+		return new SendDeadline(sendSettings);
+	}
+
+	/**
+	 * Records a completed write of the client's connection.
+	 * @param clientIp the client ip address
+	 * @param sendDeadline the connection's send deadline
+	 * @param writeStartNanos the time the write started
+	 * @return the verdict of the send deadline
+	 */
+	SendDeadline.Verdict notifyWritten(String clientIp, SendDeadline sendDeadline, long writeStartNanos)
+	{
+		long now = System.nanoTime();
+		getStats(clientIp).latencies.add(now - writeStartNanos);
+		return handle(clientIp, sendDeadline.notifyWritten(writeStartNanos, now));
+	}
+
+	/**
+	 * Checks the write in progress on the client's connection.
+	 * @param clientIp the client ip address
+	 * @param sendDeadline the connection's send deadline
+	 * @param writeStartNanos the time the write in progress started, or -1 if none is in progress
+	 * @return the verdict of the send deadline
+	 */
+	SendDeadline.Verdict notifyPending(String clientIp, SendDeadline sendDeadline, long writeStartNanos)
+	{
+		return handle(clientIp, sendDeadline.notifyPending(writeStartNanos, System.nanoTime()));
+	}
+
+	/**
+	 * Returns a percentile of the time the client's connection took to accept a write, over its most recent writes.
+	 * @param clientIp the client ip address
+	 * @param percentile the percentile, between 0 and 100
+	 * @param unit the unit of the returned latency
+	 * @return the latency, or -1 if nothing has been written to the client
+	 */
+	public long getSendLatency(String clientIp, double percentile, TimeUnit unit)
+	{
+		ClientSendStats stats = clientStats.get(clientIp);
+		return stats == null ? -1 : stats.latencies.getPercentile(percentile, unit);
+	}
+
+	/**
+	 * Returns the number of send deadlines the client has missed.
+	 * @param clientIp the client ip address
+	 * @return the missed deadline count
+	 */
+	public long getMissedDeadlineCount(String clientIp)
+	{
+		ClientSendStats stats = clientStats.get(clientIp);
+		return stats == null ? 0 : stats.missedDeadlines.get();
+	}
+
+	public boolean isQuarantined(String clientIp)
+	{
+		ClientSendStats stats = clientStats.get(clientIp);
+		return stats != null && stats.quarantined;
+	}
+
+	/**
+	 * Returns the clients that have missed a send deadline, those that missed the most first.
+	 * @param limit the maximum number of clients returned
+	 * @return the client ip addresses
+	 */
+	public List<String> getSlowestClients(int limit)
+	{
+		List<String> slowClients = new ArrayList<>();
+		for (Map.Entry<String, ClientSendStats> entry : clientStats.entrySet()) {
+			if (entry.getValue().missedDeadlines.get() > 0) {
+				slowClients.add(entry.getKey());
+			}
+		}
+		Collections.sort(slowClients, new Comparator<String>() {
+			@Override public int compare(String first, String second)
+			{
+				return Long.compare(getMissedDeadlineCount(second), getMissedDeadlineCount(first));
+			}
+		});
+		return slowClients.size() > limit ? slowClients.subList(0, limit) : slowClients;
+	}
+
+	/**
+	 * Returns the number of times a client was quarantined.
+	 * @return the quarantine count
+	 */
+	public long getQuarantineCount()
+	{
+		return quarantineCount.get();
+	}
+
+	/**
+	 * Returns the number of clients disconnected for staying quarantined too long.
+	 * @return the disconnect count
+	 */
+	public long getQuarantineDisconnectCount()
+	{
+		return quarantineDisconnectCount.get();
+	}
+
+	private SendDeadline.Verdict handle(String clientIp, SendDeadline.Verdict verdict)
+	{
+		ClientSendStats stats;
+		switch (verdict) {
+			case MISSED:
+				getStats(clientIp).missedDeadlines.incrementAndGet();
+				break;
+			case QUARANTINED:
+				stats = getStats(clientIp);
+				stats.missedDeadlines.incrementAndGet();
+				stats.quarantined = true;
+				quarantineCount.incrementAndGet();
+				log.warn("Client {} quarantined after missing {} send deadlines of {} ms, send latency p50={}ms p99={}ms.",
+						clientIp, sendSettings.getMissesBeforeQuarantine(), sendSettings.getDeadlineMillis(),
+						stats.latencies.getPercentile(50, TimeUnit.MILLISECONDS),
+						stats.latencies.getPercentile(99, TimeUnit.MILLISECONDS));
+				notifyObserver(clientIp, true);
+				break;
+			case RELEASED:
+				getStats(clientIp).quarantined = false;
+				log.info("Client {} released from quarantine.", clientIp);
+				notifyObserver(clientIp, false);
+				break;
+			case DISCONNECT:
+				quarantineDisconnectCount.incrementAndGet();
+				log.warn("Client {} still quarantined after {} ms, disconnecting it.", clientIp, sendSettings.getQuarantineMillis());
+				break;
+			default:
+				break;
+		}
+		return verdict;
+	}
+
+	private void notifyObserver(String clientIp, boolean degraded)
+	{
+		SlowClientObserver observer = slowClientObserver;
+		if (observer != null) {
+			observer.notifyClientDegraded(clientIp, degraded);
+		}
+	}
+
+	private ClientSendStats getStats(String clientIp)
+	{
+		ClientSendStats stats = clientStats.get(clientIp);
+		if (stats == null) {
+			ClientSendStats newStats = new ClientSendStats();
+			stats = clientStats.putIfAbsent(clientIp, newStats);
+			if (stats == null) {
+				stats = newStats;
+			}
+		}
+		return stats;
+	}
+
+	private static class ClientSendStats
+	{
+		private final LatencySamples latencies = new LatencySamples(SAMPLE_SIZE);
+		private final AtomicLong missedDeadlines = new AtomicLong();
+		private volatile boolean quarantined;
+	}
+}
@@ -0,0 +1,34 @@
+package edu.nyu.cess.remote.server.net;
+
+/**
+ * Runs every task on a platform thread of its own, named after the task. The thread count grows with the number of
+ * connected clients.
+ */
+public class ThreadPerClientExecutionModel implements ExecutionModel
+{
+	private final ExecutionStats stats = new ExecutionStats();
+
+	/** {@link ExecutionModel} */
+	@Override public void execute(String taskName, Runnable task)
+	{
+		new Thread(stats.track(task), taskName).start();
+	}
+
+	/** {@link ExecutionModel} */
+	@Override public int getThreadCount()
+	{
+		return stats.getRunningTaskCount() + (int) stats.getWaitingTaskCount();
+	}
+
+	/** {@link ExecutionModel} */
+	@Override public ExecutionStats getStats()
+	{
+		return stats;
+	}
+
+	/** {@link ExecutionModel} */
+	@Override public ExecutionModelType getType()
+	{
+		return ExecutionModelType.THREAD_PER_CLIENT;
+	}
+}
@@ -0,0 +1,65 @@
+package edu.nyu.cess.remote.server.net;
+
+/**
+ * A token bucket refilled continuously at a fixed rate, up to its burst size. Not thread-safe.
+ */
+class TokenBucket
+{
+	private final double tokensPerNano;
+	private final double burst;
+
+	private double tokens;
+	private long lastRefillNanos;
+
+	/**
+	 * Creates a full bucket.
+	 * @param rateLimit the refill rate and burst size
+	 * @param nowNanos the current {@link System#nanoTime()}
+	 */
+	TokenBucket(MessageRateLimit rateLimit, long nowNanos)
+	{
+		this.tokensPerNano = rateLimit.getMessagesPerSecond() / 1e9;
+		this.burst = rateLimit.getBurst();
+		this.tokens = burst;
+		this.lastRefillNanos = nowNanos;
+	}
+
+	/**
+	 * Takes a token from the bucket, if one is available.
+	 * @param nowNanos the current {@link System#nanoTime()}
+	 * @return true if a token was taken, false if the bucket is empty
+	 */
+	boolean tryAcquire(long nowNanos)
+	{
+		tokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+		lastRefillNanos = nowNanos;
+
+		if (tokens < 1) {
+			return false;
+		}
+		tokens -= 1;
+		return true;
+	}
+
+	/**
+	 * Returns how long until a token becomes available.
+	 * @param nowNanos the current {@link System#nanoTime()}
+	 * @return the wait in nanoseconds, 0 if a token is available now
+	 */
+	long getNanosUntilAvailable(long nowNanos)
+	{
+		double currentTokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+		return currentTokens >= 1 ? 0 : (long) Math.ceil((1 - currentTokens) / tokensPerNano);
+	}
+
+	/**
+	 * Returns how long until the bucket is full, from when it behaves as a new bucket.
+	 * @param nowNanos the current {@link System#nanoTime()}
+	 * @return the wait in nanoseconds, 0 if the bucket is full now
+	 */
+	long getNanosUntilFull(long nowNanos)
+	{
+		double currentTokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+		return (long) Math.ceil((burst - currentTokens) / tokensPerNano);
+	}
+}
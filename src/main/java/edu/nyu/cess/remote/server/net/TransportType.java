@@ -0,0 +1,12 @@
+package edu.nyu.cess.remote.server.net;
+
+/**
+ * The transports available for serving client connections.
+ *
+ * BLOCKING: every client socket is served by its own reader and keep-alive threads.
+ * SELECTOR: every client channel is multiplexed on a small, fixed number of selector threads.
+ */
+public enum TransportType
+{
+	BLOCKING, SELECTOR
+}
@@ -0,0 +1,85 @@
+package edu.nyu.cess.remote.server.net;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Runs every task on a virtual thread of its own, named after the task. Virtual threads are cheap enough to keep
+ * one per client, and a blocked read releases its carrier thread.
+ *
+ * The server is built for Java 8, so the virtual thread builder is looked up when the model is created, and the
+ * model can only be created when running on Java 21 or later. Build with the java21 profile to require that runtime.
+ */
+public class VirtualThreadExecutionModel implements ExecutionModel
+{
+	private final Object threadBuilder;
+	private final Method nameMethod;
+	private final Method unstartedMethod;
+	private final ExecutionStats stats = new ExecutionStats();
+
+	/**
+	 * @throws UnsupportedOperationException thrown if the runtime does not support virtual threads
+	 */
+	public VirtualThreadExecutionModel()
+	{
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			this.threadBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+			this.nameMethod = builderClass.getMethod("name", String.class);
+			this.unstartedMethod = builderClass.getMethod("unstarted", Runnable.class);
+		}
+		catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later, running on Java " +
+					System.getProperty("java.version") + ".", e);
+		}
+	}
+
+	/**
+	 * Returns whether the runtime supports virtual threads.
+	 * @return true if a virtual thread execution model can be created
+	 */
+	public static boolean isSupported()
+	{
+		try {
+			new VirtualThreadExecutionModel();
+			return true;
+		}
+		catch (UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/** {@link ExecutionModel} */
+	@Override public void execute(String taskName, Runnable task)
+	{
+		Thread thread;
+		try {
+			// The builder is not thread safe, name() sets the name of the threads it creates next
+			synchronized (threadBuilder) {
+				thread = (Thread) unstartedMethod.invoke(nameMethod.invoke(threadBuilder, taskName), stats.track(task));
+			}
+		}
+		catch (IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Failed to create a virtual thread for " + taskName + ".", e);
+		}
+		thread.start();
+	}
+
+	/** {@link ExecutionModel} */
+	@Override public int getThreadCount()
+	{
+		return stats.getRunningTaskCount() + (int) stats.getWaitingTaskCount();
+	}
+
+	/** {@link ExecutionModel} */
+	@Override public ExecutionStats getStats()
+	{
+		return stats;
+	}
+
+	/** {@link ExecutionModel} */
+	@Override public ExecutionModelType getType()
+	{
+		return ExecutionModelType.VIRTUAL;
+	}
+}
@@ -0,0 +1,104 @@
+package edu.nyu.cess.remote.server.net;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads writing to the blocking client connections.
+ *
+ * The writes of most clients share a fixed number of writers. The writes of quarantined clients are moved to
+ * writers of their own, so that a client that does not read can only hold up its own messages. A shared writer
+ * that is already blocked on a client when it is quarantined can not be moved, the shared pool is given an extra
+ * writer until that write returns.
+ */
+public class WriterPool
+{
+	private final int writerThreads;
+	private final ThreadPoolExecutor sharedWriters;
+	private final ExecutorService quarantinedWriters;
+
+	// Guarded by this
+	private int compensatingWriters;
+
+	/**
+	 * @param writerThreads the number of shared writers
+	 */
+	public WriterPool(int writerThreads)
+	{
+		this.writerThreads = writerThreads;
+		this.sharedWriters = new ThreadPoolExecutor(writerThreads, writerThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new WriterThreadFactory("socket-writer-"));
+		this.quarantinedWriters = Executors.newCachedThreadPool(new WriterThreadFactory("quarantined-writer-"));
+	}
+
+	/**
+	 * Runs the write on a shared writer.
+	 * @param write the write
+	 */
+	void execute(Runnable write)
+	{
+		sharedWriters.execute(write);
+	}
+
+	/**
+	 * Runs the write of a quarantined client on a writer of its own.
+	 * @param write the write
+	 */
+	void executeQuarantined(Runnable write)
+	{
+		quarantinedWriters.execute(write);
+	}
+
+	/**
+	 * Adds a shared writer, to stand in for a shared writer blocked on a quarantined client.
+	 */
+	synchronized void addWriter()
+	{
+		++compensatingWriters;
+		// The maximum size can not be below the core size
+		sharedWriters.setMaximumPoolSize(writerThreads + compensatingWriters);
+		sharedWriters.setCorePoolSize(writerThreads + compensatingWriters);
+	}
+
+	/**
+	 * Removes a shared writer added by {@link #addWriter()}, once the blocked writer is available again.
+	 */
+	synchronized void removeWriter()
+	{
+		--compensatingWriters;
+		sharedWriters.setCorePoolSize(writerThreads + compensatingWriters);
+		sharedWriters.setMaximumPoolSize(writerThreads + compensatingWriters);
+	}
+
+	/**
+	 * Returns the number of shared writers currently added to stand in for writers blocked on a quarantined client.
+	 * @return the compensating writer count
+	 */
+	public synchronized int getCompensatingWriterCount()
+	{
+		return compensatingWriters;
+	}
+
+	private static class WriterThreadFactory implements ThreadFactory
+	{
+		private final String namePrefix;
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		WriterThreadFactory(String namePrefix)
+		{
+			this.namePrefix = namePrefix;
+		}
+
+		@Override public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, namePrefix + threadCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package edu.nyu.cess.remote.client.app;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OfflineStateQueueTest
+{
+	@Test
+	public void When_AppChangesAgain_Should_KeepOnlyItsNewestStateInTheOrderOfTheLastChange()
+	{
+		OfflineStateQueue queue = new OfflineStateQueue(8);
+		queue.add(new AppExe(new AppInfo("a", "a", "a"), AppState.STARTED));
+		queue.add(new AppExe(new AppInfo("b", "b", "b"), AppState.STARTED));
+		queue.add(new AppExe(new AppInfo("a", "a", "a"), AppState.STOPPED));
+
+		List<AppExe> states = queue.drain();
+		assertEquals(2, states.size());
+		assertEquals("b", states.get(0).getAppInfo().getName());
+		assertEquals("a", states.get(1).getAppInfo().getName());
+		assertEquals(AppState.STOPPED, states.get(1).getState());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void When_QueueIsFull_Should_DropTheAppThatChangedLongestAgo()
+	{
+		OfflineStateQueue queue = new OfflineStateQueue(2);
+		queue.add(new AppExe(new AppInfo("a", "a", "a"), AppState.STARTED));
+		queue.add(new AppExe(new AppInfo("b", "b", "b"), AppState.STARTED));
+		queue.add(new AppExe(new AppInfo("c", "c", "c"), AppState.STARTED));
+
+		List<AppExe> states = queue.drain();
+		assertEquals(2, states.size());
+		assertEquals("b", states.get(0).getAppInfo().getName());
+		assertEquals("c", states.get(1).getAppInfo().getName());
+	}
+}
@@ -0,0 +1,47 @@
+package edu.nyu.cess.remote.client.message;
+
+import edu.nyu.cess.remote.common.message.ClockProbe;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.common.net.PreciseClock;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClockSyncTest
+{
+	private static final long SERVER_AHEAD_MICROS = 10000000;
+
+	private final NetworkInfo networkInfo = new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1");
+
+	@Test
+	public void When_ProbesAnswered_Should_UseTheOffsetOfTheShortestRoundTrip()
+	{
+		ClockSync clockSync = new ClockSync(null, networkInfo);
+		assertFalse(clockSync.isSynchronized());
+
+		// Delayed 200 ms on the way to the server, its offset is off by 100 ms
+		long now = PreciseClock.currentTimeMicros();
+		clockSync.dispatchMessage(answer(now - 300000, now - 100000 + SERVER_AHEAD_MICROS));
+		// Delayed 1 ms each way
+		now = PreciseClock.currentTimeMicros();
+		clockSync.dispatchMessage(answer(now - 2000, now - 1000 + SERVER_AHEAD_MICROS));
+		// Delayed 400 ms on the way back
+		now = PreciseClock.currentTimeMicros();
+		clockSync.dispatchMessage(answer(now - 401000, now - 400000 + SERVER_AHEAD_MICROS));
+
+		assertTrue(clockSync.isSynchronized());
+		assertEquals(SERVER_AHEAD_MICROS, clockSync.getOffsetMicros(), 1000);
+		assertEquals(2000, clockSync.getRoundTripMicros(), 1000);
+
+		long nanoTime = System.nanoTime();
+		assertEquals(nanoTime, clockSync.toNanoTime(clockSync.toServerMicros(nanoTime)), 1000);
+	}
+
+	private Message answer(long originateMicros, long serverReceiveMicros)
+	{
+		return new Message(new ClockProbe(originateMicros, serverReceiveMicros, serverReceiveMicros), networkInfo);
+	}
+}
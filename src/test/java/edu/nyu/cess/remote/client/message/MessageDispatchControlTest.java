@@ -0,0 +1,130 @@
+package edu.nyu.cess.remote.client.message;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageObservable;
+import edu.nyu.cess.remote.common.message.MessageSender;
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.message.dispatch.DispatchControl;
+import edu.nyu.cess.remote.common.message.dispatch.MessageDispatcher;
+import edu.nyu.cess.remote.common.net.ConnectionState;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MessageDispatchControlTest
+{
+	private final NetworkInfo networkInfo = new NetworkInfo("client", "127.0.0.1", "127.0.0.1");
+
+	@Test
+	public void When_LaunchIsInProgress_Should_HandleTheStopRequest() throws Exception
+	{
+		final CountDownLatch launchStarted = new CountDownLatch(1);
+		final CountDownLatch stopHandled = new CountDownLatch(1);
+		ExecutorService handlerExecutor = Executors.newFixedThreadPool(2);
+		MessageDispatchControl dispatchControl = new MessageDispatchControl(new StubMessageObservable(),
+				new StubMessageSender(), handlerExecutor);
+
+		dispatchControl.setMessageDispatcher(MessageType.APP_EXE_REQUEST, new StubMessageDispatcher() {
+			@Override public void dispatchMessage(Message message)
+			{
+				if (message.getAppExe().getState() == AppState.STOPPED) {
+					stopHandled.countDown();
+					return;
+				}
+				launchStarted.countDown();
+				try {
+					// A slow launch, only finishes once the stop has been handled
+					stopHandled.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		AppInfo appInfo = new AppInfo("a", "a", "a");
+		dispatchControl.dispatchInboundMessage(networkInfo, new Message(MessageType.APP_EXE_REQUEST,
+				new AppExe(appInfo, AppState.STARTED), networkInfo));
+		assertTrue(launchStarted.await(5, TimeUnit.SECONDS));
+		dispatchControl.dispatchInboundMessage(networkInfo, new Message(MessageType.APP_EXE_REQUEST,
+				new AppExe(appInfo, AppState.STOPPED), networkInfo));
+
+		assertTrue(stopHandled.await(1, TimeUnit.SECONDS));
+		handlerExecutor.shutdown();
+	}
+
+	@Test
+	public void When_UpdatesAreReceived_Should_HandleThemInOrder() throws Exception
+	{
+		final int updateCount = 50;
+		final CountDownLatch handled = new CountDownLatch(updateCount);
+		final StringBuilder order = new StringBuilder();
+		ExecutorService handlerExecutor = Executors.newFixedThreadPool(3);
+		MessageDispatchControl dispatchControl = new MessageDispatchControl(new StubMessageObservable(),
+				new StubMessageSender(), handlerExecutor);
+
+		dispatchControl.setMessageDispatcher(MessageType.APP_EXE_UPDATE, new StubMessageDispatcher() {
+			@Override public void dispatchMessage(Message message)
+			{
+				synchronized (order) {
+					order.append(message.getAppExe().getAppInfo().getName()).append(',');
+				}
+				handled.countDown();
+			}
+		});
+
+		StringBuilder expectedOrder = new StringBuilder();
+		for (int i = 0; i < updateCount; ++i) {
+			dispatchControl.dispatchInboundMessage(networkInfo, new Message(MessageType.APP_EXE_UPDATE,
+					new AppExe(new AppInfo("app-" + i, "a", "a"), AppState.STARTED), networkInfo));
+			expectedOrder.append("app-").append(i).append(',');
+		}
+
+		assertTrue(handled.await(5, TimeUnit.SECONDS));
+		synchronized (order) {
+			assertEquals(expectedOrder.toString(), order.toString());
+		}
+		handlerExecutor.shutdown();
+	}
+
+	private static class StubMessageObservable implements MessageObservable
+	{
+		@Override public void addMessageSourceObserver(MessageSocketObserver messageSocketObserver)
+		{
+		}
+	}
+
+	private static class StubMessageSender implements MessageSender
+	{
+		@Override public void sendMessage(Message message)
+		{
+		}
+
+		@Override public void sendMessages(List<Message> messages)
+		{
+		}
+	}
+
+	private static abstract class StubMessageDispatcher implements MessageDispatcher
+	{
+		@Override public void setDispatchControl(DispatchControl dispatchControl)
+		{
+		}
+
+		@Override public void notifyDispatcherControlState(ConnectionState state)
+		{
+		}
+	}
+}
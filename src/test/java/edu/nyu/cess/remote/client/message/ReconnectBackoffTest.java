@@ -0,0 +1,53 @@
+package edu.nyu.cess.remote.client.message;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReconnectBackoffTest
+{
+	@Test
+	public void When_AttemptsFail_Should_DoubleTheCeilingUpToTheMaximum()
+	{
+		ReconnectBackoff reconnectBackoff = new ReconnectBackoff(500, 4000, new MaxRandom());
+
+		assertEquals(500, reconnectBackoff.nextDelayMillis());
+		assertEquals(1000, reconnectBackoff.nextDelayMillis());
+		assertEquals(2000, reconnectBackoff.nextDelayMillis());
+		assertEquals(4000, reconnectBackoff.nextDelayMillis());
+		assertEquals(4000, reconnectBackoff.nextDelayMillis());
+
+		reconnectBackoff.reset();
+		assertEquals(500, reconnectBackoff.nextDelayMillis());
+	}
+
+	@Test
+	public void When_ManyClientsBackOff_Should_SpreadTheirDelays()
+	{
+		Random random = new Random(42);
+		long minDelay = Long.MAX_VALUE;
+		long maxDelay = 0;
+		for (int client = 0; client < 120; ++client) {
+			long delay = new ReconnectBackoff(500, 30000, random).nextDelayMillis();
+			assertTrue(delay >= 0 && delay <= 500);
+			minDelay = Math.min(minDelay, delay);
+			maxDelay = Math.max(maxDelay, delay);
+		}
+
+		assertTrue(maxDelay - minDelay > 400);
+	}
+
+	/**
+	 * Always draws the top of the range, exposing the delay ceiling.
+	 */
+	private static class MaxRandom extends Random
+	{
+		@Override public double nextDouble()
+		{
+			return 1.0;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package edu.nyu.cess.remote.client.message;
+
+import edu.nyu.cess.remote.common.net.DatagramSettings;
+import edu.nyu.cess.remote.common.net.ServerAnnouncement;
+import edu.nyu.cess.remote.server.net.HashedWheelTimer;
+import edu.nyu.cess.remote.server.net.ServerAnnouncer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ServerDiscoveryTest
+{
+	private HashedWheelTimer timer;
+
+	@Before
+	public void setUp()
+	{
+		timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+	}
+
+	@After
+	public void tearDown()
+	{
+		timer.stop();
+	}
+
+	@Test
+	public void When_ServerIsAnnouncedOverLoopback_Should_DiscoverTheServerEndpoint() throws Exception
+	{
+		DatagramSettings settings = new DatagramSettings("239.255.26.1", getFreePort(), getLoopbackInterfaceName());
+
+		ServerDiscovery discovery = new ServerDiscovery(settings);
+		discovery.start();
+		ServerAnnouncer announcer = new ServerAnnouncer(settings, null, 2600, timer, 50);
+		announcer.start();
+		try {
+			ServerAnnouncement announcement = discovery.awaitAnnouncement(null, 2000);
+			assertNotNull(announcement);
+			assertEquals("127.0.0.1", announcement.getServerIp());
+			assertEquals(2600, announcement.getPort());
+		}
+		finally {
+			announcer.stop();
+			discovery.stop();
+		}
+	}
+
+	@Test
+	public void When_ServerRestarts_Should_DiscoverTheNewServerEndpoint() throws Exception
+	{
+		DatagramSettings settings = new DatagramSettings("239.255.26.1", getFreePort(), getLoopbackInterfaceName());
+
+		ServerDiscovery discovery = new ServerDiscovery(settings);
+		discovery.start();
+		ServerAnnouncer announcer = new ServerAnnouncer(settings, null, 2600, timer, 50);
+		announcer.start();
+		try {
+			ServerAnnouncement first = discovery.awaitAnnouncement(null, 2000);
+			assertNotNull(first);
+			announcer.stop();
+
+			announcer = new ServerAnnouncer(settings, "127.0.0.2", 2700, timer, 50);
+			announcer.start();
+			ServerAnnouncement second = discovery.awaitAnnouncement(first, 2000);
+			assertFalse(first.isSameServer(second));
+			assertEquals("127.0.0.2", second.getServerIp());
+			assertEquals(2700, second.getPort());
+		}
+		finally {
+			announcer.stop();
+			discovery.stop();
+		}
+	}
+
+	@Test
+	public void When_NoServerIsAnnounced_Should_TimeOut() throws Exception
+	{
+		DatagramSettings settings = new DatagramSettings("239.255.26.1", getFreePort(), getLoopbackInterfaceName());
+
+		ServerDiscovery discovery = new ServerDiscovery(settings);
+		discovery.start();
+		try {
+			assertNull(discovery.awaitAnnouncement(null, 100));
+		}
+		finally {
+			discovery.stop();
+		}
+	}
+
+	private String getLoopbackInterfaceName() throws IOException
+	{
+		return NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress()).getName();
+	}
+
+	private int getFreePort() throws IOException
+	{
+		try (DatagramSocket socket = new DatagramSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
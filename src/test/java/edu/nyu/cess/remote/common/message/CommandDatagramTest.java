@@ -0,0 +1,48 @@
+package edu.nyu.cess.remote.common.message;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CommandDatagramTest
+{
+	@Test
+	public void When_CommandEncoded_Should_DecodeTheMessageAndTargets() throws IOException
+	{
+		AppExe appExe = new AppExe(new AppInfo("trust", "trust.exe", ""), AppState.STARTED);
+		byte[] datagram = new CommandDatagram(new Message(MessageType.APP_EXE_REQUEST, appExe, null, 42),
+				Arrays.asList("10.0.0.1", "10.0.0.2")).encode();
+
+		// The datagram is received at an offset of a larger buffer
+		byte[] buffer = new byte[datagram.length + 10];
+		System.arraycopy(datagram, 0, buffer, 5, datagram.length);
+		CommandDatagram command = CommandDatagram.decode(new DatagramPacket(buffer, 5, datagram.length));
+
+		assertEquals(MessageType.APP_EXE_REQUEST, command.getMessage().getMessageType());
+		assertEquals(42, command.getMessage().getSequenceNumber());
+		assertEquals("trust", command.getMessage().getAppExe().getAppInfo().getName());
+		assertTrue(command.isTarget("10.0.0.1"));
+		assertTrue(command.isTarget("10.0.0.2"));
+		assertFalse(command.isTarget("10.0.0.3"));
+	}
+
+	@Test
+	public void When_DatagramIsNotACommand_Should_ReturnNull() throws IOException
+	{
+		byte[] datagram = new CommandDatagram(new Message(MessageType.APP_EXE_REQUEST, null, null, 1),
+				Arrays.asList("10.0.0.1")).encode();
+
+		assertNull(CommandDatagram.decode(new DatagramPacket(new byte[] {'L', 'M', 'S', 'D', 1}, 5)));
+		assertNull(CommandDatagram.decode(new DatagramPacket(datagram, datagram.length - 1)));
+	}
+}
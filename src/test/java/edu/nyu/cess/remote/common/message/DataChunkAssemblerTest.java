@@ -0,0 +1,57 @@
+package edu.nyu.cess.remote.common.message;
+
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class DataChunkAssemblerTest
+{
+	private final NetworkInfo networkInfo = new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1");
+
+	@Test
+	public void When_LanesAreInterleaved_Should_ReassembleEachPayload() throws IOException
+	{
+		byte[] firstPayload = createPayload(25);
+		byte[] secondPayload = createPayload(12);
+		List<Message> firstChunks = MessageLanes.split((byte) 1, 7, firstPayload, 10, networkInfo);
+		List<Message> secondChunks = MessageLanes.split((byte) 2, 8, secondPayload, 10, networkInfo);
+		DataChunkAssembler assembler = new DataChunkAssembler(1024);
+
+		assertNull(assembler.add(firstChunks.get(0).getDataChunk()));
+		assertNull(assembler.add(secondChunks.get(0).getDataChunk()));
+		assertNull(assembler.add(firstChunks.get(1).getDataChunk()));
+		assertArrayEquals(secondPayload, assembler.add(secondChunks.get(1).getDataChunk()));
+		assertArrayEquals(firstPayload, assembler.add(firstChunks.get(2).getDataChunk()));
+	}
+
+	@Test
+	public void When_PayloadIsTooLarge_Should_DropIt() throws IOException
+	{
+		List<Message> chunks = MessageLanes.split((byte) 1, 7, createPayload(30), 10, networkInfo);
+		DataChunkAssembler assembler = new DataChunkAssembler(15);
+
+		assertNull(assembler.add(chunks.get(0).getDataChunk()));
+		try {
+			assembler.add(chunks.get(1).getDataChunk());
+			fail("The payload exceeds the maximum size.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	private static byte[] createPayload(int length)
+	{
+		byte[] payload = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			payload[i] = (byte) i;
+		}
+		return payload;
+	}
+}
@@ -0,0 +1,38 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveCompressionTest
+{
+	@Test
+	public void When_CompressionDoesNotPayOff_Should_SkipTwiceAsManyPayloadsEachTime()
+	{
+		// 100 Mbit/s, a saved byte is worth 80 ns
+		AdaptiveCompression adaptiveCompression = new AdaptiveCompression(new CompressionSettings(100, 0.9, 100));
+
+		assertFalse(adaptiveCompression.shouldCompress(99));
+		assertTrue(adaptiveCompression.shouldCompress(1000));
+		assertFalse(adaptiveCompression.notifyCompressed(1000, 950, 0));
+
+		assertFalse(adaptiveCompression.shouldCompress(1000));
+		assertTrue(adaptiveCompression.shouldCompress(1000));
+		assertFalse(adaptiveCompression.notifyCompressed(1000, -1, 0));
+
+		assertFalse(adaptiveCompression.shouldCompress(1000));
+		assertFalse(adaptiveCompression.shouldCompress(1000));
+		assertTrue(adaptiveCompression.shouldCompress(1000));
+		assertTrue(adaptiveCompression.notifyCompressed(1000, 500, 500 * 80));
+		assertTrue(adaptiveCompression.shouldCompress(1000));
+	}
+
+	@Test
+	public void When_CompressingCostsMoreThanTheWireTimeSaved_Should_NotPayOff()
+	{
+		AdaptiveCompression adaptiveCompression = new AdaptiveCompression(new CompressionSettings(100, 0.9, 100));
+
+		assertFalse(adaptiveCompression.notifyCompressed(1000, 500, 500 * 80 + 1));
+	}
+}
@@ -0,0 +1,214 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import edu.nyu.cess.remote.common.app.ErrorType;
+import edu.nyu.cess.remote.common.message.ClockProbe;
+import edu.nyu.cess.remote.common.message.DataChunk;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.message.StartTiming;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryMessageCodecTest
+{
+	@Test
+	public void When_MessageEncoded_Should_DecodeToAnEqualMessage() throws IOException
+	{
+		AppExe appExe = new AppExe(new AppInfo("Zürich 実験", "C:\\apps\\exp.exe", null), AppState.STOPPED,
+				ErrorType.FAILED_TO_START, "could not start");
+		Message message = new Message(MessageType.APP_EXE_UPDATE, appExe, new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1"));
+
+		Message decoded = roundTrip(new BinaryMessageCodec(), message);
+
+		assertEquals(MessageType.APP_EXE_UPDATE, decoded.getMessageType());
+		assertEquals("pc-1", decoded.getNetworkInfo().getClientName());
+		assertEquals("10.0.0.2", decoded.getNetworkInfo().getClientIp());
+		assertEquals("10.0.0.1", decoded.getNetworkInfo().getServerIp());
+		assertEquals("Zürich 実験", decoded.getAppExe().getAppInfo().getName());
+		assertEquals("C:\\apps\\exp.exe", decoded.getAppExe().getAppInfo().getPath());
+		assertNull(decoded.getAppExe().getAppInfo().getArgs());
+		assertEquals(AppState.STOPPED, decoded.getAppExe().getState());
+		assertEquals(ErrorType.FAILED_TO_START, decoded.getAppExe().getErrorType());
+		assertEquals("could not start", decoded.getAppExe().getErrorMessage());
+	}
+
+	@Test
+	public void When_MessageHasNoAppExe_Should_DecodeWithoutAppExe() throws IOException
+	{
+		Message message = new Message(MessageType.KEEP_ALIVE_PING, new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1"));
+
+		Message decoded = roundTrip(new BinaryMessageCodec(), message);
+
+		assertEquals(MessageType.KEEP_ALIVE_PING, decoded.getMessageType());
+		assertNull(decoded.getAppExe());
+	}
+
+	@Test
+	public void When_MessageHasClockPayloads_Should_DecodeTheTimes() throws IOException
+	{
+		NetworkInfo networkInfo = new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1");
+		BinaryMessageCodec codec = new BinaryMessageCodec();
+
+		ClockProbe probe = roundTrip(codec, new Message(new ClockProbe(-5, 1234567890123L, 1234567890456L), networkInfo))
+				.getClockProbe();
+		assertEquals(-5, probe.getOriginateMicros());
+		assertEquals(1234567890123L, probe.getReceiveMicros());
+		assertEquals(1234567890456L, probe.getTransmitMicros());
+
+		AppExe appExe = new AppExe(new AppInfo("exp", "C:\\apps\\exp.exe", ""), AppState.STARTED);
+		Message report = roundTrip(codec, new Message(MessageType.START_REPORT, appExe, networkInfo, 0,
+				new StartTiming(1000, 1250, 40)));
+		assertEquals(MessageType.START_REPORT, report.getMessageType());
+		assertEquals(1000, report.getStartTiming().getScheduledMicros());
+		assertEquals(1250, report.getStartTiming().getLaunchedMicros());
+		assertEquals(40, report.getStartTiming().getUncertaintyMicros());
+		assertEquals(250, report.getStartTiming().getSkewMicros());
+	}
+
+	@Test
+	public void When_MessageHasASequenceNumber_Should_DecodeTheSequenceNumber() throws IOException
+	{
+		Message message = new Message(MessageType.APP_EXE_ACK, null, new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1"), Long.MAX_VALUE - 1);
+
+		Message decoded = roundTrip(new BinaryMessageCodec(), message);
+
+		assertEquals(MessageType.APP_EXE_ACK, decoded.getMessageType());
+		assertEquals(Long.MAX_VALUE - 1, decoded.getSequenceNumber());
+		assertEquals(0, roundTrip(new BinaryMessageCodec(), new Message(MessageType.KEEP_ALIVE_PING, null)).getSequenceNumber());
+	}
+
+	@Test
+	public void When_MessageHasADataChunk_Should_DecodeTheChunk() throws IOException
+	{
+		byte[] data = new byte[70000];
+		Arrays.fill(data, (byte) 7);
+		Message message = new Message(new DataChunk((byte) 3, 42L, 300, true, data), new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1"));
+
+		Message decoded = roundTrip(new BinaryMessageCodec(), message);
+
+		assertEquals(MessageType.DATA_CHUNK, decoded.getMessageType());
+		DataChunk dataChunk = decoded.getDataChunk();
+		assertEquals(3, dataChunk.getLane());
+		assertEquals(42L, dataChunk.getTransferId());
+		assertEquals(300, dataChunk.getIndex());
+		assertTrue(dataChunk.isLast());
+		assertArrayEquals(data, dataChunk.getData());
+	}
+
+	@Test
+	public void When_LargeMessageCompresses_Should_SendItCompressed() throws IOException
+	{
+		StringBuilder errorMessage = new StringBuilder();
+		for (int i = 0; i < 200; ++i) {
+			errorMessage.append("java.io.IOException: Cannot run program \"C:\\apps\\exp.exe\"\n");
+		}
+		AppExe appExe = new AppExe(new AppInfo("Trust Game", "C:\\apps\\trust.exe", null), AppState.STOPPED,
+				ErrorType.FAILED_TO_START, errorMessage.toString());
+		Message message = new Message(MessageType.APP_EXE_UPDATE, appExe, new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1"));
+		CompressionStats compressionStats = new CompressionStats();
+		// A link slow enough for the compression to pay off on any machine running the test
+		BinaryMessageCodec codec = new BinaryMessageCodec(new CompressionSettings(1024, 0.9, 1), compressionStats);
+
+		int uncompressedLength = new BinaryMessageCodec().encode(message).remaining();
+		int compressedLength = codec.encode(message).remaining();
+		Message decoded = roundTrip(codec, message);
+
+		assertTrue(compressedLength < uncompressedLength / 4);
+		assertEquals(errorMessage.toString(), decoded.getAppExe().getErrorMessage());
+		assertEquals(2, compressionStats.getCompressedCount());
+		assertTrue(compressionStats.getSavedBytes() > uncompressedLength);
+	}
+
+	@Test
+	public void When_LargeMessageDoesNotCompress_Should_SendItUncompressed() throws IOException
+	{
+		byte[] data = new byte[4096];
+		new Random(1).nextBytes(data);
+		Message message = new Message(new DataChunk((byte) 1, 1L, 0, true, data), new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1"));
+		CompressionStats compressionStats = new CompressionStats();
+		BinaryMessageCodec codec = new BinaryMessageCodec(new CompressionSettings(1024, 0.9, 1), compressionStats);
+
+		Message decoded = roundTrip(codec, message);
+
+		assertArrayEquals(data, decoded.getDataChunk().getData());
+		assertEquals(0, compressionStats.getCompressedCount());
+		assertEquals(1, compressionStats.getUncompressedCount());
+	}
+
+	@Test
+	public void When_FrameIsIncomplete_Should_ReturnNullAndConsumeNothing() throws IOException
+	{
+		BinaryMessageCodec codec = new BinaryMessageCodec();
+		ByteBuffer frame = codec.encode(new Message(MessageType.KEEP_ALIVE_PING, new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1")));
+		byte[] bytes = Arrays.copyOfRange(frame.array(), frame.position(), frame.limit());
+
+		ByteBuffer partial = ByteBuffer.wrap(bytes, 0, bytes.length - 1);
+
+		assertNull(codec.decode(partial));
+		assertEquals(0, partial.position());
+	}
+
+	@Test
+	public void When_MessageEncoded_Should_BeSmallerThanJavaSerialization() throws IOException
+	{
+		AppExe appExe = new AppExe(new AppInfo("Trust Game", "C:\\apps\\trust.exe", "-n 4"), AppState.STARTED);
+		Message message = new Message(MessageType.APP_EXE_REQUEST, appExe, new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1"));
+
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		ObjectOutputStream objectOutputStream = new ObjectOutputStream(serialized);
+		objectOutputStream.writeObject(message);
+		objectOutputStream.flush();
+
+		int binarySize = new BinaryMessageCodec().encode(message).remaining();
+
+		assertTrue(binarySize * 5 < serialized.size());
+	}
+
+	@Test
+	public void When_LegacyStreamHeaderReceived_Should_SelectLegacyCodecWithoutConsuming() throws IOException
+	{
+		ConnectionHandshake handshake = new ConnectionHandshake(MessageCodecs.parseCodecIds(MessageCodecs.DEFAULT_CODECS));
+		ByteBuffer received = ByteBuffer.wrap(new byte[] {(byte) 0xAC, (byte) 0xED, 0x00, 0x05});
+
+		MessageCodec codec = handshake.readHello(received).getCodec();
+
+		assertEquals(MessageCodecs.LEGACY_STREAM, codec.getId());
+		assertEquals(0, received.position());
+	}
+
+	@Test
+	public void When_OfferReceived_Should_SelectFirstAcceptedCodec() throws IOException
+	{
+		ConnectionHandshake handshake = new ConnectionHandshake(Arrays.asList(MessageCodecs.SERIALIZED));
+		ByteArrayOutputStream hello = new ByteArrayOutputStream();
+		ConnectionHandshake.writeHello(hello, Arrays.asList(MessageCodecs.BINARY, MessageCodecs.SERIALIZED), 0);
+
+		MessageCodec codec = handshake.readHello(ByteBuffer.wrap(hello.toByteArray())).getCodec();
+
+		assertEquals(MessageCodecs.SERIALIZED, codec.getId());
+	}
+
+	private Message roundTrip(MessageCodec codec, Message message) throws IOException
+	{
+		ByteBuffer frame = codec.encode(message);
+		ByteBuffer received = ByteBuffer.wrap(Arrays.copyOfRange(frame.array(), frame.position(), frame.limit()));
+		Message decoded = codec.decode(received);
+		assertEquals(0, received.remaining());
+		return decoded;
+	}
+}
@@ -0,0 +1,64 @@
+package edu.nyu.cess.remote.common.message.codec;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionHandshakeTest
+{
+	private final ConnectionHandshake handshake = new ConnectionHandshake(MessageCodecs.parseCodecIds(MessageCodecs.DEFAULT_CODECS));
+
+	@Test
+	public void When_HelloReceived_Should_WelcomeTheClientWithItsSession() throws IOException
+	{
+		ByteArrayOutputStream helloBytes = new ByteArrayOutputStream();
+		ConnectionHandshake.writeHello(helloBytes, Arrays.asList(MessageCodecs.BINARY), 42);
+
+		Hello hello = handshake.readHello(ByteBuffer.wrap(helloBytes.toByteArray()));
+		assertEquals(ConnectionHandshake.PROTOCOL_VERSION, hello.getProtocolVersion());
+		assertEquals(MessageCodecs.BINARY, hello.getCodec().getId());
+		assertEquals(42, hello.getResumeToken());
+		assertTrue(hello.supports(ConnectionHandshake.SESSION_RESUME));
+
+		ByteBuffer welcomeBytes = ConnectionHandshake.createWelcome(hello, 42, true);
+		Welcome welcome = ConnectionHandshake.readWelcome(new ByteArrayInputStream(welcomeBytes.array(), 0, welcomeBytes.limit()));
+		assertEquals(MessageCodecs.BINARY, welcome.getCodec().getId());
+		assertEquals(42, welcome.getSessionToken());
+		assertTrue(welcome.isResumed());
+		assertTrue(welcome.supports(ConnectionHandshake.PING_ECHO | ConnectionHandshake.SEQUENCED_REQUESTS));
+	}
+
+	@Test
+	public void When_HelloIsIncomplete_Should_WaitForTheRestWithoutConsuming() throws IOException
+	{
+		ByteArrayOutputStream helloBytes = new ByteArrayOutputStream();
+		ConnectionHandshake.writeHello(helloBytes, Arrays.asList(MessageCodecs.BINARY), 0);
+		byte[] bytes = helloBytes.toByteArray();
+		ByteBuffer received = ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1));
+
+		assertNull(handshake.readHello(received));
+		assertEquals(0, received.position());
+	}
+
+	@Test
+	public void When_CodecOfferReceived_Should_ReplyWithTheSelectedCodecOnly() throws IOException
+	{
+		ByteBuffer offer = ByteBuffer.wrap(new byte[] {'L', 'M', 'C', 'N', 2, MessageCodecs.BINARY, MessageCodecs.SERIALIZED});
+
+		Hello hello = handshake.readHello(offer);
+		assertEquals(ConnectionHandshake.CODEC_OFFER_PROTOCOL_VERSION, hello.getProtocolVersion());
+		assertEquals(0, hello.getCapabilities());
+
+		ByteBuffer selection = ConnectionHandshake.createWelcome(hello, 0, false);
+		assertArrayEquals(new byte[] {'L', 'M', 'C', 'N', MessageCodecs.BINARY}, Arrays.copyOf(selection.array(), selection.limit()));
+	}
+}
@@ -0,0 +1,168 @@
+package edu.nyu.cess.remote.server.client;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ClientPoolEventBusTest
+{
+	@Test
+	public void When_SubscriberIsBlocked_Should_StillDeliverToTheOthers() throws Exception
+	{
+		ClientPoolEventBus eventBus = new ClientPoolEventBus();
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingObserver blocked = new RecordingObserver(release);
+		RecordingObserver other = new RecordingObserver(null);
+		eventBus.subscribe("blocked", blocked, 4, EventOverflowPolicy.DROP_NEWEST);
+		eventBus.subscribe("other", other, 4, EventOverflowPolicy.DROP_NEWEST);
+
+		for (int i = 1; i <= 3; i++) {
+			eventBus.notifyNewClientConnected("pc-" + i, "10.0.0." + i);
+		}
+
+		for (int i = 1; i <= 3; i++) {
+			assertEquals("10.0.0." + i, other.connectedClients.poll(1, TimeUnit.SECONDS));
+		}
+		assertEquals("10.0.0.1", blocked.connectedClients.poll(1, TimeUnit.SECONDS));
+		assertNull(blocked.connectedClients.poll(100, TimeUnit.MILLISECONDS));
+
+		release.countDown();
+		assertEquals("10.0.0.2", blocked.connectedClients.poll(1, TimeUnit.SECONDS));
+		assertEquals("10.0.0.3", blocked.connectedClients.poll(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void When_QueueIsFull_Should_DropAccordingToThePolicy() throws Exception
+	{
+		ClientPoolEventBus eventBus = new ClientPoolEventBus();
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingObserver dropNewest = new RecordingObserver(release);
+		RecordingObserver dropOldest = new RecordingObserver(release);
+		ClientPoolSubscription newestSubscription = eventBus.subscribe("drop-newest", dropNewest, 2, EventOverflowPolicy.DROP_NEWEST);
+		ClientPoolSubscription oldestSubscription = eventBus.subscribe("drop-oldest", dropOldest, 2, EventOverflowPolicy.DROP_OLDEST);
+
+		// The first event is taken by the blocked delivery threads, the others are queued
+		eventBus.notifyNewClientConnected("pc-1", "10.0.0.1");
+		assertEquals("10.0.0.1", dropNewest.connectedClients.poll(1, TimeUnit.SECONDS));
+		assertEquals("10.0.0.1", dropOldest.connectedClients.poll(1, TimeUnit.SECONDS));
+		for (int i = 2; i <= 5; i++) {
+			eventBus.notifyNewClientConnected("pc-" + i, "10.0.0." + i);
+		}
+		assertEquals(2, newestSubscription.getDroppedCount());
+		assertEquals(2, oldestSubscription.getDroppedCount());
+		assertEquals(2, newestSubscription.getQueuedCount());
+
+		release.countDown();
+		assertEquals("10.0.0.2", dropNewest.connectedClients.poll(1, TimeUnit.SECONDS));
+		assertEquals("10.0.0.3", dropNewest.connectedClients.poll(1, TimeUnit.SECONDS));
+		assertEquals("10.0.0.4", dropOldest.connectedClients.poll(1, TimeUnit.SECONDS));
+		assertEquals("10.0.0.5", dropOldest.connectedClients.poll(1, TimeUnit.SECONDS));
+		assertNull(dropNewest.connectedClients.poll(100, TimeUnit.MILLISECONDS));
+		assertNull(dropOldest.connectedClients.poll(100, TimeUnit.MILLISECONDS));
+
+		eventBus.unsubscribe(newestSubscription);
+		eventBus.notifyNewClientConnected("pc-6", "10.0.0.6");
+		assertEquals("10.0.0.6", dropOldest.connectedClients.poll(1, TimeUnit.SECONDS));
+		assertNull(dropNewest.connectedClients.poll(100, TimeUnit.MILLISECONDS));
+		assertTrue(newestSubscription.isCancelled());
+	}
+
+	@Test
+	public void When_QueueIsFull_Should_KeepEveryConnectionAndTheLatestAppUpdates() throws Exception
+	{
+		ClientPoolEventBus eventBus = new ClientPoolEventBus();
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingObserver view = new RecordingObserver(release);
+		ClientPoolSubscription subscription = eventBus.subscribe("view", view, 2, EventOverflowPolicy.COALESCE_UPDATES);
+
+		eventBus.notifyNewClientConnected("pc-1", "10.0.0.1");
+		assertEquals("10.0.0.1", view.connectedClients.poll(1, TimeUnit.SECONDS));
+
+		// The queue is full with a connection and an app update
+		eventBus.notifyNewClientConnected("pc-2", "10.0.0.2");
+		eventBus.notifyClientAppUpdate(appExe("a"), "10.0.0.2");
+		eventBus.notifyClientAppUpdate(appExe("b"), "10.0.0.2");
+		eventBus.notifyClientAppUpdate(appExe("c"), "10.0.0.3");
+		eventBus.notifyNewClientConnected("pc-4", "10.0.0.4");
+		eventBus.notifyClientDisconnected("10.0.0.2");
+		assertEquals(1, subscription.getDroppedCount());
+		assertEquals(5, subscription.getQueuedCount());
+
+		release.countDown();
+		assertEquals("10.0.0.2", view.connectedClients.poll(1, TimeUnit.SECONDS));
+		assertEquals("10.0.0.4", view.connectedClients.poll(1, TimeUnit.SECONDS));
+		assertEquals("10.0.0.2", view.disconnectedClients.poll(1, TimeUnit.SECONDS));
+		assertEquals("10.0.0.2 b", view.appUpdates.poll(1, TimeUnit.SECONDS));
+		assertEquals("10.0.0.3 c", view.appUpdates.poll(1, TimeUnit.SECONDS));
+		assertNull(view.appUpdates.poll(100, TimeUnit.MILLISECONDS));
+		// Every event was delivered in order, the disconnection last
+		assertEquals("connected 10.0.0.1, connected 10.0.0.2, update 10.0.0.2, update 10.0.0.3, connected 10.0.0.4, " +
+				"disconnected 10.0.0.2", view.getDeliveries());
+	}
+
+	private static AppExe appExe(String appName)
+	{
+		return new AppExe(new AppInfo(appName, appName + ".exe", ""), AppState.STARTED);
+	}
+
+	private static class RecordingObserver implements ClientPoolObserver
+	{
+		private final BlockingQueue<String> connectedClients = new LinkedBlockingQueue<>();
+		private final BlockingQueue<String> disconnectedClients = new LinkedBlockingQueue<>();
+		private final BlockingQueue<String> appUpdates = new LinkedBlockingQueue<>();
+		private final StringBuffer deliveries = new StringBuffer();
+		private final CountDownLatch release;
+
+		RecordingObserver(CountDownLatch release)
+		{
+			this.release = release;
+		}
+
+		String getDeliveries()
+		{
+			return deliveries.toString();
+		}
+
+		@Override public void notifyNewClientConnected(String hostName, String ipAddress)
+		{
+			record("connected " + ipAddress);
+			connectedClients.add(ipAddress);
+			if (release != null) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		@Override public void notifyClientDisconnected(String ipAddress)
+		{
+			record("disconnected " + ipAddress);
+			disconnectedClients.add(ipAddress);
+		}
+
+		@Override public void notifyClientAppUpdate(AppExe appExe, String ipAddress)
+		{
+			record("update " + ipAddress);
+			appUpdates.add(ipAddress + " " + appExe.getAppInfo().getName());
+		}
+
+		@Override public void notifyClientDegraded(String ipAddress, boolean degraded) {}
+
+		private void record(String delivery)
+		{
+			deliveries.append(deliveries.length() == 0 ? "" : ", ").append(delivery);
+		}
+	}
+}
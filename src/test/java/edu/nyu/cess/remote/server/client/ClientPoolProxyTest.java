@@ -0,0 +1,364 @@
+package edu.nyu.cess.remote.server.client;
+
+import edu.nyu.cess.remote.client.message.CommandListener;
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import edu.nyu.cess.remote.common.app.ErrorType;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.codec.Hello;
+import edu.nyu.cess.remote.common.message.codec.MessageCodecs;
+import edu.nyu.cess.remote.common.net.ConnectionState;
+import edu.nyu.cess.remote.common.net.DatagramSettings;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.server.lab.Computer;
+import edu.nyu.cess.remote.server.lab.LabLayout;
+import edu.nyu.cess.remote.server.lab.Row;
+import edu.nyu.cess.remote.server.net.CommandMulticaster;
+import edu.nyu.cess.remote.server.net.ServerMessageSocket;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ClientPoolProxyTest
+{
+	private ClientPoolProxy clientPoolProxy;
+	private final AppExe startRequest = new AppExe(new AppInfo("trust", "trust.exe", ""), AppState.STARTED);
+
+	@Before
+	public void setUp()
+	{
+		clientPoolProxy = new ClientPoolProxy();
+		clientPoolProxy.addObserver(new ClientPoolObserver() {
+			@Override public void notifyNewClientConnected(String hostName, String ipAddress) {}
+
+			@Override public void notifyClientDisconnected(String ipAddress) {}
+
+			@Override public void notifyClientAppUpdate(AppExe appExe, String ipAddress) {}
+
+			@Override public void notifyClientDegraded(String ipAddress, boolean degraded) {}
+		});
+	}
+
+	@Test
+	public void When_ClientsRespond_Should_CompleteTheirFutures() throws Exception
+	{
+		StubMessageSocket first = addClient("pc-1", "10.0.0.1");
+		StubMessageSocket second = addClient("pc-2", "10.0.0.2");
+
+		GroupExecution groupExecution = clientPoolProxy.executeAppGroup(startRequest,
+				Arrays.asList("10.0.0.1", "10.0.0.2"), 5, TimeUnit.SECONDS);
+
+		assertEquals(MessageType.APP_EXE_REQUEST, first.sentMessages.poll(1, TimeUnit.SECONDS).getMessageType());
+		assertEquals(MessageType.APP_EXE_REQUEST, second.sentMessages.poll(1, TimeUnit.SECONDS).getMessageType());
+
+		// An update that does not answer the request is not an acknowledgement
+		respond(first, new AppExe(new AppInfo("trust", "trust.exe", ""), AppState.STOPPED));
+		assertFalse(groupExecution.getFuture("10.0.0.1").isDone());
+
+		respond(first, new AppExe(new AppInfo("trust", "trust.exe", ""), AppState.STARTED));
+		respond(second, new AppExe(new AppInfo("trust", "trust.exe", ""), AppState.STOPPED, ErrorType.FAILED_TO_START, "error"));
+
+		groupExecution.getCompletion().get(1, TimeUnit.SECONDS);
+		assertEquals(AppState.STARTED, groupExecution.getFuture("10.0.0.1").get().getState());
+		assertEquals(ErrorType.FAILED_TO_START, groupExecution.getFuture("10.0.0.2").get().getErrorType());
+		assertEquals(2, groupExecution.getAcknowledgedCount());
+		assertEquals(1, groupExecution.getErrorCount());
+		assertEquals(1.0, groupExecution.getProgress(), 0.0);
+		assertTrue(groupExecution.getAckLatency(99, TimeUnit.NANOSECONDS) >= groupExecution.getAckLatency(50, TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void When_ClientDoesNotRespond_Should_TimeOutOnlyThatClient() throws Exception
+	{
+		StubMessageSocket first = addClient("pc-1", "10.0.0.1");
+		addClient("pc-2", "10.0.0.2");
+
+		GroupExecution groupExecution = clientPoolProxy.executeAppGroup(startRequest,
+				Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3"), 200, TimeUnit.MILLISECONDS);
+		respond(first, new AppExe(new AppInfo("trust", "trust.exe", ""), AppState.STARTED));
+
+		try {
+			groupExecution.getCompletion().get(2, TimeUnit.SECONDS);
+			fail("The group execution should fail.");
+		}
+		catch (ExecutionException e) {
+			// Expected
+		}
+
+		assertEquals(1, groupExecution.getAcknowledgedCount());
+		assertEquals(2, groupExecution.getFailedCount());
+		assertEquals(0, groupExecution.getPendingCount());
+		try {
+			groupExecution.getFuture("10.0.0.2").get();
+			fail("The unresponsive client should time out.");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		try {
+			groupExecution.getFuture("10.0.0.3").get();
+			fail("The disconnected client should fail.");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+
+	@Test
+	public void When_CommandChannelIsUsed_Should_RetransmitOnlyToClientsThatDidNotConfirm() throws Exception
+	{
+		DatagramSettings settings;
+		try (DatagramSocket socket = new DatagramSocket(0)) {
+			settings = new DatagramSettings("239.255.26.1", socket.getLocalPort(),
+					NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress()).getName());
+		}
+
+		final StubMessageSocket first = addClient("pc-1", "10.0.0.1");
+		StubMessageSocket second = addClient("pc-2", "10.0.0.2");
+
+		// The first client confirms the commands it receives, the second one never receives them
+		final BlockingQueue<Message> receivedCommands = new LinkedBlockingQueue<>();
+		CommandListener commandListener = new CommandListener(settings, first.getNetworkInfo(), new MessageSocketObserver() {
+			@Override public void notifyMessageReceived(NetworkInfo networkInfo, Message message)
+			{
+				receivedCommands.add(message);
+				clientPoolProxy.notifyMessageReceived(first.getNetworkInfo(), new Message(MessageType.APP_EXE_ACK, null,
+						networkInfo, message.getSequenceNumber()));
+			}
+
+			@Override public void notifyMessageSenderState(ConnectionState connectionState) {}
+		});
+		commandListener.start();
+		CommandMulticaster multicaster = new CommandMulticaster(settings);
+		clientPoolProxy.setCommandMulticaster(multicaster, 500, TimeUnit.MILLISECONDS);
+		try {
+			clientPoolProxy.executeAppGroup(startRequest, Arrays.asList("10.0.0.1", "10.0.0.2"), 5, TimeUnit.SECONDS);
+
+			Message command = receivedCommands.poll(2, TimeUnit.SECONDS);
+			assertEquals(MessageType.APP_EXE_REQUEST, command.getMessageType());
+			assertEquals("trust", command.getAppExe().getAppInfo().getName());
+
+			Message retransmitted = second.sentMessages.poll(2, TimeUnit.SECONDS);
+			assertEquals(MessageType.APP_EXE_REQUEST, retransmitted.getMessageType());
+			assertEquals(command.getSequenceNumber(), retransmitted.getSequenceNumber());
+			assertNull(first.sentMessages.poll(100, TimeUnit.MILLISECONDS));
+			assertEquals(1, clientPoolProxy.getConfirmedCommandCount());
+			assertEquals(1, clientPoolProxy.getRetransmittedCommandCount());
+		}
+		finally {
+			multicaster.close();
+			commandListener.stop();
+		}
+	}
+
+	@Test
+	public void When_StartIsPrepared_Should_SendTheGoOnlyToTheReadyClients() throws Exception
+	{
+		StubMessageSocket prepared = new PreparedStartSocket(new NetworkInfo("pc-1", "10.0.0.1", "10.0.0.254"));
+		clientPoolProxy.addClient(prepared);
+		StubMessageSocket legacy = addClient("pc-2", "10.0.0.2");
+
+		StartBarrier startBarrier = clientPoolProxy.prepareAppGroup(startRequest,
+				Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3"), 5, TimeUnit.SECONDS);
+
+		assertEquals(MessageType.APP_EXE_PREPARE, prepared.sentMessages.poll(1, TimeUnit.SECONDS).getMessageType());
+		assertNull(legacy.sentMessages.poll(100, TimeUnit.MILLISECONDS));
+		// The legacy client can not prepare, it is ready at once
+		assertTrue(startBarrier.isUnprepared("10.0.0.2"));
+		assertFalse(startBarrier.isDone());
+
+		clientPoolProxy.notifyMessageReceived(prepared.getNetworkInfo(), new Message(MessageType.APP_EXE_READY,
+				new AppExe(new AppInfo("trust", "trust.exe", ""), AppState.STOPPED), prepared.getNetworkInfo()));
+		try {
+			startBarrier.getCompletion().get(1, TimeUnit.SECONDS);
+			fail("The disconnected client should not be ready.");
+		}
+		catch (ExecutionException e) {
+			// Expected
+		}
+		assertEquals(2, startBarrier.getReadyCount());
+		assertTrue(startBarrier.getReadyLatency("10.0.0.1", TimeUnit.NANOSECONDS) >= 0);
+
+		GroupExecution groupExecution = clientPoolProxy.releaseAppGroup(startBarrier, 5, TimeUnit.SECONDS);
+		assertEquals(MessageType.APP_EXE_GO, prepared.sentMessages.poll(1, TimeUnit.SECONDS).getMessageType());
+		assertEquals(MessageType.APP_EXE_REQUEST, legacy.sentMessages.poll(1, TimeUnit.SECONDS).getMessageType());
+		assertTrue(groupExecution.getFuture("10.0.0.3").isCompletedExceptionally());
+
+		respond(prepared, new AppExe(new AppInfo("trust", "trust.exe", ""), AppState.STARTED));
+		respond(legacy, new AppExe(new AppInfo("trust", "trust.exe", ""), AppState.STARTED));
+		assertEquals(AppState.STARTED, groupExecution.getFuture("10.0.0.1").get(1, TimeUnit.SECONDS).getState());
+		assertEquals(AppState.STARTED, groupExecution.getFuture("10.0.0.2").get(1, TimeUnit.SECONDS).getState());
+		assertTrue(groupExecution.getAckLatency("10.0.0.1", TimeUnit.NANOSECONDS) >= 0);
+	}
+
+	@Test
+	public void When_LayoutClientsConnect_Should_TrackThemByClientId() throws Exception
+	{
+		LabLayout labLayout = getLabLayout("10.0.0.1", "10.0.0.2", "10.0.0.3");
+		clientPoolProxy = new ClientPoolProxy(labLayout);
+		ClientStateTable stateTable = clientPoolProxy.getClientStateTable();
+		int firstId = labLayout.getClientId("10.0.0.1");
+		int secondId = labLayout.getClientId("10.0.0.2");
+
+		StubMessageSocket first = addClient("pc-1", "10.0.0.1");
+		StubMessageSocket second = addClient("pc-2", "10.0.0.2");
+		// Not part of the layout, it is only kept by ip address
+		addClient("pc-9", "10.0.0.9");
+		assertEquals(3, stateTable.getClientCount());
+		assertEquals(2, stateTable.getConnectedClients().cardinality());
+
+		BitSet clientIds = new BitSet();
+		clientIds.set(secondId);
+		GroupExecution groupExecution = clientPoolProxy.executeAppGroup(startRequest, clientIds, 5, TimeUnit.SECONDS);
+		assertEquals(MessageType.APP_EXE_REQUEST, second.sentMessages.poll(1, TimeUnit.SECONDS).getMessageType());
+		assertNull(first.sentMessages.poll(100, TimeUnit.MILLISECONDS));
+
+		respond(second, new AppExe(new AppInfo("trust", "trust.exe", ""), AppState.STARTED));
+		groupExecution.getCompletion().get(1, TimeUnit.SECONDS);
+		assertEquals("trust", stateTable.getAppName(secondId));
+		assertEquals(AppState.STARTED, stateTable.getAppState(secondId));
+		assertEquals(ErrorType.NO_ERROR, stateTable.getErrorType(secondId));
+		assertEquals(secondId, stateTable.getConnectedClients(AppState.STARTED).nextSetBit(0));
+		assertNull(stateTable.getAppState(firstId));
+
+		clientPoolProxy.notifyClientDegraded("10.0.0.1", true);
+		assertTrue(stateTable.isDegraded(firstId));
+
+		clientPoolProxy.notifyClientDisconnected("10.0.0.2");
+		assertFalse(stateTable.isConnected(secondId));
+		assertNull(stateTable.getAppState(secondId));
+		assertTrue(stateTable.isConnected(firstId));
+	}
+
+	private static LabLayout getLabLayout(String... ipAddresses)
+	{
+		List<Computer> computers = new ArrayList<>();
+		for (String ipAddress : ipAddresses) {
+			Computer computer = new Computer();
+			computer.setName("pc-" + computers.size());
+			computer.setIp(ipAddress);
+			computers.add(computer);
+		}
+
+		Row row = new Row();
+		row.setNumber(1);
+		row.setComputers(computers);
+
+		LabLayout labLayout = new LabLayout();
+		labLayout.setRows(Collections.singletonList(row));
+		return labLayout;
+	}
+
+	private StubMessageSocket addClient(String name, String ip)
+	{
+		StubMessageSocket socket = new StubMessageSocket(new NetworkInfo(name, ip, "10.0.0.254"));
+		clientPoolProxy.addClient(socket);
+		return socket;
+	}
+
+	private void respond(StubMessageSocket socket, AppExe appExe)
+	{
+		clientPoolProxy.notifyMessageReceived(socket.getNetworkInfo(), new Message(MessageType.APP_EXE_UPDATE, appExe, socket.getNetworkInfo()));
+	}
+
+	private static class StubMessageSocket implements MessageSocket
+	{
+		private final NetworkInfo networkInfo;
+		private final BlockingQueue<Message> sentMessages = new LinkedBlockingQueue<>();
+
+		StubMessageSocket(NetworkInfo networkInfo)
+		{
+			this.networkInfo = networkInfo;
+		}
+
+		@Override public boolean isConnected()
+		{
+			return true;
+		}
+
+		@Override public void sendMessage(Message message)
+		{
+			sentMessages.add(message);
+		}
+
+		@Override public Message readMessage()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override public String getClientIp()
+		{
+			return networkInfo.getClientIp();
+		}
+
+		@Override public String getServerIp()
+		{
+			return networkInfo.getServerIp();
+		}
+
+		@Override public String getClientName()
+		{
+			return networkInfo.getClientName();
+		}
+
+		@Override public NetworkInfo getNetworkInfo()
+		{
+			return networkInfo;
+		}
+	}
+
+	private static class PreparedStartSocket extends StubMessageSocket implements ServerMessageSocket
+	{
+		private final Hello hello = new Hello(ConnectionHandshake.PROTOCOL_VERSION, MessageCodecs.create(MessageCodecs.BINARY),
+				ConnectionHandshake.CAPABILITIES, 0);
+
+		PreparedStartSocket(NetworkInfo networkInfo)
+		{
+			super(networkInfo);
+		}
+
+		@Override public void close() {}
+
+		@Override public boolean isLegacyClient()
+		{
+			return false;
+		}
+
+		@Override public Hello getHello()
+		{
+			return hello;
+		}
+
+		@Override public void setSession(long sessionToken, boolean resumed) {}
+
+		@Override public long getSessionToken()
+		{
+			return 0;
+		}
+	}
+}
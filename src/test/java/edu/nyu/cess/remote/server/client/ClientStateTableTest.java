@@ -0,0 +1,105 @@
+package edu.nyu.cess.remote.server.client;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import edu.nyu.cess.remote.common.app.ErrorType;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ClientStateTableTest
+{
+	@Test
+	public void When_ClientStateChanges_Should_KeepTheOtherFieldsOfItsRow()
+	{
+		ClientStateTable stateTable = new ClientStateTable(4);
+		assertFalse(stateTable.isConnected(2));
+		assertNull(stateTable.getAppName(2));
+		assertEquals(-1, stateTable.getRoundTripTime(2, TimeUnit.MILLISECONDS));
+
+		stateTable.notifyConnected(2);
+		stateTable.setDegraded(2, true);
+		stateTable.updateAppExe(2, new AppExe(new AppInfo("ultimatum", "ultimatum.exe", ""), AppState.STOPPED,
+				ErrorType.FAILED_TO_START, "error"));
+		stateTable.setRoundTripTime(2, 3, TimeUnit.MILLISECONDS);
+
+		assertTrue(stateTable.isConnected(2));
+		assertTrue(stateTable.isDegraded(2));
+		assertEquals("ultimatum", stateTable.getAppName(2));
+		assertEquals(AppState.STOPPED, stateTable.getAppState(2));
+		assertEquals(ErrorType.FAILED_TO_START, stateTable.getErrorType(2));
+		assertEquals(3, stateTable.getRoundTripTime(2, TimeUnit.MILLISECONDS));
+		assertTrue(stateTable.getLastSeenNanos(2) > 0);
+
+		stateTable.setDegraded(2, false);
+		assertFalse(stateTable.isDegraded(2));
+		assertEquals(AppState.STOPPED, stateTable.getAppState(2));
+
+		// The other rows are untouched
+		assertFalse(stateTable.isConnected(1));
+		assertFalse(stateTable.isConnected(3));
+		assertEquals(1, stateTable.getConnectedClients().cardinality());
+		assertEquals(0, stateTable.getConnectedClients(AppState.STARTED).cardinality());
+
+		stateTable.notifyDisconnected(2);
+		assertFalse(stateTable.isConnected(2));
+		assertNull(stateTable.getAppState(2));
+		assertEquals(-1, stateTable.getRoundTripTime(2, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void When_RowIsUpdatedConcurrently_Should_NotLoseAnyField() throws Exception
+	{
+		final ClientStateTable stateTable = new ClientStateTable(1);
+		stateTable.notifyConnected(0);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+
+		Thread degrader = new Thread(new Runnable() {
+			@Override public void run()
+			{
+				await(startLatch);
+				for (int i = 0; i < 10000; i++) {
+					stateTable.setDegraded(0, i % 2 == 0);
+				}
+			}
+		});
+		Thread updater = new Thread(new Runnable() {
+			@Override public void run()
+			{
+				await(startLatch);
+				for (int i = 0; i < 10000; i++) {
+					stateTable.updateAppExe(0, new AppExe(new AppInfo("app-" + (i % 3), "app.exe", ""),
+							(i % 2 == 0) ? AppState.STARTED : AppState.STOPPED));
+				}
+			}
+		});
+		degrader.start();
+		updater.start();
+		startLatch.countDown();
+		degrader.join();
+		updater.join();
+
+		// The last writes of both threads are kept
+		assertTrue(stateTable.isConnected(0));
+		assertFalse(stateTable.isDegraded(0));
+		assertEquals("app-0", stateTable.getAppName(0));
+		assertEquals(AppState.STOPPED, stateTable.getAppState(0));
+	}
+
+	private static void await(CountDownLatch latch)
+	{
+		try {
+			latch.await();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -1,12 +1,22 @@
 package edu.nyu.cess.remote.server.io;
 
+import edu.nyu.cess.remote.server.lab.Computer;
 import edu.nyu.cess.remote.server.lab.LabLayout;
+import edu.nyu.cess.remote.server.lab.Row;
 import org.junit.Test;
 
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class LabLayoutFileTest
 {
@@ -23,4 +33,45 @@ public class LabLayoutFileTest
 		assertNotNull(labLayout);
 	}
 
+	@Test
+	public void When_LayoutIsRead_Should_FreezeAndIndexIt() throws Exception
+	{
+		LabLayout labLayout;
+		try (InputStream inputStream = getClass().getResourceAsStream("/lab-layout.yaml")) {
+			labLayout = LabLayoutFile.readFile(inputStream);
+		}
+		assertTrue(labLayout.isFrozen());
+		assertEquals(30, labLayout.getComputerCount());
+
+		Computer computer = labLayout.getComputer(InetAddress.getByName("192.168.1.6"));
+		assertEquals("25", computer.getName());
+		assertEquals(0, computer.getId());
+		assertSame(computer, labLayout.getComputer(computer.getId()));
+		assertSame(computer, labLayout.getComputerByName("25"));
+		assertSame(computer, labLayout.getComputer("192.168.1.6"));
+		assertNull(labLayout.getComputer(InetAddress.getByName("10.1.1.1")));
+		assertEquals(6, labLayout.getRow(5).getComputers().size());
+
+		// Numbers within the names are compared by value
+		List<Computer> sortedComputers = labLayout.getSortedComputers();
+		assertEquals("1", sortedComputers.get(0).getName());
+		assertEquals("2", sortedComputers.get(1).getName());
+		assertEquals("30", sortedComputers.get(29).getName());
+
+		try {
+			labLayout.setRows(Collections.<Row>emptyList());
+			fail("A frozen layout should not be changed.");
+		}
+		catch (IllegalStateException e) {
+			// Expected
+		}
+		try {
+			computer.setIp("10.1.1.1");
+			fail("A computer of a frozen layout should not be changed.");
+		}
+		catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
 }
@@ -0,0 +1,80 @@
+package edu.nyu.cess.remote.server.net;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class AdmissionControllerTest
+{
+	@Test
+	public void When_ClientsExceedTheBurst_Should_PaceTheirRegistrations() throws Exception
+	{
+		AdmissionStats admissionStats = new AdmissionStats();
+		AdmissionController admissionController = new AdmissionController(new AdmissionSettings(16, 2, 20, 2),
+				admissionStats, "test-registration-");
+
+		final BlockingQueue<Long> registrationTimes = new LinkedBlockingQueue<>();
+		long start = System.nanoTime();
+		for (int i = 0; i < 6; ++i) {
+			admissionController.admit("10.0.0." + i, new AdmissionController.Registration() {
+				@Override public void register()
+				{
+					registrationTimes.add(System.nanoTime());
+				}
+			});
+		}
+
+		long lastRegistration = 0;
+		for (int i = 0; i < 6; ++i) {
+			Long registrationTime = registrationTimes.poll(2, TimeUnit.SECONDS);
+			assertNotNull(registrationTime);
+			lastRegistration = Math.max(lastRegistration, registrationTime);
+		}
+
+		// Two registrations are immediate, the four others are spaced by 50 ms
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(lastRegistration - start) >= 190);
+		assertEquals(6, admissionStats.getAcceptedCount());
+		assertEquals(6, admissionStats.getPendingCount());
+
+		for (int i = 0; i < 6; ++i) {
+			admissionStats.notifyVisible("10.0.0." + i);
+		}
+		assertEquals(0, admissionStats.getPendingCount());
+		assertTrue(admissionStats.getVisibleLatency(50, TimeUnit.MILLISECONDS) >= 0);
+	}
+
+	@Test
+	public void When_RegistrationFails_Should_NotLeaveTheClientPending() throws Exception
+	{
+		AdmissionStats admissionStats = new AdmissionStats();
+		AdmissionController admissionController = new AdmissionController(new AdmissionSettings(16, 1, 0, 1),
+				admissionStats, "test-registration-");
+
+		admissionController.admit("10.0.0.1", new AdmissionController.Registration() {
+			@Override public void register() throws IOException
+			{
+				throw new IOException("Channel closed.");
+			}
+		});
+		admissionController.admit("10.0.0.2", new AdmissionController.Registration() {
+			@Override public void register()
+			{
+				throw new IllegalStateException("Selector closed.");
+			}
+		});
+
+		for (int attempt = 0; attempt < 100 && admissionStats.getPendingCount() > 0; ++attempt) {
+			Thread.sleep(20);
+		}
+		assertEquals(2, admissionStats.getAcceptedCount());
+		assertEquals(0, admissionStats.getPendingCount());
+		assertEquals(-1, admissionStats.getRegistrationLatency(50, TimeUnit.MILLISECONDS));
+	}
+}
@@ -0,0 +1,61 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.codec.MessageCodecs;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
+import org.junit.Test;
+
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ClientSocketConnectionMonitorTest
+{
+	private final LoopbackLab lab = new LoopbackLab(new LoopbackLab.MonitorFactory() {
+		@Override public ConnectionMonitor createMonitor(ClientPool clientPool, MessageSocketObserver messageSocketObserver,
+														 ClientDisconnectionObserver disconnectionObserver,
+														 AdmissionStats admissionStats, ConnectionStats connectionStats)
+		{
+			return new ClientSocketConnectionMonitor(clientPool, messageSocketObserver, disconnectionObserver,
+					new ConnectionHandshake(MessageCodecs.parseCodecIds(MessageCodecs.DEFAULT_CODECS), 300), 64, new WriterPool(1),
+					new ThreadPerClientExecutionModel(), new AdmissionSettings(512, 1, 0, 1), admissionStats, connectionStats,
+					new SlowClientMonitor(new SendSettings(2000, 3, 30000)));
+		}
+	});
+	private final BlockingQueue<MessageSocket> addedClients = lab.getAddedClients();
+	private final BlockingQueue<String> disconnectedClients = lab.getDisconnectedClients();
+	private final ConnectionStats connectionStats = lab.getConnectionStats();
+
+	@Test
+	public void When_ClientsKeepReconnecting_Should_ReleaseEveryConnectionAndReader() throws Exception
+	{
+		int port = lab.start();
+
+		for (int i = 0; i < 20; ++i) {
+			lab.connect().close();
+			assertNotNull(addedClients.poll(2, TimeUnit.SECONDS));
+			assertEquals("127.0.0.1", disconnectedClients.poll(2, TimeUnit.SECONDS));
+		}
+
+		// A connection that never sends its hello is closed, without being added or reported
+		Socket silentSocket = new Socket("127.0.0.1", port);
+		assertEquals(-1, silentSocket.getInputStream().read());
+		silentSocket.close();
+
+		for (int attempt = 0; attempt < 50 && connectionStats.getLiveReaderCount() > 0; ++attempt) {
+			Thread.sleep(20);
+		}
+		assertEquals(0, connectionStats.getLiveReaderCount());
+		assertEquals(0, connectionStats.getOpenConnectionCount());
+		assertEquals(1, connectionStats.getHandshakeTimeoutCount());
+		assertNull(addedClients.poll());
+		assertNull(disconnectedClients.poll());
+	}
+}
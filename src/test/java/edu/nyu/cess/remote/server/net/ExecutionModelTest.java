@@ -0,0 +1,92 @@
+package edu.nyu.cess.remote.server.net;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionModelTest
+{
+	@Test
+	public void When_PoolIsBusy_Should_RunTheTaskOnceAThreadIsFree() throws Exception
+	{
+		PooledExecutionModel executionModel = new PooledExecutionModel(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch secondStarted = new CountDownLatch(1);
+		final AtomicReference<String> secondThreadName = new AtomicReference<>();
+
+		executionModel.execute("first", new Runnable() {
+			@Override public void run()
+			{
+				awaitQuietly(release);
+			}
+		});
+		executionModel.execute("second", new Runnable() {
+			@Override public void run()
+			{
+				secondThreadName.set(Thread.currentThread().getName());
+				secondStarted.countDown();
+			}
+		});
+
+		assertFalse(secondStarted.await(100, TimeUnit.MILLISECONDS));
+		assertEquals(1, executionModel.getThreadCount());
+		assertEquals(1, executionModel.getStats().getWaitingTaskCount());
+
+		release.countDown();
+		assertTrue(secondStarted.await(5, TimeUnit.SECONDS));
+		assertEquals("second", secondThreadName.get());
+		assertTrue(executionModel.getStats().getSchedulingLatency(100, TimeUnit.MILLISECONDS) >= 100);
+		assertEquals(1, executionModel.getStats().getPeakRunningTaskCount());
+	}
+
+	@Test
+	public void When_ThreadPerClient_Should_RunEveryTaskAtOnce() throws Exception
+	{
+		assertRunsEveryTaskAtOnce(new ThreadPerClientExecutionModel());
+	}
+
+	@Test
+	public void When_VirtualThreadsAreSupported_Should_RunEveryTaskAtOnce() throws Exception
+	{
+		Assume.assumeTrue(VirtualThreadExecutionModel.isSupported());
+		assertRunsEveryTaskAtOnce(new VirtualThreadExecutionModel());
+	}
+
+	private void assertRunsEveryTaskAtOnce(ExecutionModel executionModel) throws Exception
+	{
+		final int taskCount = 8;
+		final CountDownLatch started = new CountDownLatch(taskCount);
+		final CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < taskCount; ++i) {
+			executionModel.execute("task-" + i, new Runnable() {
+				@Override public void run()
+				{
+					started.countDown();
+					awaitQuietly(release);
+				}
+			});
+		}
+
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals(taskCount, executionModel.getStats().getRunningTaskCount());
+		assertEquals(taskCount, executionModel.getThreadCount());
+		release.countDown();
+	}
+
+	private static void awaitQuietly(CountDownLatch latch)
+	{
+		try {
+			latch.await();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
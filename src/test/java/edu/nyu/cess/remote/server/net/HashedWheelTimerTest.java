@@ -0,0 +1,64 @@
+package edu.nyu.cess.remote.server.net;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelTimerTest
+{
+	// A small wheel, so that the delays below span several rounds
+	private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 4);
+
+	@After
+	public void tearDown()
+	{
+		timer.stop();
+	}
+
+	@Test
+	public void When_DelayElapses_Should_RunTheTaskNoEarlier() throws Exception
+	{
+		final CountDownLatch taskRun = new CountDownLatch(1);
+		long start = System.nanoTime();
+
+		timer.schedule(new Runnable() {
+			@Override public void run()
+			{
+				taskRun.countDown();
+			}
+		}, 150, TimeUnit.MILLISECONDS);
+
+		assertTrue(taskRun.await(2, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+	}
+
+	@Test
+	public void When_TaskIsCancelled_Should_NotRunIt() throws Exception
+	{
+		final AtomicBoolean cancelledTaskRun = new AtomicBoolean(false);
+		final CountDownLatch laterTaskRun = new CountDownLatch(1);
+
+		HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+			@Override public void run()
+			{
+				cancelledTaskRun.set(true);
+			}
+		}, 50, TimeUnit.MILLISECONDS);
+		timer.schedule(new Runnable() {
+			@Override public void run()
+			{
+				laterTaskRun.countDown();
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+		timeout.cancel();
+
+		assertTrue(laterTaskRun.await(2, TimeUnit.SECONDS));
+		assertFalse(cancelledTaskRun.get());
+	}
+}
@@ -0,0 +1,200 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.message.codec.Hello;
+import edu.nyu.cess.remote.common.net.ConnectionState;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class HeartbeatMonitorTest
+{
+	private final BlockingQueue<MessageSocket> addedClients = new LinkedBlockingQueue<>();
+	private final BlockingQueue<Message> forwardedMessages = new LinkedBlockingQueue<>();
+	private final BlockingQueue<String> disconnectedClients = new LinkedBlockingQueue<>();
+
+	private HashedWheelTimer timer;
+	private HeartbeatMonitor heartbeatMonitor;
+
+	@Before
+	public void setUp()
+	{
+		timer = new HashedWheelTimer("test-heartbeat-timer", 5, TimeUnit.MILLISECONDS, 64);
+		heartbeatMonitor = new HeartbeatMonitor(new ClientPool() {
+			@Override public void addClient(MessageSocket messageSocket)
+			{
+				addedClients.add(messageSocket);
+			}
+		}, new MessageSocketObserver() {
+			@Override public void notifyMessageReceived(NetworkInfo networkInfo, Message message)
+			{
+				forwardedMessages.add(message);
+			}
+
+			@Override public void notifyMessageSenderState(ConnectionState connectionState) {}
+		}, new ClientDisconnectionObserver() {
+			@Override public void notifyClientDisconnected(String clientIp)
+			{
+				disconnectedClients.add(clientIp);
+			}
+		}, timer, new HeartbeatSettings(20, 20, 60000, 40, 8));
+	}
+
+	@After
+	public void tearDown()
+	{
+		timer.stop();
+	}
+
+	@Test
+	public void When_ClientEchoesPings_Should_MeasureRoundTripAndConsumeTheEchoes() throws Exception
+	{
+		EchoingSocket socket = new EchoingSocket(new NetworkInfo("pc-1", "10.0.0.1", "10.0.0.254"), true);
+		heartbeatMonitor.addClient(socket);
+		assertNotNull(addedClients.poll(1, TimeUnit.SECONDS));
+
+		Thread.sleep(300);
+
+		assertTrue(socket.isConnected());
+		assertTrue(heartbeatMonitor.getRoundTripTime("10.0.0.1", TimeUnit.NANOSECONDS) >= 0);
+		assertTrue(heartbeatMonitor.getPhi("10.0.0.1") < 8);
+		assertTrue(forwardedMessages.isEmpty());
+	}
+
+	@Test
+	public void When_ClientStopsEchoing_Should_CloseItsSocketWithinAFewIntervals() throws Exception
+	{
+		EchoingSocket socket = new EchoingSocket(new NetworkInfo("pc-1", "10.0.0.1", "10.0.0.254"), true);
+		heartbeatMonitor.addClient(socket);
+		heartbeatMonitor.addClient(new EchoingSocket(new NetworkInfo("pc-2", "10.0.0.2", "10.0.0.254"), true));
+		Thread.sleep(200);
+
+		socket.echo = false;
+		long silenceStart = System.nanoTime();
+		assertTrue(socket.closed.await(2, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - silenceStart < TimeUnit.MILLISECONDS.toNanos(1000));
+		assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), heartbeatMonitor.getMostSuspectedClients(5));
+		assertEquals(Collections.singletonList("10.0.0.1"), heartbeatMonitor.getMostSuspectedClients(1));
+
+		heartbeatMonitor.notifyClientDisconnected("10.0.0.1");
+		assertEquals("10.0.0.1", disconnectedClients.poll(1, TimeUnit.SECONDS));
+		assertEquals(-1, heartbeatMonitor.getPhi("10.0.0.1"), 0.0);
+	}
+
+	@Test
+	public void When_StateUpdateIsMissing_Should_PollTheClientsStateOnce() throws Exception
+	{
+		NetworkInfo networkInfo = new NetworkInfo("pc-1", "10.0.0.1", "10.0.0.254");
+		EchoingSocket socket = new EchoingSocket(networkInfo, true);
+		heartbeatMonitor.addClient(socket);
+
+		heartbeatMonitor.notifyMessageReceived(networkInfo, new Message(MessageType.APP_EXE_UPDATE, null, networkInfo, 1));
+		heartbeatMonitor.notifyMessageReceived(networkInfo, new Message(MessageType.APP_EXE_UPDATE, null, networkInfo, 2));
+		assertEquals(0, socket.statePolls.size());
+
+		heartbeatMonitor.notifyMessageReceived(networkInfo, new Message(MessageType.APP_EXE_UPDATE, null, networkInfo, 4));
+		assertEquals(1, socket.statePolls.size());
+		assertEquals(1, heartbeatMonitor.getStateGapCount());
+
+		// A new session is numbered from 1 again
+		heartbeatMonitor.notifyMessageReceived(networkInfo, new Message(MessageType.APP_EXE_UPDATE, null, networkInfo, 1));
+		assertEquals(1, socket.statePolls.size());
+		assertEquals(4, forwardedMessages.size());
+	}
+
+	/**
+	 * A socket that echoes the pings it is sent back to the heartbeat monitor.
+	 */
+	private class EchoingSocket implements ServerMessageSocket
+	{
+		private final NetworkInfo networkInfo;
+		private final CountDownLatch closed = new CountDownLatch(1);
+		private final BlockingQueue<Message> statePolls = new LinkedBlockingQueue<>();
+		private volatile boolean echo;
+
+		EchoingSocket(NetworkInfo networkInfo, boolean echo)
+		{
+			this.networkInfo = networkInfo;
+			this.echo = echo;
+		}
+
+		@Override public void sendMessage(Message message)
+		{
+			if (echo && message.getMessageType() == MessageType.KEEP_ALIVE_PING) {
+				heartbeatMonitor.notifyMessageReceived(networkInfo, message);
+			}
+			else if (message.getMessageType() == MessageType.APP_EXE_UPDATE) {
+				statePolls.add(message);
+			}
+		}
+
+		@Override public void close()
+		{
+			closed.countDown();
+		}
+
+		@Override public boolean isLegacyClient()
+		{
+			return false;
+		}
+
+		@Override public Hello getHello()
+		{
+			return null;
+		}
+
+		@Override public void setSession(long sessionToken, boolean resumed) {}
+
+		@Override public long getSessionToken()
+		{
+			return 0;
+		}
+
+		@Override public boolean isConnected()
+		{
+			return closed.getCount() > 0;
+		}
+
+		@Override public Message readMessage()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override public String getClientIp()
+		{
+			return networkInfo.getClientIp();
+		}
+
+		@Override public String getServerIp()
+		{
+			return networkInfo.getServerIp();
+		}
+
+		@Override public String getClientName()
+		{
+			return networkInfo.getClientName();
+		}
+
+		@Override public NetworkInfo getNetworkInfo()
+		{
+			return networkInfo;
+		}
+	}
+}
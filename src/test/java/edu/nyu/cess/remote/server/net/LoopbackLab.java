@@ -0,0 +1,164 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.client.message.ClientMessageSocket;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.net.ConnectionState;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
+import edu.nyu.cess.remote.server.lab.Computer;
+import edu.nyu.cess.remote.server.lab.LabLayout;
+import edu.nyu.cess.remote.server.lab.Row;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A lab of a single computer, 127.0.0.1, whose connections are monitored on a free loopback port. Unless other
+ * observers are given, the clients added, the messages received and the disconnections reported by the monitor are
+ * queued for the test to check.
+ */
+class LoopbackLab
+{
+	/**
+	 * Creates the connection monitor under test.
+	 */
+	interface MonitorFactory
+	{
+		ConnectionMonitor createMonitor(ClientPool clientPool, MessageSocketObserver messageSocketObserver,
+										ClientDisconnectionObserver disconnectionObserver, AdmissionStats admissionStats,
+										ConnectionStats connectionStats);
+	}
+
+	private final BlockingQueue<MessageSocket> addedClients = new LinkedBlockingQueue<>();
+	private final BlockingQueue<Message> receivedMessages = new LinkedBlockingQueue<>();
+	private final BlockingQueue<String> disconnectedClients = new LinkedBlockingQueue<>();
+	private final AdmissionStats admissionStats = new AdmissionStats();
+	private final ConnectionStats connectionStats = new ConnectionStats();
+
+	private final MonitorFactory monitorFactory;
+	private int port;
+
+	LoopbackLab(MonitorFactory monitorFactory)
+	{
+		this.monitorFactory = monitorFactory;
+	}
+
+	/**
+	 * Starts the monitor, queuing the clients it adds, the messages it receives and the disconnections it reports.
+	 * @return the port the monitor listens on
+	 */
+	int start() throws IOException
+	{
+		ClientPool clientPool = new ClientPool() {
+			@Override public void addClient(MessageSocket messageSocket)
+			{
+				addedClients.add(messageSocket);
+			}
+		};
+		MessageSocketObserver messageSocketObserver = new MessageSocketObserver() {
+			@Override public void notifyMessageReceived(NetworkInfo networkInfo, Message message)
+			{
+				receivedMessages.add(message);
+			}
+
+			@Override public void notifyMessageSenderState(ConnectionState connectionState) {}
+		};
+		ClientDisconnectionObserver disconnectionObserver = new ClientDisconnectionObserver() {
+			@Override public void notifyClientDisconnected(String clientIp)
+			{
+				disconnectedClients.add(clientIp);
+			}
+		};
+		return start(clientPool, messageSocketObserver, disconnectionObserver);
+	}
+
+	/**
+	 * Starts the monitor with the given client pool and observers.
+	 * @return the port the monitor listens on
+	 */
+	int start(ClientPool clientPool, MessageSocketObserver messageSocketObserver,
+			  ClientDisconnectionObserver disconnectionObserver) throws IOException
+	{
+		try (ServerSocket serverSocket = new ServerSocket(0)) {
+			port = serverSocket.getLocalPort();
+		}
+
+		final ConnectionMonitor monitor = monitorFactory.createMonitor(clientPool, messageSocketObserver,
+				disconnectionObserver, admissionStats, connectionStats);
+		final int monitorPort = port;
+		final LabLayout labLayout = getLabLayout();
+		Thread acceptThread = new Thread(new Runnable() {
+			@Override public void run()
+			{
+				monitor.monitorNewClientSocketConnections(monitorPort, labLayout);
+			}
+		});
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+		return port;
+	}
+
+	/**
+	 * Connects a client, waiting for the monitor to listen.
+	 * @return the client socket, its handshake completed
+	 */
+	ClientMessageSocket connect() throws Exception
+	{
+		NetworkInfo networkInfo = new NetworkInfo("test", "127.0.0.1", "127.0.0.1");
+		for (int attempt = 0; attempt < 50; ++attempt) {
+			try {
+				return new ClientMessageSocket(networkInfo, port);
+			}
+			catch (IOException e) {
+				Thread.sleep(100);
+			}
+		}
+		throw new IOException("Unable to connect to the connection monitor on port " + port + ".");
+	}
+
+	BlockingQueue<MessageSocket> getAddedClients()
+	{
+		return addedClients;
+	}
+
+	BlockingQueue<Message> getReceivedMessages()
+	{
+		return receivedMessages;
+	}
+
+	BlockingQueue<String> getDisconnectedClients()
+	{
+		return disconnectedClients;
+	}
+
+	AdmissionStats getAdmissionStats()
+	{
+		return admissionStats;
+	}
+
+	ConnectionStats getConnectionStats()
+	{
+		return connectionStats;
+	}
+
+	static LabLayout getLabLayout()
+	{
+		Computer computer = new Computer();
+		computer.setName("test");
+		computer.setIp("127.0.0.1");
+
+		Row row = new Row();
+		row.setNumber(1);
+		row.setComputers(Collections.singletonList(computer));
+
+		LabLayout labLayout = new LabLayout();
+		labLayout.setRows(Collections.singletonList(row));
+		return labLayout;
+	}
+}
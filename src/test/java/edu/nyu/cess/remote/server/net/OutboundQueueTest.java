@@ -0,0 +1,106 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageLanes;
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundQueueTest
+{
+	private final NetworkInfo networkInfo = new NetworkInfo("pc-1", "10.0.0.2", "10.0.0.1");
+
+	@Test
+	public void When_UpdatePollIsPending_Should_KeepOnlyTheNewestPoll()
+	{
+		OutboundQueue queue = new OutboundQueue(8);
+		Message request = createRequest();
+		Message firstPoll = new Message(MessageType.APP_EXE_UPDATE, networkInfo);
+		Message secondPoll = new Message(MessageType.APP_EXE_UPDATE, networkInfo);
+
+		assertTrue(queue.offer(firstPoll));
+		assertTrue(queue.offer(request));
+		assertTrue(queue.offer(secondPoll));
+
+		List<Message> drained = new ArrayList<>();
+		assertEquals(2, queue.drainTo(drained));
+		assertSame(request, drained.get(0));
+		assertSame(secondPoll, drained.get(1));
+	}
+
+	@Test
+	public void When_QueueIsFull_Should_RejectMessagesButStillReplacePolls()
+	{
+		OutboundQueue queue = new OutboundQueue(2);
+
+		assertTrue(queue.offer(new Message(MessageType.APP_EXE_UPDATE, networkInfo)));
+		assertTrue(queue.offer(createRequest()));
+		assertFalse(queue.offer(createRequest()));
+		assertTrue(queue.offer(new Message(MessageType.APP_EXE_UPDATE, networkInfo)));
+	}
+
+	@Test
+	public void When_PollIsWritten_Should_QueueTheNextPoll()
+	{
+		OutboundQueue queue = new OutboundQueue(8);
+		Message firstPoll = new Message(MessageType.APP_EXE_UPDATE, networkInfo);
+		Message secondPoll = new Message(MessageType.APP_EXE_UPDATE, networkInfo);
+
+		queue.offer(firstPoll);
+		assertSame(firstPoll, queue.poll());
+		queue.offer(secondPoll);
+
+		assertSame(secondPoll, queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void When_BulkLanesArePending_Should_TakeControlMessagesFirstAndOneChunkPerLaneInTurn()
+	{
+		OutboundQueue queue = new OutboundQueue(64);
+		List<Message> firstLane = MessageLanes.split((byte) 1, 1, new byte[40], 10, networkInfo);
+		List<Message> secondLane = MessageLanes.split((byte) 2, 1, new byte[20], 10, networkInfo);
+		for (Message chunk : firstLane) {
+			assertTrue(queue.offer(chunk));
+		}
+		for (Message chunk : secondLane) {
+			assertTrue(queue.offer(chunk));
+		}
+
+		assertSame(firstLane.get(0), queue.poll());
+		Message request = createRequest();
+		queue.offer(request);
+		assertSame(request, queue.poll());
+		assertSame(secondLane.get(0), queue.poll());
+
+		queue.offer(request);
+		List<Message> drained = new ArrayList<>();
+		assertEquals(3, queue.drainTo(drained));
+		assertSame(request, drained.get(0));
+		assertSame(firstLane.get(1), drained.get(1));
+		assertSame(secondLane.get(1), drained.get(2));
+
+		drained.clear();
+		assertEquals(1, queue.drainTo(drained));
+		assertSame(firstLane.get(2), drained.get(0));
+		assertSame(firstLane.get(3), queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	private Message createRequest()
+	{
+		AppExe appExe = new AppExe(new AppInfo("a", "a", "a"), AppState.STARTED);
+		return new Message(MessageType.APP_EXE_REQUEST, appExe, networkInfo);
+	}
+}
@@ -0,0 +1,46 @@
+package edu.nyu.cess.remote.server.net;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+public class PhiAccrualFailureDetectorTest
+{
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void When_HeartbeatsAreRegular_Should_SuspectOnlyAfterAMissedHeartbeat()
+	{
+		long now = 0;
+		PhiAccrualFailureDetector failureDetector = new PhiAccrualFailureDetector(100, 1000, 100, 0, TimeUnit.MILLISECONDS, now);
+		for (int i = 0; i < 20; ++i) {
+			now += SECOND;
+			failureDetector.heartbeat(now);
+		}
+
+		assertTrue(failureDetector.phi(now + SECOND / 2) < 1);
+		assertTrue(failureDetector.phi(now + SECOND) < 1);
+		assertTrue(failureDetector.phi(now + 2 * SECOND) > 8);
+	}
+
+	@Test
+	public void When_HeartbeatsAreIrregular_Should_ToleratePausesLikeTheObservedOnes()
+	{
+		long now = 0;
+		PhiAccrualFailureDetector regularDetector = new PhiAccrualFailureDetector(100, 1000, 100, 0, TimeUnit.MILLISECONDS, now);
+		PhiAccrualFailureDetector irregularDetector = new PhiAccrualFailureDetector(100, 1000, 100, 0, TimeUnit.MILLISECONDS, now);
+		long regularNow = now;
+		long irregularNow = now;
+		for (int i = 0; i < 20; ++i) {
+			regularNow += SECOND;
+			regularDetector.heartbeat(regularNow);
+			irregularNow += (i % 2 == 0) ? SECOND / 2 : 3 * SECOND / 2;
+			irregularDetector.heartbeat(irregularNow);
+		}
+
+		long pause = 2 * SECOND;
+		assertTrue(irregularDetector.phi(irregularNow + pause) < regularDetector.phi(regularNow + pause));
+	}
+}
@@ -0,0 +1,225 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.net.ConnectionState;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
+import edu.nyu.cess.remote.server.client.ClientPoolProxy;
+import edu.nyu.cess.remote.server.lab.Computer;
+import edu.nyu.cess.remote.server.lab.LabLayout;
+import edu.nyu.cess.remote.server.lab.Row;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimitingMessageObserverTest
+{
+	private final List<Message> receivedMessages = new ArrayList<>();
+	private final List<String> disconnectedClients = new ArrayList<>();
+	private final NetworkInfo chattyClient = new NetworkInfo("pc-1", "10.0.0.1", "10.0.0.254");
+	private final NetworkInfo quietClient = new NetworkInfo("pc-2", "10.0.0.2", "10.0.0.254");
+
+	private HashedWheelTimer timer;
+	private RateLimitingMessageObserver rateLimitingObserver;
+
+	@Before
+	public void setUp()
+	{
+		Map<MessageType, MessageRateLimit> rateLimits = new EnumMap<>(MessageType.class);
+		// A rate low enough that no token is refilled during the test
+		rateLimits.put(MessageType.APP_EXE_UPDATE, new MessageRateLimit(0.001, 3));
+		rateLimits.put(MessageType.KEEP_ALIVE_PING, new MessageRateLimit(0, 1));
+
+		timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+		rateLimitingObserver = new RateLimitingMessageObserver(new ClientPool() {
+			@Override public void addClient(MessageSocket messageSocket) {}
+		}, new MessageSocketObserver() {
+			@Override public void notifyMessageReceived(NetworkInfo networkInfo, Message message)
+			{
+				receivedMessages.add(message);
+			}
+
+			@Override public void notifyMessageSenderState(ConnectionState connectionState) {}
+		}, new ClientDisconnectionObserver() {
+			@Override public void notifyClientDisconnected(String clientIp)
+			{
+				disconnectedClients.add(clientIp);
+			}
+		}, timer, rateLimits, 0);
+	}
+
+	@After
+	public void tearDown()
+	{
+		timer.stop();
+	}
+
+	@Test
+	public void When_ClientExceedsItsLimit_Should_DropOnlyThatClientsMessages()
+	{
+		for (int i = 0; i < 10; ++i) {
+			receive(chattyClient, MessageType.APP_EXE_UPDATE);
+		}
+		receive(quietClient, MessageType.APP_EXE_UPDATE);
+
+		assertEquals(4, receivedMessages.size());
+		assertEquals(7, rateLimitingObserver.getThrottledMessageCount());
+		assertEquals(1, rateLimitingObserver.getThrottledClients().size());
+		assertEquals(Long.valueOf(7), rateLimitingObserver.getThrottledClients().get("10.0.0.1"));
+	}
+
+	@Test
+	public void When_MessageTypeIsUnlimited_Should_ForwardEveryMessage()
+	{
+		for (int i = 0; i < 10; ++i) {
+			receive(chattyClient, MessageType.KEEP_ALIVE_PING);
+			receive(chattyClient, MessageType.APP_EXE_REQUEST);
+		}
+
+		assertEquals(20, receivedMessages.size());
+		assertEquals(0, rateLimitingObserver.getThrottledMessageCount());
+	}
+
+	@Test
+	public void When_ClientReconnects_Should_KeepItsBuckets()
+	{
+		StubMessageSocket connection = new StubMessageSocket(chattyClient);
+		rateLimitingObserver.addClient(connection);
+		for (int i = 0; i < 5; ++i) {
+			receive(chattyClient, MessageType.APP_EXE_UPDATE);
+		}
+		connection.connected = false;
+		rateLimitingObserver.notifyClientDisconnected("10.0.0.1");
+
+		// The newest update held back is forwarded before the disconnection
+		assertEquals(4, receivedMessages.size());
+		assertEquals("10.0.0.1", disconnectedClients.get(0));
+		assertTrue(rateLimitingObserver.getThrottledClients().isEmpty());
+
+		// The reconnected client is still throttled
+		rateLimitingObserver.addClient(new StubMessageSocket(chattyClient));
+		receive(chattyClient, MessageType.APP_EXE_UPDATE);
+		assertEquals(4, receivedMessages.size());
+		assertEquals(1, rateLimitingObserver.getThrottledClients().size());
+	}
+
+	@Test
+	public void When_SupersededConnectionDisconnects_Should_KeepTheBucketsOfTheNewConnection()
+	{
+		StubMessageSocket oldConnection = new StubMessageSocket(chattyClient);
+		rateLimitingObserver.addClient(oldConnection);
+		rateLimitingObserver.addClient(new StubMessageSocket(chattyClient));
+		for (int i = 0; i < 4; ++i) {
+			receive(chattyClient, MessageType.APP_EXE_UPDATE);
+		}
+
+		oldConnection.connected = false;
+		rateLimitingObserver.notifyClientDisconnected("10.0.0.1");
+
+		// The disconnection is forwarded, the update held back stays held back for the new connection
+		assertEquals("10.0.0.1", disconnectedClients.get(0));
+		assertEquals(3, receivedMessages.size());
+		receive(chattyClient, MessageType.APP_EXE_UPDATE);
+		assertEquals(3, receivedMessages.size());
+		assertEquals(Long.valueOf(2), rateLimitingObserver.getThrottledClients().get("10.0.0.1"));
+	}
+
+	@Test
+	public void When_BurstEndsWithAThrottledUpdate_Should_StillDeliverTheFinalState() throws Exception
+	{
+		Computer computer = new Computer();
+		computer.setName("pc-1");
+		computer.setIp("10.0.0.1");
+		Row row = new Row();
+		row.setNumber(1);
+		row.setComputers(Collections.singletonList(computer));
+		LabLayout labLayout = new LabLayout();
+		labLayout.setRows(Collections.singletonList(row));
+
+		ClientPoolProxy clientPoolProxy = new ClientPoolProxy(labLayout);
+		clientPoolProxy.addClient(new StubMessageSocket(chattyClient));
+		Map<MessageType, MessageRateLimit> rateLimits = new EnumMap<>(MessageType.class);
+		rateLimits.put(MessageType.APP_EXE_UPDATE, new MessageRateLimit(20, 3));
+		RateLimitingMessageObserver observer = new RateLimitingMessageObserver(clientPoolProxy, clientPoolProxy,
+				clientPoolProxy, timer, rateLimits, 0);
+
+		for (int i = 0; i < 10; ++i) {
+			AppExe appExe = new AppExe(new AppInfo("app-" + i, "app.exe", ""), AppState.STARTED);
+			observer.notifyMessageReceived(chattyClient, new Message(MessageType.APP_EXE_UPDATE, appExe, chattyClient));
+		}
+		assertTrue(observer.getThrottledMessageCount() > 0);
+
+		// No further update is sent, the last one reaches the client pool once a token is refilled
+		int clientId = labLayout.getClientId("10.0.0.1");
+		for (int attempt = 0; attempt < 100 && ! "app-9".equals(clientPoolProxy.getClientStateTable().getAppName(clientId)); ++attempt) {
+			Thread.sleep(20);
+		}
+		assertEquals("app-9", clientPoolProxy.getClientStateTable().getAppName(clientId));
+		assertTrue(observer.getThrottledClients().isEmpty());
+	}
+
+	private void receive(NetworkInfo networkInfo, MessageType messageType)
+	{
+		rateLimitingObserver.notifyMessageReceived(networkInfo, new Message(messageType, networkInfo));
+	}
+
+	private static class StubMessageSocket implements MessageSocket
+	{
+		private final NetworkInfo networkInfo;
+		private volatile boolean connected = true;
+
+		StubMessageSocket(NetworkInfo networkInfo)
+		{
+			this.networkInfo = networkInfo;
+		}
+
+		@Override public boolean isConnected()
+		{
+			return connected;
+		}
+
+		@Override public void sendMessage(Message message) {}
+
+		@Override public Message readMessage()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override public String getClientIp()
+		{
+			return networkInfo.getClientIp();
+		}
+
+		@Override public String getServerIp()
+		{
+			return networkInfo.getServerIp();
+		}
+
+		@Override public String getClientName()
+		{
+			return networkInfo.getClientName();
+		}
+
+		@Override public NetworkInfo getNetworkInfo()
+		{
+			return networkInfo;
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.client.message.ClientMessageSocket;
+import edu.nyu.cess.remote.common.app.AppExe;
+import edu.nyu.cess.remote.common.app.AppInfo;
+import edu.nyu.cess.remote.common.app.AppState;
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.MessageSocketObserver;
+import edu.nyu.cess.remote.common.message.MessageType;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.codec.MessageCodecs;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
+import edu.nyu.cess.remote.server.client.ClientPoolObserver;
+import edu.nyu.cess.remote.server.client.ClientPoolProxy;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SelectorConnectionMonitorTest
+{
+	private final LoopbackLab lab = new LoopbackLab(new LoopbackLab.MonitorFactory() {
+		@Override public ConnectionMonitor createMonitor(ClientPool clientPool, MessageSocketObserver messageSocketObserver,
+														 ClientDisconnectionObserver disconnectionObserver,
+														 AdmissionStats admissionStats, ConnectionStats connectionStats)
+		{
+			return new SelectorConnectionMonitor(clientPool, messageSocketObserver, disconnectionObserver, 2,
+					new ConnectionHandshake(MessageCodecs.parseCodecIds(MessageCodecs.DEFAULT_CODECS), 300), 64,
+					new AdmissionSettings(512, 2, 0, 1), admissionStats, connectionStats,
+					new SlowClientMonitor(new SendSettings(2000, 3, 30000)));
+		}
+	});
+	private final BlockingQueue<MessageSocket> addedClients = lab.getAddedClients();
+	private final BlockingQueue<Message> receivedMessages = lab.getReceivedMessages();
+	private final BlockingQueue<String> disconnectedClients = lab.getDisconnectedClients();
+	private final AdmissionStats admissionStats = lab.getAdmissionStats();
+	private final ConnectionStats connectionStats = lab.getConnectionStats();
+
+	@Test
+	public void When_ClientConnects_Should_ExchangeMessagesWithTheClient() throws Exception
+	{
+		int port = lab.start();
+
+		ClientMessageSocket clientSocket = lab.connect();
+
+		// The server receives the client's messages
+		AppExe appExe = new AppExe(new AppInfo("a", "a", "a"), AppState.STARTED);
+		clientSocket.sendMessage(new Message(MessageType.APP_EXE_UPDATE, appExe, clientSocket.getNetworkInfo()));
+		clientSocket.sendMessage(new Message(MessageType.KEEP_ALIVE_PING, clientSocket.getNetworkInfo()));
+
+		Message first = receivedMessages.poll(2, TimeUnit.SECONDS);
+		assertNotNull(first);
+		assertEquals(MessageType.APP_EXE_UPDATE, first.getMessageType());
+		assertEquals("a", first.getAppExe().getAppInfo().getName());
+
+		Message second = receivedMessages.poll(2, TimeUnit.SECONDS);
+		assertNotNull(second);
+		assertEquals(MessageType.KEEP_ALIVE_PING, second.getMessageType());
+
+		// The client receives the server's messages
+		MessageSocket serverSocket = addedClients.poll(2, TimeUnit.SECONDS);
+		assertNotNull(serverSocket);
+		serverSocket.sendMessage(new Message(MessageType.APP_EXE_REQUEST, appExe, serverSocket.getNetworkInfo()));
+		assertEquals(MessageType.APP_EXE_REQUEST, clientSocket.readMessage().getMessageType());
+
+		// The server reports the disconnection
+		clientSocket.close();
+		assertEquals("127.0.0.1", disconnectedClients.poll(2, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void When_ServerSendsABurst_Should_DeliverEveryMessageInOrder() throws Exception
+	{
+		int port = lab.start();
+
+		ClientMessageSocket clientSocket = lab.connect();
+		MessageSocket serverSocket = addedClients.poll(2, TimeUnit.SECONDS);
+		assertNotNull(serverSocket);
+
+		for (int i = 0; i < 50; ++i) {
+			AppExe appExe = new AppExe(new AppInfo("app-" + i, "a", "a"), AppState.STARTED);
+			serverSocket.sendMessage(new Message(MessageType.APP_EXE_REQUEST, appExe, serverSocket.getNetworkInfo()));
+		}
+
+		for (int i = 0; i < 50; ++i) {
+			assertEquals("app-" + i, clientSocket.readMessage().getAppExe().getAppInfo().getName());
+		}
+		clientSocket.close();
+	}
+
+	@Test
+	public void When_ManyClientsConnectAtOnce_Should_AdmitEveryClient() throws Exception
+	{
+		int port = lab.start();
+		// Waits for the monitor to listen
+		lab.connect().close();
+		addedClients.poll(2, TimeUnit.SECONDS);
+
+		final int clientCount = 200;
+		final NetworkInfo networkInfo = new NetworkInfo("test", "127.0.0.1", "127.0.0.1");
+		final InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+		final BlockingQueue<Socket> connectedSockets = new LinkedBlockingQueue<>();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService connectors = Executors.newFixedThreadPool(50);
+		for (int i = 0; i < clientCount; ++i) {
+			connectors.execute(new Runnable() {
+				@Override public void run()
+				{
+					Socket socket = new Socket();
+					try {
+						start.await();
+						socket.connect(address, 5000);
+						ConnectionHandshake.writeHello(socket.getOutputStream(), MessageCodecs.parseCodecIds(MessageCodecs.DEFAULT_CODECS), 0);
+						connectedSockets.add(socket);
+					}
+					catch (Exception e) {
+						// Counted as a missing client
+					}
+				}
+			});
+		}
+		start.countDown();
+
+		for (int i = 0; i < clientCount; ++i) {
+			assertNotNull("Client " + i + " was not admitted.", addedClients.poll(5, TimeUnit.SECONDS));
+		}
+		assertEquals(clientCount, connectedSockets.size());
+		assertEquals(clientCount + 1, admissionStats.getAcceptedCount());
+		assertTrue(admissionStats.getRegistrationLatency(99, TimeUnit.MILLISECONDS) >= 0);
+
+		connectors.shutdownNow();
+		for (Socket socket : connectedSockets) {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void When_ClientsKeepReconnecting_Should_CloseEveryConnection() throws Exception
+	{
+		int port = lab.start();
+
+		for (int i = 0; i < 20; ++i) {
+			lab.connect().close();
+			assertNotNull(addedClients.poll(2, TimeUnit.SECONDS));
+			assertEquals("127.0.0.1", disconnectedClients.poll(2, TimeUnit.SECONDS));
+		}
+
+		// A connection that never sends its hello is closed, without being added or reported
+		Socket silentSocket = new Socket("127.0.0.1", port);
+		assertEquals(-1, silentSocket.getInputStream().read());
+		silentSocket.close();
+
+		assertEquals(21, connectionStats.getOpenedConnectionCount());
+		assertEquals(1, connectionStats.getHandshakeTimeoutCount());
+		assertEquals(0, connectionStats.getOpenConnectionCount());
+		assertNull(addedClients.poll());
+		assertNull(disconnectedClients.poll());
+	}
+
+	@Test
+	public void When_ClientsReconnect_Should_NotLeaveAnyClientPending() throws Exception
+	{
+		final ClientPoolProxy clientPoolProxy = new ClientPoolProxy(LoopbackLab.getLabLayout().freeze());
+		clientPoolProxy.setAdmissionStats(admissionStats);
+		clientPoolProxy.addObserver(new ClientPoolObserver() {
+			@Override public void notifyNewClientConnected(String hostName, String ipAddress)
+			{
+				admissionStats.notifyVisible(ipAddress);
+			}
+
+			@Override public void notifyClientDisconnected(String ipAddress) {}
+
+			@Override public void notifyClientAppUpdate(AppExe appExe, String ipAddress) {}
+
+			@Override public void notifyClientDegraded(String ipAddress, boolean degraded) {}
+		});
+		int port = lab.start(clientPoolProxy, clientPoolProxy, clientPoolProxy);
+
+		// A connection replacing the one of a known client, as a resumed session does
+		ClientMessageSocket firstSocket = lab.connect();
+		awaitSettled(1);
+		ClientMessageSocket secondSocket = new ClientMessageSocket(new NetworkInfo("test", "127.0.0.1", "127.0.0.1"), port);
+		awaitSettled(2);
+
+		// A connection that never sends its hello, and one closed before its hello
+		Socket silentSocket = new Socket("127.0.0.1", port);
+		assertEquals(-1, silentSocket.getInputStream().read());
+		silentSocket.close();
+		new Socket("127.0.0.1", port).close();
+		awaitSettled(4);
+
+		assertEquals(1, connectionStats.getHandshakeTimeoutCount());
+		secondSocket.close();
+		firstSocket.close();
+	}
+
+	private void awaitSettled(int acceptedCount) throws InterruptedException
+	{
+		for (int attempt = 0; attempt < 50; ++attempt) {
+			if (admissionStats.getAcceptedCount() == acceptedCount && admissionStats.getPendingCount() == 0) {
+				return;
+			}
+			Thread.sleep(100);
+		}
+		assertEquals(acceptedCount, admissionStats.getAcceptedCount());
+		assertEquals(0, admissionStats.getPendingCount());
+	}
+}
@@ -0,0 +1,57 @@
+package edu.nyu.cess.remote.server.net;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SendDeadlineTest
+{
+	private static final long DEADLINE = TimeUnit.MILLISECONDS.toNanos(100);
+
+	@Test
+	public void When_WritesKeepMissingTheDeadline_Should_QuarantineThenReleaseAfterWritesInTime()
+	{
+		SendDeadline sendDeadline = new SendDeadline(new SendSettings(100, 2, 10000));
+
+		assertEquals(SendDeadline.Verdict.NONE, sendDeadline.notifyWritten(0, DEADLINE / 2));
+		assertEquals(SendDeadline.Verdict.MISSED, sendDeadline.notifyWritten(DEADLINE, 3 * DEADLINE));
+		assertEquals(SendDeadline.Verdict.QUARANTINED, sendDeadline.notifyWritten(3 * DEADLINE, 5 * DEADLINE));
+		assertTrue(sendDeadline.isQuarantined());
+
+		assertEquals(SendDeadline.Verdict.NONE, sendDeadline.notifyWritten(5 * DEADLINE, 5 * DEADLINE + 1));
+		assertEquals(SendDeadline.Verdict.RELEASED, sendDeadline.notifyWritten(6 * DEADLINE, 6 * DEADLINE + 1));
+		assertFalse(sendDeadline.isQuarantined());
+	}
+
+	@Test
+	public void When_WriteStaysPending_Should_CountOneMissPerDeadlinePeriod()
+	{
+		SendDeadline sendDeadline = new SendDeadline(new SendSettings(100, 3, 10000));
+
+		assertEquals(SendDeadline.Verdict.NONE, sendDeadline.notifyPending(-1, DEADLINE));
+		assertEquals(SendDeadline.Verdict.NONE, sendDeadline.notifyPending(0, DEADLINE / 2));
+		assertEquals(SendDeadline.Verdict.MISSED, sendDeadline.notifyPending(0, DEADLINE + 1));
+		assertEquals(SendDeadline.Verdict.NONE, sendDeadline.notifyPending(0, DEADLINE + DEADLINE / 2));
+		assertEquals(SendDeadline.Verdict.MISSED, sendDeadline.notifyPending(0, 2 * DEADLINE + 1));
+		assertEquals(SendDeadline.Verdict.QUARANTINED, sendDeadline.notifyPending(0, 3 * DEADLINE + 1));
+
+		// The misses were already counted while the write was pending
+		assertEquals(SendDeadline.Verdict.NONE, sendDeadline.notifyWritten(0, 4 * DEADLINE));
+		assertTrue(sendDeadline.isQuarantined());
+	}
+
+	@Test
+	public void When_QuarantinedForTooLong_Should_DisconnectOnce()
+	{
+		SendDeadline sendDeadline = new SendDeadline(new SendSettings(100, 1, 1000));
+
+		assertEquals(SendDeadline.Verdict.QUARANTINED, sendDeadline.notifyPending(0, DEADLINE + 1));
+		assertEquals(SendDeadline.Verdict.NONE, sendDeadline.notifyPending(-1, 5 * DEADLINE));
+		assertEquals(SendDeadline.Verdict.DISCONNECT, sendDeadline.notifyPending(-1, 11 * DEADLINE + 1));
+		assertEquals(SendDeadline.Verdict.NONE, sendDeadline.notifyPending(-1, 12 * DEADLINE));
+	}
+}
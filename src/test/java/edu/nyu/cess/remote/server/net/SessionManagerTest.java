@@ -0,0 +1,201 @@
+package edu.nyu.cess.remote.server.net;
+
+import edu.nyu.cess.remote.common.message.Message;
+import edu.nyu.cess.remote.common.message.MessageSocket;
+import edu.nyu.cess.remote.common.message.codec.ConnectionHandshake;
+import edu.nyu.cess.remote.common.message.codec.Hello;
+import edu.nyu.cess.remote.common.message.codec.MessageCodecs;
+import edu.nyu.cess.remote.common.net.NetworkInfo;
+import edu.nyu.cess.remote.server.client.ClientDisconnectionObserver;
+import edu.nyu.cess.remote.server.client.ClientPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SessionManagerTest
+{
+	private static final long GRACE_MILLIS = 200;
+
+	private final BlockingQueue<MessageSocket> addedClients = new LinkedBlockingQueue<>();
+	private final BlockingQueue<String> disconnectedClients = new LinkedBlockingQueue<>();
+	private HashedWheelTimer timer;
+	private SessionManager sessionManager;
+
+	@Before
+	public void setUp()
+	{
+		timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+		ClientPool clientPool = new ClientPool() {
+			@Override public void addClient(MessageSocket messageSocket)
+			{
+				addedClients.add(messageSocket);
+			}
+		};
+		ClientDisconnectionObserver disconnectionObserver = new ClientDisconnectionObserver() {
+			@Override public void notifyClientDisconnected(String clientIp)
+			{
+				disconnectedClients.add(clientIp);
+			}
+		};
+		sessionManager = new SessionManager(clientPool, disconnectionObserver, timer, GRACE_MILLIS);
+	}
+
+	@After
+	public void tearDown()
+	{
+		timer.stop();
+	}
+
+	@Test
+	public void When_ClientResumesWithinTheGraceWindow_Should_KeepTheSessionSilently() throws Exception
+	{
+		StubSocket first = new StubSocket(ConnectionHandshake.CAPABILITIES, 0);
+		sessionManager.addClient(first);
+		assertSame(first, addedClients.poll());
+		assertNotEquals(0, first.sessionToken);
+
+		first.connected = false;
+		sessionManager.notifyClientDisconnected(first.getClientIp());
+
+		StubSocket second = new StubSocket(ConnectionHandshake.CAPABILITIES, first.sessionToken);
+		sessionManager.addClient(second);
+		assertSame(second, addedClients.poll());
+		assertEquals(first.sessionToken, second.sessionToken);
+		assertTrue(second.resumed);
+
+		assertNull(disconnectedClients.poll(GRACE_MILLIS * 2, TimeUnit.MILLISECONDS));
+		assertEquals(1, sessionManager.getResumedSessionCount());
+	}
+
+	@Test
+	public void When_GraceWindowExpires_Should_ReportTheDisconnection() throws Exception
+	{
+		StubSocket socket = new StubSocket(ConnectionHandshake.CAPABILITIES, 0);
+		sessionManager.addClient(socket);
+
+		socket.connected = false;
+		sessionManager.notifyClientDisconnected(socket.getClientIp());
+		assertNull(disconnectedClients.poll(GRACE_MILLIS / 2, TimeUnit.MILLISECONDS));
+
+		assertEquals(socket.getClientIp(), disconnectedClients.poll(GRACE_MILLIS * 5, TimeUnit.MILLISECONDS));
+		assertEquals(1, sessionManager.getExpiredSessionCount());
+	}
+
+	@Test
+	public void When_ClientCanNotResume_Should_ReportTheDisconnectionAtOnce() throws Exception
+	{
+		StubSocket socket = new StubSocket(ConnectionHandshake.PING_ECHO, 0);
+		sessionManager.addClient(socket);
+		assertEquals(0, socket.sessionToken);
+
+		// A replaced connection is ignored
+		StubSocket replacement = new StubSocket(ConnectionHandshake.PING_ECHO, 0);
+		sessionManager.addClient(replacement);
+		socket.connected = false;
+		sessionManager.notifyClientDisconnected(socket.getClientIp());
+		assertNull(disconnectedClients.poll());
+
+		replacement.connected = false;
+		sessionManager.notifyClientDisconnected(replacement.getClientIp());
+		assertEquals(replacement.getClientIp(), disconnectedClients.poll());
+	}
+
+	@Test
+	public void When_ClientConnectsAgain_Should_SupersedeTheOlderConnection() throws Exception
+	{
+		StubSocket halfOpen = new StubSocket(ConnectionHandshake.CAPABILITIES, 0);
+		sessionManager.addClient(halfOpen);
+
+		StubSocket newer = new StubSocket(ConnectionHandshake.CAPABILITIES, 0);
+		sessionManager.addClient(newer);
+		assertTrue( ! halfOpen.isConnected());
+		assertEquals(1, sessionManager.getSupersededConnectionCount());
+
+		// The older connection's disconnection does not end the newer session
+		sessionManager.notifyClientDisconnected(halfOpen.getClientIp());
+		assertNull(disconnectedClients.poll(GRACE_MILLIS * 2, TimeUnit.MILLISECONDS));
+		assertEquals(1, sessionManager.getSessionCount());
+	}
+
+	private class StubSocket implements ServerMessageSocket
+	{
+		private final NetworkInfo networkInfo = new NetworkInfo("pc-1", "10.0.0.1", "10.0.0.254");
+		private final Hello hello;
+		private volatile boolean connected = true;
+		private long sessionToken;
+		private boolean resumed;
+
+		StubSocket(int capabilities, long resumeToken)
+		{
+			hello = new Hello(ConnectionHandshake.PROTOCOL_VERSION, MessageCodecs.create(MessageCodecs.BINARY), capabilities, resumeToken);
+		}
+
+		@Override public void close()
+		{
+			connected = false;
+		}
+
+		@Override public boolean isLegacyClient()
+		{
+			return false;
+		}
+
+		@Override public Hello getHello()
+		{
+			return hello;
+		}
+
+		@Override public void setSession(long sessionToken, boolean resumed)
+		{
+			this.sessionToken = sessionToken;
+			this.resumed = resumed;
+		}
+
+		@Override public long getSessionToken()
+		{
+			return sessionToken;
+		}
+
+		@Override public boolean isConnected()
+		{
+			return connected;
+		}
+
+		@Override public void sendMessage(Message message) {}
+
+		@Override public Message readMessage()
+		{
+			return null;
+		}
+
+		@Override public String getClientIp()
+		{
+			return networkInfo.getClientIp();
+		}
+
+		@Override public String getServerIp()
+		{
+			return networkInfo.getServerIp();
+		}
+
+		@Override public String getClientName()
+		{
+			return networkInfo.getClientName();
+		}
+
+		@Override public NetworkInfo getNetworkInfo()
+		{
+			return networkInfo;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package edu.nyu.cess.remote.server.net;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest
+{
+	@Test
+	public void When_BurstIsSpent_Should_RefillAtTheConfiguredRate()
+	{
+		long now = 0;
+		TokenBucket tokenBucket = new TokenBucket(new MessageRateLimit(10, 2), now);
+
+		assertTrue(tokenBucket.tryAcquire(now));
+		assertTrue(tokenBucket.tryAcquire(now));
+		assertFalse(tokenBucket.tryAcquire(now));
+
+		now += TimeUnit.MILLISECONDS.toNanos(50);
+		assertFalse(tokenBucket.tryAcquire(now));
+
+		now += TimeUnit.MILLISECONDS.toNanos(50);
+		assertTrue(tokenBucket.tryAcquire(now));
+		assertFalse(tokenBucket.tryAcquire(now));
+	}
+
+	@Test
+	public void When_IdleForLong_Should_RefillNoMoreThanTheBurst()
+	{
+		long now = 0;
+		TokenBucket tokenBucket = new TokenBucket(new MessageRateLimit(10, 2), now);
+
+		now += TimeUnit.SECONDS.toNanos(60);
+		assertTrue(tokenBucket.tryAcquire(now));
+		assertTrue(tokenBucket.tryAcquire(now));
+		assertFalse(tokenBucket.tryAcquire(now));
+	}
+
+	@Test
+	public void When_BucketIsEmpty_Should_ReportTheWaitForTheNextToken()
+	{
+		long now = 0;
+		TokenBucket tokenBucket = new TokenBucket(new MessageRateLimit(10, 1), now);
+
+		assertEquals(0, tokenBucket.getNanosUntilAvailable(now));
+		assertTrue(tokenBucket.tryAcquire(now));
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), tokenBucket.getNanosUntilAvailable(now));
+
+		now += TimeUnit.MILLISECONDS.toNanos(40);
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(60), tokenBucket.getNanosUntilAvailable(now), 1);
+	}
+}